@@ -8,6 +8,7 @@ import org.vulkanb.eng.scene.*;
 
 import java.lang.Math;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import static org.lwjgl.glfw.GLFW.*;
 
@@ -34,20 +35,20 @@ public class Main implements IAppLogic {
 
     @Override
     public void init(Window window, Scene scene, Render render) {
-        List<ModelData> modelDataList = new ArrayList<>();
-
         String sponzaModelId = "sponza-model";
-        ModelData sponzaModelData = ModelLoader.loadModel(sponzaModelId, "resources/models/sponza/Sponza.gltf",
-                "resources/models/sponza", false);
-        modelDataList.add(sponzaModelData);
+        String bobModelId = "bob-model";
+        List<CompletableFuture<ModelData>> modelFutures = ModelLoader.loadModelsAsync(List.of(
+                new ModelLoader.ModelRequest(sponzaModelId, "resources/models/sponza/Sponza.gltf",
+                        "resources/models/sponza", false),
+                new ModelLoader.ModelRequest(bobModelId, "resources/models/bob/boblamp.md5mesh",
+                        "resources/models/bob", true)));
+        List<ModelData> modelDataList = modelFutures.stream().map(CompletableFuture::join).toList();
+
         Entity sponzaEntity = new Entity("SponzaEntity", sponzaModelId, new Vector3f(0.0f, 0.0f, 0.0f));
         scene.addEntity(sponzaEntity);
 
-        String bobModelId = "bob-model";
-        ModelData bobModelData = ModelLoader.loadModel(bobModelId, "resources/models/bob/boblamp.md5mesh",
-                "resources/models/bob", true);
+        ModelData bobModelData = modelDataList.get(1);
         maxFrames = bobModelData.getAnimationsList().get(0).frames().size();
-        modelDataList.add(bobModelData);
         bobEntity = new Entity("BobEntity", bobModelId, new Vector3f(0.0f, 0.0f, 0.0f));
         bobEntity.setScale(0.04f);
         bobEntity.getRotation().rotateY((float) Math.toRadians(-90.0f));
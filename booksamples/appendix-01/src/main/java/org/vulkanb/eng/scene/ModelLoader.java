@@ -3,7 +3,7 @@ package org.vulkanb.eng.scene;
 import org.joml.*;
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.assimp.*;
-import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.*;
 import org.tinylog.Logger;
 import org.vulkanb.eng.EngineProperties;
 
@@ -11,14 +11,17 @@ import java.io.File;
 import java.lang.Math;
 import java.nio.IntBuffer;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.lwjgl.assimp.Assimp.*;
-import static org.vulkanb.eng.EngineUtils.*;
+import static org.vulkanb.eng.EngineUtils.getThreadAllocatedBytes;
 
 public class ModelLoader {
 
     public static final int MAX_WEIGHTS = 4;
     private static final Matrix4f IDENTITY_MATRIX = new Matrix4f();
+    private static ExecutorService executor;
 
     private ModelLoader() {
         // Utility class
@@ -107,6 +110,23 @@ public class ModelLoader {
         return maxFrames;
     }
 
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            int numThreads = Math.max(1, java.lang.Runtime.getRuntime().availableProcessors());
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(numThreads, numThreads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "model-loader-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Shared by all the loads, idle threads are released so the pool costs nothing between them
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            executor = threadPoolExecutor;
+        }
+        return executor;
+    }
+
     private static AINodeAnim findAIAnimNode(AIAnimation aiAnimation, String nodeName) {
         AINodeAnim result = null;
         int numAnimNodes = aiAnimation.mNumChannels();
@@ -136,6 +156,8 @@ public class ModelLoader {
             throw new RuntimeException("Textures path does not exist [" + texturesDir + "]");
         }
 
+        long startTime = System.nanoTime();
+        long startAllocatedBytes = getThreadAllocatedBytes();
         AIScene aiScene = aiImportFile(modelPath, flags);
         if (aiScene == null) {
             throw new RuntimeException("Error loading model [modelPath: " + modelPath + ", texturesDir:" + texturesDir + "]");
@@ -179,10 +201,22 @@ public class ModelLoader {
         }
 
         aiReleaseImport(aiScene);
-        Logger.debug("Loaded model [{}]", modelPath);
+        Logger.debug("Loaded model [{}] in {} ms, allocated {} bytes", modelPath,
+                (System.nanoTime() - startTime) / 1_000_000, getThreadAllocatedBytes() - startAllocatedBytes);
         return modelData;
     }
 
+    public static List<CompletableFuture<ModelData>> loadModelsAsync(List<ModelRequest> modelRequests) {
+        Logger.debug("Loading {} model(s)", modelRequests.size());
+        ExecutorService executor = getExecutor();
+        List<CompletableFuture<ModelData>> result = new ArrayList<>();
+        for (ModelRequest modelRequest : modelRequests) {
+            result.add(CompletableFuture.supplyAsync(() -> loadModel(modelRequest.modelId(), modelRequest.modelPath(),
+                    modelRequest.texturesDir(), modelRequest.animation()), executor));
+        }
+        return result;
+    }
+
     private static List<ModelData.Animation> processAnimations(AIScene aiScene, List<Bone> boneList,
                                                                Node rootNode, Matrix4f globalInverseTransformation) {
         List<ModelData.Animation> animations = new ArrayList<>();
@@ -211,28 +245,18 @@ public class ModelLoader {
         return animations;
     }
 
-    private static List<Float> processBitangents(AIMesh aiMesh, List<Float> normals) {
-        List<Float> biTangents = new ArrayList<>();
-        AIVector3D.Buffer aiBitangents = aiMesh.mBitangents();
-        while (aiBitangents != null && aiBitangents.remaining() > 0) {
-            AIVector3D aiBitangent = aiBitangents.get();
-            biTangents.add(aiBitangent.x());
-            biTangents.add(aiBitangent.y());
-            biTangents.add(aiBitangent.z());
-        }
-
+    private static float[] processBitangents(AIMesh aiMesh, int numVertices) {
         // Assimp may not calculate tangents with models that do not have texture coordinates. Just create empty values
-        if (biTangents.isEmpty()) {
-            biTangents = new ArrayList<>(Collections.nCopies(normals.size(), 0.0f));
-        }
-        return biTangents;
+        return processVector3(aiMesh.mBitangents(), numVertices);
     }
 
     private static ModelData.AnimMeshData processBones(AIMesh aiMesh, List<Bone> boneList) {
-        List<Integer> boneIds = new ArrayList<>();
-        List<Float> weights = new ArrayList<>();
+        int numVertices = aiMesh.mNumVertices();
+        float[] weights = new float[numVertices * MAX_WEIGHTS];
+        int[] boneIds = new int[numVertices * MAX_WEIGHTS];
+        // Number of weights already assigned to each vertex, extra weights are discarded
+        int[] weightsCount = new int[numVertices];
 
-        Map<Integer, List<VertexWeight>> weightSet = new HashMap<>();
         int numBones = aiMesh.mNumBones();
         PointerBuffer aiBones = aiMesh.mBones();
         for (int i = 0; i < numBones; i++) {
@@ -241,48 +265,39 @@ public class ModelLoader {
             Bone bone = new Bone(id, aiBone.mName().dataString(), toMatrix(aiBone.mOffsetMatrix()));
             boneList.add(bone);
             int numWeights = aiBone.mNumWeights();
-            AIVertexWeight.Buffer aiWeights = aiBone.mWeights();
+            long weightsAddress = aiBone.mWeights().address();
             for (int j = 0; j < numWeights; j++) {
-                AIVertexWeight aiWeight = aiWeights.get(j);
-                VertexWeight vw = new VertexWeight(bone.boneId(), aiWeight.mVertexId(),
-                        aiWeight.mWeight());
-                List<VertexWeight> vertexWeightList = weightSet.get(vw.vertexId());
-                if (vertexWeightList == null) {
-                    vertexWeightList = new ArrayList<>();
-                    weightSet.put(vw.vertexId(), vertexWeightList);
+                long weightAddress = weightsAddress + (long) j * AIVertexWeight.SIZEOF;
+                int vertexId = AIVertexWeight.nmVertexId(weightAddress);
+                int count = weightsCount[vertexId];
+                if (count < MAX_WEIGHTS) {
+                    int pos = vertexId * MAX_WEIGHTS + count;
+                    weights[pos] = AIVertexWeight.nmWeight(weightAddress);
+                    boneIds[pos] = bone.boneId();
+                    weightsCount[vertexId] = count + 1;
                 }
-                vertexWeightList.add(vw);
             }
         }
 
-        int numVertices = aiMesh.mNumVertices();
-        for (int i = 0; i < numVertices; i++) {
-            List<VertexWeight> vertexWeightList = weightSet.get(i);
-            int size = vertexWeightList != null ? vertexWeightList.size() : 0;
-            for (int j = 0; j < MAX_WEIGHTS; j++) {
-                if (j < size) {
-                    VertexWeight vw = vertexWeightList.get(j);
-                    weights.add(vw.weight());
-                    boneIds.add(vw.boneId());
-                } else {
-                    weights.add(0.0f);
-                    boneIds.add(0);
-                }
-            }
-        }
-
-        return new ModelData.AnimMeshData(listFloatToArray(weights), listIntToArray(boneIds));
+        return new ModelData.AnimMeshData(weights, boneIds);
     }
 
-    private static List<Integer> processIndices(AIMesh aiMesh) {
-        List<Integer> indices = new ArrayList<>();
+    private static int[] processIndices(AIMesh aiMesh) {
         int numFaces = aiMesh.mNumFaces();
-        AIFace.Buffer aiFaces = aiMesh.mFaces();
+        long facesAddress = aiMesh.mFaces().address();
+        int numIndices = 0;
         for (int i = 0; i < numFaces; i++) {
-            AIFace aiFace = aiFaces.get(i);
-            IntBuffer buffer = aiFace.mIndices();
-            while (buffer.remaining() > 0) {
-                indices.add(buffer.get());
+            numIndices += AIFace.nmNumIndices(facesAddress + (long) i * AIFace.SIZEOF);
+        }
+
+        int[] indices = new int[numIndices];
+        int pos = 0;
+        for (int i = 0; i < numFaces; i++) {
+            long faceAddress = facesAddress + (long) i * AIFace.SIZEOF;
+            int numFaceIndices = AIFace.nmNumIndices(faceAddress);
+            long indicesAddress = MemoryUtil.memGetAddress(faceAddress + AIFace.MINDICES);
+            for (int j = 0; j < numFaceIndices; j++) {
+                indices[pos++] = MemoryUtil.memGetInt(indicesAddress + (long) j * Integer.BYTES);
             }
         }
         return indices;
@@ -342,78 +357,53 @@ public class ModelLoader {
     }
 
     private static ModelData.MeshData processMesh(AIMesh aiMesh) {
-        List<Float> vertices = processVertices(aiMesh);
-        List<Float> normals = processNormals(aiMesh);
-        List<Float> tangents = processTangents(aiMesh, normals);
-        List<Float> biTangents = processBitangents(aiMesh, normals);
-        List<Float> textCoords = processTextCoords(aiMesh);
-        List<Integer> indices = processIndices(aiMesh);
-
-        // Texture coordinates may not have been populated. We need at least the empty slots
-        if (textCoords.isEmpty()) {
-            int numElements = (vertices.size() / 3) * 2;
-            for (int i = 0; i < numElements; i++) {
-                textCoords.add(0.0f);
-            }
-        }
+        int numVertices = aiMesh.mNumVertices();
+        float[] vertices = processVertices(aiMesh, numVertices);
+        float[] normals = processNormals(aiMesh, numVertices);
+        float[] tangents = processTangents(aiMesh, numVertices);
+        float[] biTangents = processBitangents(aiMesh, numVertices);
+        float[] textCoords = processTextCoords(aiMesh, numVertices);
+        int[] indices = processIndices(aiMesh);
 
         int materialIdx = aiMesh.mMaterialIndex();
-        return new ModelData.MeshData(listFloatToArray(vertices), listFloatToArray(normals), listFloatToArray(tangents),
-                listFloatToArray(biTangents), listFloatToArray(textCoords), listIntToArray(indices), materialIdx);
+        return new ModelData.MeshData(vertices, normals, tangents, biTangents, textCoords, indices, materialIdx);
     }
 
-    private static List<Float> processNormals(AIMesh aiMesh) {
-        List<Float> normals = new ArrayList<>();
-
-        AIVector3D.Buffer aiNormals = aiMesh.mNormals();
-        while (aiNormals != null && aiNormals.remaining() > 0) {
-            AIVector3D aiNormal = aiNormals.get();
-            normals.add(aiNormal.x());
-            normals.add(aiNormal.y());
-            normals.add(aiNormal.z());
-        }
-        return normals;
+    private static float[] processNormals(AIMesh aiMesh, int numVertices) {
+        return processVector3(aiMesh.mNormals(), numVertices);
     }
 
-    private static List<Float> processTangents(AIMesh aiMesh, List<Float> normals) {
-        List<Float> tangents = new ArrayList<>();
-        AIVector3D.Buffer aiTangents = aiMesh.mTangents();
-        while (aiTangents != null && aiTangents.remaining() > 0) {
-            AIVector3D aiTangent = aiTangents.get();
-            tangents.add(aiTangent.x());
-            tangents.add(aiTangent.y());
-            tangents.add(aiTangent.z());
-        }
-
+    private static float[] processTangents(AIMesh aiMesh, int numVertices) {
         // Assimp may not calculate tangents with models that do not have texture coordinates. Just create empty values
-        if (tangents.isEmpty()) {
-            tangents = new ArrayList<>(Collections.nCopies(normals.size(), 0.0f));
-        }
-        return tangents;
+        return processVector3(aiMesh.mTangents(), numVertices);
     }
 
-    private static List<Float> processTextCoords(AIMesh aiMesh) {
-        List<Float> textCoords = new ArrayList<>();
+    private static float[] processTextCoords(AIMesh aiMesh, int numVertices) {
+        // Texture coordinates may not have been populated. We need at least the empty slots
+        float[] textCoords = new float[numVertices * 2];
         AIVector3D.Buffer aiTextCoords = aiMesh.mTextureCoords(0);
-        int numTextCoords = aiTextCoords != null ? aiTextCoords.remaining() : 0;
-        for (int i = 0; i < numTextCoords; i++) {
-            AIVector3D textCoord = aiTextCoords.get();
-            textCoords.add(textCoord.x());
-            textCoords.add(1 - textCoord.y());
+        if (aiTextCoords != null) {
+            long address = aiTextCoords.address();
+            for (int i = 0; i < numVertices; i++) {
+                long textCoordAddress = address + (long) i * AIVector3D.SIZEOF;
+                textCoords[i * 2] = MemoryUtil.memGetFloat(textCoordAddress);
+                textCoords[i * 2 + 1] = 1 - MemoryUtil.memGetFloat(textCoordAddress + Float.BYTES);
+            }
         }
         return textCoords;
     }
 
-    private static List<Float> processVertices(AIMesh aiMesh) {
-        List<Float> vertices = new ArrayList<>();
-        AIVector3D.Buffer aiVertices = aiMesh.mVertices();
-        while (aiVertices.remaining() > 0) {
-            AIVector3D aiVertex = aiVertices.get();
-            vertices.add(aiVertex.x());
-            vertices.add(aiVertex.y());
-            vertices.add(aiVertex.z());
+    private static float[] processVector3(AIVector3D.Buffer aiVectors, int numVertices) {
+        // AIVector3D is a tightly packed struct of three floats, so the whole buffer can be copied at once
+        float[] data = new float[numVertices * 3];
+        if (aiVectors != null) {
+            MemoryUtil.memFloatBuffer(aiVectors.address(), data.length).get(data);
         }
-        return vertices;
+        return data;
+    }
+
+    private static float[] processVertices(AIMesh aiMesh, int numVertices) {
+        return processVector3(aiMesh.mVertices(), numVertices);
     }
 
     private static Matrix4f toMatrix(AIMatrix4x4 aiMatrix4x4) {
@@ -438,9 +428,9 @@ public class ModelLoader {
         return result;
     }
 
-    private record Bone(int boneId, String boneName, Matrix4f offsetMatrix) {
+    public record ModelRequest(String modelId, String modelPath, String texturesDir, boolean animation) {
     }
 
-    private record VertexWeight(int boneId, int vertexId, float weight) {
+    private record Bone(int boneId, String boneName, Matrix4f offsetMatrix) {
     }
 }
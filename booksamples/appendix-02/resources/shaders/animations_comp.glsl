@@ -12,8 +12,9 @@ layout (std430, set=2, binding=0) buffer dstBuf {
     float data[];
 } dstVector;
 
+// Each joint is stored as the first three rows of an affine matrix
 layout (std430, set=3, binding=0) readonly buffer jointBuf {
-    mat4 data[];
+    vec4 data[];
 } jointMatrices;
 
 layout (local_size_x=32, local_size_y=1, local_size_z=1) in;
@@ -26,6 +27,12 @@ layout(push_constant) uniform pushConstants {
     uint dstOffset;
 } push_constants;
 
+mat4 getJointMatrix(int joint)
+{
+    uint baseIdx = (push_constants.jointMatricesOffset + joint) * 3;
+    return transpose(mat4(jointMatrices.data[baseIdx], jointMatrices.data[baseIdx + 1], jointMatrices.data[baseIdx + 2], vec4(0, 0, 0, 1)));
+}
+
 void main()
 {
     int baseIdx = int(gl_GlobalInvocationID.x) * 14;
@@ -39,12 +46,14 @@ void main()
     vec4 weights = vec4(weightsVector.data[baseIdxWeightsBuf], weightsVector.data[baseIdxWeightsBuf + 1], weightsVector.data[baseIdxWeightsBuf + 2], weightsVector.data[baseIdxWeightsBuf + 3]);
     ivec4 joints = ivec4(weightsVector.data[baseIdxWeightsBuf + 4], weightsVector.data[baseIdxWeightsBuf + 5], weightsVector.data[baseIdxWeightsBuf + 6], weightsVector.data[baseIdxWeightsBuf + 7]);
 
+    mat4 skinMatrix =
+    weights.x * getJointMatrix(joints.x) +
+    weights.y * getJointMatrix(joints.y) +
+    weights.z * getJointMatrix(joints.z) +
+    weights.w * getJointMatrix(joints.w);
+
     vec4 position = vec4(srcVector.data[baseIdxSrcBuf], srcVector.data[baseIdxSrcBuf + 1], srcVector.data[baseIdxSrcBuf + 2], 1);
-    position =
-    weights.x * jointMatrices.data[push_constants.jointMatricesOffset + joints.x] * position +
-    weights.y * jointMatrices.data[push_constants.jointMatricesOffset + joints.y] * position +
-    weights.z * jointMatrices.data[push_constants.jointMatricesOffset + joints.z] * position +
-    weights.w * jointMatrices.data[push_constants.jointMatricesOffset + joints.w] * position;
+    position = skinMatrix * position;
     dstVector.data[baseIdxDstBuf] = position.x / position.w;
     dstVector.data[baseIdxDstBuf + 1] = position.y / position.w;
     dstVector.data[baseIdxDstBuf + 2] = position.z / position.w;
@@ -52,11 +61,7 @@ void main()
     baseIdxSrcBuf += 3;
     baseIdxDstBuf += 3;
     vec4 normal = vec4(srcVector.data[baseIdxSrcBuf], srcVector.data[baseIdxSrcBuf + 1], srcVector.data[baseIdxSrcBuf + 2], 0);
-    normal =
-    weights.x * jointMatrices.data[push_constants.jointMatricesOffset + joints.x] * normal +
-    weights.y * jointMatrices.data[push_constants.jointMatricesOffset + joints.y] * normal +
-    weights.z * jointMatrices.data[push_constants.jointMatricesOffset + joints.z] * normal +
-    weights.w * jointMatrices.data[push_constants.jointMatricesOffset + joints.w] * normal;
+    normal = skinMatrix * normal;
     dstVector.data[baseIdxDstBuf] = normal.x;
     dstVector.data[baseIdxDstBuf + 1] = normal.y;
     dstVector.data[baseIdxDstBuf + 2] = normal.z;
@@ -64,11 +69,7 @@ void main()
     baseIdxSrcBuf += 3;
     baseIdxDstBuf += 3;
     vec4 tangent = vec4(srcVector.data[baseIdxSrcBuf], srcVector.data[baseIdxSrcBuf + 1], srcVector.data[baseIdxSrcBuf + 2], 0);
-    tangent =
-    weights.x * jointMatrices.data[push_constants.jointMatricesOffset + joints.x] * tangent +
-    weights.y * jointMatrices.data[push_constants.jointMatricesOffset + joints.y] * tangent +
-    weights.z * jointMatrices.data[push_constants.jointMatricesOffset + joints.z] * tangent +
-    weights.w * jointMatrices.data[push_constants.jointMatricesOffset + joints.w] * tangent;
+    tangent = skinMatrix * tangent;
     dstVector.data[baseIdxDstBuf] = tangent.x;
     dstVector.data[baseIdxDstBuf + 1] = tangent.y;
     dstVector.data[baseIdxDstBuf + 2] = tangent.z;
@@ -76,11 +77,7 @@ void main()
     baseIdxSrcBuf += 3;
     baseIdxDstBuf += 3;
     vec4 bitangent = vec4(srcVector.data[baseIdxSrcBuf], srcVector.data[baseIdxSrcBuf + 1], srcVector.data[baseIdxSrcBuf + 2], 0);
-    bitangent =
-    weights.x * jointMatrices.data[push_constants.jointMatricesOffset + joints.x] * bitangent +
-    weights.y * jointMatrices.data[push_constants.jointMatricesOffset + joints.y] * bitangent +
-    weights.z * jointMatrices.data[push_constants.jointMatricesOffset + joints.z] * bitangent +
-    weights.w * jointMatrices.data[push_constants.jointMatricesOffset + joints.w] * bitangent;
+    bitangent = skinMatrix * bitangent;
     dstVector.data[baseIdxDstBuf] = bitangent.x;
     dstVector.data[baseIdxDstBuf + 1] = bitangent.y;
     dstVector.data[baseIdxDstBuf + 2] = bitangent.z;
@@ -0,0 +1,104 @@
+#version 450
+
+// Packed vertices: position (3 floats), octahedral normal (2 x snorm16), tangent (10:10:10 unorm + 2 bits bitangent
+// sign) and texture coordinates (2 x half float)
+#define VERTEX_SIZE 6
+
+layout (std430, set=0, binding=0) readonly buffer srcBuf {
+    uint data[];
+} srcVector;
+
+layout (std430, set=1, binding=0) readonly buffer weightsBuf {
+    float data[];
+} weightsVector;
+
+layout (std430, set=2, binding=0) buffer dstBuf {
+    uint data[];
+} dstVector;
+
+// Each joint is stored as the first three rows of an affine matrix
+layout (std430, set=3, binding=0) readonly buffer jointBuf {
+    vec4 data[];
+} jointMatrices;
+
+layout (local_size_x=32, local_size_y=1, local_size_z=1) in;
+
+layout(push_constant) uniform pushConstants {
+    uint srcOffset;
+    uint srcSize;
+    uint weightsOffset;
+    uint jointMatricesOffset;
+    uint dstOffset;
+} push_constants;
+
+mat4 getJointMatrix(int joint)
+{
+    uint baseIdx = (push_constants.jointMatricesOffset + joint) * 3;
+    return transpose(mat4(jointMatrices.data[baseIdx], jointMatrices.data[baseIdx + 1], jointMatrices.data[baseIdx + 2], vec4(0, 0, 0, 1)));
+}
+
+vec3 decodeNormal(vec2 encoded)
+{
+    vec3 normal = vec3(encoded, 1 - abs(encoded.x) - abs(encoded.y));
+    float t = max(-normal.z, 0);
+    normal.x += normal.x >= 0 ? -t : t;
+    normal.y += normal.y >= 0 ? -t : t;
+    return normalize(normal);
+}
+
+vec2 encodeNormal(vec3 normal)
+{
+    vec2 encoded = normal.xy / (abs(normal.x) + abs(normal.y) + abs(normal.z));
+    if (normal.z < 0) {
+        encoded = (1 - abs(encoded.yx)) * vec2(encoded.x >= 0 ? 1 : -1, encoded.y >= 0 ? 1 : -1);
+    }
+    return encoded;
+}
+
+vec3 decodeTangent(uint packed)
+{
+    return vec3(packed & 0x3FFu, (packed >> 10) & 0x3FFu, (packed >> 20) & 0x3FFu) / 1023.0 * 2 - 1;
+}
+
+uint encodeTangent(vec3 tangent, uint sign)
+{
+    uvec3 packed = uvec3(round(clamp(tangent * 0.5 + 0.5, 0, 1) * 1023.0));
+    return packed.x | (packed.y << 10) | (packed.z << 20) | sign;
+}
+
+void main()
+{
+    int baseIdx = int(gl_GlobalInvocationID.x) * VERTEX_SIZE;
+    uint baseIdxWeightsBuf  = push_constants.weightsOffset + int(gl_GlobalInvocationID.x) * 8;
+    uint baseIdxSrcBuf = push_constants.srcOffset + baseIdx;
+    uint baseIdxDstBuf = push_constants.dstOffset + baseIdx;
+    if (baseIdx >= push_constants.srcSize) {
+        return;
+    }
+
+    vec4 weights = vec4(weightsVector.data[baseIdxWeightsBuf], weightsVector.data[baseIdxWeightsBuf + 1], weightsVector.data[baseIdxWeightsBuf + 2], weightsVector.data[baseIdxWeightsBuf + 3]);
+    ivec4 joints = ivec4(weightsVector.data[baseIdxWeightsBuf + 4], weightsVector.data[baseIdxWeightsBuf + 5], weightsVector.data[baseIdxWeightsBuf + 6], weightsVector.data[baseIdxWeightsBuf + 7]);
+
+    mat4 skinMatrix =
+    weights.x * getJointMatrix(joints.x) +
+    weights.y * getJointMatrix(joints.y) +
+    weights.z * getJointMatrix(joints.z) +
+    weights.w * getJointMatrix(joints.w);
+
+    vec4 position = vec4(uintBitsToFloat(srcVector.data[baseIdxSrcBuf]), uintBitsToFloat(srcVector.data[baseIdxSrcBuf + 1]), uintBitsToFloat(srcVector.data[baseIdxSrcBuf + 2]), 1);
+    position = skinMatrix * position;
+    dstVector.data[baseIdxDstBuf] = floatBitsToUint(position.x / position.w);
+    dstVector.data[baseIdxDstBuf + 1] = floatBitsToUint(position.y / position.w);
+    dstVector.data[baseIdxDstBuf + 2] = floatBitsToUint(position.z / position.w);
+
+    vec3 normal = normalize((skinMatrix * vec4(decodeNormal(unpackSnorm2x16(srcVector.data[baseIdxSrcBuf + 3])), 0)).xyz);
+    dstVector.data[baseIdxDstBuf + 3] = packSnorm2x16(encodeNormal(normal));
+
+    uint packedTangent = srcVector.data[baseIdxSrcBuf + 4];
+    vec3 tangent = (skinMatrix * vec4(decodeTangent(packedTangent), 0)).xyz;
+    float tangentLength = length(tangent);
+    tangent = tangentLength > 0 ? tangent / tangentLength : tangent;
+    dstVector.data[baseIdxDstBuf + 4] = encodeTangent(tangent, packedTangent & 0xC0000000u);
+
+    dstVector.data[baseIdxDstBuf + 5] = srcVector.data[baseIdxSrcBuf + 5];
+}
\ No newline at end of file
@@ -0,0 +1,122 @@
+#version 450
+
+// Must match GlobalBuffers.IND_COMMAND_STRIDE and GlobalBuffers.INSTANCE_DATA_SIZE
+#define COMMAND_INTS 5
+#define INSTANCE_INTS 17
+#define LOCAL_SIZE 64
+#define NUM_PLANES 6
+
+// Center and radius, min and max
+struct Bounds {
+    vec4 sphere;
+    vec4 min;
+    vec4 max;
+};
+
+layout (std430, set=0, binding=0) readonly buffer boundsBuf {
+    Bounds data[];
+} bounds;
+
+layout (std430, set=0, binding=1) readonly buffer frustumBuf {
+    vec4 planes[NUM_PLANES];
+} frustum;
+
+layout (std430, set=0, binding=2) readonly buffer srcInstancesBuf {
+    uint data[];
+} srcInstances;
+
+layout (std430, set=0, binding=3) readonly buffer srcCommandsBuf {
+    uint data[];
+} srcCommands;
+
+layout (std430, set=0, binding=4) readonly buffer commandBoundsBuf {
+    uint data[];
+} commandBounds;
+
+layout (std430, set=0, binding=5) writeonly buffer dstInstancesBuf {
+    uint data[];
+} dstInstances;
+
+layout (std430, set=0, binding=6) buffer dstCommandsBuf {
+    uint drawCount;
+    uint padding[3];
+    uint data[];
+} dstCommands;
+
+layout (local_size_x=LOCAL_SIZE, local_size_y=1, local_size_z=1) in;
+
+layout(push_constant) uniform pushConstants {
+    uint compact;
+} push_constants;
+
+shared uint visibleCount;
+
+mat4 readMatrix(uint idx)
+{
+    mat4 result;
+    for (int col = 0; col < 4; col++) {
+        for (int row = 0; row < 4; row++) {
+            result[col][row] = uintBitsToFloat(srcInstances.data[idx + col * 4 + row]);
+        }
+    }
+    return result;
+}
+
+bool isVisible(mat4 modelMatrix, Bounds meshBounds)
+{
+    vec3 center = (modelMatrix * vec4(meshBounds.sphere.xyz, 1.0)).xyz;
+    float scale = max(length(modelMatrix[0].xyz), max(length(modelMatrix[1].xyz), length(modelMatrix[2].xyz)));
+    float radius = meshBounds.sphere.w * scale;
+    for (int i = 0; i < NUM_PLANES; i++) {
+        vec4 plane = frustum.planes[i];
+        if (dot(plane.xyz, center) + plane.w < -radius) {
+            return false;
+        }
+    }
+    return true;
+}
+
+// Each work group processes the instances of one command
+void main()
+{
+    uint cmdIdx = gl_WorkGroupID.x;
+    uint cmdPos = cmdIdx * COMMAND_INTS;
+    uint instanceCount = srcCommands.data[cmdPos + 1];
+    uint firstInstance = srcCommands.data[cmdPos + 4];
+    if (gl_LocalInvocationID.x == 0) {
+        visibleCount = 0;
+    }
+    memoryBarrierShared();
+    barrier();
+
+    Bounds meshBounds = bounds.data[commandBounds.data[cmdIdx]];
+    for (uint i = gl_LocalInvocationID.x; i < instanceCount; i += LOCAL_SIZE) {
+        uint srcPos = (firstInstance + i) * INSTANCE_INTS;
+        if (isVisible(readMatrix(srcPos), meshBounds)) {
+            // Visible instances are compacted in the range of the command, their order is not preserved
+            uint dstPos = (firstInstance + atomicAdd(visibleCount, 1)) * INSTANCE_INTS;
+            for (uint j = 0; j < INSTANCE_INTS; j++) {
+                dstInstances.data[dstPos + j] = srcInstances.data[srcPos + j];
+            }
+        }
+    }
+    memoryBarrierShared();
+    barrier();
+
+    if (gl_LocalInvocationID.x != 0) {
+        return;
+    }
+    uint dstCmdIdx = cmdIdx;
+    if (push_constants.compact != 0) {
+        if (visibleCount == 0) {
+            return;
+        }
+        dstCmdIdx = atomicAdd(dstCommands.drawCount, 1);
+    }
+    uint dstCmdPos = dstCmdIdx * COMMAND_INTS;
+    dstCommands.data[dstCmdPos] = srcCommands.data[cmdPos];
+    dstCommands.data[dstCmdPos + 1] = visibleCount;
+    dstCommands.data[dstCmdPos + 2] = srcCommands.data[cmdPos + 2];
+    dstCommands.data[dstCmdPos + 3] = srcCommands.data[cmdPos + 3];
+    dstCommands.data[dstCmdPos + 4] = firstInstance;
+}
\ No newline at end of file
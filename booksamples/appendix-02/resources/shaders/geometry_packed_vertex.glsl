@@ -0,0 +1,54 @@
+#version 450
+
+layout(location = 0) in vec3 entityPos;
+// Octahedral encoded normal
+layout(location = 1) in vec2 entityNormal;
+// Tangent mapped to [0, 1], w holds the bitangent sign (0 negative, 1 positive)
+layout(location = 2) in vec4 entityTangent;
+layout(location = 4) in vec2 entityTextCoords;
+
+// Instanced attributes
+layout (location = 5) in mat4 entityModelMatrix;
+layout (location = 9) in uint entityMatIdx;
+
+layout(location = 0) out vec3 outNormal;
+layout(location = 1) out vec3 outTangent;
+layout(location = 2) out vec3 outBitangent;
+layout(location = 3) out vec2 outTextCoords;
+layout(location = 4) flat out uint outMatIdx;
+
+out gl_PerVertex
+{
+    vec4 gl_Position;
+};
+
+layout(set = 0, binding = 0) uniform ProjUniform {
+    mat4 projectionMatrix;
+} projUniform;
+layout(set = 1, binding = 0) uniform ViewUniform {
+    mat4 viewMatrix;
+} viewUniform;
+
+vec3 decodeNormal(vec2 encoded)
+{
+    vec3 normal = vec3(encoded, 1 - abs(encoded.x) - abs(encoded.y));
+    float t = max(-normal.z, 0);
+    normal.x += normal.x >= 0 ? -t : t;
+    normal.y += normal.y >= 0 ? -t : t;
+    return normalize(normal);
+}
+
+void main()
+{
+    vec3 normal = decodeNormal(entityNormal);
+    vec3 tangent = entityTangent.xyz * 2 - 1;
+    vec3 bitangent = cross(normal, tangent) * (entityTangent.w > 0.5 ? 1 : -1);
+
+    mat4 modelViewMatrix = viewUniform.viewMatrix * entityModelMatrix;
+    outNormal     = normalize(modelViewMatrix * vec4(normal, 0)).xyz;
+    outTangent    = normalize(modelViewMatrix * vec4(tangent, 0)).xyz;
+    outBitangent  = normalize(modelViewMatrix * vec4(bitangent, 0)).xyz;
+    outTextCoords = entityTextCoords;
+    outMatIdx     = entityMatIdx;
+    gl_Position   = projUniform.projectionMatrix * modelViewMatrix * vec4(entityPos, 1);
+}
\ No newline at end of file
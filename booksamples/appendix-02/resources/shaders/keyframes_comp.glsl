@@ -0,0 +1,227 @@
+#version 450
+
+// Must match GraphConstants.MAX_KEY_FRAME_NODES
+#define MAX_NODES 256
+#define NO_CHANNEL 0xFFFFFFFFu
+#define MATRIX_ROWS_SIZE 12
+#define NODE_SIZE 13
+#define POSITION_KEY_SIZE 4
+#define ROTATION_KEY_SIZE 5
+#define SCALING_KEY_SIZE 4
+
+layout (std430, set=0, binding=0) readonly buffer keyFramesBuf {
+    uint data[];
+} keyFrames;
+
+// Each joint is stored as the first three rows of an affine matrix
+layout (std430, set=1, binding=0) writeonly buffer jointsBuf {
+    vec4 data[];
+} jointMatrices;
+
+layout (local_size_x=64, local_size_y=1, local_size_z=1) in;
+
+layout(push_constant) uniform pushConstants {
+    uint skeletonOffset;
+    uint numNodes;
+    uint numJoints;
+    uint clipOffset;
+    float time;
+    uint fadeClipOffset;
+    float fadeTime;
+    float fadeWeight;
+    uint dstOffset;
+} push_constants;
+
+// Node transformations, local ones are replaced by the global ones once the hierarchy is processed
+shared vec4 nodeRows[MAX_NODES * 3];
+
+float readFloat(uint idx)
+{
+    return uintBitsToFloat(keyFrames.data[idx]);
+}
+
+vec3 readVec3(uint idx)
+{
+    return vec3(readFloat(idx), readFloat(idx + 1), readFloat(idx + 2));
+}
+
+vec4 readVec4(uint idx)
+{
+    return vec4(readFloat(idx), readFloat(idx + 1), readFloat(idx + 2), readFloat(idx + 3));
+}
+
+mat4 readMatrix(uint idx)
+{
+    return transpose(mat4(readVec4(idx), readVec4(idx + 4), readVec4(idx + 8), vec4(0, 0, 0, 1)));
+}
+
+mat4 loadNode(uint node)
+{
+    uint baseIdx = node * 3;
+    return transpose(mat4(nodeRows[baseIdx], nodeRows[baseIdx + 1], nodeRows[baseIdx + 2], vec4(0, 0, 0, 1)));
+}
+
+void storeNode(uint node, mat4 matrix)
+{
+    mat4 rows = transpose(matrix);
+    uint baseIdx = node * 3;
+    nodeRows[baseIdx] = rows[0];
+    nodeRows[baseIdx + 1] = rows[1];
+    nodeRows[baseIdx + 2] = rows[2];
+}
+
+// Returns the index of the last key whose time is lower or equal than the requested one
+uint findKey(uint keysIdx, uint numKeys, uint keySize, float time)
+{
+    uint low = 0;
+    uint high = numKeys - 1;
+    while (low < high) {
+        uint middle = (low + high + 1) / 2;
+        if (readFloat(keysIdx + middle * keySize) <= time) {
+            low = middle;
+        } else {
+            high = middle - 1;
+        }
+    }
+    return low;
+}
+
+float keyFactor(uint keysIdx, uint key, uint keySize, float time)
+{
+    float startTime = readFloat(keysIdx + key * keySize);
+    float endTime = readFloat(keysIdx + (key + 1) * keySize);
+    return endTime > startTime ? clamp((time - startTime) / (endTime - startTime), 0, 1) : 0;
+}
+
+vec3 sampleVec3(uint keysIdx, uint numKeys, float time, vec3 defaultValue)
+{
+    if (numKeys == 0) {
+        return defaultValue;
+    }
+    uint key = findKey(keysIdx, numKeys, POSITION_KEY_SIZE, time);
+    vec3 value = readVec3(keysIdx + key * POSITION_KEY_SIZE + 1);
+    if (key + 1 < numKeys) {
+        vec3 nextValue = readVec3(keysIdx + (key + 1) * POSITION_KEY_SIZE + 1);
+        value = mix(value, nextValue, keyFactor(keysIdx, key, POSITION_KEY_SIZE, time));
+    }
+    return value;
+}
+
+vec4 sampleQuat(uint keysIdx, uint numKeys, float time)
+{
+    if (numKeys == 0) {
+        return vec4(0, 0, 0, 1);
+    }
+    uint key = findKey(keysIdx, numKeys, ROTATION_KEY_SIZE, time);
+    vec4 value = readVec4(keysIdx + key * ROTATION_KEY_SIZE + 1);
+    if (key + 1 < numKeys) {
+        vec4 nextValue = readVec4(keysIdx + (key + 1) * ROTATION_KEY_SIZE + 1);
+        if (dot(value, nextValue) < 0) {
+            nextValue = -nextValue;
+        }
+        value = normalize(mix(value, nextValue, keyFactor(keysIdx, key, ROTATION_KEY_SIZE, time)));
+    }
+    return value;
+}
+
+bool sampleNode(uint clipOffset, uint node, float time, out vec3 translation, out vec4 rotation, out vec3 scale)
+{
+    uint headerIdx = clipOffset + node * 4;
+    uint keysIdx = keyFrames.data[headerIdx + 3];
+    if (keysIdx == NO_CHANNEL) {
+        return false;
+    }
+    uint numPositions = keyFrames.data[headerIdx];
+    uint numRotations = keyFrames.data[headerIdx + 1];
+    uint numScalings = keyFrames.data[headerIdx + 2];
+    uint rotationsIdx = keysIdx + numPositions * POSITION_KEY_SIZE;
+    uint scalingsIdx = rotationsIdx + numRotations * ROTATION_KEY_SIZE;
+    translation = sampleVec3(keysIdx, numPositions, time, vec3(0));
+    rotation = sampleQuat(rotationsIdx, numRotations, time);
+    scale = sampleVec3(scalingsIdx, numScalings, time, vec3(1));
+    return true;
+}
+
+mat4 composeMatrix(vec3 translation, vec4 q, vec3 scale)
+{
+    mat4 result = mat4(
+    1 - 2 * (q.y * q.y + q.z * q.z), 2 * (q.x * q.y + q.z * q.w), 2 * (q.x * q.z - q.y * q.w), 0,
+    2 * (q.x * q.y - q.z * q.w), 1 - 2 * (q.x * q.x + q.z * q.z), 2 * (q.y * q.z + q.x * q.w), 0,
+    2 * (q.x * q.z + q.y * q.w), 2 * (q.y * q.z - q.x * q.w), 1 - 2 * (q.x * q.x + q.y * q.y), 0,
+    translation.x, translation.y, translation.z, 1);
+    result[0] *= scale.x;
+    result[1] *= scale.y;
+    result[2] *= scale.z;
+    return result;
+}
+
+mat4 calcLocalTransform(uint node)
+{
+    uint nodeIdx = push_constants.skeletonOffset + MATRIX_ROWS_SIZE * 2 + node * NODE_SIZE;
+    vec3 translation;
+    vec4 rotation;
+    vec3 scale;
+    bool animated = sampleNode(push_constants.clipOffset, node, push_constants.time, translation, rotation, scale);
+    if (push_constants.fadeWeight <= 0) {
+        return animated ? composeMatrix(translation, rotation, scale) : readMatrix(nodeIdx + 1);
+    }
+
+    vec3 fadeTranslation;
+    vec4 fadeRotation;
+    vec3 fadeScale;
+    bool fadeAnimated = sampleNode(push_constants.fadeClipOffset, node, push_constants.fadeTime, fadeTranslation,
+    fadeRotation, fadeScale);
+    float weight = push_constants.fadeWeight;
+    if (animated && fadeAnimated) {
+        if (dot(rotation, fadeRotation) < 0) {
+            fadeRotation = -fadeRotation;
+        }
+        return composeMatrix(mix(translation, fadeTranslation, weight), normalize(mix(rotation, fadeRotation, weight)),
+        mix(scale, fadeScale, weight));
+    }
+    // Node only animated in one of the clips, blend against its bind transformation
+    mat4 current = animated ? composeMatrix(translation, rotation, scale) : readMatrix(nodeIdx + 1);
+    mat4 fade = fadeAnimated ? composeMatrix(fadeTranslation, fadeRotation, fadeScale) : readMatrix(nodeIdx + 1);
+    return current * (1 - weight) + fade * weight;
+}
+
+void main()
+{
+    uint localIdx = gl_LocalInvocationID.x;
+    uint numNodes = push_constants.numNodes;
+    uint nodesIdx = push_constants.skeletonOffset + MATRIX_ROWS_SIZE * 2;
+
+    for (uint node = localIdx; node < numNodes; node += gl_WorkGroupSize.x) {
+        storeNode(node, calcLocalTransform(node));
+    }
+    memoryBarrierShared();
+    barrier();
+
+    // Nodes are sorted in pre-order, so parents are always transformed before their children
+    if (localIdx == 0) {
+        mat4 rootParentTransform = readMatrix(push_constants.skeletonOffset);
+        for (uint node = 0; node < numNodes; node++) {
+            int parent = int(keyFrames.data[nodesIdx + node * NODE_SIZE]);
+            mat4 parentTransform = parent >= 0 ? loadNode(uint(parent)) : rootParentTransform;
+            storeNode(node, parentTransform * loadNode(node));
+        }
+    }
+    memoryBarrierShared();
+    barrier();
+
+    mat4 globalInverseTransform = readMatrix(push_constants.skeletonOffset + MATRIX_ROWS_SIZE);
+    uint jointsIdx = nodesIdx + numNodes * NODE_SIZE;
+    for (uint joint = localIdx; joint < push_constants.numJoints; joint += gl_WorkGroupSize.x) {
+        uint jointIdx = jointsIdx + joint * NODE_SIZE;
+        int node = int(keyFrames.data[jointIdx]);
+        mat4 jointMatrix = mat4(1);
+        if (node >= 0) {
+            jointMatrix = globalInverseTransform * loadNode(uint(node)) * readMatrix(jointIdx + 1);
+        }
+        mat4 rows = transpose(jointMatrix);
+        uint dstIdx = (push_constants.dstOffset + joint) * 3;
+        jointMatrices.data[dstIdx] = rows[0];
+        jointMatrices.data[dstIdx + 1] = rows[1];
+        jointMatrices.data[dstIdx + 2] = rows[2];
+    }
+}
\ No newline at end of file
@@ -1,9 +1,7 @@
 #version 450
 
+// Only position and texture coordinates are used, so both full and packed vertices can be consumed
 layout(location = 0) in vec3 entityPos;
-layout(location = 1) in vec3 entityNormal;
-layout(location = 2) in vec3 entityTangent;
-layout(location = 3) in vec3 entityBitangent;
 layout(location = 4) in vec2 entityTextCoords;
 
 // Instanced attributes
@@ -13,6 +13,10 @@ public class AnimationController {
     }
 
     public void addModel(ModelData modelData) {
+        // Models with sampled animations are driven by the animation time, not by frame stepping
+        if (!modelData.hasAnimations()) {
+            return;
+        }
         List<AnimData> animDataList = new ArrayList<>();
         for (ModelData.Animation animation : modelData.getAnimationsList()) {
             AnimData animData = new AnimData(animation.name(), animation.frameMillis(), animation.frames().size());
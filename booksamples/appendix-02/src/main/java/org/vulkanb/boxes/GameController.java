@@ -7,6 +7,7 @@ import org.vulkanb.eng.scene.*;
 import org.vulkanb.eng.sound.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 public class GameController implements IAppLogic {
 
@@ -26,28 +27,17 @@ public class GameController implements IAppLogic {
 
     @Override
     public void init(Window window, Scene scene, Render render) {
-        List<ModelData> modelDataList = new ArrayList<>();
-
-        ModelData playerModel = ModelLoader.loadModel(GameUtils.PLAYER_MODEl_ID, "resources/models/player/player.gltf",
-                "resources/models/player", true);
-        modelDataList.add(playerModel);
-        animationController.addModel(playerModel);
-
-        ModelData floorModel = ModelLoader.loadModel(GameUtils.FLOOR_MODEl_ID, "resources/models/floor/floor.obj",
-                "resources/models/floor", false);
-        modelDataList.add(floorModel);
-
-        ModelData wallModel = ModelLoader.loadModel(GameUtils.WALL_MODEl_ID, "resources/models/wall/wall.gltf",
-                "resources/models/wall", false);
-        modelDataList.add(wallModel);
-
-        ModelData boxModel = ModelLoader.loadModel(GameUtils.BOX_MODEl_ID, "resources/models/box/box.gltf",
-                "resources/models/box", false);
-        modelDataList.add(boxModel);
-        render.loadModels(modelDataList);
-
-        gameState = new MainMenuGameState(window, scene, gameContext);
+        List<CompletableFuture<ModelData>> modelFutures = ModelLoader.loadModelsAsync(List.of(
+                new ModelLoader.ModelRequest(GameUtils.PLAYER_MODEl_ID, "resources/models/player/player.gltf",
+                        "resources/models/player", ModelLoader.AnimationMode.SAMPLED),
+                new ModelLoader.ModelRequest(GameUtils.FLOOR_MODEl_ID, "resources/models/floor/floor.obj",
+                        "resources/models/floor", ModelLoader.AnimationMode.NONE),
+                new ModelLoader.ModelRequest(GameUtils.WALL_MODEl_ID, "resources/models/wall/wall.gltf",
+                        "resources/models/wall", ModelLoader.AnimationMode.NONE),
+                new ModelLoader.ModelRequest(GameUtils.BOX_MODEl_ID, "resources/models/box/box.gltf",
+                        "resources/models/box", ModelLoader.AnimationMode.NONE)));
 
+        // Sounds can be loaded while models are being imported
         SoundManager soundManager = gameContext.getSoundManager();
         SoundSource soundSource = new SoundSource(false, true);
         soundSource.setGain(GameProperties.getInstance().getSoundGain());
@@ -55,6 +45,14 @@ public class GameController implements IAppLogic {
         soundManager.addSoundBuffer(GameUtils.SOUNDS_SELECT, new SoundBuffer("resources/sounds/confirmation_001.ogg"));
         soundManager.addSoundBuffer(GameUtils.SOUNDS_FOOT_STEP, new SoundBuffer("resources/sounds/footstep04.ogg"));
         soundManager.addSoundBuffer(GameUtils.SOUNDS_BOX_FINISH, new SoundBuffer("resources/sounds/switch_003.ogg"));
+
+        List<ModelData> modelDataList = modelFutures.stream().map(CompletableFuture::join).toList();
+        ModelData playerModel = modelDataList.get(0);
+        animationController.addModel(playerModel);
+        render.loadModels(modelDataList);
+        modelDataList.forEach(m -> scene.setModelBounds(m.getModelId(), m.getBounds()));
+
+        gameState = new MainMenuGameState(window, scene, gameContext);
     }
 
     @Override
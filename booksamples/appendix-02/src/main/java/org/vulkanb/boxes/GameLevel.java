@@ -1,5 +1,6 @@
 package org.vulkanb.boxes;
 
+import org.joml.Quaternionf;
 import org.joml.Vector3f;
 import org.tinylog.Logger;
 import org.vulkanb.eng.scene.*;
@@ -19,6 +20,7 @@ public class GameLevel {
         this.levelData = levelData;
         tiles = new ArrayList<>();
         movableItems = new ArrayList<>();
+        List<Entity> entities = new ArrayList<>();
         try {
             List<String> lines = Files.readAllLines(new File(levelData.file()).toPath(), Charset.defaultCharset());
             tiles = new ArrayList<>();
@@ -44,17 +46,16 @@ public class GameLevel {
                             tileModelId = GameUtils.FLOOR_MODEl_ID;
                             Entity playerEntity = new Entity("player", GameUtils.PLAYER_MODEl_ID,
                                     new Vector3f(col, 0.0f, row));
-                            scene.addEntity(playerEntity);
+                            entities.add(playerEntity);
                             playerEntity.setEntityAnimation(new Entity.EntityAnimation(true, PlayerAnim.IDLE.getValue(), 0));
-                            playerEntity.getRotation().rotateY((float) Math.toRadians(90.0f));
-                            playerEntity.updateModelMatrix();
+                            playerEntity.setRotation(new Quaternionf().rotationY((float) Math.toRadians(90.0f)));
                             movableItems.add(new MovableItem(MovableItem.MovableItemType.PLAYER, playerEntity, col, row));
                         }
                         case '#' -> {
                             tileType = TileType.FLOOR;
                             tileModelId = GameUtils.FLOOR_MODEl_ID;
                             Entity boxEntity = new Entity("box_" + row + "_" + col, GameUtils.BOX_MODEl_ID, new Vector3f(col, 0.0f, row));
-                            scene.addEntity(boxEntity);
+                            entities.add(boxEntity);
                             movableItems.add(new MovableItem(MovableItem.MovableItemType.BOX, boxEntity, col, row));
                         }
                         default -> {
@@ -63,7 +64,7 @@ public class GameLevel {
                         }
                     }
                     Entity entity = new Entity("map_entity_" + row + "_" + col, tileModelId, new Vector3f(col, 0.0f, row));
-                    scene.addEntity(entity);
+                    entities.add(entity);
                     tileTypes.add(tileType);
                 }
                 row++;
@@ -72,6 +73,7 @@ public class GameLevel {
             Logger.error("Error reading map file", excp);
             throw new RuntimeException(excp);
         }
+        scene.addEntities(entities);
     }
 
     public LevelsLoader.LevelData getLevelData() {
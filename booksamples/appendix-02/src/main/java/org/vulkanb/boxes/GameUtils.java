@@ -21,9 +21,7 @@ public class GameUtils {
     }
 
     public static void setPosition(Entity entity, int col, int row) {
-        Vector3f pos = entity.getPosition();
-        pos.x = col;
-        pos.z = row;
-        entity.setPosition(pos.x, pos.y, pos.z);
+        Vector3f pos = entity.getPosition(new Vector3f());
+        entity.setPosition(col, pos.y, row);
     }
 }
@@ -69,7 +69,7 @@ public class MovableItem {
             return;
         }
         float inc = diffMillis * speed;
-        Vector3f entityPos = entity.getPosition();
+        Vector3f entityPos = entity.getPosition(new Vector3f());
         switch (moveDir) {
             case LEFT -> {
                 float posX = entityPos.x - inc;
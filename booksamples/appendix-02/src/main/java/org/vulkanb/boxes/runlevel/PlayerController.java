@@ -1,5 +1,6 @@
 package org.vulkanb.boxes.runlevel;
 
+import org.joml.Quaternionf;
 import org.vulkanb.boxes.*;
 import org.vulkanb.eng.Window;
 import org.vulkanb.eng.scene.Entity;
@@ -9,6 +10,7 @@ import static org.lwjgl.glfw.GLFW.*;
 public class PlayerController {
 
     public static final float BOX_SPEED = 0.001f;
+    private static final long ANIM_FADE_MILLIS = 200;
     private static final float PLAYER_SPEED = 0.002f;
     private MovableItem player;
     private boolean playerMoving;
@@ -31,18 +33,15 @@ public class PlayerController {
         if (window.isKeyPressed(GLFW_KEY_LEFT)) {
             col--;
             keyPressed = true;
-            playerEntity.resetRotation();
-            playerEntity.getRotation().rotateY((float) Math.toRadians(-90.0f));
+            playerEntity.setRotation(new Quaternionf().rotationY((float) Math.toRadians(-90.0f)));
         } else if (window.isKeyPressed(GLFW_KEY_RIGHT)) {
             col++;
             keyPressed = true;
-            playerEntity.resetRotation();
-            playerEntity.getRotation().rotateY((float) Math.toRadians(90.0f));
+            playerEntity.setRotation(new Quaternionf().rotationY((float) Math.toRadians(90.0f)));
         } else if (window.isKeyPressed(GLFW_KEY_UP)) {
             row--;
             keyPressed = true;
-            playerEntity.resetRotation();
-            playerEntity.getRotation().rotateY((float) Math.toRadians(180.0f));
+            playerEntity.setRotation(new Quaternionf().rotationY((float) Math.toRadians(180.0f)));
         } else if (window.isKeyPressed(GLFW_KEY_DOWN)) {
             row++;
             keyPressed = true;
@@ -50,7 +49,7 @@ public class PlayerController {
         }
         if (!keyPressed) {
             if (playerEntity.getEntityAnimation().getAnimationIdx() != PlayerAnim.IDLE.getValue()) {
-                playerEntity.setEntityAnimation(new Entity.EntityAnimation(true, PlayerAnim.IDLE.getValue(), 0));
+                playerEntity.getEntityAnimation().crossFade(PlayerAnim.IDLE.getValue(), ANIM_FADE_MILLIS);
             }
             return;
         }
@@ -62,14 +61,14 @@ public class PlayerController {
         MovableItem box = gameContext.getBox(col, row);
         if (box != null && gameContext.moveBox(box, origCol, origRow, col, row)) {
             if (playerEntity.getEntityAnimation().getAnimationIdx() != PlayerAnim.PUSHING.getValue()) {
-                playerEntity.setEntityAnimation(new Entity.EntityAnimation(true, PlayerAnim.PUSHING.getValue(), 0));
+                playerEntity.getEntityAnimation().crossFade(PlayerAnim.PUSHING.getValue(), ANIM_FADE_MILLIS);
             }
             playerMoving = true;
             player.setDestination(col, row, BOX_SPEED);
             gameContext.getSoundManager().play(GameUtils.DEFAULT_SOUND_SOURCE, GameUtils.SOUNDS_FOOT_STEP);
         } else if (box == null) {
             if (playerEntity.getEntityAnimation().getAnimationIdx() != PlayerAnim.WALKING.getValue()) {
-                playerEntity.setEntityAnimation(new Entity.EntityAnimation(true, PlayerAnim.WALKING.getValue(), 0));
+                playerEntity.getEntityAnimation().crossFade(PlayerAnim.WALKING.getValue(), ANIM_FADE_MILLIS);
             }
             playerMoving = true;
             player.setDestination(col, row, PLAYER_SPEED);
@@ -2,12 +2,15 @@ package org.vulkanb.eng;
 
 import imgui.*;
 import org.joml.Vector2f;
-import org.vulkanb.eng.graph.Render;
+import org.tinylog.Logger;
+import org.vulkanb.eng.ecs.SystemScheduler;
+import org.vulkanb.eng.graph.*;
 import org.vulkanb.eng.graph.gui.GuiRenderActivity;
 import org.vulkanb.eng.scene.Scene;
 
 public class Engine {
 
+    private static final long STATS_INTERVAL_MILLIS = 1000;
     private final IAppLogic appLogic;
     private final Render render;
     private final Scene scene;
@@ -25,6 +28,7 @@ public class Engine {
     private void cleanup() {
         appLogic.cleanup();
         render.cleanup();
+        scene.cleanup();
         window.cleanup();
     }
 
@@ -39,6 +43,13 @@ public class Engine {
         return imGuiIO.getWantCaptureMouse() || imGuiIO.getWantCaptureKeyboard();
     }
 
+    private void logStats() {
+        BufferUploader.Stats uploadStats = render.getUploadStats();
+        Logger.debug("Render stats: {} triangles before culling, {} instances written, {} materials, {} bytes " +
+                        "uploaded in {} submission(s)", render.getNumTriangles(), render.getNumInstancesWritten(),
+                render.getNumMaterials(), uploadStats.bytes(), uploadStats.numSubmissions());
+    }
+
     public void run() {
         EngineProperties engineProperties = EngineProperties.getInstance();
         long initialTime = System.currentTimeMillis();
@@ -46,6 +57,7 @@ public class Engine {
         double deltaUpdate = 0;
 
         long updateTime = initialTime;
+        long statsTime = initialTime;
         while (running && !window.shouldClose()) {
             scene.getCamera().setHasMoved(false);
             window.pollEvents();
@@ -59,11 +71,20 @@ public class Engine {
             if (deltaUpdate >= 1) {
                 long diffTimeMilis = now - updateTime;
                 appLogic.update(window, scene, diffTimeMilis);
+                SystemScheduler systemScheduler = appLogic.getSystemScheduler();
+                if (systemScheduler != null) {
+                    systemScheduler.run(diffTimeMilis);
+                }
                 updateTime = now;
                 deltaUpdate--;
             }
 
+            scene.updateTransforms();
             render.render(window, scene);
+            if (now - statsTime >= STATS_INTERVAL_MILLIS) {
+                logStats();
+                statsTime = now;
+            }
 
             initialTime = now;
         }
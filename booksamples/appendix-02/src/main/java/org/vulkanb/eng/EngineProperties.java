@@ -7,15 +7,22 @@ import java.util.Properties;
 
 public class EngineProperties {
     private static final float DEFAULT_FOV = 60.0f;
+    private static final int DEFAULT_FRAME_RING_SIZE = 1024 * 1024;
     private static final int DEFAULT_JOINT_MATRICES_BUF = 2000000;
+    private static final int DEFAULT_LOD_LEVELS = 1;
+    private static final float DEFAULT_LOD_SCREEN_COVERAGE = 0.25f;
     private static final int DEFAULT_MAX_ANIM_WEIGHTS_BUF = 100000;
     private static final int DEFAULT_MAX_INDICES_BUF = 5000000;
     private static final int DEFAULT_MAX_JOINTS_MATRICES_LISTS = 100;
+    private static final int DEFAULT_MAX_KEY_FRAMES_BUF = 1000000;
     private static final int DEFAULT_MAX_MATERIALS = 500;
     private static final int DEFAULT_MAX_VERTICES_BUF = 20000000;
+    private static final String DEFAULT_MODEL_CACHE_DIR = "cache";
     private static final int DEFAULT_REQUESTED_IMAGES = 3;
     private static final float DEFAULT_SHADOW_BIAS = 0.00005f;
     private static final int DEFAULT_SHADOW_MAP_SIZE = 2048;
+    private static final int DEFAULT_TEXTURE_STAGING_BUF = 64 * 1024 * 1024;
+    private static final int DEFAULT_UPLOAD_STAGING_BUF = 16 * 1024 * 1024;
     private static final int DEFAULT_UPS = 30;
     private static final float DEFAULT_Z_FAR = 100.f;
     private static final float DEFAULT_Z_NEAR = 1.0f;
@@ -24,13 +31,22 @@ public class EngineProperties {
     private String defaultTexturePath;
     private boolean enableCheckPoints = false;
     private float fov;
+    private int frameRingSize;
+    private int lodLevels;
+    private float lodScreenCoverage;
     private int maxAnimWeightsBuffer;
     private int maxIndicesBuffer;
     private int maxJointMatricesBuffer;
     private int maxJointsMatricesLists;
+    private int maxKeyFramesBuffer;
     private int maxMaterials;
     private int maxTextures;
     private int maxVerticesBuffer;
+    private boolean meshOptimization;
+    private boolean modelCache;
+    private String modelCacheDir;
+    private boolean modelCacheRebuild;
+    private boolean packedVertices;
     private String physDeviceName;
     private int requestedImages;
     private boolean shaderRecompilation;
@@ -38,6 +54,8 @@ public class EngineProperties {
     private boolean shadowDebug;
     private int shadowMapSize;
     private boolean shadowPcf;
+    private int textureStagingBuffer;
+    private int uploadStagingBuffer;
     private int ups;
     private boolean vSync;
     private boolean validate;
@@ -71,6 +89,17 @@ public class EngineProperties {
             maxAnimWeightsBuffer = Integer.parseInt(props.getOrDefault("maxAnimWeightsBuffer", DEFAULT_MAX_ANIM_WEIGHTS_BUF).toString());
             maxJointMatricesBuffer = Integer.parseInt(props.getOrDefault("maxJointMatricesBuffer", DEFAULT_JOINT_MATRICES_BUF).toString());
             maxJointsMatricesLists = Integer.parseInt(props.getOrDefault("maxJointsMatricesLists", DEFAULT_MAX_JOINTS_MATRICES_LISTS).toString());
+            maxKeyFramesBuffer = Integer.parseInt(props.getOrDefault("maxKeyFramesBuffer", DEFAULT_MAX_KEY_FRAMES_BUF).toString());
+            lodLevels = Math.max(1, Integer.parseInt(props.getOrDefault("lodLevels", DEFAULT_LOD_LEVELS).toString()));
+            lodScreenCoverage = Float.parseFloat(props.getOrDefault("lodScreenCoverage", DEFAULT_LOD_SCREEN_COVERAGE).toString());
+            meshOptimization = Boolean.parseBoolean(props.getOrDefault("meshOptimization", false).toString());
+            modelCache = Boolean.parseBoolean(props.getOrDefault("modelCache", false).toString());
+            modelCacheDir = props.getOrDefault("modelCacheDir", DEFAULT_MODEL_CACHE_DIR).toString();
+            modelCacheRebuild = Boolean.parseBoolean(props.getOrDefault("modelCacheRebuild", false).toString());
+            packedVertices = Boolean.parseBoolean(props.getOrDefault("packedVertices", false).toString());
+            textureStagingBuffer = Integer.parseInt(props.getOrDefault("textureStagingBuffer", DEFAULT_TEXTURE_STAGING_BUF).toString());
+            frameRingSize = Integer.parseInt(props.getOrDefault("frameRingSize", DEFAULT_FRAME_RING_SIZE).toString());
+            uploadStagingBuffer = Integer.parseInt(props.getOrDefault("uploadStagingBuffer", DEFAULT_UPLOAD_STAGING_BUF).toString());
         } catch (IOException excp) {
             Logger.error("Could not read [{}] properties file", FILENAME, excp);
         }
@@ -91,6 +120,18 @@ public class EngineProperties {
         return fov;
     }
 
+    public int getFrameRingSize() {
+        return frameRingSize;
+    }
+
+    public int getLodLevels() {
+        return lodLevels;
+    }
+
+    public float getLodScreenCoverage() {
+        return lodScreenCoverage;
+    }
+
     public int getMaxAnimWeightsBuffer() {
         return maxAnimWeightsBuffer;
     }
@@ -107,6 +148,10 @@ public class EngineProperties {
         return maxJointsMatricesLists;
     }
 
+    public int getMaxKeyFramesBuffer() {
+        return maxKeyFramesBuffer;
+    }
+
     public int getMaxMaterials() {
         return maxMaterials;
     }
@@ -119,6 +164,10 @@ public class EngineProperties {
         return maxVerticesBuffer;
     }
 
+    public String getModelCacheDir() {
+        return modelCacheDir;
+    }
+
     public String getPhysDeviceName() {
         return physDeviceName;
     }
@@ -135,6 +184,14 @@ public class EngineProperties {
         return shadowMapSize;
     }
 
+    public int getTextureStagingBuffer() {
+        return textureStagingBuffer;
+    }
+
+    public int getUploadStagingBuffer() {
+        return uploadStagingBuffer;
+    }
+
     public int getUps() {
         return ups;
     }
@@ -151,6 +208,22 @@ public class EngineProperties {
         return enableCheckPoints;
     }
 
+    public boolean isMeshOptimization() {
+        return meshOptimization;
+    }
+
+    public boolean isModelCache() {
+        return modelCache;
+    }
+
+    public boolean isModelCacheRebuild() {
+        return modelCacheRebuild;
+    }
+
+    public boolean isPackedVertices() {
+        return packedVertices;
+    }
+
     public boolean isShaderRecompilation() {
         return shaderRecompilation;
     }
@@ -1,6 +1,6 @@
 package org.vulkanb.eng;
 
-import java.util.List;
+import java.lang.management.*;
 
 public class EngineUtils {
 
@@ -8,16 +8,12 @@ public class EngineUtils {
         // Utility class
     }
 
-    public static float[] listFloatToArray(List<Float> list) {
-        int size = list != null ? list.size() : 0;
-        float[] floatArr = new float[size];
-        for (int i = 0; i < size; i++) {
-            floatArr[i] = list.get(i);
+    public static long getThreadAllocatedBytes() {
+        // Only available on HotSpot based VMs, used to report memory consumption of loading tasks
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean sunThreadMXBean) {
+            return sunThreadMXBean.getCurrentThreadAllocatedBytes();
         }
-        return floatArr;
-    }
-
-    public static int[] listIntToArray(List<Integer> list) {
-        return list.stream().mapToInt((Integer v) -> v).toArray();
+        return 0;
     }
 }
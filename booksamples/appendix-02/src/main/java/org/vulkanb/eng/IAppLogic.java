@@ -1,5 +1,6 @@
 package org.vulkanb.eng;
 
+import org.vulkanb.eng.ecs.SystemScheduler;
 import org.vulkanb.eng.graph.Render;
 import org.vulkanb.eng.scene.Scene;
 
@@ -7,6 +8,13 @@ public interface IAppLogic {
 
     void cleanup();
 
+    /**
+     * Returns the scheduler whose systems are run after each update, or null if the game does not use them.
+     */
+    default SystemScheduler getSystemScheduler() {
+        return null;
+    }
+
     void init(Window window, Scene scene, Render render);
 
     void input(Window window, Scene scene, long diffTimeMillis, boolean inputConsumed);
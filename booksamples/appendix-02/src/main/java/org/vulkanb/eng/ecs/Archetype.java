@@ -0,0 +1,116 @@
+package org.vulkanb.eng.ecs;
+
+import java.util.*;
+
+/**
+ * Removing an entity moves the last one into its row, so only the last chunk may be partially filled.
+ */
+public class Archetype {
+
+    private final List<Chunk> chunks;
+    private final int[] columnsById;
+    private final ComponentType[] componentTypes;
+    private final BitSet mask;
+    private int size;
+
+    public Archetype(BitSet mask, ComponentType[] componentTypes, int numRegisteredTypes) {
+        this.mask = mask;
+        this.componentTypes = componentTypes;
+        columnsById = new int[numRegisteredTypes];
+        Arrays.fill(columnsById, -1);
+        for (int i = 0; i < componentTypes.length; i++) {
+            columnsById[componentTypes[i].id()] = i;
+        }
+        chunks = new ArrayList<>();
+    }
+
+    int add(int entity) {
+        Chunk chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.isFull()) {
+            chunk = new Chunk(this);
+            chunks.add(chunk);
+        }
+        chunk.add(entity);
+        return size++;
+    }
+
+    void copyShared(int row, Archetype dst, int dstRow) {
+        Chunk srcChunk = getChunk(row);
+        Chunk dstChunk = dst.getChunk(dstRow);
+        int srcRow = row % Chunk.CAPACITY;
+        int dstChunkRow = dstRow % Chunk.CAPACITY;
+        for (int i = 0; i < componentTypes.length; i++) {
+            ComponentType componentType = componentTypes[i];
+            int dstColumn = dst.getColumn(componentType);
+            if (dstColumn >= 0) {
+                int width = componentType.width();
+                System.arraycopy(srcChunk.getColumn(i), srcRow * width, dstChunk.getColumn(dstColumn),
+                        dstChunkRow * width, width);
+            }
+        }
+    }
+
+    Chunk getChunk(int row) {
+        return chunks.get(row / Chunk.CAPACITY);
+    }
+
+    public List<Chunk> getChunks() {
+        return chunks;
+    }
+
+    public int getColumn(ComponentType componentType) {
+        int id = componentType.id();
+        return id < columnsById.length ? columnsById[id] : -1;
+    }
+
+    public ComponentType[] getComponentTypes() {
+        return componentTypes;
+    }
+
+    public BitSet getMask() {
+        return mask;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean has(ComponentType componentType) {
+        return getColumn(componentType) >= 0;
+    }
+
+    /**
+     * Returns false if the removed entity was the last one, so none has been moved.
+     */
+    boolean remove(int row) {
+        int last = --size;
+        Chunk lastChunk = chunks.get(chunks.size() - 1);
+        boolean moved = row != last;
+        if (moved) {
+            Chunk chunk = getChunk(row);
+            int chunkRow = row % Chunk.CAPACITY;
+            int lastRow = last % Chunk.CAPACITY;
+            for (int i = 0; i < componentTypes.length; i++) {
+                int width = componentTypes[i].width();
+                System.arraycopy(lastChunk.getColumn(i), lastRow * width, chunk.getColumn(i), chunkRow * width, width);
+            }
+            chunk.setEntity(chunkRow, lastChunk.getEntity(lastRow));
+        }
+        lastChunk.removeLast();
+        // Rows are reused zeroed
+        int lastRow = last % Chunk.CAPACITY;
+        for (int i = 0; i < componentTypes.length; i++) {
+            int width = componentTypes[i].width();
+            Object column = lastChunk.getColumn(i);
+            if (column instanceof float[] floats) {
+                Arrays.fill(floats, lastRow * width, (lastRow + 1) * width, 0.0f);
+            } else {
+                Arrays.fill((int[]) column, lastRow * width, (lastRow + 1) * width, 0);
+            }
+        }
+        if (lastChunk.getSize() == 0) {
+            chunks.remove(chunks.size() - 1);
+        }
+        return moved;
+    }
+}
\ No newline at end of file
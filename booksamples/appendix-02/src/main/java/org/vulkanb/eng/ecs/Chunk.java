@@ -0,0 +1,64 @@
+package org.vulkanb.eng.ecs;
+
+/**
+ * Each component is stored in its own array, the values of the entity at a row start at row * width.
+ */
+public class Chunk {
+
+    public static final int CAPACITY = 1024;
+
+    private final Archetype archetype;
+    private final Object[] columns;
+    private final int[] entities;
+    private int size;
+
+    public Chunk(Archetype archetype) {
+        this.archetype = archetype;
+        ComponentType[] componentTypes = archetype.getComponentTypes();
+        columns = new Object[componentTypes.length];
+        for (int i = 0; i < componentTypes.length; i++) {
+            ComponentType componentType = componentTypes[i];
+            int length = CAPACITY * componentType.width();
+            columns[i] = componentType.intType() ? new int[length] : new float[length];
+        }
+        entities = new int[CAPACITY];
+    }
+
+    int add(int entity) {
+        int row = size++;
+        entities[row] = entity;
+        return row;
+    }
+
+    Object getColumn(int column) {
+        return columns[column];
+    }
+
+    public int getEntity(int row) {
+        return entities[row];
+    }
+
+    public float[] getFloats(ComponentType componentType) {
+        return (float[]) columns[archetype.getColumn(componentType)];
+    }
+
+    public int[] getInts(ComponentType componentType) {
+        return (int[]) columns[archetype.getColumn(componentType)];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == CAPACITY;
+    }
+
+    int removeLast() {
+        return entities[--size];
+    }
+
+    void setEntity(int row, int entity) {
+        entities[row] = entity;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,4 @@
+package org.vulkanb.eng.ecs;
+
+public record ComponentType(int id, String name, boolean intType, int width) {
+}
\ No newline at end of file
@@ -0,0 +1,241 @@
+package org.vulkanb.eng.ecs;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Structural changes (creating or destroying entities, adding or removing components) are not allowed while the
+ * scheduler is running systems, they must be deferred.
+ */
+public class EcsWorld {
+
+    private static final int GENERATION_BITS = 10;
+    private static final int INDEX_BITS = Integer.SIZE - 1 - GENERATION_BITS;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+
+    private final Map<BitSet, Archetype> archetypesMap;
+    private final List<ComponentType> componentTypes;
+    private final Queue<Consumer<EcsWorld>> deferredChanges;
+    private final Map<BitSet, Query> queriesMap;
+    private Archetype[] entityArchetypes;
+    private int[] entityRows;
+    private int[] freeIndices;
+    private int[] generations;
+    private boolean locked;
+    private int numEntities;
+    private int numFreeIndices;
+    private int numIndices;
+
+    public EcsWorld() {
+        archetypesMap = new HashMap<>();
+        componentTypes = new ArrayList<>();
+        deferredChanges = new ConcurrentLinkedQueue<>();
+        queriesMap = new HashMap<>();
+        entityArchetypes = new Archetype[64];
+        entityRows = new int[64];
+        freeIndices = new int[64];
+        generations = new int[64];
+    }
+
+    public void addComponent(int entity, ComponentType componentType) {
+        int index = checkEntity(entity);
+        Archetype archetype = entityArchetypes[index];
+        if (archetype.has(componentType)) {
+            return;
+        }
+        BitSet mask = (BitSet) archetype.getMask().clone();
+        mask.set(componentType.id());
+        moveEntity(index, getArchetype(mask));
+    }
+
+    public void applyDeferred() {
+        checkUnlocked();
+        Consumer<EcsWorld> change;
+        while ((change = deferredChanges.poll()) != null) {
+            change.accept(this);
+        }
+    }
+
+    private int checkEntity(int entity) {
+        checkUnlocked();
+        if (!isAlive(entity)) {
+            throw new RuntimeException("Entity [" + entity + "] does not exist");
+        }
+        return entity & INDEX_MASK;
+    }
+
+    private void checkUnlocked() {
+        if (locked) {
+            throw new RuntimeException("Structural changes must be deferred while systems are running");
+        }
+    }
+
+    public int createEntity(ComponentType... types) {
+        checkUnlocked();
+        BitSet mask = new BitSet();
+        for (ComponentType componentType : types) {
+            mask.set(componentType.id());
+        }
+        int index;
+        if (numFreeIndices > 0) {
+            index = freeIndices[--numFreeIndices];
+        } else {
+            if (numIndices > INDEX_MASK) {
+                throw new RuntimeException("Maximum number of entities reached: " + (INDEX_MASK + 1));
+            }
+            index = numIndices++;
+            if (index == generations.length) {
+                int newLength = generations.length * 2;
+                entityArchetypes = Arrays.copyOf(entityArchetypes, newLength);
+                entityRows = Arrays.copyOf(entityRows, newLength);
+                generations = Arrays.copyOf(generations, newLength);
+            }
+        }
+        int entity = (generations[index] << INDEX_BITS) | index;
+        Archetype archetype = getArchetype(mask);
+        entityArchetypes[index] = archetype;
+        entityRows[index] = archetype.add(entity);
+        numEntities++;
+        return entity;
+    }
+
+    /**
+     * Can be called from any system, the change is applied once the systems have been run.
+     */
+    public void defer(Consumer<EcsWorld> change) {
+        deferredChanges.add(change);
+    }
+
+    public void destroyEntity(int entity) {
+        int index = checkEntity(entity);
+        removeFromArchetype(index);
+        entityArchetypes[index] = null;
+        generations[index] = (generations[index] + 1) & ((1 << GENERATION_BITS) - 1);
+        if (numFreeIndices == freeIndices.length) {
+            freeIndices = Arrays.copyOf(freeIndices, freeIndices.length * 2);
+        }
+        freeIndices[numFreeIndices++] = index;
+        numEntities--;
+    }
+
+    private Archetype getArchetype(BitSet mask) {
+        Archetype archetype = archetypesMap.get(mask);
+        if (archetype == null) {
+            ComponentType[] types = mask.stream().mapToObj(componentTypes::get).toArray(ComponentType[]::new);
+            archetype = new Archetype(mask, types, componentTypes.size());
+            archetypesMap.put(mask, archetype);
+            for (Query query : queriesMap.values()) {
+                query.addIfMatches(archetype);
+            }
+        }
+        return archetype;
+    }
+
+    public float getFloat(int entity, ComponentType componentType, int element) {
+        int index = entity & INDEX_MASK;
+        Archetype archetype = entityArchetypes[index];
+        int row = entityRows[index];
+        return archetype.getChunk(row).getFloats(componentType)[row % Chunk.CAPACITY * componentType.width() + element];
+    }
+
+    public int getInt(int entity, ComponentType componentType, int element) {
+        int index = entity & INDEX_MASK;
+        Archetype archetype = entityArchetypes[index];
+        int row = entityRows[index];
+        return archetype.getChunk(row).getInts(componentType)[row % Chunk.CAPACITY * componentType.width() + element];
+    }
+
+    public int getNumEntities() {
+        return numEntities;
+    }
+
+    public boolean hasComponent(int entity, ComponentType componentType) {
+        return isAlive(entity) && entityArchetypes[entity & INDEX_MASK].has(componentType);
+    }
+
+    public boolean isAlive(int entity) {
+        int index = entity & INDEX_MASK;
+        return index < numIndices && entityArchetypes[index] != null && generations[index] == entity >>> INDEX_BITS;
+    }
+
+    private void moveEntity(int index, Archetype dst) {
+        Archetype src = entityArchetypes[index];
+        int row = entityRows[index];
+        int entity = (generations[index] << INDEX_BITS) | index;
+        int dstRow = dst.add(entity);
+        src.copyShared(row, dst, dstRow);
+        removeFromArchetype(index);
+        entityArchetypes[index] = dst;
+        entityRows[index] = dstRow;
+    }
+
+    public Query query(ComponentType... types) {
+        BitSet mask = new BitSet();
+        for (ComponentType componentType : types) {
+            mask.set(componentType.id());
+        }
+        Query query = queriesMap.get(mask);
+        if (query == null) {
+            query = new Query(mask);
+            for (Archetype archetype : archetypesMap.values()) {
+                query.addIfMatches(archetype);
+            }
+            queriesMap.put(mask, query);
+        }
+        return query;
+    }
+
+    public ComponentType registerFloatComponent(String name, int width) {
+        return registerComponent(name, false, width);
+    }
+
+    private ComponentType registerComponent(String name, boolean intType, int width) {
+        checkUnlocked();
+        ComponentType componentType = new ComponentType(componentTypes.size(), name, intType, width);
+        componentTypes.add(componentType);
+        return componentType;
+    }
+
+    public ComponentType registerIntComponent(String name, int width) {
+        return registerComponent(name, true, width);
+    }
+
+    private void removeFromArchetype(int index) {
+        Archetype archetype = entityArchetypes[index];
+        int row = entityRows[index];
+        if (archetype.remove(row)) {
+            int movedEntity = archetype.getChunk(row).getEntity(row % Chunk.CAPACITY);
+            entityRows[movedEntity & INDEX_MASK] = row;
+        }
+    }
+
+    public void removeComponent(int entity, ComponentType componentType) {
+        int index = checkEntity(entity);
+        Archetype archetype = entityArchetypes[index];
+        if (!archetype.has(componentType)) {
+            return;
+        }
+        BitSet mask = (BitSet) archetype.getMask().clone();
+        mask.clear(componentType.id());
+        moveEntity(index, getArchetype(mask));
+    }
+
+    public void setFloat(int entity, ComponentType componentType, int element, float value) {
+        int index = entity & INDEX_MASK;
+        Archetype archetype = entityArchetypes[index];
+        int row = entityRows[index];
+        archetype.getChunk(row).getFloats(componentType)[row % Chunk.CAPACITY * componentType.width() + element] = value;
+    }
+
+    public void setInt(int entity, ComponentType componentType, int element, int value) {
+        int index = entity & INDEX_MASK;
+        Archetype archetype = entityArchetypes[index];
+        int row = entityRows[index];
+        archetype.getChunk(row).getInts(componentType)[row % Chunk.CAPACITY * componentType.width() + element] = value;
+    }
+
+    void setLocked(boolean locked) {
+        this.locked = locked;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,19 @@
+package org.vulkanb.eng.ecs;
+
+import java.util.Set;
+
+public interface ISystem {
+
+    Set<ComponentType> getReads();
+
+    Set<ComponentType> getWrites();
+
+    /**
+     * Systems that use state outside the world, such as the scene, must not run in parallel with any other system.
+     */
+    default boolean isExclusive() {
+        return false;
+    }
+
+    void update(EcsWorld world, long diffTimeMillis);
+}
\ No newline at end of file
@@ -0,0 +1,54 @@
+package org.vulkanb.eng.ecs;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+public class Query {
+
+    private final List<Archetype> archetypes;
+    private final BitSet mask;
+
+    public Query(BitSet mask) {
+        this.mask = mask;
+        archetypes = new ArrayList<>();
+    }
+
+    void addIfMatches(Archetype archetype) {
+        BitSet missing = (BitSet) mask.clone();
+        missing.andNot(archetype.getMask());
+        if (missing.isEmpty()) {
+            archetypes.add(archetype);
+        }
+    }
+
+    public int count() {
+        int count = 0;
+        for (Archetype archetype : archetypes) {
+            count += archetype.getSize();
+        }
+        return count;
+    }
+
+    public void forEachChunk(Consumer<Chunk> consumer) {
+        for (Archetype archetype : archetypes) {
+            archetype.getChunks().forEach(consumer);
+        }
+    }
+
+    public List<Archetype> getArchetypes() {
+        return archetypes;
+    }
+
+    public BitSet getMask() {
+        return mask;
+    }
+
+    /**
+     * Uses the common fork/join pool, so it can be called from systems run by the scheduler.
+     */
+    public void parallelForEachChunk(Consumer<Chunk> consumer) {
+        List<Chunk> chunks = new ArrayList<>();
+        forEachChunk(chunks::add);
+        chunks.parallelStream().forEach(consumer);
+    }
+}
\ No newline at end of file
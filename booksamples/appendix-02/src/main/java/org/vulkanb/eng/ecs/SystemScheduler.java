@@ -0,0 +1,89 @@
+package org.vulkanb.eng.ecs;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Systems run in parallel, in stages, unless one of them writes a component type the other one reads or writes.
+ */
+public class SystemScheduler {
+
+    private final List<List<ISystem>> stages;
+    private final List<ISystem> systems;
+    private final EcsWorld world;
+
+    public SystemScheduler(EcsWorld world) {
+        this.world = world;
+        stages = new ArrayList<>();
+        systems = new ArrayList<>();
+    }
+
+    private static boolean conflicts(ISystem first, ISystem second) {
+        if (first.isExclusive() || second.isExclusive()) {
+            return true;
+        }
+        Set<ComponentType> firstWrites = first.getWrites();
+        Set<ComponentType> secondWrites = second.getWrites();
+        return !Collections.disjoint(firstWrites, second.getReads()) ||
+                !Collections.disjoint(firstWrites, secondWrites) ||
+                !Collections.disjoint(secondWrites, first.getReads());
+    }
+
+    public void addSystem(ISystem system) {
+        int stage = 0;
+        for (int i = stages.size() - 1; i >= 0 && stage == 0; i--) {
+            for (ISystem other : stages.get(i)) {
+                if (conflicts(system, other)) {
+                    stage = i + 1;
+                    break;
+                }
+            }
+        }
+        if (stage == stages.size()) {
+            stages.add(new ArrayList<>());
+        }
+        stages.get(stage).add(system);
+        systems.add(system);
+    }
+
+    public int getNumStages() {
+        return stages.size();
+    }
+
+    public List<ISystem> getSystems() {
+        return systems;
+    }
+
+    public void run(long diffTimeMillis) {
+        world.setLocked(true);
+        try {
+            for (List<ISystem> stage : stages) {
+                if (stage.size() == 1) {
+                    stage.get(0).update(world, diffTimeMillis);
+                } else {
+                    runParallel(stage, diffTimeMillis);
+                }
+            }
+        } finally {
+            world.setLocked(false);
+        }
+        world.applyDeferred();
+    }
+
+    private void runParallel(List<ISystem> stage, long diffTimeMillis) {
+        List<Callable<Void>> tasks = new ArrayList<>(stage.size());
+        for (ISystem system : stage) {
+            tasks.add(() -> {
+                system.update(world, diffTimeMillis);
+                return null;
+            });
+        }
+        for (Future<Void> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new RuntimeException("Error running system", excp);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+package org.vulkanb.eng.graph;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkBufferCopy;
+import org.tinylog.Logger;
+import org.vulkanb.eng.graph.vk.*;
+
+import static org.lwjgl.vulkan.VK11.*;
+
+/**
+ * Device local buffer whose space is sub-allocated using a free list, so data can be loaded and released in any order.
+ * When it runs out of space its capacity grows geometrically, the contents are moved to the bigger buffer by the GPU.
+ */
+public class BufferHeap {
+
+    private final int alignment;
+    private final RangeAllocator allocator;
+    private final Device device;
+    private final String name;
+    private final int usage;
+    private VulkanBuffer buffer;
+    private int usedSize;
+
+    public BufferHeap(Device device, String name, int initialSize, int usage, int alignment) {
+        this.device = device;
+        this.name = name;
+        this.alignment = alignment;
+        this.usage = usage | VK_BUFFER_USAGE_TRANSFER_SRC_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT;
+        allocator = new RangeAllocator();
+        allocator.grow(align(Math.max(initialSize, alignment)));
+        buffer = new VulkanBuffer(device, allocator.getCapacity(), this.usage, VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, 0);
+        usedSize = 0;
+    }
+
+    private int align(int size) {
+        return (size + alignment - 1) / alignment * alignment;
+    }
+
+    /**
+     * Reserves a range of the heap. If there is not enough space the capacity is increased, the buffer will be
+     * replaced in the next call to {@link #recordResize}.
+     */
+    public Allocation allocate(int size) {
+        int allocSize = align(Math.max(size, 1));
+        int offset = allocator.allocate(allocSize);
+        if (offset < 0) {
+            allocator.grow(allocator.getCapacity() + allocSize);
+            offset = allocator.allocate(allocSize);
+        }
+        usedSize += allocSize;
+        return new Allocation(this, offset, allocSize);
+    }
+
+    public void cleanup() {
+        buffer.cleanup();
+    }
+
+    public void free(Allocation allocation) {
+        allocator.free(allocation.offset(), allocation.size());
+        usedSize -= allocation.size();
+    }
+
+    public VulkanBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getUsedSize() {
+        return usedSize;
+    }
+
+    public boolean needsResize() {
+        return allocator.getCapacity() > buffer.getRequestedSize();
+    }
+
+    /**
+     * Creates a buffer for the current capacity and records the copy of the previous contents. The previous buffer is
+     * returned, it can be destroyed once the commands have been executed.
+     */
+    public VulkanBuffer recordResize(CommandBuffer cmd) {
+        int capacity = allocator.getCapacity();
+        Logger.debug("Growing [{}] heap from {} to {} bytes, {} bytes used", name, buffer.getRequestedSize(), capacity,
+                usedSize);
+        VulkanBuffer oldBuffer = buffer;
+        buffer = new VulkanBuffer(device, capacity, usage, VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, 0);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkBufferCopy.Buffer copyRegion = VkBufferCopy.calloc(1, stack)
+                    .srcOffset(0).dstOffset(0).size(oldBuffer.getRequestedSize());
+            vkCmdCopyBuffer(cmd.getVkCommandBuffer(), oldBuffer.getBuffer(), buffer.getBuffer(), copyRegion);
+        }
+        return oldBuffer;
+    }
+
+    public record Allocation(BufferHeap heap, int offset, int size) {
+        public void free() {
+            heap.free(this);
+        }
+    }
+}
\ No newline at end of file
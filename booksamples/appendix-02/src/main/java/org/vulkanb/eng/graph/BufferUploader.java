@@ -0,0 +1,265 @@
+package org.vulkanb.eng.graph;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+import org.tinylog.Logger;
+import org.vulkanb.eng.graph.vk.Queue;
+import org.vulkanb.eng.graph.vk.*;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.lwjgl.vulkan.VK11.*;
+
+/**
+ * Copies data to device local buffers through a fixed size staging ring. Uploads bigger than the ring are split in
+ * chunks, and the copies are submitted once half of the ring has been written, so the CPU keeps filling the other half
+ * while the GPU transfers the previous one.
+ * <p>
+ * Copies are executed in the transfer queue without blocking the caller. When it belongs to a different family than
+ * the graphics queue, the written ranges are released by the transfer queue and acquired by the graphics queue, which
+ * waits for the copies using a semaphore, so the commands submitted afterwards to the graphics queue see the data.
+ */
+public class BufferUploader {
+
+    private static final int READ_ACCESS_MASK = VK_ACCESS_VERTEX_ATTRIBUTE_READ_BIT | VK_ACCESS_INDEX_READ_BIT |
+            VK_ACCESS_SHADER_READ_BIT;
+
+    private final Deque<CommandBuffer> acquireCmdPool;
+    private final Device device;
+    private final Deque<Fence> fencePool;
+    private final CommandPool graphicsCommandPool;
+    private final Queue graphicsQueue;
+    private final Deque<Submission> inFlight;
+    private final long maxChunkSize;
+    private final boolean ownershipTransfer;
+    private final List<StagingRing.Allocation> pendingAllocations;
+    private final List<BufferRange> pendingRanges;
+    private final Deque<Semaphore> semaphorePool;
+    private final StagingRing stagingRing;
+    private final Deque<CommandBuffer> transferCmdPool;
+    private final CommandPool transferCommandPool;
+    private final Queue transferQueue;
+    private CommandBuffer cmd;
+    private long pendingBytes;
+    private long sessionStart;
+    private Stats stats;
+
+    public BufferUploader(CommandPool transferCommandPool, Queue transferQueue, CommandPool graphicsCommandPool,
+                          Queue graphicsQueue, long stagingSize) {
+        this.transferCommandPool = transferCommandPool;
+        this.transferQueue = transferQueue;
+        this.graphicsCommandPool = graphicsCommandPool;
+        this.graphicsQueue = graphicsQueue;
+        device = transferCommandPool.getDevice();
+        ownershipTransfer = transferQueue.getQueueFamilyIndex() != graphicsQueue.getQueueFamilyIndex();
+        stagingRing = new StagingRing(device, stagingSize);
+        maxChunkSize = Math.max(1, stagingSize / 2);
+        inFlight = new ArrayDeque<>();
+        acquireCmdPool = new ArrayDeque<>();
+        fencePool = new ArrayDeque<>();
+        semaphorePool = new ArrayDeque<>();
+        transferCmdPool = new ArrayDeque<>();
+        pendingAllocations = new ArrayList<>();
+        pendingRanges = new ArrayList<>();
+        pendingBytes = 0;
+        sessionStart = -1;
+        stats = new Stats(0, 0, 0);
+    }
+
+    private void addPendingRange(VulkanBuffer buffer, long offset, long size) {
+        int lastIdx = pendingRanges.size() - 1;
+        BufferRange last = lastIdx >= 0 ? pendingRanges.get(lastIdx) : null;
+        if (last != null && last.buffer() == buffer && last.offset() + last.size() == offset) {
+            pendingRanges.set(lastIdx, new BufferRange(buffer, last.offset(), last.size() + size));
+        } else {
+            pendingRanges.add(new BufferRange(buffer, offset, size));
+        }
+    }
+
+    public void cleanup() {
+        waitIdle();
+        acquireCmdPool.forEach(CommandBuffer::cleanup);
+        fencePool.forEach(Fence::cleanup);
+        semaphorePool.forEach(Semaphore::cleanup);
+        transferCmdPool.forEach(CommandBuffer::cleanup);
+        stagingRing.cleanup();
+    }
+
+    /**
+     * Submits the pending copies without waiting for them to complete.
+     */
+    public void flush() {
+        if (cmd == null) {
+            return;
+        }
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            int numRanges = pendingRanges.size();
+            VkBufferMemoryBarrier.Buffer barriers = VkBufferMemoryBarrier.calloc(numRanges, stack);
+            for (int i = 0; i < numRanges; i++) {
+                BufferRange range = pendingRanges.get(i);
+                barriers.get(i)
+                        .sType$Default()
+                        .buffer(range.buffer().getBuffer())
+                        .offset(range.offset())
+                        .size(range.size());
+            }
+
+            Fence fence = fencePool.isEmpty() ? new Fence(device, false) : fencePool.removeFirst();
+            CommandBuffer acquireCmd = null;
+            Semaphore semaphore = null;
+            if (ownershipTransfer) {
+                int transferFamily = transferQueue.getQueueFamilyIndex();
+                int graphicsFamily = graphicsQueue.getQueueFamilyIndex();
+                barriers.forEach(b -> b.srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT).dstAccessMask(0)
+                        .srcQueueFamilyIndex(transferFamily).dstQueueFamilyIndex(graphicsFamily));
+                vkCmdPipelineBarrier(cmd.getVkCommandBuffer(), VK_PIPELINE_STAGE_TRANSFER_BIT,
+                        VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT, 0, null, barriers, null);
+                cmd.endRecording();
+                semaphore = semaphorePool.isEmpty() ? new Semaphore(device) : semaphorePool.removeFirst();
+                transferQueue.submit(stack.pointers(cmd.getVkCommandBuffer()), null, null,
+                        stack.longs(semaphore.getVkSemaphore()), null);
+
+                barriers.forEach(b -> b.srcAccessMask(0).dstAccessMask(READ_ACCESS_MASK));
+                acquireCmd = acquireCmdPool.isEmpty() ? new CommandBuffer(graphicsCommandPool, true, true) :
+                        acquireCmdPool.removeFirst();
+                acquireCmd.beginRecording();
+                vkCmdPipelineBarrier(acquireCmd.getVkCommandBuffer(), VK_PIPELINE_STAGE_TRANSFER_BIT,
+                        VK_PIPELINE_STAGE_ALL_COMMANDS_BIT, 0, null, barriers, null);
+                acquireCmd.endRecording();
+                graphicsQueue.submit(stack.pointers(acquireCmd.getVkCommandBuffer()),
+                        stack.longs(semaphore.getVkSemaphore()), stack.ints(VK_PIPELINE_STAGE_TRANSFER_BIT), null,
+                        fence);
+            } else {
+                barriers.forEach(b -> b.srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT).dstAccessMask(READ_ACCESS_MASK)
+                        .srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED).dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED));
+                vkCmdPipelineBarrier(cmd.getVkCommandBuffer(), VK_PIPELINE_STAGE_TRANSFER_BIT,
+                        VK_PIPELINE_STAGE_ALL_COMMANDS_BIT, 0, null, barriers, null);
+                cmd.endRecording();
+                transferQueue.submit(stack.pointers(cmd.getVkCommandBuffer()), null, null, null, fence);
+            }
+            inFlight.addLast(new Submission(cmd, acquireCmd, semaphore, fence, new ArrayList<>(pendingAllocations)));
+        }
+        stats = new Stats(stats.bytes() + pendingBytes, stats.numSubmissions() + 1, stats.nanos());
+        pendingAllocations.clear();
+        pendingRanges.clear();
+        pendingBytes = 0;
+        cmd = null;
+    }
+
+    private void endSession() {
+        if (!inFlight.isEmpty() || cmd != null || sessionStart < 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - sessionStart;
+        stats = new Stats(stats.bytes(), stats.numSubmissions(), stats.nanos() + elapsed);
+        sessionStart = -1;
+        Logger.debug("Uploaded {} bytes in {} submission(s), {} MB/s", stats.bytes(), stats.numSubmissions(),
+                String.format("%.1f", stats.getThroughput() / (1024 * 1024)));
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    private void retire(Submission submission) {
+        submission.fence().fenceWait();
+        submission.allocations().forEach(stagingRing::free);
+        // Synchronization objects and command buffers are reused by later submissions
+        submission.fence().reset();
+        fencePool.addLast(submission.fence());
+        submission.cmd().reset();
+        transferCmdPool.addLast(submission.cmd());
+        if (submission.acquireCmd() != null) {
+            submission.acquireCmd().reset();
+            acquireCmdPool.addLast(submission.acquireCmd());
+        }
+        if (submission.semaphore() != null) {
+            semaphorePool.addLast(submission.semaphore());
+        }
+    }
+
+    /**
+     * Recycles the resources of the submissions that have completed, without blocking.
+     */
+    public void retireCompleted() {
+        while (!inFlight.isEmpty() && inFlight.peekFirst().fence().isSignaled()) {
+            retire(inFlight.removeFirst());
+        }
+        endSession();
+    }
+
+    /**
+     * Records the copy of the remaining contents of the data buffer into the destination buffer. The copy is submitted
+     * when half of the staging ring is used or when {@link #flush} is called, although the data buffer can be reused
+     * as soon as this method returns.
+     */
+    public void upload(ByteBuffer data, VulkanBuffer dstBuffer, long dstOffset) {
+        if (sessionStart < 0) {
+            sessionStart = System.nanoTime();
+        }
+        long offset = dstOffset;
+        while (data.hasRemaining()) {
+            int chunkSize = (int) Math.min(data.remaining(), maxChunkSize);
+            StagingRing.Allocation allocation = stagingRing.tryAllocate(chunkSize);
+            if (allocation == null) {
+                // Oldest copies must finish before their staging space can be reused
+                if (inFlight.isEmpty()) {
+                    flush();
+                }
+                retire(inFlight.removeFirst());
+                continue;
+            }
+            ByteBuffer chunk = data.slice(data.position(), chunkSize);
+            stagingRing.getByteBuffer(allocation).put(chunk);
+            data.position(data.position() + chunkSize);
+
+            if (cmd == null) {
+                cmd = transferCmdPool.isEmpty() ? new CommandBuffer(transferCommandPool, true, true) :
+                        transferCmdPool.removeFirst();
+                cmd.beginRecording();
+            }
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                VkBufferCopy.Buffer copyRegion = VkBufferCopy.calloc(1, stack)
+                        .srcOffset(allocation.getOffset()).dstOffset(offset).size(chunkSize);
+                vkCmdCopyBuffer(cmd.getVkCommandBuffer(), stagingRing.getBuffer().getBuffer(), dstBuffer.getBuffer(),
+                        copyRegion);
+            }
+            addPendingRange(dstBuffer, offset, chunkSize);
+            pendingAllocations.add(allocation);
+            pendingBytes += chunkSize;
+            offset += chunkSize;
+            if (pendingBytes >= maxChunkSize) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Submits the pending copies and waits for all the uploads to complete.
+     */
+    public void waitIdle() {
+        flush();
+        while (!inFlight.isEmpty()) {
+            retire(inFlight.removeFirst());
+        }
+        endSession();
+    }
+
+    /**
+     * Accumulated upload statistics. Time is measured from the first upload after the uploader has become idle until
+     * the completion of its copies is detected.
+     */
+    public record Stats(long bytes, int numSubmissions, long nanos) {
+        public double getThroughput() {
+            return nanos > 0 ? bytes * 1_000_000_000.0 / nanos : 0;
+        }
+    }
+
+    private record BufferRange(VulkanBuffer buffer, long offset, long size) {
+    }
+
+    private record Submission(CommandBuffer cmd, CommandBuffer acquireCmd, Semaphore semaphore, Fence fence,
+                              List<StagingRing.Allocation> allocations) {
+    }
+}
\ No newline at end of file
@@ -1,83 +1,233 @@
 package org.vulkanb.eng.graph;
 
-import org.joml.Matrix4f;
+import org.joml.*;
 import org.lwjgl.system.*;
 import org.lwjgl.vulkan.*;
 import org.tinylog.Logger;
 import org.vulkanb.eng.EngineProperties;
+import org.vulkanb.eng.graph.shadows.CascadeShadow;
 import org.vulkanb.eng.graph.vk.Queue;
 import org.vulkanb.eng.graph.vk.*;
 import org.vulkanb.eng.scene.*;
 
+import java.lang.Math;
 import java.nio.*;
 import java.util.*;
-import java.util.function.Predicate;
 
 import static org.lwjgl.vulkan.VK11.*;
 import static org.vulkanb.eng.graph.vk.GraphConstants.*;
 
 public class GlobalBuffers {
+    // Culled commands are preceded by the number of draws, padded to 16 bytes
+    public static final int CULLED_COMMANDS_OFFSET = 16;
     public static final int IND_COMMAND_STRIDE = VkDrawIndexedIndirectCommand.SIZEOF;
+    public static final int INSTANCE_DATA_SIZE = TransformStore.MATRIX_STRIDE;
+    private static final float AFFINE_EPSILON = 0.0001f;
+    private static final int ANIM_COMMAND_INTS = IND_COMMAND_STRIDE / INT_LENGTH;
+    // Center and radius, min and max, stored as three vec4 to match std430 alignment
+    private static final int BOUNDS_SIZE = VEC4_SIZE * 3;
+    // Placeholders used by normal and metal-roughness maps while they are being loaded
+    private static final int FLAT_NORMAL_RGBA = 0x8080FFFF;
+    private static final String FLAT_NORMAL_TEXTURE_ID = "#flatNormal";
     // Handle std430 alignment
     private static final int MATERIAL_PADDING = FLOAT_LENGTH * 3;
     private static final int MATERIAL_SIZE = VEC4_SIZE + INT_LENGTH * 3 + FLOAT_LENGTH * 2 + MATERIAL_PADDING;
-    private final VulkanBuffer animJointMatricesBuffer;
-    private final VulkanBuffer animWeightsBuffer;
-    private final VulkanBuffer indicesBuffer;
-    private final VulkanBuffer materialsBuffer;
-    private final VulkanBuffer verticesBuffer;
-    private VulkanBuffer animIndirectBuffer;
+    private static final int METAL_ROUGH_RGBA = 0x00FF00FF;
+    private static final String METAL_ROUGH_TEXTURE_ID = "#metalRough";
+    private static final int NO_CHANNEL = -1;
+    private final RangeAllocator animCommandsAllocator;
+    private final BufferHeap animJointMatricesHeap;
+    private final BufferHeap animKeyFramesHeap;
+    private final RangeAllocator animSampledJointsAllocator;
+    private final RangeAllocator animVerticesAllocator;
+    private final BufferHeap animWeightsHeap;
+    private final BufferHeap boundsHeap;
+    private final Map<String, BitSet> candidateSlotsMap;
+    private final Device device;
+    private final BufferHeap indicesHeap;
+    private final Vector3f lodCenter;
+    private final Matrix4f lodMatrix;
+    private final Vector3f lodScale;
+    private final MaterialRegistry materialRegistry;
+    private final BufferHeap materialsHeap;
+    private final Map<String, ModelAllocations> modelAllocationsMap;
+    private final Map<String, Integer> modelInstancesMap;
+    private final List<PendingRelease> pendingReleases;
+    private final Set<String> uncountedModels;
+    private final BufferHeap verticesHeap;
+    private final Map<String, VulkanAnimEntity> vulkanAnimEntityMap;
+    private final Map<String, VulkanModel> vulkanModelMap;
+    private int[] animCommands;
+    private VulkanBuffer[] animIndirectBuffers;
     private VulkanBuffer[] animInstanceDataBuffers;
+    private InstanceSlots[] animInstanceSlots;
+    private VulkanBuffer animSampledJointsBuffer;
     private VulkanBuffer animVerticesBuffer;
-    private VulkanBuffer indirectBuffer;
+    private int buffersVersion;
+    private VulkanBuffer[] commandBoundsBuffers;
+    private VulkanBuffer[] culledIndirectBuffers;
+    private VulkanBuffer[] culledInstanceDataBuffers;
+    private MaterialRegistry.Entry defaultMaterial;
+    private BitSet[] dirtyAnimCommands;
+    private int[] entityLods;
+    private int[] frameVersions;
+    private int heapsVersion;
+    private VulkanBuffer[] indirectBuffers;
     private VulkanBuffer[] instanceDataBuffers;
-    private int numAnimIndirectCommands;
+    private InstanceSlots[] instanceSlots;
+    private long numAnimTriangles;
     private int numIndirectCommands;
-    private List<VulkanAnimEntity> vulkanAnimEntityList;
+    private int numInstancesWritten;
+    private int numStaticInstances;
+    private long numTriangles;
+    private int staticInstancesCapacity;
 
     public GlobalBuffers(Device device) {
         Logger.debug("Creating global buffers");
+        this.device = device;
         EngineProperties engProps = EngineProperties.getInstance();
-        verticesBuffer = new VulkanBuffer(device, engProps.getMaxVerticesBuffer(), VK_BUFFER_USAGE_VERTEX_BUFFER_BIT |
-                VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT, VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, 0);
-        indicesBuffer = new VulkanBuffer(device, engProps.getMaxIndicesBuffer(), VK_BUFFER_USAGE_INDEX_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT,
-                VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, 0);
-        int maxMaterials = engProps.getMaxMaterials();
-        materialsBuffer = new VulkanBuffer(device, (long) maxMaterials * MATERIAL_SIZE, VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT,
-                VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, 0);
-        animJointMatricesBuffer = new VulkanBuffer(device, engProps.getMaxJointMatricesBuffer(), VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT,
-                VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, 0);
-        animWeightsBuffer = new VulkanBuffer(device, engProps.getMaxAnimWeightsBuffer(), VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT,
-                VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, 0);
+        // Configured sizes are just the initial capacities, heaps grow when they run out of space
+        verticesHeap = new BufferHeap(device, "vertices", engProps.getMaxVerticesBuffer(), VK_BUFFER_USAGE_VERTEX_BUFFER_BIT |
+                VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, VertexBufferStructure.getSizeInBytes());
+        indicesHeap = new BufferHeap(device, "indices", engProps.getMaxIndicesBuffer(), VK_BUFFER_USAGE_INDEX_BUFFER_BIT,
+                INT_LENGTH);
+        materialsHeap = new BufferHeap(device, "materials", engProps.getMaxMaterials() * MATERIAL_SIZE,
+                VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, MATERIAL_SIZE);
+        materialRegistry = new MaterialRegistry(materialsHeap, MATERIAL_SIZE);
+        animJointMatricesHeap = new BufferHeap(device, "joint matrices", engProps.getMaxJointMatricesBuffer(),
+                VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, MAT3X4_SIZE);
+        animWeightsHeap = new BufferHeap(device, "weights", engProps.getMaxAnimWeightsBuffer(),
+                VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, INT_LENGTH);
+        animKeyFramesHeap = new BufferHeap(device, "key frames", engProps.getMaxKeyFramesBuffer(),
+                VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, INT_LENGTH);
+        // Initial capacity assumes around one mesh per material
+        boundsHeap = new BufferHeap(device, "bounds", engProps.getMaxMaterials() * BOUNDS_SIZE,
+                VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, BOUNDS_SIZE);
+        modelAllocationsMap = new HashMap<>();
+        modelInstancesMap = new HashMap<>();
+        pendingReleases = new ArrayList<>();
+        uncountedModels = new HashSet<>();
+        candidateSlotsMap = new HashMap<>();
         numIndirectCommands = 0;
+        entityLods = new int[0];
+        lodCenter = new Vector3f();
+        lodMatrix = new Matrix4f();
+        lodScale = new Vector3f();
+        vulkanModelMap = new HashMap<>();
+        vulkanAnimEntityMap = new LinkedHashMap<>();
+        animCommandsAllocator = new RangeAllocator();
+        animVerticesAllocator = new RangeAllocator();
+        animSampledJointsAllocator = new RangeAllocator();
+        animCommands = new int[0];
+        buffersVersion = 0;
+    }
+
+    private void addAnimEntity(Entity entity, VulkanModel vulkanModel) {
+        List<VulkanModel.VulkanMesh> vulkanMeshList = vulkanModel.getVulkanMeshList();
+        int numMeshes = vulkanMeshList.size();
+        int verticesSize = 0;
+        for (VulkanModel.VulkanMesh vulkanMesh : vulkanMeshList) {
+            verticesSize += vulkanMesh.verticesSize();
+        }
+
+        int firstCommand = allocate(animCommandsAllocator, numMeshes);
+        int numAnimCommands = animCommandsAllocator.getCapacity();
+        if (animCommands.length < numAnimCommands * ANIM_COMMAND_INTS) {
+            animCommands = Arrays.copyOf(animCommands, numAnimCommands * ANIM_COMMAND_INTS);
+            buffersVersion++;
+        }
+        int verticesOffset = allocate(animVerticesAllocator, verticesSize);
+        // Entities with sampled animations get their own joint palette, filled each frame by the GPU
+        int sampledJointsSize = getSampledJointsSize(vulkanModel);
+        int sampledJointsOffset = sampledJointsSize > 0 ? allocate(animSampledJointsAllocator, sampledJointsSize) : -1;
+
+        VulkanAnimEntity vulkanAnimEntity = new VulkanAnimEntity(entity, vulkanModel, sampledJointsOffset, firstCommand);
+        List<VulkanAnimEntity.VulkanAnimMesh> vulkanAnimMeshList = vulkanAnimEntity.getVulkanAnimMeshList();
+        int meshOffset = verticesOffset;
+        for (int i = 0; i < numMeshes; i++) {
+            VulkanModel.VulkanMesh vulkanMesh = vulkanMeshList.get(i);
+            setAnimCommand(firstCommand + i, vulkanMesh.numIndices(), 1, vulkanMesh.indicesOffset() / INT_LENGTH,
+                    meshOffset / VertexBufferStructure.getSizeInBytes());
+            vulkanAnimMeshList.add(new VulkanAnimEntity.VulkanAnimMesh(meshOffset, vulkanMesh));
+            meshOffset += vulkanMesh.verticesSize();
+            numAnimTriangles += vulkanMesh.numIndices() / 3;
+        }
+        vulkanAnimEntityMap.put(entity.getId(), vulkanAnimEntity);
+    }
+
+    private void addCandidateEntity(Entity entity) {
+        candidateSlotsMap.computeIfAbsent(entity.getModelId(), k -> new BitSet()).set(entity.getSlot());
+    }
+
+    private void addEntity(Entity entity, VulkanModel vulkanModel) {
+        if (!vulkanModel.hasAnimations()) {
+            addStaticInstances(entity.getModelId(), vulkanModel.getVulkanMeshList().size());
+        } else if (entity.hasAnimation()) {
+            addAnimEntity(entity, vulkanModel);
+        }
+    }
+
+    private void addStaticInstances(String modelId, int numInstances) {
+        modelInstancesMap.merge(modelId, numInstances, Integer::sum);
+        numStaticInstances += numInstances;
+    }
+
+    private static BufferHeap.Allocation allocate(BufferHeap heap, int size) {
+        return size > 0 ? heap.allocate(size) : null;
+    }
+
+    private static int allocate(RangeAllocator allocator, int size) {
+        int offset = allocator.allocate(size);
+        if (offset < 0) {
+            allocator.grow(allocator.getCapacity() + size);
+            offset = allocator.allocate(size);
+        }
+        return offset;
     }
 
     public void cleanup() {
         Logger.debug("Destroying global buffers");
-        verticesBuffer.cleanup();
-        indicesBuffer.cleanup();
-        if (indirectBuffer != null) {
-            indirectBuffer.cleanup();
-        }
+        verticesHeap.cleanup();
+        indicesHeap.cleanup();
+        cleanupFrameBuffers();
         if (animVerticesBuffer != null) {
             animVerticesBuffer.cleanup();
         }
-        if (animIndirectBuffer != null) {
-            animIndirectBuffer.cleanup();
+        if (animSampledJointsBuffer != null) {
+            animSampledJointsBuffer.cleanup();
         }
-        materialsBuffer.cleanup();
-        animJointMatricesBuffer.cleanup();
-        animWeightsBuffer.cleanup();
-        if (instanceDataBuffers != null) {
-            Arrays.asList(instanceDataBuffers).forEach(VulkanBuffer::cleanup);
+        materialsHeap.cleanup();
+        animJointMatricesHeap.cleanup();
+        animKeyFramesHeap.cleanup();
+        animWeightsHeap.cleanup();
+        boundsHeap.cleanup();
+    }
+
+    private void cleanupFrameBuffers() {
+        for (VulkanBuffer[] frameBuffers : new VulkanBuffer[][]{indirectBuffers, instanceDataBuffers,
+                animIndirectBuffers, animInstanceDataBuffers, commandBoundsBuffers, culledIndirectBuffers,
+                culledInstanceDataBuffers}) {
+            if (frameBuffers != null) {
+                Arrays.stream(frameBuffers).filter(Objects::nonNull).forEach(VulkanBuffer::cleanup);
+            }
         }
-        if (animInstanceDataBuffers != null) {
-            Arrays.asList(animInstanceDataBuffers).forEach(VulkanBuffer::cleanup);
+    }
+
+    private void copyInstances(TransformStore store, int firstSlot, int firstInstance, int numInstances, int materialIdx,
+                               ByteBuffer dataBuffer) {
+        if (numInstances == 0) {
+            return;
         }
+        store.copyMatrices(firstSlot, numInstances, MemoryUtil.memAddress(dataBuffer) +
+                (long) firstInstance * INSTANCE_DATA_SIZE);
+        for (int i = 0; i < numInstances; i++) {
+            dataBuffer.putInt((firstInstance + i) * INSTANCE_DATA_SIZE + MAT4X4_SIZE, materialIdx);
+        }
+        numInstancesWritten += numInstances;
     }
 
-    public VulkanBuffer getAnimIndirectBuffer() {
-        return animIndirectBuffer;
+    public VulkanBuffer[] getAnimIndirectBuffers() {
+        return animIndirectBuffers;
     }
 
     public VulkanBuffer[] getAnimInstanceDataBuffers() {
@@ -85,7 +235,15 @@ public class GlobalBuffers {
     }
 
     public VulkanBuffer getAnimJointMatricesBuffer() {
-        return animJointMatricesBuffer;
+        return animJointMatricesHeap.getBuffer();
+    }
+
+    public VulkanBuffer getAnimKeyFramesBuffer() {
+        return animKeyFramesHeap.getBuffer();
+    }
+
+    public VulkanBuffer getAnimSampledJointsBuffer() {
+        return animSampledJointsBuffer;
     }
 
     public VulkanBuffer getAnimVerticesBuffer() {
@@ -93,248 +251,374 @@ public class GlobalBuffers {
     }
 
     public VulkanBuffer getAnimWeightsBuffer() {
-        return animWeightsBuffer;
+        return animWeightsHeap.getBuffer();
+    }
+
+    /**
+     * Returns the buffer that holds the model space bounds of the meshes, indexed by the bounds index of each mesh.
+     */
+    public VulkanBuffer getBoundsBuffer() {
+        return boundsHeap.getBuffer();
+    }
+
+    /**
+     * Returns, for each frame, the index in the bounds buffer of the mesh drawn by each static indirect command.
+     */
+    public VulkanBuffer[] getCommandBoundsBuffers() {
+        return commandBoundsBuffers;
+    }
+
+    /**
+     * Returns, for each frame, the static indirect commands filled by the culling pass. The number of draws is stored
+     * at the start of the buffer, followed by the commands at {@link #CULLED_COMMANDS_OFFSET}.
+     */
+    public VulkanBuffer[] getCulledIndirectBuffers() {
+        return culledIndirectBuffers;
+    }
+
+    public VulkanBuffer[] getCulledInstanceDataBuffers() {
+        return culledInstanceDataBuffers;
+    }
+
+    /**
+     * Returns a counter increased each time the buffers of the heaps are replaced, which only happens while the device
+     * is idle. Descriptor sets and command buffers referencing them must then be updated.
+     */
+    public int getHeapsVersion() {
+        return heapsVersion;
     }
 
     public VulkanBuffer getIndicesBuffer() {
-        return indicesBuffer;
+        return indicesHeap.getBuffer();
+    }
+
+    private static int getIndicesSize(ModelData modelData) {
+        int numIndices = 0;
+        for (ModelData.MeshData meshData : modelData.getMeshDataList()) {
+            numIndices += meshData.indices().length;
+            for (int[] lodIndices : meshData.lodIndices()) {
+                numIndices += lodIndices.length;
+            }
+        }
+        return numIndices * INT_LENGTH;
     }
 
-    public VulkanBuffer getIndirectBuffer() {
-        return indirectBuffer;
+    public VulkanBuffer[] getIndirectBuffers() {
+        return indirectBuffers;
     }
 
     public VulkanBuffer[] getInstanceDataBuffers() {
         return instanceDataBuffers;
     }
 
+    private static int getJointMatricesSize(ModelData modelData) {
+        List<ModelData.Animation> animationsList = modelData.getAnimationsList();
+        if (animationsList == null) {
+            return 0;
+        }
+        int numMatrices = 0;
+        for (ModelData.Animation animation : animationsList) {
+            for (ModelData.AnimatedFrame frame : animation.frames()) {
+                numMatrices += frame.jointMatrices().length;
+            }
+        }
+        return numMatrices * MAT3X4_SIZE;
+    }
+
+    private static int getKeyFramesSize(ModelData modelData) {
+        if (!modelData.hasKeyFrameAnimations()) {
+            return 0;
+        }
+        // Must match the layout written by loadKeyFrameData
+        ModelData.Skeleton skeleton = modelData.getSkeleton();
+        int numNodes = skeleton.nodeParents().length;
+        int numInts = 2 * MAT3X4_SIZE / INT_LENGTH + (numNodes + skeleton.boneNodes().length) * (1 + MAT3X4_SIZE / INT_LENGTH);
+        for (ModelData.KeyFrameAnimation keyFrameAnimation : modelData.getKeyFrameAnimationsList()) {
+            numInts += numNodes * 4;
+            for (ModelData.NodeChannel channel : keyFrameAnimation.channels()) {
+                numInts += channel.positionKeys().length + channel.rotationKeys().length + channel.scalingKeys().length;
+            }
+        }
+        return numInts * INT_LENGTH;
+    }
+
     public VulkanBuffer getMaterialsBuffer() {
-        return materialsBuffer;
+        return materialsHeap.getBuffer();
     }
 
     public int getNumAnimIndirectCommands() {
-        return numAnimIndirectCommands;
+        return animCommandsAllocator.getCapacity();
+    }
+
+    private static int getNumCommands(VulkanModel vulkanModel) {
+        // One command per mesh and level of detail, filled each frame depending on the distance to the camera
+        int numCommands = 0;
+        for (VulkanModel.VulkanMesh vulkanMesh : vulkanModel.getVulkanMeshList()) {
+            numCommands += vulkanMesh.vulkanMeshLodList().size() + 1;
+        }
+        return numCommands;
     }
 
     public int getNumIndirectCommands() {
         return numIndirectCommands;
     }
 
-    public VulkanBuffer getVerticesBuffer() {
-        return verticesBuffer;
+    /**
+     * Returns the number of instances whose data was written in the last call to loadInstanceData. Instances whose
+     * entity transform has not changed since they were written to the frame buffers are skipped.
+     */
+    public int getNumInstancesWritten() {
+        return numInstancesWritten;
     }
 
-    public List<VulkanAnimEntity> getVulkanAnimEntityList() {
-        return vulkanAnimEntityList;
+    /**
+     * Returns the number of unique materials stored in the materials buffer.
+     */
+    public int getNumMaterials() {
+        return materialRegistry.getNumMaterials();
     }
 
-    private void loadAnimEntities(List<VulkanModel> vulkanModelList, Scene scene, CommandPool commandPool,
-                                  Queue queue, int numSwapChainImages) {
-        vulkanAnimEntityList = new ArrayList<>();
-        numAnimIndirectCommands = 0;
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            if (animVerticesBuffer != null) {
-                animVerticesBuffer.cleanup();
-            }
-            Device device = commandPool.getDevice();
-            CommandBuffer cmd = new CommandBuffer(commandPool, true, true);
+    /**
+     * Returns the number of triangles of the indirect commands filled in the last call to loadInstanceData. Static
+     * instances are counted before the GPU culling pass, so fewer triangles may be drawn.
+     */
+    public long getNumTriangles() {
+        return numTriangles;
+    }
 
-            int bufferOffset = 0;
-            int firstInstance = 0;
-            List<VkDrawIndexedIndirectCommand> indexedIndirectCommandList = new ArrayList<>();
-            for (VulkanModel vulkanModel : vulkanModelList) {
-                List<Entity> entities = scene.getEntitiesByModelId(vulkanModel.getModelId());
-                if (entities.isEmpty()) {
-                    continue;
-                }
-                for (Entity entity : entities) {
-                    if (!entity.hasAnimation()) {
-                        continue;
-                    }
-                    VulkanAnimEntity vulkanAnimEntity = new VulkanAnimEntity(entity, vulkanModel);
-                    vulkanAnimEntityList.add(vulkanAnimEntity);
-                    List<VulkanAnimEntity.VulkanAnimMesh> vulkanAnimMeshList = vulkanAnimEntity.getVulkanAnimMeshList();
-                    for (VulkanModel.VulkanMesh vulkanMesh : vulkanModel.getVulkanMeshList()) {
-                        VkDrawIndexedIndirectCommand indexedIndirectCommand = VkDrawIndexedIndirectCommand.calloc(stack);
-                        indexedIndirectCommand.indexCount(vulkanMesh.numIndices());
-                        indexedIndirectCommand.firstIndex(vulkanMesh.indicesOffset() / INT_LENGTH);
-                        indexedIndirectCommand.instanceCount(1);
-                        indexedIndirectCommand.vertexOffset(bufferOffset / VertexBufferStructure.SIZE_IN_BYTES);
-                        indexedIndirectCommand.firstInstance(firstInstance);
-                        indexedIndirectCommandList.add(indexedIndirectCommand);
-
-                        vulkanAnimMeshList.add(new VulkanAnimEntity.VulkanAnimMesh(bufferOffset, vulkanMesh));
-                        bufferOffset += vulkanMesh.verticesSize();
-                        firstInstance++;
-                    }
-                }
-            }
-            if (bufferOffset == 0) {
-                return;
-            }
-            animVerticesBuffer = new VulkanBuffer(device, bufferOffset, VK_BUFFER_USAGE_VERTEX_BUFFER_BIT |
-                    VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, 0);
+    private static int getSampledJointsSize(VulkanModel vulkanModel) {
+        VulkanModel.VulkanKeyFrameData vulkanKeyFrameData = vulkanModel.getVulkanKeyFrameData();
+        return vulkanKeyFrameData != null ? Math.max(1, vulkanKeyFrameData.numJoints()) * MAT3X4_SIZE : 0;
+    }
 
-            numAnimIndirectCommands = indexedIndirectCommandList.size();
-            if (numAnimIndirectCommands > 0) {
-                cmd.beginRecording();
+    public VulkanBuffer getVerticesBuffer() {
+        return verticesHeap.getBuffer();
+    }
 
-                StgByteBuffer indirectStgBuffer = new StgByteBuffer(device, (long) IND_COMMAND_STRIDE * numAnimIndirectCommands);
-                if (animIndirectBuffer != null) {
-                    animIndirectBuffer.cleanup();
-                }
-                animIndirectBuffer = new VulkanBuffer(device, indirectStgBuffer.stgVulkanBuffer.getRequestedSize(),
-                        VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT,
-                        VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, 0);
-                ByteBuffer dataBuffer = indirectStgBuffer.getDataBuffer();
-                VkDrawIndexedIndirectCommand.Buffer indCommandBuffer = new VkDrawIndexedIndirectCommand.Buffer(dataBuffer);
+    private static int getVerticesSize(ModelData modelData) {
+        int numVertices = 0;
+        for (ModelData.MeshData meshData : modelData.getMeshDataList()) {
+            numVertices += meshData.positions().length / 3;
+        }
+        return numVertices * VertexBufferStructure.getSizeInBytes();
+    }
 
-                indexedIndirectCommandList.forEach(indCommandBuffer::put);
+    public Collection<VulkanAnimEntity> getVulkanAnimEntities() {
+        return vulkanAnimEntityMap.values();
+    }
 
-                if (animInstanceDataBuffers != null) {
-                    Arrays.asList(animInstanceDataBuffers).forEach(VulkanBuffer::cleanup);
-                }
-                animInstanceDataBuffers = new VulkanBuffer[numSwapChainImages];
-                for (int i = 0; i < numSwapChainImages; i++) {
-                    animInstanceDataBuffers[i] = new VulkanBuffer(device,
-                            (long) numAnimIndirectCommands * (MAT4X4_SIZE + INT_LENGTH),
-                            VK_BUFFER_USAGE_VERTEX_BUFFER_BIT, VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT, 0);
-                }
+    private static int getWeightsSize(ModelData modelData) {
+        List<ModelData.AnimMeshData> animMeshDataList = modelData.getAnimMeshDataList();
+        if (animMeshDataList == null || animMeshDataList.isEmpty()) {
+            return 0;
+        }
+        int numInts = 0;
+        for (ModelData.AnimMeshData animMeshData : animMeshDataList) {
+            numInts += animMeshData.weights().length / 4 * 8;
+        }
+        return numInts * INT_LENGTH;
+    }
 
-                indirectStgBuffer.recordTransferCommand(cmd, animIndirectBuffer);
+    private static boolean isAffine(Matrix4f m) {
+        return Math.abs(m.m03()) < AFFINE_EPSILON && Math.abs(m.m13()) < AFFINE_EPSILON &&
+                Math.abs(m.m23()) < AFFINE_EPSILON && Math.abs(m.m33() - 1.0f) < AFFINE_EPSILON;
+    }
+
+    /**
+     * Returns true if the buffers of the frame have been created for the current capacities, so its command buffers
+     * can be recorded.
+     */
+    public boolean isFrameReady(int frameIdx) {
+        return frameVersions != null && frameIdx < frameVersions.length && frameVersions[frameIdx] == buffersVersion;
+    }
 
-                cmd.endRecording();
-                cmd.submitAndWait(device, queue);
-                cmd.cleanup();
-                indirectStgBuffer.cleanup();
+    private void loadAnimInstanceData(int currentSwapChainIdx) {
+        VulkanBuffer instanceBuffer = animInstanceDataBuffers[currentSwapChainIdx];
+        if (instanceBuffer == null) {
+            return;
+        }
+        InstanceSlots slots = animInstanceSlots[currentSwapChainIdx];
+        ByteBuffer dataBuffer = MemoryUtil.memByteBuffer(instanceBuffer.map(), (int) instanceBuffer.getRequestedSize());
+        for (VulkanAnimEntity vulkanAnimEntity : vulkanAnimEntityMap.values()) {
+            Entity entity = vulkanAnimEntity.getEntity();
+            VulkanModel vulkanModel = vulkanAnimEntity.getVulkanModel();
+            int slot = vulkanAnimEntity.getFirstCommand();
+            for (VulkanAnimEntity.VulkanAnimMesh vulkanAnimMesh : vulkanAnimEntity.getVulkanAnimMeshList()) {
+                writeInstance(slots, slot, entity, vulkanModel.getGlobalMaterialIdx(vulkanAnimMesh.vulkanMesh()),
+                        dataBuffer);
+                slot++;
             }
         }
     }
 
     private void loadAnimationData(ModelData modelData, VulkanModel vulkanModel, StgIntBuffer animJointMatricesStgBuffer) {
         List<ModelData.Animation> animationsList = modelData.getAnimationsList();
-        if (!modelData.hasAnimations()) {
+        if (animationsList == null || animationsList.isEmpty()) {
             return;
         }
         IntBuffer dataBuffer = animJointMatricesStgBuffer.getDataBuffer();
+        int startPos = dataBuffer.position();
+        long paddedSize = 0;
+        boolean nonAffine = false;
+        int maxJointsMatricesLists = EngineProperties.getInstance().getMaxJointsMatricesLists();
         for (ModelData.Animation animation : animationsList) {
             VulkanModel.VulkanAnimationData vulkanAnimationData = new VulkanModel.VulkanAnimationData();
             vulkanModel.addVulkanAnimationData(vulkanAnimationData);
             List<ModelData.AnimatedFrame> frameList = animation.frames();
             for (ModelData.AnimatedFrame frame : frameList) {
-                vulkanAnimationData.addVulkanAnimationFrame(new VulkanModel.VulkanAnimationFrame(dataBuffer.position() * INT_LENGTH));
+                vulkanAnimationData.addVulkanAnimationFrame(new VulkanModel.VulkanAnimationFrame(animJointMatricesStgBuffer.getDstOffset()));
                 Matrix4f[] matrices = frame.jointMatrices();
                 for (Matrix4f matrix : matrices) {
-                    loadMatIntoIntBuffer(matrix, dataBuffer);
+                    nonAffine |= !isAffine(matrix);
+                    loadJointIntoIntBuffer(matrix, dataBuffer);
                 }
+                paddedSize += (long) maxJointsMatricesLists * MAT4X4_SIZE;
             }
         }
+        if (nonAffine) {
+            Logger.warn("Model [{}] has non affine joint matrices, projective part will be ignored", modelData.getModelId());
+        }
+        Logger.debug("Animation data for model [{}] uses {} bytes, {} bytes with full size matrix palettes",
+                modelData.getModelId(), (long) (dataBuffer.position() - startPos) * INT_LENGTH, paddedSize);
     }
 
-    public void loadEntities(List<VulkanModel> vulkanModelList, Scene scene, CommandPool commandPool,
-                             Queue queue, int numSwapChainImages) {
-        loadStaticEntities(vulkanModelList, scene, commandPool, queue, numSwapChainImages);
-        loadAnimEntities(vulkanModelList, scene, commandPool, queue, numSwapChainImages);
+    private void loadBounds(ModelData.Bounds bounds, IntBuffer dataBuffer) {
+        Vector3f center = bounds.center();
+        dataBuffer.put(Float.floatToRawIntBits(center.x));
+        dataBuffer.put(Float.floatToRawIntBits(center.y));
+        dataBuffer.put(Float.floatToRawIntBits(center.z));
+        dataBuffer.put(Float.floatToRawIntBits(bounds.radius()));
+        for (Vector3f vector : new Vector3f[]{bounds.min(), bounds.max()}) {
+            dataBuffer.put(Float.floatToRawIntBits(vector.x));
+            dataBuffer.put(Float.floatToRawIntBits(vector.y));
+            dataBuffer.put(Float.floatToRawIntBits(vector.z));
+            dataBuffer.put(Float.floatToRawIntBits(0.0f));
+        }
     }
 
-    public void loadInstanceData(Scene scene, List<VulkanModel> vulkanModels, int currentSwapChainIdx) {
-        Predicate<VulkanModel> excludeAnimatedEntitiesPredicate = VulkanModel::hasAnimations;
-        loadInstanceData(scene, vulkanModels, instanceDataBuffers[currentSwapChainIdx], excludeAnimatedEntitiesPredicate);
-        Predicate<VulkanModel> excludedStaticEntitiesPredicate = v -> !v.hasAnimations();
-        if (animInstanceDataBuffers != null) {
-            loadInstanceData(scene, vulkanModels, animInstanceDataBuffers[currentSwapChainIdx], excludedStaticEntitiesPredicate);
+    private void loadFloatsIntoIntBuffer(float[] data, IntBuffer buffer) {
+        for (float value : data) {
+            buffer.put(Float.floatToRawIntBits(value));
         }
     }
 
-    private void loadInstanceData(Scene scene, List<VulkanModel> vulkanModels, VulkanBuffer instanceBuffer,
-                                  Predicate<VulkanModel> excludedEntitiesPredicate) {
-        if (instanceBuffer == null) {
-            return;
-        }
-        long mappedMemory = instanceBuffer.map();
-        ByteBuffer dataBuffer = MemoryUtil.memByteBuffer(mappedMemory, (int) instanceBuffer.getRequestedSize());
-        int pos = 0;
-        for (VulkanModel vulkanModel : vulkanModels) {
-            List<Entity> entities = scene.getEntitiesByModelId(vulkanModel.getModelId());
-            if (entities.isEmpty() || excludedEntitiesPredicate.test(vulkanModel)) {
-                continue;
-            }
-            for (VulkanModel.VulkanMesh vulkanMesh : vulkanModel.getVulkanMeshList()) {
-                for (Entity entity : entities) {
-                    entity.getModelMatrix().get(pos, dataBuffer);
-                    pos += MAT4X4_SIZE;
-                    dataBuffer.putInt(pos, vulkanMesh.globalMaterialIdx());
-                    pos += INT_LENGTH;
-                }
-            }
-        }
-        instanceBuffer.unMap();
+    /**
+     * Writes the instances of the current frame. Static instances are limited to the entities that may be visible or
+     * cast shadows into the cascades, so the cascades must have been updated for the frame.
+     */
+    public void loadInstanceData(Scene scene, List<VulkanModel> vulkanModels, List<CascadeShadow> cascadeShadows,
+                                 int currentSwapChainIdx) {
+        numInstancesWritten = 0;
+        loadStaticInstanceData(scene, vulkanModels, cascadeShadows, currentSwapChainIdx);
+        loadAnimInstanceData(currentSwapChainIdx);
     }
 
-    private void loadMatIntoIntBuffer(Matrix4f m, IntBuffer buffer) {
+    private void loadJointIntoIntBuffer(Matrix4f m, IntBuffer buffer) {
+        // Joint matrices are affine, so only the first three rows are stored
         buffer.put(Float.floatToRawIntBits(m.m00()));
-        buffer.put(Float.floatToRawIntBits(m.m01()));
-        buffer.put(Float.floatToRawIntBits(m.m02()));
-        buffer.put(Float.floatToRawIntBits(m.m03()));
         buffer.put(Float.floatToRawIntBits(m.m10()));
-        buffer.put(Float.floatToRawIntBits(m.m11()));
-        buffer.put(Float.floatToRawIntBits(m.m12()));
-        buffer.put(Float.floatToRawIntBits(m.m13()));
         buffer.put(Float.floatToRawIntBits(m.m20()));
-        buffer.put(Float.floatToRawIntBits(m.m21()));
-        buffer.put(Float.floatToRawIntBits(m.m22()));
-        buffer.put(Float.floatToRawIntBits(m.m23()));
         buffer.put(Float.floatToRawIntBits(m.m30()));
+        buffer.put(Float.floatToRawIntBits(m.m01()));
+        buffer.put(Float.floatToRawIntBits(m.m11()));
+        buffer.put(Float.floatToRawIntBits(m.m21()));
         buffer.put(Float.floatToRawIntBits(m.m31()));
+        buffer.put(Float.floatToRawIntBits(m.m02()));
+        buffer.put(Float.floatToRawIntBits(m.m12()));
+        buffer.put(Float.floatToRawIntBits(m.m22()));
         buffer.put(Float.floatToRawIntBits(m.m32()));
-        buffer.put(Float.floatToRawIntBits(m.m33()));
     }
 
-    private List<VulkanModel.VulkanMaterial> loadMaterials(Device device, TextureCache textureCache, StgIntBuffer
-            materialsStgBuffer, List<ModelData.Material> materialList, List<Texture> textureList) {
-        List<VulkanModel.VulkanMaterial> vulkanMaterialList = new ArrayList<>();
-        for (ModelData.Material material : materialList) {
-            IntBuffer dataBuffer = materialsStgBuffer.getDataBuffer();
-
-            Texture texture = textureCache.createTexture(device, material.texturePath(), VK_FORMAT_R8G8B8A8_SRGB);
-            if (texture != null) {
-                textureList.add(texture);
-            }
-            int textureIdx = textureCache.getPosition(material.texturePath());
+    private void loadKeyFrameData(ModelData modelData, VulkanModel vulkanModel, StgIntBuffer animKeyFramesStgBuffer) {
+        if (!modelData.hasKeyFrameAnimations()) {
+            return;
+        }
+        ModelData.Skeleton skeleton = modelData.getSkeleton();
+        int[] nodeParents = skeleton.nodeParents();
+        int numNodes = nodeParents.length;
+        if (numNodes > MAX_KEY_FRAME_NODES) {
+            throw new RuntimeException("Model [" + modelData.getModelId() + "] has [" + numNodes +
+                    "] nodes, maximum supported for sampled animations is [" + MAX_KEY_FRAME_NODES + "]");
+        }
+        IntBuffer dataBuffer = animKeyFramesStgBuffer.getDataBuffer();
+        int startPos = dataBuffer.position();
+
+        // Skeleton: root parent and global inverse transforms, (parent, transform) per node, (node, offset) per joint
+        int skeletonOffset = animKeyFramesStgBuffer.getDstOffset();
+        loadJointIntoIntBuffer(skeleton.rootParentTransform(), dataBuffer);
+        loadJointIntoIntBuffer(skeleton.globalInverseTransform(), dataBuffer);
+        for (int i = 0; i < numNodes; i++) {
+            dataBuffer.put(nodeParents[i]);
+            loadJointIntoIntBuffer(skeleton.nodeTransformations()[i], dataBuffer);
+        }
+        int[] boneNodes = skeleton.boneNodes();
+        for (int i = 0; i < boneNodes.length; i++) {
+            dataBuffer.put(boneNodes[i]);
+            loadJointIntoIntBuffer(skeleton.boneOffsets()[i], dataBuffer);
+        }
 
-            texture = textureCache.createTexture(device, material.normalMapPath(), VK_FORMAT_R8G8B8A8_UNORM);
-            if (texture != null) {
-                textureList.add(texture);
+        // Clips: (position keys, rotation keys, scaling keys, keys offset) per node followed by the keys
+        List<VulkanModel.VulkanKeyFrameClip> vulkanKeyFrameClipList = new ArrayList<>();
+        for (ModelData.KeyFrameAnimation keyFrameAnimation : modelData.getKeyFrameAnimationsList()) {
+            int clipPos = dataBuffer.position();
+            vulkanKeyFrameClipList.add(new VulkanModel.VulkanKeyFrameClip(animKeyFramesStgBuffer.getDstOffset(),
+                    keyFrameAnimation.duration()));
+            int keysPos = clipPos + numNodes * 4;
+            for (int i = 0; i < numNodes; i++) {
+                dataBuffer.put(clipPos + i * 4, 0).put(clipPos + i * 4 + 1, 0).put(clipPos + i * 4 + 2, 0)
+                        .put(clipPos + i * 4 + 3, NO_CHANNEL);
             }
-            int normalMapIdx = textureCache.getPosition(material.normalMapPath());
-
-            texture = textureCache.createTexture(device, material.metalRoughMap(), VK_FORMAT_R8G8B8A8_UNORM);
-            if (texture != null) {
-                textureList.add(texture);
+            dataBuffer.position(keysPos);
+            for (ModelData.NodeChannel channel : keyFrameAnimation.channels()) {
+                int headerPos = clipPos + channel.nodeIdx() * 4;
+                dataBuffer.put(headerPos, channel.positionKeys().length / 4);
+                dataBuffer.put(headerPos + 1, channel.rotationKeys().length / 5);
+                dataBuffer.put(headerPos + 2, channel.scalingKeys().length / 4);
+                dataBuffer.put(headerPos + 3, animKeyFramesStgBuffer.getDstOffset() / INT_LENGTH);
+                loadFloatsIntoIntBuffer(channel.positionKeys(), dataBuffer);
+                loadFloatsIntoIntBuffer(channel.rotationKeys(), dataBuffer);
+                loadFloatsIntoIntBuffer(channel.scalingKeys(), dataBuffer);
             }
-            int metalRoughMapIdx = textureCache.getPosition(material.metalRoughMap());
-
-            vulkanMaterialList.add(new VulkanModel.VulkanMaterial(dataBuffer.position() * INT_LENGTH / MATERIAL_SIZE));
-            dataBuffer.put(Float.floatToRawIntBits(material.diffuseColor().x));
-            dataBuffer.put(Float.floatToRawIntBits(material.diffuseColor().y));
-            dataBuffer.put(Float.floatToRawIntBits(material.diffuseColor().z));
-            dataBuffer.put(Float.floatToRawIntBits(material.diffuseColor().w));
-            dataBuffer.put(textureIdx);
-            dataBuffer.put(normalMapIdx);
-            dataBuffer.put(metalRoughMapIdx);
-            dataBuffer.put(Float.floatToRawIntBits(material.roughnessFactor()));
-            dataBuffer.put(Float.floatToRawIntBits(material.metallicFactor()));
-            // Padding due to std430 alignment
-            dataBuffer.put(Float.floatToRawIntBits(0.0f));
-            dataBuffer.put(Float.floatToRawIntBits(0.0f));
-            dataBuffer.put(Float.floatToRawIntBits(0.0f));
         }
+        vulkanModel.setVulkanKeyFrameData(new VulkanModel.VulkanKeyFrameData(skeletonOffset, numNodes, boneNodes.length,
+                vulkanKeyFrameClipList));
+        Logger.debug("Key frame data for model [{}] uses {} bytes", modelData.getModelId(),
+                (long) (dataBuffer.position() - startPos) * INT_LENGTH);
+    }
 
-        return vulkanMaterialList;
+    private void loadMaterial(TextureCache textureCache, TextureLoader textureLoader, ModelData.Material material,
+                              IntBuffer dataBuffer) {
+        EngineProperties engProps = EngineProperties.getInstance();
+        Texture defaultTexture = textureCache.getTexture(engProps.getDefaultTexturePath());
+        Texture flatNormalTexture = textureCache.getTexture(FLAT_NORMAL_TEXTURE_ID);
+        Texture metalRoughTexture = textureCache.getTexture(METAL_ROUGH_TEXTURE_ID);
+
+        textureCache.createTexture(textureLoader, material.texturePath(), VK_FORMAT_R8G8B8A8_SRGB, defaultTexture);
+        int textureIdx = textureCache.getPosition(material.texturePath());
+
+        textureCache.createTexture(textureLoader, material.normalMapPath(), VK_FORMAT_R8G8B8A8_UNORM, flatNormalTexture);
+        int normalMapIdx = textureCache.getPosition(material.normalMapPath());
+
+        textureCache.createTexture(textureLoader, material.metalRoughMap(), VK_FORMAT_R8G8B8A8_UNORM, metalRoughTexture);
+        int metalRoughMapIdx = textureCache.getPosition(material.metalRoughMap());
+
+        dataBuffer.put(Float.floatToRawIntBits(material.diffuseColor().x));
+        dataBuffer.put(Float.floatToRawIntBits(material.diffuseColor().y));
+        dataBuffer.put(Float.floatToRawIntBits(material.diffuseColor().z));
+        dataBuffer.put(Float.floatToRawIntBits(material.diffuseColor().w));
+        dataBuffer.put(textureIdx);
+        dataBuffer.put(normalMapIdx);
+        dataBuffer.put(metalRoughMapIdx);
+        dataBuffer.put(Float.floatToRawIntBits(material.roughnessFactor()));
+        dataBuffer.put(Float.floatToRawIntBits(material.metallicFactor()));
+        // Padding due to std430 alignment
+        dataBuffer.put(Float.floatToRawIntBits(0.0f));
+        dataBuffer.put(Float.floatToRawIntBits(0.0f));
+        dataBuffer.put(Float.floatToRawIntBits(0.0f));
     }
 
     private void loadMeshes(StgIntBuffer verticesStgBuffer, StgIntBuffer indicesStgBuffer, StgIntBuffer animWeightsStgBuffer,
-                            ModelData modelData, VulkanModel vulkanModel, List<VulkanModel.VulkanMaterial> vulkanMaterialList) {
+                            StgIntBuffer boundsStgBuffer, ModelData modelData, VulkanModel vulkanModel) {
         IntBuffer verticesData = verticesStgBuffer.getDataBuffer();
         IntBuffer indicesData = indicesStgBuffer.getDataBuffer();
         List<ModelData.MeshData> meshDataList = modelData.getMeshDataList();
@@ -350,25 +634,25 @@ public class GlobalBuffers {
             }
             int[] indices = meshData.indices();
 
-            int numElements = positions.length + normals.length + tangents.length + biTangents.length + textCoords.length;
-            int verticesSize = numElements * FLOAT_LENGTH;
+            boolean packedVertices = EngineProperties.getInstance().isPackedVertices();
+            int rows = positions.length / 3;
+            int verticesSize = rows * VertexBufferStructure.getSizeInBytes();
 
-            int localMaterialIdx = meshData.materialIdx();
-            int globalMaterialIdx = 0;
-            if (localMaterialIdx >= 0 && localMaterialIdx < vulkanMaterialList.size()) {
-                globalMaterialIdx = vulkanMaterialList.get(localMaterialIdx).globalMaterialIdx();
-            }
-            vulkanModel.addVulkanMesh(new VulkanModel.VulkanMesh(verticesSize, indices.length,
-                    verticesData.position() * INT_LENGTH, indicesData.position() * INT_LENGTH,
-                    globalMaterialIdx, animWeightsStgBuffer.getDataBuffer().position() * INT_LENGTH));
+            int verticesOffset = verticesStgBuffer.getDstOffset();
+            int indicesOffset = indicesStgBuffer.getDstOffset();
+            int weightsOffset = animWeightsStgBuffer.getDstOffset();
+            int boundsIdx = boundsStgBuffer.getDstOffset() / BOUNDS_SIZE;
 
-            int rows = positions.length / 3;
             for (int row = 0; row < rows; row++) {
                 int startPos = row * 3;
                 int startTextCoord = row * 2;
                 verticesData.put(Float.floatToRawIntBits(positions[startPos]));
                 verticesData.put(Float.floatToRawIntBits(positions[startPos + 1]));
                 verticesData.put(Float.floatToRawIntBits(positions[startPos + 2]));
+                if (packedVertices) {
+                    loadPackedVertex(normals, tangents, biTangents, textCoords, row, verticesData);
+                    continue;
+                }
                 verticesData.put(Float.floatToRawIntBits(normals[startPos]));
                 verticesData.put(Float.floatToRawIntBits(normals[startPos + 1]));
                 verticesData.put(Float.floatToRawIntBits(normals[startPos + 2]));
@@ -383,130 +667,504 @@ public class GlobalBuffers {
             }
 
             Arrays.stream(indices).forEach(indicesData::put);
+            List<VulkanModel.VulkanMeshLod> vulkanMeshLodList = new ArrayList<>();
+            for (int[] lodIndices : meshData.lodIndices()) {
+                vulkanMeshLodList.add(new VulkanModel.VulkanMeshLod(lodIndices.length, indicesStgBuffer.getDstOffset()));
+                Arrays.stream(lodIndices).forEach(indicesData::put);
+            }
+            loadBounds(meshData.bounds(), boundsStgBuffer.getDataBuffer());
+            vulkanModel.addVulkanMesh(new VulkanModel.VulkanMesh(verticesSize, indices.length, verticesOffset,
+                    indicesOffset, meshData.materialIdx(), weightsOffset, boundsIdx, vulkanMeshLodList));
 
             loadWeightsBuffer(modelData, animWeightsStgBuffer, meshCount);
             meshCount++;
         }
+
+        ModelData.Bounds bounds = modelData.getBounds();
+        vulkanModel.setBoundingSphere(bounds.center(), bounds.radius());
     }
 
-    public List<VulkanModel> loadModels(List<ModelData> modelDataList, TextureCache textureCache, CommandPool
-            commandPool, Queue queue) {
+    public List<VulkanModel> loadModels(List<ModelData> modelDataList, TextureCache textureCache, TextureLoader
+            textureLoader, BufferUploader bufferUploader, CommandPool commandPool, Queue queue) {
         List<VulkanModel> vulkanModelList = new ArrayList<>();
-        List<Texture> textureList = new ArrayList<>();
-
-        Device device = commandPool.getDevice();
-        CommandBuffer cmd = new CommandBuffer(commandPool, true, true);
 
-        StgIntBuffer verticesStgBuffer = new StgIntBuffer(device, verticesBuffer.getRequestedSize());
-        StgIntBuffer indicesStgBuffer = new StgIntBuffer(device, indicesBuffer.getRequestedSize());
-        StgIntBuffer materialsStgBuffer = new StgIntBuffer(device, materialsBuffer.getRequestedSize());
-        StgIntBuffer animJointMatricesStgBuffer = new StgIntBuffer(device, animJointMatricesBuffer.getRequestedSize());
-        StgIntBuffer animWeightsStgBuffer = new StgIntBuffer(device, animWeightsBuffer.getRequestedSize());
-
-        cmd.beginRecording();
+        // Reserve the ranges of all the models first, so each heap grows at most once per batch
+        List<MaterialRegistry.Entry> newMaterials = new ArrayList<>();
+        boolean firstLoad = defaultMaterial == null;
+        if (firstLoad) {
+            // Registered first so it gets index 0, which is used by meshes without a valid material
+            defaultMaterial = materialRegistry.register(new ModelData.Material());
+            newMaterials.add(defaultMaterial);
+        }
+        List<ModelAllocations> modelAllocationsList = new ArrayList<>();
+        for (ModelData modelData : modelDataList) {
+            if (vulkanModelMap.containsKey(modelData.getModelId())) {
+                throw new RuntimeException("Model [" + modelData.getModelId() + "] is already loaded");
+            }
+            modelAllocationsList.add(new ModelAllocations(
+                    allocate(verticesHeap, getVerticesSize(modelData)),
+                    allocate(indicesHeap, getIndicesSize(modelData)),
+                    registerMaterials(modelData.getMaterialList(), newMaterials),
+                    allocate(animJointMatricesHeap, getJointMatricesSize(modelData)),
+                    allocate(animWeightsHeap, getWeightsSize(modelData)),
+                    allocate(animKeyFramesHeap, getKeyFramesSize(modelData)),
+                    allocate(boundsHeap, modelData.getMeshDataList().size() * BOUNDS_SIZE)));
+        }
 
-        // Load a default material
-        List<ModelData.Material> defaultMaterialList = Collections.singletonList(new ModelData.Material());
-        loadMaterials(device, textureCache, materialsStgBuffer, defaultMaterialList, textureList);
+        resizeHeaps(textureCache, firstLoad, commandPool, queue);
+
+        // Data is written one model at a time, so host memory usage is bounded by the biggest model
+        StgIntBuffer verticesStgBuffer = new StgIntBuffer(verticesHeap);
+        StgIntBuffer indicesStgBuffer = new StgIntBuffer(indicesHeap);
+        StgIntBuffer materialsStgBuffer = new StgIntBuffer(materialsHeap);
+        StgIntBuffer animJointMatricesStgBuffer = new StgIntBuffer(animJointMatricesHeap);
+        StgIntBuffer animWeightsStgBuffer = new StgIntBuffer(animWeightsHeap);
+        StgIntBuffer animKeyFramesStgBuffer = new StgIntBuffer(animKeyFramesHeap);
+        StgIntBuffer boundsStgBuffer = new StgIntBuffer(boundsHeap);
+        List<StgIntBuffer> stgBuffers = List.of(verticesStgBuffer, indicesStgBuffer, materialsStgBuffer,
+                animJointMatricesStgBuffer, animWeightsStgBuffer, animKeyFramesStgBuffer, boundsStgBuffer);
+
+        for (MaterialRegistry.Entry entry : newMaterials) {
+            materialsStgBuffer.beginRegion(entry.getAllocation());
+            loadMaterial(textureCache, textureLoader, entry.getMaterial(), materialsStgBuffer.getDataBuffer());
+            materialsStgBuffer.endRegion();
+        }
+        materialsStgBuffer.upload(bufferUploader);
+        Logger.debug("Loaded {} new material(s), {} unique material(s) in use", newMaterials.size(),
+                materialRegistry.getNumMaterials());
 
-        for (ModelData modelData : modelDataList) {
+        for (int i = 0; i < modelDataList.size(); i++) {
+            ModelData modelData = modelDataList.get(i);
+            ModelAllocations modelAllocations = modelAllocationsList.get(i);
             VulkanModel vulkanModel = new VulkanModel(modelData.getModelId());
             vulkanModelList.add(vulkanModel);
-
-            List<VulkanModel.VulkanMaterial> vulkanMaterialList = loadMaterials(device, textureCache, materialsStgBuffer,
-                    modelData.getMaterialList(), textureList);
-            loadMeshes(verticesStgBuffer, indicesStgBuffer, animWeightsStgBuffer, modelData, vulkanModel, vulkanMaterialList);
+            // Shared with the allocations, so materials can be changed afterwards
+            vulkanModel.setGlobalMaterialIdxs(modelAllocations.materials());
+
+            verticesStgBuffer.beginRegion(modelAllocations.vertices());
+            indicesStgBuffer.beginRegion(modelAllocations.indices());
+            animWeightsStgBuffer.beginRegion(modelAllocations.weights());
+            boundsStgBuffer.beginRegion(modelAllocations.bounds());
+            loadMeshes(verticesStgBuffer, indicesStgBuffer, animWeightsStgBuffer, boundsStgBuffer, modelData, vulkanModel);
+            verticesStgBuffer.endRegion();
+            indicesStgBuffer.endRegion();
+            animWeightsStgBuffer.endRegion();
+            boundsStgBuffer.endRegion();
+
+            animJointMatricesStgBuffer.beginRegion(modelAllocations.jointMatrices());
             loadAnimationData(modelData, vulkanModel, animJointMatricesStgBuffer);
-        }
+            animJointMatricesStgBuffer.endRegion();
 
-        // We need to ensure that at least we have one texture
-        if (textureList.isEmpty()) {
-            EngineProperties engineProperties = EngineProperties.getInstance();
-            Texture defaultTexture = textureCache.createTexture(device, engineProperties.getDefaultTexturePath(),
-                    VK_FORMAT_R8G8B8A8_SRGB);
-            textureList.add(defaultTexture);
-        }
+            animKeyFramesStgBuffer.beginRegion(modelAllocations.keyFrames());
+            loadKeyFrameData(modelData, vulkanModel, animKeyFramesStgBuffer);
+            animKeyFramesStgBuffer.endRegion();
 
-        materialsStgBuffer.recordTransferCommand(cmd, materialsBuffer);
-        verticesStgBuffer.recordTransferCommand(cmd, verticesBuffer);
-        indicesStgBuffer.recordTransferCommand(cmd, indicesBuffer);
-        animJointMatricesStgBuffer.recordTransferCommand(cmd, animJointMatricesBuffer);
-        animWeightsStgBuffer.recordTransferCommand(cmd, animWeightsBuffer);
-        textureList.forEach(t -> t.recordTextureTransition(cmd));
-        cmd.endRecording();
+            stgBuffers.forEach(b -> b.upload(bufferUploader));
 
-        cmd.submitAndWait(device, queue);
-        cmd.cleanup();
+            vulkanModelMap.put(vulkanModel.getModelId(), vulkanModel);
+            modelAllocationsMap.put(vulkanModel.getModelId(), modelAllocations);
+            // Entities may have been added to the scene before the model was loaded
+            uncountedModels.add(vulkanModel.getModelId());
+            if (!vulkanModel.hasAnimations()) {
+                numIndirectCommands += getNumCommands(vulkanModel);
+                buffersVersion++;
+            }
+        }
 
-        verticesStgBuffer.cleanup();
-        indicesStgBuffer.cleanup();
-        materialsStgBuffer.cleanup();
-        animJointMatricesStgBuffer.cleanup();
-        animWeightsStgBuffer.cleanup();
-        textureList.forEach(Texture::cleanupStgBuffer);
+        bufferUploader.flush();
+        stgBuffers.forEach(StgIntBuffer::cleanup);
 
         return vulkanModelList;
     }
 
-    private void loadStaticEntities(List<VulkanModel> vulkanModelList, Scene scene, CommandPool commandPool,
-                                    Queue queue, int numSwapChainImages) {
-        numIndirectCommands = 0;
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            Device device = commandPool.getDevice();
-            CommandBuffer cmd = new CommandBuffer(commandPool, true, true);
-
-            List<VkDrawIndexedIndirectCommand> indexedIndirectCommandList = new ArrayList<>();
-            int numInstances = 0;
-            int firstInstance = 0;
-            for (VulkanModel vulkanModel : vulkanModelList) {
-                List<Entity> entities = scene.getEntitiesByModelId(vulkanModel.getModelId());
-                if (entities.isEmpty() || vulkanModel.hasAnimations()) {
-                    continue;
-                }
-                for (VulkanModel.VulkanMesh vulkanMesh : vulkanModel.getVulkanMeshList()) {
-                    VkDrawIndexedIndirectCommand indexedIndirectCommand = VkDrawIndexedIndirectCommand.calloc(stack);
-                    indexedIndirectCommand.indexCount(vulkanMesh.numIndices());
-                    indexedIndirectCommand.firstIndex(vulkanMesh.indicesOffset() / INT_LENGTH);
-                    indexedIndirectCommand.instanceCount(entities.size());
-                    indexedIndirectCommand.vertexOffset(vulkanMesh.verticesOffset() / VertexBufferStructure.SIZE_IN_BYTES);
+    private void loadPackedVertex(float[] normals, float[] tangents, float[] biTangents, float[] textCoords, int row,
+                                  IntBuffer verticesData) {
+        int startPos = row * 3;
+        float nx = normals[startPos];
+        float ny = normals[startPos + 1];
+        float nz = normals[startPos + 2];
+        float tx = tangents[startPos];
+        float ty = tangents[startPos + 1];
+        float tz = tangents[startPos + 2];
+        // Bitangent is rebuilt as cross(normal, tangent), only its orientation needs to be stored
+        float handedness = (ny * tz - nz * ty) * biTangents[startPos] + (nz * tx - nx * tz) * biTangents[startPos + 1] +
+                (nx * ty - ny * tx) * biTangents[startPos + 2];
+        verticesData.put(VertexBufferStructure.packNormal(nx, ny, nz));
+        verticesData.put(VertexBufferStructure.packTangent(tx, ty, tz, handedness >= 0));
+        verticesData.put(VertexBufferStructure.packTextCoords(textCoords[row * 2], textCoords[row * 2 + 1]));
+    }
+
+    private void loadPlaceholderTextures(Device device, TextureCache textureCache, List<Texture> textureList) {
+        EngineProperties engProps = EngineProperties.getInstance();
+        textureList.add(textureCache.createTexture(device, engProps.getDefaultTexturePath(), VK_FORMAT_R8G8B8A8_SRGB));
+        textureList.add(textureCache.createTexture(device, FLAT_NORMAL_TEXTURE_ID, FLAT_NORMAL_RGBA, VK_FORMAT_R8G8B8A8_UNORM));
+        textureList.add(textureCache.createTexture(device, METAL_ROUGH_TEXTURE_ID, METAL_ROUGH_RGBA, VK_FORMAT_R8G8B8A8_UNORM));
+    }
+
+    private void loadStaticInstanceData(Scene scene, List<VulkanModel> vulkanModels, List<CascadeShadow> cascadeShadows,
+                                        int currentSwapChainIdx) {
+        numTriangles = numAnimTriangles;
+        if (numIndirectCommands == 0) {
+            return;
+        }
+        candidateSlotsMap.values().forEach(BitSet::clear);
+        CascadeShadow.collectCasters(cascadeShadows, scene, this::addCandidateEntity);
+        EngineProperties engProps = EngineProperties.getInstance();
+        float tanHalfFov = (float) Math.tan(engProps.getFov() / 2);
+        float lodScreenCoverage = engProps.getLodScreenCoverage();
+        Vector3f cameraPos = scene.getCamera().getPosition();
+
+        VulkanBuffer instanceBuffer = instanceDataBuffers[currentSwapChainIdx];
+        VulkanBuffer indirectBuffer = indirectBuffers[currentSwapChainIdx];
+        ByteBuffer dataBuffer = MemoryUtil.memByteBuffer(instanceBuffer.map(), (int) instanceBuffer.getRequestedSize());
+        VkDrawIndexedIndirectCommand.Buffer indCommandBuffer = new VkDrawIndexedIndirectCommand.Buffer(
+                MemoryUtil.memByteBuffer(indirectBuffer.map(), (int) indirectBuffer.getRequestedSize()));
+        VulkanBuffer commandBoundsBuffer = commandBoundsBuffers[currentSwapChainIdx];
+        IntBuffer commandBoundsData = MemoryUtil.memIntBuffer(commandBoundsBuffer.map(), numIndirectCommands);
+        int maxInstances = (int) instanceBuffer.getRequestedSize() / INSTANCE_DATA_SIZE;
+        InstanceSlots slots = instanceSlots[currentSwapChainIdx];
+        int firstInstance = 0;
+        int numDropped = 0;
+        for (VulkanModel vulkanModel : vulkanModels) {
+            if (vulkanModel.hasAnimations()) {
+                continue;
+            }
+            // Commands have fixed positions, models without entities just get no instances. Candidates are visited
+            // in slot order, so consecutive entities are copied from the transform store together
+            TransformStore store = scene.getTransformStore(vulkanModel.getModelId());
+            BitSet candidates = candidateSlotsMap.get(vulkanModel.getModelId());
+            int firstCandidate = store != null && candidates != null ? candidates.nextSetBit(0) : -1;
+            int numEntities = store != null ? store.getSize() : 0;
+            if (entityLods.length < numEntities) {
+                entityLods = new int[numEntities];
+            }
+            int maxLod = vulkanModel.getNumLods() - 1;
+            for (int i = firstCandidate; i >= 0; i = candidates.nextSetBit(i + 1)) {
+                entityLods[i] = maxLod > 0 ? selectLod(store, i, vulkanModel, cameraPos, tanHalfFov,
+                        lodScreenCoverage, maxLod) : 0;
+            }
+
+            for (VulkanModel.VulkanMesh vulkanMesh : vulkanModel.getVulkanMeshList()) {
+                List<VulkanModel.VulkanMeshLod> vulkanMeshLodList = vulkanMesh.vulkanMeshLodList();
+                int numLods = vulkanMeshLodList.size() + 1;
+                for (int lod = 0; lod < numLods; lod++) {
+                    int materialIdx = vulkanModel.getGlobalMaterialIdx(vulkanMesh);
+                    int instanceCount = 0;
+                    int runSlot = 0;
+                    int runInstance = 0;
+                    int runLength = 0;
+                    for (int i = firstCandidate; i >= 0; i = candidates.nextSetBit(i + 1)) {
+                        // Meshes may have less levels of detail than their model
+                        if (Math.min(entityLods[i], numLods - 1) != lod) {
+                            continue;
+                        }
+                        if (firstInstance + instanceCount == maxInstances) {
+                            numDropped++;
+                            continue;
+                        }
+                        int instance = firstInstance + instanceCount;
+                        instanceCount++;
+                        if (!slots.update(instance, store.getEntity(i), store.getVersion(i), materialIdx)) {
+                            copyInstances(store, runSlot, runInstance, runLength, materialIdx, dataBuffer);
+                            runLength = 0;
+                        } else if (runLength > 0 && runSlot + runLength == i && runInstance + runLength == instance) {
+                            runLength++;
+                        } else {
+                            copyInstances(store, runSlot, runInstance, runLength, materialIdx, dataBuffer);
+                            runSlot = i;
+                            runInstance = instance;
+                            runLength = 1;
+                        }
+                    }
+                    copyInstances(store, runSlot, runInstance, runLength, materialIdx, dataBuffer);
+
+                    int numIndices = lod == 0 ? vulkanMesh.numIndices() : vulkanMeshLodList.get(lod - 1).numIndices();
+                    int indicesOffset = lod == 0 ? vulkanMesh.indicesOffset() : vulkanMeshLodList.get(lod - 1).indicesOffset();
+                    VkDrawIndexedIndirectCommand indexedIndirectCommand = indCommandBuffer.get();
+                    indexedIndirectCommand.indexCount(numIndices);
+                    indexedIndirectCommand.firstIndex(indicesOffset / INT_LENGTH);
+                    indexedIndirectCommand.instanceCount(instanceCount);
+                    indexedIndirectCommand.vertexOffset(vulkanMesh.verticesOffset() / VertexBufferStructure.getSizeInBytes());
                     indexedIndirectCommand.firstInstance(firstInstance);
-                    indexedIndirectCommandList.add(indexedIndirectCommand);
+                    commandBoundsData.put(vulkanMesh.boundsIdx());
 
-                    numIndirectCommands++;
-                    firstInstance += entities.size();
-                    numInstances += entities.size();
+                    firstInstance += instanceCount;
+                    numTriangles += (long) numIndices / 3 * instanceCount;
                 }
             }
-            if (numIndirectCommands > 0) {
-                cmd.beginRecording();
+        }
+        if (numDropped > 0) {
+            // Capacity follows the entities of the loaded models, grow it anyway so the next frames draw them all
+            staticInstancesCapacity = Math.max(staticInstancesCapacity * 2, maxInstances + numDropped);
+            buffersVersion++;
+            Logger.warn("Dropped {} static instances, capacity grown to {}", numDropped, staticInstancesCapacity);
+        }
+    }
+
+    /**
+     * Makes sure that the buffers of a frame match the current capacities and applies the pending changes to its
+     * indirect commands. It must be called once the frame is no longer in use by the GPU. Returns true if the buffers
+     * have been recreated, in which case the command buffers of the frame need to be recorded again.
+     */
+    public boolean prepareFrame(int frameIdx, int numSwapChainImages) {
+        if (frameVersions == null || frameVersions.length != numSwapChainImages) {
+            // Number of images only changes after waiting for the device to be idle
+            pendingReleases.forEach(pendingRelease -> pendingRelease.release().run());
+            pendingReleases.clear();
+            cleanupFrameBuffers();
+            indirectBuffers = new VulkanBuffer[numSwapChainImages];
+            instanceDataBuffers = new VulkanBuffer[numSwapChainImages];
+            commandBoundsBuffers = new VulkanBuffer[numSwapChainImages];
+            culledIndirectBuffers = new VulkanBuffer[numSwapChainImages];
+            culledInstanceDataBuffers = new VulkanBuffer[numSwapChainImages];
+            animIndirectBuffers = new VulkanBuffer[numSwapChainImages];
+            animInstanceDataBuffers = new VulkanBuffer[numSwapChainImages];
+            instanceSlots = new InstanceSlots[numSwapChainImages];
+            animInstanceSlots = new InstanceSlots[numSwapChainImages];
+            dirtyAnimCommands = new BitSet[numSwapChainImages];
+            frameVersions = new int[numSwapChainImages];
+            for (int i = 0; i < numSwapChainImages; i++) {
+                dirtyAnimCommands[i] = new BitSet();
+                frameVersions[i] = -1;
+            }
+        }
 
-                StgByteBuffer indirectStgBuffer = new StgByteBuffer(device, (long) IND_COMMAND_STRIDE * numIndirectCommands);
-                if (indirectBuffer != null) {
-                    indirectBuffer.cleanup();
+        releaseCompleted(frameIdx);
+        BitSet dirtyCommands = dirtyAnimCommands[frameIdx];
+        if (frameVersions[frameIdx] == buffersVersion) {
+            VulkanBuffer animIndirectBuffer = animIndirectBuffers[frameIdx];
+            if (animIndirectBuffer != null && !dirtyCommands.isEmpty()) {
+                IntBuffer data = MemoryUtil.memIntBuffer(animIndirectBuffer.map(),
+                        (int) animIndirectBuffer.getRequestedSize() / INT_LENGTH);
+                for (int i = dirtyCommands.nextSetBit(0); i >= 0; i = dirtyCommands.nextSetBit(i + 1)) {
+                    data.put(i * ANIM_COMMAND_INTS, animCommands, i * ANIM_COMMAND_INTS, ANIM_COMMAND_INTS);
                 }
-                indirectBuffer = new VulkanBuffer(device, indirectStgBuffer.stgVulkanBuffer.getRequestedSize(),
-                        VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT,
-                        VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, 0);
-                ByteBuffer dataBuffer = indirectStgBuffer.getDataBuffer();
-                VkDrawIndexedIndirectCommand.Buffer indCommandBuffer = new VkDrawIndexedIndirectCommand.Buffer(dataBuffer);
+            }
+            dirtyCommands.clear();
+            return false;
+        }
+
+        int numInstances = numIndirectCommands > 0 ? Math.max(1, staticInstancesCapacity) : 0;
+        // Static commands and instances are also the input of the culling pass
+        indirectBuffers[frameIdx] = recreateFrameBuffer(indirectBuffers[frameIdx],
+                (long) IND_COMMAND_STRIDE * numIndirectCommands, VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT |
+                        VK_BUFFER_USAGE_STORAGE_BUFFER_BIT);
+        instanceDataBuffers[frameIdx] = recreateFrameBuffer(instanceDataBuffers[frameIdx],
+                (long) INSTANCE_DATA_SIZE * numInstances, VK_BUFFER_USAGE_VERTEX_BUFFER_BIT |
+                        VK_BUFFER_USAGE_STORAGE_BUFFER_BIT);
+        commandBoundsBuffers[frameIdx] = recreateFrameBuffer(commandBoundsBuffers[frameIdx],
+                (long) INT_LENGTH * numIndirectCommands, VK_BUFFER_USAGE_STORAGE_BUFFER_BIT);
+        culledIndirectBuffers[frameIdx] = recreateFrameBuffer(culledIndirectBuffers[frameIdx],
+                numIndirectCommands > 0 ? CULLED_COMMANDS_OFFSET + (long) IND_COMMAND_STRIDE * numIndirectCommands : 0,
+                VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT | VK_BUFFER_USAGE_STORAGE_BUFFER_BIT |
+                        VK_BUFFER_USAGE_TRANSFER_DST_BIT, VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT);
+        culledInstanceDataBuffers[frameIdx] = recreateFrameBuffer(culledInstanceDataBuffers[frameIdx],
+                (long) INSTANCE_DATA_SIZE * numInstances, VK_BUFFER_USAGE_VERTEX_BUFFER_BIT |
+                        VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT);
+        int numAnimCommands = animCommandsAllocator.getCapacity();
+        animIndirectBuffers[frameIdx] = recreateFrameBuffer(animIndirectBuffers[frameIdx],
+                (long) IND_COMMAND_STRIDE * numAnimCommands, VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT);
+        animInstanceDataBuffers[frameIdx] = recreateFrameBuffer(animInstanceDataBuffers[frameIdx],
+                (long) INSTANCE_DATA_SIZE * numAnimCommands, VK_BUFFER_USAGE_VERTEX_BUFFER_BIT);
+        // New buffers have undefined contents, so every instance has to be written
+        instanceSlots[frameIdx] = new InstanceSlots(numInstances);
+        animInstanceSlots[frameIdx] = new InstanceSlots(numAnimCommands);
+        VulkanBuffer animIndirectBuffer = animIndirectBuffers[frameIdx];
+        if (animIndirectBuffer != null) {
+            MemoryUtil.memIntBuffer(animIndirectBuffer.map(), numAnimCommands * ANIM_COMMAND_INTS)
+                    .put(0, animCommands, 0, numAnimCommands * ANIM_COMMAND_INTS);
+        }
+        dirtyCommands.clear();
+        frameVersions[frameIdx] = buffersVersion;
+        return true;
+    }
 
-                indexedIndirectCommandList.forEach(indCommandBuffer::put);
+    private VulkanBuffer recreateFrameBuffer(VulkanBuffer buffer, long size, int usage) {
+        // Frame buffers are written every frame, so they stay mapped until they are destroyed
+        return recreateFrameBuffer(buffer, size, usage, VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT);
+    }
 
-                if (instanceDataBuffers != null) {
-                    Arrays.asList(instanceDataBuffers).forEach(VulkanBuffer::cleanup);
-                }
-                instanceDataBuffers = new VulkanBuffer[numSwapChainImages];
-                for (int i = 0; i < numSwapChainImages; i++) {
-                    instanceDataBuffers[i] = new VulkanBuffer(device, (long) numInstances * (MAT4X4_SIZE + INT_LENGTH),
-                            VK_BUFFER_USAGE_VERTEX_BUFFER_BIT, VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT, 0);
-                }
+    private VulkanBuffer recreateFrameBuffer(VulkanBuffer buffer, long size, int usage, int memoryUsage) {
+        if (buffer != null) {
+            buffer.cleanup();
+        }
+        return size > 0 ? new VulkanBuffer(device, size, usage, memoryUsage, 0) : null;
+    }
+
+    private int[] registerMaterials(List<ModelData.Material> materialList, List<MaterialRegistry.Entry> newMaterials) {
+        int[] materialIdxs = new int[materialList.size()];
+        for (int i = 0; i < materialIdxs.length; i++) {
+            MaterialRegistry.Entry entry = materialRegistry.register(materialList.get(i));
+            if (entry.getRefCount() == 1) {
+                newMaterials.add(entry);
+            }
+            materialIdxs[i] = entry.getIdx();
+        }
+        return materialIdxs;
+    }
+
+    private void releaseAfterFrames(Runnable release) {
+        if (frameVersions == null) {
+            release.run();
+            return;
+        }
+        BitSet pendingFrames = new BitSet();
+        pendingFrames.set(0, frameVersions.length);
+        pendingReleases.add(new PendingRelease(release, pendingFrames));
+    }
+
+    private void releaseCompleted(int frameIdx) {
+        Iterator<PendingRelease> it = pendingReleases.iterator();
+        while (it.hasNext()) {
+            PendingRelease pendingRelease = it.next();
+            pendingRelease.pendingFrames().clear(frameIdx);
+            if (pendingRelease.pendingFrames().isEmpty()) {
+                pendingRelease.release().run();
+                it.remove();
+            }
+        }
+    }
+
+    private void removeAnimEntity(Entity entity) {
+        VulkanAnimEntity vulkanAnimEntity = vulkanAnimEntityMap.remove(entity.getId());
+        if (vulkanAnimEntity == null) {
+            return;
+        }
+        List<VulkanAnimEntity.VulkanAnimMesh> vulkanAnimMeshList = vulkanAnimEntity.getVulkanAnimMeshList();
+        int numMeshes = vulkanAnimMeshList.size();
+        int firstCommand = vulkanAnimEntity.getFirstCommand();
+        int verticesSize = 0;
+        for (int i = 0; i < numMeshes; i++) {
+            VulkanModel.VulkanMesh vulkanMesh = vulkanAnimMeshList.get(i).vulkanMesh();
+            setAnimCommand(firstCommand + i, 0, 0, 0, 0);
+            verticesSize += vulkanMesh.verticesSize();
+            numAnimTriangles -= vulkanMesh.numIndices() / 3;
+        }
+        animCommandsAllocator.free(firstCommand, numMeshes);
+        if (numMeshes > 0) {
+            animVerticesAllocator.free(vulkanAnimMeshList.get(0).meshOffset(), verticesSize);
+        }
+        if (vulkanAnimEntity.getSampledJointsOffset() >= 0) {
+            animSampledJointsAllocator.free(vulkanAnimEntity.getSampledJointsOffset(),
+                    getSampledJointsSize(vulkanAnimEntity.getVulkanModel()));
+        }
+    }
+
+    private boolean resizeAnimBuffers(CommandPool commandPool, Queue queue) {
+        int verticesSize = animVerticesAllocator.getCapacity();
+        int sampledJointsSize = animSampledJointsAllocator.getCapacity();
+        boolean resizeVertices = verticesSize > 0 && (animVerticesBuffer == null ||
+                animVerticesBuffer.getRequestedSize() < verticesSize);
+        boolean resizeSampledJoints = sampledJointsSize > 0 && (animSampledJointsBuffer == null ||
+                animSampledJointsBuffer.getRequestedSize() < sampledJointsSize);
+        if (!resizeVertices && !resizeSampledJoints) {
+            return false;
+        }
+
+        // Buffers shared by all frames can only be replaced when idle, capacities double so this seldom happens
+        Logger.debug("Resizing animation buffers, vertices {} bytes, sampled joints {} bytes", verticesSize,
+                sampledJointsSize);
+        device.waitIdle();
+        List<VulkanBuffer> oldBuffers = new ArrayList<>();
+        CommandBuffer cmd = new CommandBuffer(commandPool, true, true);
+        cmd.beginRecording();
+        if (resizeVertices) {
+            animVerticesBuffer = resizeBuffer(cmd, animVerticesBuffer, verticesSize, VK_BUFFER_USAGE_VERTEX_BUFFER_BIT |
+                    VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, oldBuffers);
+        }
+        if (resizeSampledJoints) {
+            animSampledJointsBuffer = resizeBuffer(cmd, animSampledJointsBuffer, sampledJointsSize,
+                    VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, oldBuffers);
+        }
+        cmd.endRecording();
+        cmd.submitAndWait(device, queue);
+        cmd.cleanup();
+        oldBuffers.forEach(VulkanBuffer::cleanup);
+        buffersVersion++;
+        return true;
+    }
 
-                indirectStgBuffer.recordTransferCommand(cmd, indirectBuffer);
+    private VulkanBuffer resizeBuffer(CommandBuffer cmd, VulkanBuffer buffer, long size, int usage,
+                                      List<VulkanBuffer> oldBuffers) {
+        VulkanBuffer newBuffer = new VulkanBuffer(device, size, usage | VK_BUFFER_USAGE_TRANSFER_SRC_BIT |
+                VK_BUFFER_USAGE_TRANSFER_DST_BIT, VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, 0);
+        if (buffer != null) {
+            // Keep the contents of entities whose animation is not running, since they are not updated every frame
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                VkBufferCopy.Buffer copyRegion = VkBufferCopy.calloc(1, stack)
+                        .srcOffset(0).dstOffset(0).size(buffer.getRequestedSize());
+                vkCmdCopyBuffer(cmd.getVkCommandBuffer(), buffer.getBuffer(), newBuffer.getBuffer(), copyRegion);
+            }
+            oldBuffers.add(buffer);
+        }
+        return newBuffer;
+    }
 
-                cmd.endRecording();
-                cmd.submitAndWait(device, queue);
-                cmd.cleanup();
-                indirectStgBuffer.cleanup();
+    private void resizeHeaps(TextureCache textureCache, boolean createPlaceholders, CommandPool commandPool,
+                             Queue queue) {
+        List<BufferHeap> resizedHeaps = new ArrayList<>();
+        for (BufferHeap heap : List.of(verticesHeap, indicesHeap, materialsHeap, animJointMatricesHeap, animWeightsHeap,
+                animKeyFramesHeap, boundsHeap)) {
+            if (heap.needsResize()) {
+                resizedHeaps.add(heap);
+            }
+        }
+        if (!createPlaceholders && resizedHeaps.isEmpty()) {
+            return;
+        }
+
+        // Heap buffers are shared by all the frames, so they can only be replaced when the device is idle
+        device.waitIdle();
+        List<Texture> textureList = new ArrayList<>();
+        List<VulkanBuffer> oldBuffers = new ArrayList<>();
+        CommandBuffer cmd = new CommandBuffer(commandPool, true, true);
+        cmd.beginRecording();
+        resizedHeaps.forEach(heap -> oldBuffers.add(heap.recordResize(cmd)));
+        if (createPlaceholders) {
+            loadPlaceholderTextures(device, textureCache, textureList);
+            textureList.forEach(t -> t.recordTextureTransition(cmd));
+        }
+        cmd.endRecording();
+
+        // Contents must have been moved to the grown buffers before the new data is copied
+        cmd.submitAndWait(device, queue);
+        cmd.cleanup();
+        oldBuffers.forEach(VulkanBuffer::cleanup);
+        textureList.forEach(Texture::cleanupStgBuffer);
+        heapsVersion++;
+    }
+
+    private int selectLod(TransformStore store, int slot, VulkanModel vulkanModel, Vector3f cameraPos,
+                          float tanHalfFov, float lodScreenCoverage, int maxLod) {
+        store.getModelMatrix(slot, lodMatrix).transformPosition(vulkanModel.getBoundingCenter(), lodCenter);
+        // Scale is taken from the world matrix, since it includes the one of the ancestors
+        lodMatrix.getScale(lodScale);
+        float radius = vulkanModel.getBoundingRadius() * lodScale.get(lodScale.maxComponent());
+        float distance = lodCenter.distance(cameraPos);
+        if (distance <= radius) {
+            return 0;
+        }
+        // Fraction of half the screen height covered by the bounding sphere, each level halves the required coverage
+        float coverage = radius / (distance * tanHalfFov);
+        int lod = 0;
+        float threshold = lodScreenCoverage;
+        while (lod < maxLod && coverage < threshold) {
+            lod++;
+            threshold *= 0.5f;
+        }
+        return lod;
+    }
+
+    private void setAnimCommand(int idx, int indexCount, int instanceCount, int firstIndex, int vertexOffset) {
+        int pos = idx * ANIM_COMMAND_INTS;
+        animCommands[pos] = indexCount;
+        animCommands[pos + 1] = instanceCount;
+        animCommands[pos + 2] = firstIndex;
+        animCommands[pos + 3] = vertexOffset;
+        animCommands[pos + 4] = idx;
+        if (dirtyAnimCommands != null) {
+            for (BitSet dirtyCommands : dirtyAnimCommands) {
+                dirtyCommands.set(idx);
             }
         }
     }
@@ -537,52 +1195,234 @@ public class GlobalBuffers {
         }
     }
 
-    private static abstract class StgBuffer {
-        protected final VulkanBuffer stgVulkanBuffer;
+    /**
+     * Releases the geometry, materials and animation data of a model, the ranges will be reused by models loaded later.
+     * Animated entities of the model stop being rendered. Ranges are freed once the frames in flight have finished.
+     */
+    public void unloadModel(String modelId) {
+        VulkanModel vulkanModel = vulkanModelMap.remove(modelId);
+        if (vulkanModel == null) {
+            Logger.warn("Model [{}] is not loaded", modelId);
+            return;
+        }
+        if (vulkanModel.hasAnimations()) {
+            List<Entity> entities = new ArrayList<>();
+            for (VulkanAnimEntity vulkanAnimEntity : vulkanAnimEntityMap.values()) {
+                if (vulkanAnimEntity.getVulkanModel() == vulkanModel) {
+                    entities.add(vulkanAnimEntity.getEntity());
+                }
+            }
+            entities.forEach(this::removeAnimEntity);
+        } else {
+            numIndirectCommands -= getNumCommands(vulkanModel);
+            Integer numInstances = modelInstancesMap.remove(modelId);
+            numStaticInstances -= numInstances != null ? numInstances : 0;
+            buffersVersion++;
+        }
+        uncountedModels.remove(modelId);
+        ModelAllocations modelAllocations = modelAllocationsMap.remove(modelId);
+        releaseAfterFrames(() -> modelAllocations.free(materialRegistry));
+    }
 
-        public StgBuffer(Device device, long size) {
-            stgVulkanBuffer = new VulkanBuffer(device, size, VK_BUFFER_USAGE_TRANSFER_SRC_BIT, VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT, VK_MEMORY_PROPERTY_HOST_COHERENT_BIT);
+    /**
+     * Applies the entities added to or removed from the scene since the last call, so the cost depends on the number
+     * of changed entities instead of the size of the scene. Returns true if the buffers shared by all the frames have
+     * been reallocated, which requires waiting for the device to be idle.
+     */
+    public boolean updateEntities(Scene scene, CommandPool commandPool, Queue queue) {
+        for (Entity entity : scene.getRemovedEntities()) {
+            VulkanModel vulkanModel = vulkanModelMap.get(entity.getModelId());
+            if (vulkanModel == null || uncountedModels.contains(entity.getModelId())) {
+                continue;
+            }
+            if (vulkanModel.hasAnimations()) {
+                removeAnimEntity(entity);
+            } else {
+                addStaticInstances(entity.getModelId(), -vulkanModel.getVulkanMeshList().size());
+            }
+        }
+        for (Entity entity : scene.getAddedEntities()) {
+            VulkanModel vulkanModel = vulkanModelMap.get(entity.getModelId());
+            if (vulkanModel == null || uncountedModels.contains(entity.getModelId())) {
+                continue;
+            }
+            addEntity(entity, vulkanModel);
         }
+        scene.clearEntityChanges();
+        // Changes of entities whose model was not loaded yet were skipped, so all the entities of new models are added
+        for (String modelId : uncountedModels) {
+            List<Entity> entities = scene.getEntitiesByModelId(modelId);
+            if (entities != null) {
+                VulkanModel vulkanModel = vulkanModelMap.get(modelId);
+                entities.forEach(entity -> addEntity(entity, vulkanModel));
+            }
+        }
+        uncountedModels.clear();
 
-        public void cleanup() {
-            stgVulkanBuffer.unMap();
-            stgVulkanBuffer.cleanup();
+        if (numStaticInstances > staticInstancesCapacity) {
+            staticInstancesCapacity = Math.max(numStaticInstances, staticInstancesCapacity * 2);
+            buffersVersion++;
         }
+        return resizeAnimBuffers(commandPool, queue);
+    }
 
-        public void recordTransferCommand(CommandBuffer cmd, VulkanBuffer dstBuffer) {
+    /**
+     * Replaces the parameters of a material of a loaded model through a staged write of a new entry, or by moving it to
+     * an identical one. The previous entry is released once the frames in flight have finished.
+     */
+    public void updateMaterial(String modelId, int materialIdx, ModelData.Material material, TextureCache textureCache,
+                               TextureLoader textureLoader, BufferUploader bufferUploader, CommandPool commandPool,
+                               Queue queue) {
+        ModelAllocations modelAllocations = modelAllocationsMap.get(modelId);
+        if (modelAllocations == null || materialIdx < 0 || materialIdx >= modelAllocations.materials().length) {
+            throw new RuntimeException("Model [" + modelId + "] is not loaded or has no material [" + materialIdx + "]");
+        }
+        int[] materials = modelAllocations.materials();
+        int prevMaterialIdx = materials[materialIdx];
+        MaterialRegistry.Entry entry = materialRegistry.update(prevMaterialIdx, material);
+        if (entry.getIdx() == prevMaterialIdx) {
+            return;
+        }
+        if (entry.getRefCount() == 1) {
+            resizeHeaps(textureCache, false, commandPool, queue);
             try (MemoryStack stack = MemoryStack.stackPush()) {
-                VkBufferCopy.Buffer copyRegion = VkBufferCopy.calloc(1, stack)
-                        .srcOffset(0).dstOffset(0).size(stgVulkanBuffer.getRequestedSize());
-                vkCmdCopyBuffer(cmd.getVkCommandBuffer(), stgVulkanBuffer.getBuffer(), dstBuffer.getBuffer(), copyRegion);
+                ByteBuffer data = stack.malloc(MATERIAL_SIZE);
+                loadMaterial(textureCache, textureLoader, entry.getMaterial(), data.asIntBuffer());
+                bufferUploader.upload(data, materialsHeap.getBuffer(), entry.getAllocation().offset());
             }
+            bufferUploader.flush();
         }
+        // Meshes of the model read the same array, instances are written with the new entry in the next frames
+        materials[materialIdx] = entry.getIdx();
+        releaseAfterFrames(() -> materialRegistry.release(prevMaterialIdx));
     }
 
-    private static class StgByteBuffer extends StgBuffer {
-        private final ByteBuffer dataBuffer;
+    private void writeInstance(InstanceSlots slots, int slot, Entity entity, int materialIdx, ByteBuffer dataBuffer) {
+        if (!slots.update(slot, entity, entity.getTransformVersion(), materialIdx)) {
+            return;
+        }
+        int pos = slot * INSTANCE_DATA_SIZE;
+        entity.getModelMatrix(lodMatrix).get(pos, dataBuffer);
+        dataBuffer.putInt(pos + MAT4X4_SIZE, materialIdx);
+        numInstancesWritten++;
+    }
 
-        public StgByteBuffer(Device device, long size) {
-            super(device, size);
-            long mappedMemory = stgVulkanBuffer.map();
-            dataBuffer = MemoryUtil.memByteBuffer(mappedMemory, (int) stgVulkanBuffer.getRequestedSize());
+    /**
+     * Keeps track of the contents of the instance slots of a frame buffer, so only the stale ones are written.
+     */
+    private static class InstanceSlots {
+        private final Entity[] entities;
+        private final int[] materials;
+        private final int[] transformVersions;
+
+        public InstanceSlots(int numSlots) {
+            entities = new Entity[numSlots];
+            materials = new int[numSlots];
+            transformVersions = new int[numSlots];
         }
 
-        public ByteBuffer getDataBuffer() {
-            return dataBuffer;
+        /**
+         * Returns true if the slot does not hold the current transform of the entity with the material, recording
+         * that it will be written.
+         */
+        public boolean update(int slot, Entity entity, int transformVersion, int materialIdx) {
+            if (entities[slot] == entity && transformVersions[slot] == transformVersion && materials[slot] == materialIdx) {
+                return false;
+            }
+            entities[slot] = entity;
+            materials[slot] = materialIdx;
+            transformVersions[slot] = transformVersion;
+            return true;
         }
     }
 
-    private static class StgIntBuffer extends StgBuffer {
-        private final IntBuffer dataBuffer;
+    private record ModelAllocations(BufferHeap.Allocation vertices, BufferHeap.Allocation indices, int[] materials,
+                                    BufferHeap.Allocation jointMatrices, BufferHeap.Allocation weights,
+                                    BufferHeap.Allocation keyFrames, BufferHeap.Allocation bounds) {
+        public void free(MaterialRegistry materialRegistry) {
+            for (int materialIdx : materials) {
+                materialRegistry.release(materialIdx);
+            }
+            for (BufferHeap.Allocation allocation : new BufferHeap.Allocation[]{vertices, indices, jointMatrices, weights,
+                    keyFrames, bounds}) {
+                if (allocation != null) {
+                    allocation.free();
+                }
+            }
+        }
+    }
 
-        public StgIntBuffer(Device device, long size) {
-            super(device, size);
-            long mappedMemory = stgVulkanBuffer.map();
-            dataBuffer = MemoryUtil.memIntBuffer(mappedMemory, (int) stgVulkanBuffer.getRequestedSize() / INT_LENGTH);
+    private record PendingRelease(Runnable release, BitSet pendingFrames) {
+    }
+
+    /**
+     * Host memory buffer where data is written in regions, each one is uploaded to the range of the heap it has been
+     * allocated to.
+     */
+    private static class StgIntBuffer {
+        private final BufferHeap heap;
+        private final List<CopyRegion> regions;
+        private BufferHeap.Allocation allocation;
+        private IntBuffer dataBuffer;
+        private int regionStart;
+
+        public StgIntBuffer(BufferHeap heap) {
+            this.heap = heap;
+            dataBuffer = MemoryUtil.memAllocInt(1);
+            regions = new ArrayList<>();
+        }
+
+        public void beginRegion(BufferHeap.Allocation allocation) {
+            this.allocation = allocation;
+            regionStart = dataBuffer.position();
+            int requiredSize = regionStart + (allocation != null ? allocation.size() / INT_LENGTH : 0);
+            if (requiredSize > dataBuffer.capacity()) {
+                dataBuffer = MemoryUtil.memRealloc(dataBuffer, requiredSize);
+                dataBuffer.position(regionStart);
+            }
+        }
+
+        public void cleanup() {
+            MemoryUtil.memFree(dataBuffer);
+        }
+
+        public void endRegion() {
+            int size = (dataBuffer.position() - regionStart) * INT_LENGTH;
+            int allocatedSize = allocation != null ? allocation.size() : 0;
+            if (size > allocatedSize) {
+                throw new RuntimeException("Written [" + size + "] bytes in a region of [" + allocatedSize + "] bytes");
+            }
+            if (size > 0) {
+                regions.add(new CopyRegion(regionStart * INT_LENGTH, allocation.offset(), size));
+            }
+            allocation = null;
         }
 
         public IntBuffer getDataBuffer() {
             return dataBuffer;
         }
+
+        /**
+         * Returns the offset in the heap of the current position of the data buffer.
+         */
+        public int getDstOffset() {
+            return allocation != null ? allocation.offset() + (dataBuffer.position() - regionStart) * INT_LENGTH : 0;
+        }
+
+        /**
+         * Uploads the regions written so far, after that the data buffer is reused for the next ones.
+         */
+        public void upload(BufferUploader bufferUploader) {
+            long address = MemoryUtil.memAddress0(dataBuffer);
+            for (CopyRegion region : regions) {
+                bufferUploader.upload(MemoryUtil.memByteBuffer(address + region.srcOffset(), region.size()),
+                        heap.getBuffer(), region.dstOffset());
+            }
+            regions.clear();
+            dataBuffer.clear();
+        }
+
+        private record CopyRegion(int srcOffset, int dstOffset, int size) {
+        }
     }
 }
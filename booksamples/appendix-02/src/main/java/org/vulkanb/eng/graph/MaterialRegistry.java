@@ -0,0 +1,112 @@
+package org.vulkanb.eng.graph;
+
+import org.joml.Vector4f;
+import org.vulkanb.eng.scene.ModelData;
+
+import java.util.*;
+
+/**
+ * Assigns the entries of the materials buffer. Identical materials share the same entry, which is reference counted
+ * so its space is released once no loaded model uses it.
+ */
+public class MaterialRegistry {
+
+    private final Map<Integer, Entry> entriesByIdx;
+    private final Map<ModelData.Material, Entry> entriesByMaterial;
+    private final BufferHeap heap;
+    private final int materialSize;
+
+    public MaterialRegistry(BufferHeap heap, int materialSize) {
+        this.heap = heap;
+        this.materialSize = materialSize;
+        entriesByIdx = new HashMap<>();
+        entriesByMaterial = new HashMap<>();
+    }
+
+    private static ModelData.Material copy(ModelData.Material material) {
+        // Colors are mutable, keys must not change while they are in the map
+        return new ModelData.Material(material.texturePath(), material.normalMapPath(), material.metalRoughMap(),
+                material.diffuseColor() != null ? new Vector4f(material.diffuseColor()) : null,
+                material.roughnessFactor(), material.metallicFactor());
+    }
+
+    public Entry getEntry(int materialIdx) {
+        Entry entry = entriesByIdx.get(materialIdx);
+        if (entry == null) {
+            throw new RuntimeException("Material [" + materialIdx + "] is not registered");
+        }
+        return entry;
+    }
+
+    public int getNumMaterials() {
+        return entriesByIdx.size();
+    }
+
+    /**
+     * Returns the entry of the material, creating it if no identical material is registered. Entries whose reference
+     * count is one after registering have just been created, so their data must be written.
+     */
+    public Entry register(ModelData.Material material) {
+        Entry entry = entriesByMaterial.get(material);
+        if (entry == null) {
+            BufferHeap.Allocation allocation = heap.allocate(materialSize);
+            entry = new Entry(allocation.offset() / materialSize, allocation, copy(material));
+            entriesByMaterial.put(entry.material, entry);
+            entriesByIdx.put(entry.idx, entry);
+        }
+        entry.refCount++;
+        return entry;
+    }
+
+    public void release(int materialIdx) {
+        Entry entry = getEntry(materialIdx);
+        entry.refCount--;
+        if (entry.refCount <= 0) {
+            entriesByIdx.remove(materialIdx);
+            entriesByMaterial.remove(entry.material, entry);
+            entry.allocation.free();
+        }
+    }
+
+    /**
+     * Moves one reference to an entry to the entry of the new material, entries are never modified in place. The
+     * previous entry is not released, so the caller can keep it until no frame reads it. Returns the entry that holds
+     * the material, its data must be written if its reference count is one.
+     */
+    public Entry update(int materialIdx, ModelData.Material material) {
+        Entry entry = getEntry(materialIdx);
+        if (entriesByMaterial.get(material) == entry) {
+            return entry;
+        }
+        return register(material);
+    }
+
+    public static class Entry {
+        private final BufferHeap.Allocation allocation;
+        private final int idx;
+        private final ModelData.Material material;
+        private int refCount;
+
+        private Entry(int idx, BufferHeap.Allocation allocation, ModelData.Material material) {
+            this.idx = idx;
+            this.allocation = allocation;
+            this.material = material;
+        }
+
+        public BufferHeap.Allocation getAllocation() {
+            return allocation;
+        }
+
+        public int getIdx() {
+            return idx;
+        }
+
+        public ModelData.Material getMaterial() {
+            return material;
+        }
+
+        public int getRefCount() {
+            return refCount;
+        }
+    }
+}
\ No newline at end of file
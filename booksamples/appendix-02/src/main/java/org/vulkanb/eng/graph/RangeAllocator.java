@@ -0,0 +1,72 @@
+package org.vulkanb.eng.graph;
+
+import java.util.*;
+
+/**
+ * First fit allocator of ranges inside [0, capacity). Released ranges are merged with their free neighbours.
+ */
+public class RangeAllocator {
+
+    private final TreeMap<Integer, Integer> freeRanges;
+    private int capacity;
+
+    public RangeAllocator() {
+        freeRanges = new TreeMap<>();
+        capacity = 0;
+    }
+
+    /**
+     * Returns the offset of the allocated range or -1 if there is no free range big enough.
+     */
+    public int allocate(int size) {
+        for (Map.Entry<Integer, Integer> entry : freeRanges.entrySet()) {
+            int freeSize = entry.getValue();
+            if (freeSize < size) {
+                continue;
+            }
+            int offset = entry.getKey();
+            freeRanges.remove(offset);
+            if (freeSize > size) {
+                freeRanges.put(offset + size, freeSize - size);
+            }
+            return offset;
+        }
+        return -1;
+    }
+
+    public void free(int offset, int size) {
+        if (size <= 0) {
+            return;
+        }
+        int start = offset;
+        int end = offset + size;
+        Map.Entry<Integer, Integer> prev = freeRanges.lowerEntry(offset);
+        if (prev != null && prev.getKey() + prev.getValue() == offset) {
+            start = prev.getKey();
+            freeRanges.remove(start);
+        }
+        Integer nextSize = freeRanges.remove(end);
+        if (nextSize != null) {
+            end += nextSize;
+        }
+        freeRanges.put(start, end - start);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Extends the capacity, so that the new space is available for allocations. Returns the new capacity, which is at
+     * least twice the previous one.
+     */
+    public int grow(int minCapacity) {
+        int newCapacity = Math.max(minCapacity, capacity * 2);
+        if (newCapacity > capacity) {
+            int oldCapacity = capacity;
+            capacity = newCapacity;
+            free(oldCapacity, newCapacity - oldCapacity);
+        }
+        return capacity;
+    }
+}
\ No newline at end of file
@@ -4,6 +4,7 @@ import org.lwjgl.system.MemoryStack;
 import org.tinylog.Logger;
 import org.vulkanb.eng.*;
 import org.vulkanb.eng.graph.animation.AnimationComputeActivity;
+import org.vulkanb.eng.graph.culling.CullingComputeActivity;
 import org.vulkanb.eng.graph.geometry.GeometryRenderActivity;
 import org.vulkanb.eng.graph.gui.GuiRenderActivity;
 import org.vulkanb.eng.graph.lighting.LightingRenderActivity;
@@ -19,8 +20,11 @@ import static org.lwjgl.vulkan.VK11.VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BI
 public class Render {
 
     private final AnimationComputeActivity animationComputeActivity;
+    private final BufferUploader bufferUploader;
     private final CommandPool commandPool;
+    private final CullingComputeActivity cullingComputeActivity;
     private final Device device;
+    private final FrameRing frameRing;
     private final GeometryRenderActivity geometryRenderActivity;
     private final GlobalBuffers globalBuffers;
     private final Queue.GraphicsQueue graphQueue;
@@ -33,11 +37,14 @@ public class Render {
     private final ShadowRenderActivity shadowRenderActivity;
     private final Surface surface;
     private final TextureCache textureCache;
+    private final TextureLoader textureLoader;
+    private final CommandPool transferCommandPool;
+    private final Queue.TransferQueue transferQueue;
     private final List<VulkanModel> vulkanModels;
     private CommandBuffer[] commandBuffers;
-    private long entitiesLoadedTimeStamp;
     private Fence[] fences;
     private SwapChain swapChain;
+    private boolean[] texturesChanged;
 
     public Render(Window window, Scene scene) {
         EngineProperties engProps = EngineProperties.getInstance();
@@ -47,22 +54,29 @@ public class Render {
         surface = new Surface(physicalDevice, window.getWindowHandle());
         graphQueue = new Queue.GraphicsQueue(device, 0);
         presentQueue = new Queue.PresentQueue(device, surface, 0);
+        transferQueue = new Queue.TransferQueue(device, 0);
         swapChain = new SwapChain(device, surface, window, engProps.getRequestedImages(), engProps.isvSync(),
                 presentQueue, new Queue[]{graphQueue});
         commandPool = new CommandPool(device, graphQueue.getQueueFamilyIndex());
+        transferCommandPool = new CommandPool(device, transferQueue.getQueueFamilyIndex());
         pipelineCache = new PipelineCache(device);
         vulkanModels = new ArrayList<>();
         textureCache = new TextureCache();
+        textureLoader = new TextureLoader(device);
+        bufferUploader = new BufferUploader(transferCommandPool, transferQueue, commandPool, graphQueue,
+                engProps.getUploadStagingBuffer());
         globalBuffers = new GlobalBuffers(device);
+        frameRing = new FrameRing(device, engProps.getFrameRingSize(), swapChain.getNumImages());
+        cullingComputeActivity = new CullingComputeActivity(swapChain, pipelineCache, scene);
         geometryRenderActivity = new GeometryRenderActivity(swapChain, pipelineCache, scene, globalBuffers);
         shadowRenderActivity = new ShadowRenderActivity(swapChain, pipelineCache, scene, globalBuffers);
         List<Attachment> attachments = new ArrayList<>(geometryRenderActivity.getAttachments());
         attachments.add(shadowRenderActivity.getDepthAttachment());
-        lightingRenderActivity = new LightingRenderActivity(swapChain, commandPool, pipelineCache, attachments, scene);
+        lightingRenderActivity = new LightingRenderActivity(swapChain, commandPool, pipelineCache, attachments, scene,
+                frameRing);
         animationComputeActivity = new AnimationComputeActivity(commandPool, pipelineCache);
         guiRenderActivity = new GuiRenderActivity(swapChain, commandPool, graphQueue, pipelineCache,
-                lightingRenderActivity.getLightingFrameBuffer().getLightingRenderPass().getVkRenderPass());
-        entitiesLoadedTimeStamp = 0;
+                lightingRenderActivity.getLightingFrameBuffer().getLightingRenderPass().getVkRenderPass(), frameRing);
         createCommandBuffers();
     }
 
@@ -82,6 +96,8 @@ public class Render {
         presentQueue.waitIdle();
         graphQueue.waitIdle();
         device.waitIdle();
+        textureLoader.cleanup();
+        bufferUploader.cleanup();
         textureCache.cleanup();
         pipelineCache.cleanup();
         guiRenderActivity.cleanup();
@@ -89,11 +105,14 @@ public class Render {
         animationComputeActivity.cleanup();
         shadowRenderActivity.cleanup();
         geometryRenderActivity.cleanup();
+        cullingComputeActivity.cleanup();
         Arrays.asList(commandBuffers).forEach(CommandBuffer::cleanup);
         Arrays.asList(fences).forEach(Fence::cleanup);
         commandPool.cleanup();
+        transferCommandPool.cleanup();
         swapChain.cleanup();
         surface.cleanup();
+        frameRing.cleanup();
         globalBuffers.cleanup();
         device.cleanup();
         physicalDevice.cleanup();
@@ -104,6 +123,7 @@ public class Render {
         int numImages = swapChain.getNumImages();
         commandBuffers = new CommandBuffer[numImages];
         fences = new Fence[numImages];
+        texturesChanged = new boolean[numImages];
 
         for (int i = 0; i < numImages; i++) {
             commandBuffers[i] = new CommandBuffer(commandPool, true, false);
@@ -111,34 +131,62 @@ public class Render {
         }
     }
 
+    public int getNumInstancesWritten() {
+        return globalBuffers.getNumInstancesWritten();
+    }
+
+    public int getNumMaterials() {
+        return globalBuffers.getNumMaterials();
+    }
+
+    public long getNumTriangles() {
+        return globalBuffers.getNumTriangles();
+    }
+
+    public BufferUploader.Stats getUploadStats() {
+        return bufferUploader.getStats();
+    }
+
     public void loadModels(List<ModelData> modelDataList) {
         Logger.debug("Loading {} model(s)", modelDataList.size());
-        vulkanModels.addAll(globalBuffers.loadModels(modelDataList, textureCache, commandPool, graphQueue));
+        // Data is uploaded while the next frames are rendered
+        int heapsVersion = globalBuffers.getHeapsVersion();
+        vulkanModels.addAll(globalBuffers.loadModels(modelDataList, textureCache, textureLoader, bufferUploader,
+                commandPool, graphQueue));
         Logger.debug("Loaded {} model(s)", modelDataList.size());
-
-        geometryRenderActivity.loadModels(textureCache);
-        shadowRenderActivity.loadModels(textureCache);
+        updateDescriptorSets(heapsVersion);
     }
 
     private void recordCommands() {
-        int idx = 0;
-        for (CommandBuffer commandBuffer : commandBuffers) {
-            commandBuffer.reset();
-            commandBuffer.beginRecording();
-            geometryRenderActivity.recordCommandBuffer(commandBuffer, globalBuffers, idx);
-            shadowRenderActivity.recordCommandBuffer(commandBuffer, globalBuffers, idx);
-            commandBuffer.endRecording();
-            idx++;
+        int numImages = commandBuffers.length;
+        for (int i = 0; i < numImages; i++) {
+            // Frames whose buffers have not been created yet are recorded once they are prepared
+            if (globalBuffers.isFrameReady(i)) {
+                recordCommands(i);
+            }
         }
     }
 
+    private void recordCommands(int idx) {
+        CommandBuffer commandBuffer = commandBuffers[idx];
+        commandBuffer.reset();
+        commandBuffer.beginRecording();
+        cullingComputeActivity.recordCommandBuffer(commandBuffer, globalBuffers, idx);
+        geometryRenderActivity.recordCommandBuffer(commandBuffer, globalBuffers, idx,
+                cullingComputeActivity.isCompact());
+        shadowRenderActivity.recordCommandBuffer(commandBuffer, globalBuffers, idx);
+        commandBuffer.endRecording();
+    }
+
     public void render(Window window, Scene scene) {
-        if (entitiesLoadedTimeStamp < scene.getEntitiesLoadedTimeStamp()) {
-            entitiesLoadedTimeStamp = scene.getEntitiesLoadedTimeStamp();
-            device.waitIdle();
-            globalBuffers.loadEntities(vulkanModels, scene, commandPool, graphQueue, swapChain.getNumImages());
+        bufferUploader.retireCompleted();
+        if (textureLoader.processUploads(commandPool, graphQueue)) {
+            // Texture descriptor sets of each frame are updated once the frame is no longer in use
+            Arrays.fill(texturesChanged, true);
+        }
+        // Only the entities changed since the previous frame are processed
+        if (globalBuffers.updateEntities(scene, commandPool, graphQueue)) {
             animationComputeActivity.onAnimatedEntitiesLoaded(globalBuffers);
-            recordCommands();
         }
         if (window.getWidth() <= 0 && window.getHeight() <= 0) {
             return;
@@ -151,16 +199,30 @@ public class Render {
             imageIndex = swapChain.acquireNextImage();
         }
 
-        globalBuffers.loadInstanceData(scene, vulkanModels, swapChain.getCurrentFrame());
+        int frameIdx = swapChain.getCurrentFrame();
+        // Once the fence has been signaled the buffers of the frame can be safely updated
+        CommandBuffer commandBuffer = acquireCurrentCommandBuffer();
+        boolean recordFrame = globalBuffers.prepareFrame(frameIdx, swapChain.getNumImages());
+        if (texturesChanged[frameIdx]) {
+            texturesChanged[frameIdx] = false;
+            geometryRenderActivity.updateTextures(textureCache, frameIdx);
+            shadowRenderActivity.updateTextures(textureCache, frameIdx);
+            recordFrame = true;
+        }
+        if (recordFrame) {
+            recordCommands(frameIdx);
+        }
+        // Cascades are updated first, since they limit the instances loaded
+        shadowRenderActivity.render();
+        globalBuffers.loadInstanceData(scene, vulkanModels, shadowRenderActivity.getShadowCascades(), frameIdx);
 
         if (globalBuffers.getAnimVerticesBuffer() != null) {
             animationComputeActivity.recordCommandBuffer(globalBuffers);
             animationComputeActivity.submit();
         }
 
-        CommandBuffer commandBuffer = acquireCurrentCommandBuffer();
+        cullingComputeActivity.render();
         geometryRenderActivity.render();
-        shadowRenderActivity.render();
         submitSceneCommand(graphQueue, commandBuffer);
 
         commandBuffer = lightingRenderActivity.beginRecording(shadowRenderActivity.getShadowCascades());
@@ -184,6 +246,7 @@ public class Render {
 
         swapChain = new SwapChain(device, surface, window, engProps.getRequestedImages(), engProps.isvSync(),
                 presentQueue, new Queue[]{graphQueue});
+        cullingComputeActivity.resize(swapChain);
         geometryRenderActivity.resize(swapChain);
         shadowRenderActivity.resize(swapChain);
         recordCommands();
@@ -204,4 +267,38 @@ public class Render {
                     stack.longs(syncSemaphores.geometryCompleteSemaphore().getVkSemaphore()), currentFence);
         }
     }
+
+    /**
+     * Releases the GPU data of a model, its space is reused by the models loaded afterwards. Textures are kept in the
+     * cache since they may be shared with other models.
+     */
+    public void unloadModel(String modelId) {
+        // Frames in flight keep using the data, commands are recorded again once each frame's fence signals
+        globalBuffers.unloadModel(modelId);
+        vulkanModels.removeIf(vulkanModel -> vulkanModel.getModelId().equals(modelId));
+    }
+
+    private void updateDescriptorSets(int heapsVersion) {
+        if (globalBuffers.getHeapsVersion() != heapsVersion) {
+            // Heaps have been grown while the device was idle
+            geometryRenderActivity.loadModels(textureCache, globalBuffers);
+            shadowRenderActivity.loadModels(textureCache, globalBuffers);
+            animationComputeActivity.onAnimatedEntitiesLoaded(globalBuffers);
+            recordCommands();
+        } else {
+            // Frames in flight are not touched, new commands and textures are set up once each frame's fence signals
+            Arrays.fill(texturesChanged, true);
+        }
+    }
+
+    /**
+     * Changes a material of a loaded model. Other models are not affected, even if they use an identical material.
+     */
+    public void updateMaterial(String modelId, int materialIdx, ModelData.Material material) {
+        // Frames in flight keep reading the previous entry
+        int heapsVersion = globalBuffers.getHeapsVersion();
+        globalBuffers.updateMaterial(modelId, materialIdx, material, textureCache, textureLoader, bufferUploader,
+                commandPool, graphQueue);
+        updateDescriptorSets(heapsVersion);
+    }
 }
\ No newline at end of file
@@ -1,7 +1,9 @@
 package org.vulkanb.eng.graph;
 
+import org.lwjgl.system.MemoryStack;
 import org.vulkanb.eng.graph.vk.*;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 
 public class TextureCache {
@@ -29,6 +31,34 @@ public class TextureCache {
         return texture;
     }
 
+    /**
+     * Creates a 1x1 texture filled with a single color, stored under the provided identifier.
+     */
+    public Texture createTexture(Device device, String id, int rgba, int format) {
+        Texture texture = textureMap.get(id);
+        if (texture == null) {
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                ByteBuffer buf = stack.malloc(4);
+                buf.put(0, (byte) (rgba >>> 24)).put(1, (byte) (rgba >>> 16)).put(2, (byte) (rgba >>> 8)).put(3, (byte) rgba);
+                texture = new Texture(device, buf, 1, 1, format);
+            }
+            textureMap.put(id, texture);
+        }
+        return texture;
+    }
+
+    public Texture createTexture(TextureLoader textureLoader, String texturePath, int format, Texture placeholder) {
+        if (texturePath == null || texturePath.trim().isEmpty()) {
+            return null;
+        }
+        Texture texture = textureMap.get(texturePath);
+        if (texture == null) {
+            texture = textureLoader.loadTexture(texturePath, format, placeholder);
+            textureMap.put(texturePath, texture);
+        }
+        return texture;
+    }
+
     public List<Texture> getAsList() {
         return new ArrayList<>(textureMap.values());
     }
@@ -0,0 +1,165 @@
+package org.vulkanb.eng.graph;
+
+import org.lwjgl.system.MemoryStack;
+import org.tinylog.Logger;
+import org.vulkanb.eng.EngineProperties;
+import org.vulkanb.eng.graph.vk.Queue;
+import org.vulkanb.eng.graph.vk.*;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.lwjgl.stb.STBImage.*;
+
+/**
+ * Decodes textures in worker threads and uploads them in batches. Decoded images are copied into a shared staging
+ * ring, which bounds the memory used while loading. Textures keep using their placeholders until the batch that
+ * uploads them has completed.
+ */
+public class TextureLoader {
+
+    private final ConcurrentLinkedQueue<DecodedTexture> decodedTextures;
+    private final Device device;
+    private final ExecutorService executor;
+    private final StagingRing stagingRing;
+    private final List<UploadBatch> uploadBatches;
+    private int numPendingTextures;
+
+    public TextureLoader(Device device) {
+        this.device = device;
+        EngineProperties engProps = EngineProperties.getInstance();
+        stagingRing = new StagingRing(device, engProps.getTextureStagingBuffer());
+        decodedTextures = new ConcurrentLinkedQueue<>();
+        uploadBatches = new ArrayList<>();
+        int numThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        Logger.debug("Decoding textures using {} thread(s)", numThreads);
+        executor = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread thread = new Thread(r, "texture-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        numPendingTextures = 0;
+    }
+
+    public void cleanup() {
+        executor.shutdownNow();
+        try {
+            // Workers may still be writing to the staging ring
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                Logger.warn("Texture decoding threads did not finish");
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        uploadBatches.forEach(UploadBatch::cleanup);
+        uploadBatches.clear();
+        decodedTextures.clear();
+        stagingRing.cleanup();
+    }
+
+    private void decode(Texture texture, int imageFormat) {
+        String fileName = texture.getFileName();
+        ByteBuffer buf = null;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer channels = stack.mallocInt(1);
+
+            buf = stbi_load(fileName, w, h, channels, 4);
+            if (buf == null) {
+                throw new RuntimeException("Image file [" + fileName + "] not loaded: " + stbi_failure_reason());
+            }
+            boolean hasTransparencies = Texture.containsTransparencies(buf);
+
+            StagingRing.Allocation allocation = stagingRing.allocate(buf.remaining());
+            stagingRing.getByteBuffer(allocation).put(buf);
+            decodedTextures.add(new DecodedTexture(texture, imageFormat, w.get(0), h.get(0), hasTransparencies,
+                    allocation));
+        } catch (RuntimeException excp) {
+            Logger.error("Could not load texture [{}]", fileName, excp);
+            decodedTextures.add(new DecodedTexture(texture, imageFormat, 0, 0, false, null));
+        } finally {
+            if (buf != null) {
+                stbi_image_free(buf);
+            }
+        }
+    }
+
+    public int getNumPendingTextures() {
+        return numPendingTextures;
+    }
+
+    public Texture loadTexture(String fileName, int imageFormat, Texture placeholder) {
+        Texture texture = new Texture(fileName, placeholder);
+        numPendingTextures++;
+        executor.submit(() -> decode(texture, imageFormat));
+        return texture;
+    }
+
+    /**
+     * Retires completed uploads and submits the textures decoded since the previous call in a single batch. Returns
+     * true if any texture has become resident, in which case descriptor sets referring to them need to be updated.
+     */
+    public boolean processUploads(CommandPool commandPool, Queue queue) {
+        boolean residencyChanged = false;
+        Iterator<UploadBatch> it = uploadBatches.iterator();
+        while (it.hasNext()) {
+            UploadBatch uploadBatch = it.next();
+            if (!uploadBatch.fence().isSignaled()) {
+                continue;
+            }
+            uploadBatch.textures().forEach(Texture::setResident);
+            uploadBatch.allocations().forEach(stagingRing::free);
+            uploadBatch.cleanup();
+            it.remove();
+            numPendingTextures -= uploadBatch.textures().size();
+            residencyChanged = true;
+            Logger.debug("Uploaded {} texture(s), {} pending", uploadBatch.textures().size(), numPendingTextures);
+        }
+
+        List<Texture> textures = new ArrayList<>();
+        List<StagingRing.Allocation> allocations = new ArrayList<>();
+        CommandBuffer cmd = null;
+        DecodedTexture decodedTexture;
+        while ((decodedTexture = decodedTextures.poll()) != null) {
+            if (decodedTexture.allocation() == null) {
+                numPendingTextures--;
+                continue;
+            }
+            if (cmd == null) {
+                cmd = new CommandBuffer(commandPool, true, true);
+                cmd.beginRecording();
+            }
+            Texture texture = decodedTexture.texture();
+            texture.createImage(device, decodedTexture.width(), decodedTexture.height(), decodedTexture.imageFormat(),
+                    decodedTexture.hasTransparencies());
+            texture.recordUpload(cmd, stagingRing.getBuffer(), decodedTexture.allocation().getOffset());
+            textures.add(texture);
+            allocations.add(decodedTexture.allocation());
+        }
+
+        if (cmd != null) {
+            cmd.endRecording();
+            Fence fence = new Fence(device, false);
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                queue.submit(stack.pointers(cmd.getVkCommandBuffer()), null, null, null, fence);
+            }
+            uploadBatches.add(new UploadBatch(cmd, fence, textures, allocations));
+        }
+        return residencyChanged;
+    }
+
+    private record DecodedTexture(Texture texture, int imageFormat, int width, int height, boolean hasTransparencies,
+                                  StagingRing.Allocation allocation) {
+    }
+
+    private record UploadBatch(CommandBuffer cmd, Fence fence, List<Texture> textures,
+                               List<StagingRing.Allocation> allocations) {
+        public void cleanup() {
+            fence.fenceWait();
+            fence.cleanup();
+            cmd.cleanup();
+        }
+    }
+}
\ No newline at end of file
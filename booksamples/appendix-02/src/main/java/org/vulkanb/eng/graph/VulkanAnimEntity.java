@@ -6,12 +6,16 @@ import java.util.*;
 
 public class VulkanAnimEntity {
     private Entity entity;
+    private int firstCommand;
+    private int sampledJointsOffset;
     private List<VulkanAnimMesh> vulkanAnimMeshList;
     private VulkanModel vulkanModel;
 
-    public VulkanAnimEntity(Entity entity, VulkanModel vulkanModel) {
+    public VulkanAnimEntity(Entity entity, VulkanModel vulkanModel, int sampledJointsOffset, int firstCommand) {
         this.entity = entity;
         this.vulkanModel = vulkanModel;
+        this.sampledJointsOffset = sampledJointsOffset;
+        this.firstCommand = firstCommand;
         vulkanAnimMeshList = new ArrayList<>();
     }
 
@@ -19,6 +23,17 @@ public class VulkanAnimEntity {
         return entity;
     }
 
+    /**
+     * Index of the indirect command (and instance slot) used by the first mesh, the rest of meshes use the following ones.
+     */
+    public int getFirstCommand() {
+        return firstCommand;
+    }
+
+    public int getSampledJointsOffset() {
+        return sampledJointsOffset;
+    }
+
     public List<VulkanAnimMesh> getVulkanAnimMeshList() {
         return vulkanAnimMeshList;
     }
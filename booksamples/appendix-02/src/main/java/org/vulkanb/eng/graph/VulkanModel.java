@@ -1,17 +1,27 @@
 package org.vulkanb.eng.graph;
 
+import org.joml.Vector3f;
+
 import java.util.*;
 
 public class VulkanModel {
 
+    private final Vector3f boundingCenter;
     private final String modelId;
     private final List<VulkanAnimationData> vulkanAnimationDataList;
     private final List<VulkanMesh> vulkanMeshList;
+    private float boundingRadius;
+    private int[] globalMaterialIdxs;
+    private int numLods;
+    private VulkanKeyFrameData vulkanKeyFrameData;
 
     public VulkanModel(String modelId) {
         this.modelId = modelId;
         vulkanMeshList = new ArrayList<>();
         vulkanAnimationDataList = new ArrayList<>();
+        boundingCenter = new Vector3f();
+        globalMaterialIdxs = new int[0];
+        numLods = 1;
     }
 
     public void addVulkanAnimationData(VulkanAnimationData vulkanAnimationData) {
@@ -20,22 +30,61 @@ public class VulkanModel {
 
     public void addVulkanMesh(VulkanMesh vulkanMesh) {
         vulkanMeshList.add(vulkanMesh);
+        numLods = Math.max(numLods, vulkanMesh.vulkanMeshLodList().size() + 1);
+    }
+
+    public Vector3f getBoundingCenter() {
+        return boundingCenter;
+    }
+
+    public float getBoundingRadius() {
+        return boundingRadius;
+    }
+
+    /**
+     * Returns the index in the materials buffer of the material of a mesh, meshes without a valid material use the
+     * default one at index zero.
+     */
+    public int getGlobalMaterialIdx(VulkanMesh vulkanMesh) {
+        int materialIdx = vulkanMesh.materialIdx();
+        return materialIdx >= 0 && materialIdx < globalMaterialIdxs.length ? globalMaterialIdxs[materialIdx] : 0;
     }
 
     public String getModelId() {
         return modelId;
     }
 
+    public int getNumLods() {
+        return numLods;
+    }
+
     public List<VulkanAnimationData> getVulkanAnimationDataList() {
         return vulkanAnimationDataList;
     }
 
+    public VulkanKeyFrameData getVulkanKeyFrameData() {
+        return vulkanKeyFrameData;
+    }
+
     public List<VulkanMesh> getVulkanMeshList() {
         return vulkanMeshList;
     }
 
     public boolean hasAnimations() {
-        return !vulkanAnimationDataList.isEmpty();
+        return !vulkanAnimationDataList.isEmpty() || vulkanKeyFrameData != null;
+    }
+
+    public void setBoundingSphere(Vector3f center, float radius) {
+        boundingCenter.set(center);
+        boundingRadius = radius;
+    }
+
+    public void setGlobalMaterialIdxs(int[] globalMaterialIdxs) {
+        this.globalMaterialIdxs = globalMaterialIdxs;
+    }
+
+    public void setVulkanKeyFrameData(VulkanKeyFrameData vulkanKeyFrameData) {
+        this.vulkanKeyFrameData = vulkanKeyFrameData;
     }
 
     public static class VulkanAnimationData {
@@ -58,10 +107,19 @@ public class VulkanModel {
 
     }
 
-    public static record VulkanMaterial(int globalMaterialIdx) {
+    public static record VulkanKeyFrameClip(int clipOffset, float duration) {
+    }
+
+    public static record VulkanKeyFrameData(int skeletonOffset, int numNodes, int numJoints,
+                                            List<VulkanKeyFrameClip> vulkanKeyFrameClipList) {
     }
 
     public static record VulkanMesh(int verticesSize, int numIndices, int verticesOffset, int indicesOffset,
-                                    int globalMaterialIdx, int weightsOffset) {
+                                    int materialIdx, int weightsOffset, int boundsIdx,
+                                    List<VulkanMeshLod> vulkanMeshLodList) {
+    }
+
+    // Coarser levels of detail of a mesh, they share its vertices
+    public static record VulkanMeshLod(int numIndices, int indicesOffset) {
     }
 }
\ No newline at end of file
@@ -18,12 +18,16 @@ public class AnimationComputeActivity {
 
     private static final String ANIM_COMPUTE_SHADER_FILE_GLSL = "resources/shaders/animations_comp.glsl";
     private static final String ANIM_COMPUTE_SHADER_FILE_SPV = ANIM_COMPUTE_SHADER_FILE_GLSL + ".spv";
+    private static final String ANIM_PACKED_COMPUTE_SHADER_FILE_GLSL = "resources/shaders/animations_packed_comp.glsl";
+    private static final String ANIM_PACKED_COMPUTE_SHADER_FILE_SPV = ANIM_PACKED_COMPUTE_SHADER_FILE_GLSL + ".spv";
     private static final int LOCAL_SIZE_X = 32;
     private static final int PUSH_CONSTANTS_SIZE = GraphConstants.INT_LENGTH * 5;
 
     private final Queue.ComputeQueue computeQueue;
     private final Device device;
+    private final KeyFrameComputeActivity keyFrameComputeActivity;
     private final MemoryBarrier memoryBarrier;
+    private final MemoryBarrier sampledJointsBarrier;
 
     private CommandBuffer commandBuffer;
     private ComputePipeline computePipeline;
@@ -46,6 +50,8 @@ public class AnimationComputeActivity {
         createPipeline(pipelineCache);
         createCommandBuffers(commandPool);
         memoryBarrier = new MemoryBarrier(0, VK_ACCESS_SHADER_WRITE_BIT);
+        keyFrameComputeActivity = new KeyFrameComputeActivity(pipelineCache);
+        sampledJointsBarrier = new MemoryBarrier(VK_ACCESS_SHADER_WRITE_BIT, VK_ACCESS_SHADER_READ_BIT);
     }
 
     public void cleanup() {
@@ -56,6 +62,8 @@ public class AnimationComputeActivity {
         storageDescriptorSetLayout.cleanup();
         fence.cleanup();
         memoryBarrier.cleanup();
+        keyFrameComputeActivity.cleanup();
+        sampledJointsBarrier.cleanup();
     }
 
     private void createCommandBuffers(CommandPool commandPool) {
@@ -87,16 +95,20 @@ public class AnimationComputeActivity {
 
     private void createShaders() {
         EngineProperties engineProperties = EngineProperties.getInstance();
+        boolean packedVertices = engineProperties.isPackedVertices();
         if (engineProperties.isShaderRecompilation()) {
-            ShaderCompiler.compileShaderIfChanged(ANIM_COMPUTE_SHADER_FILE_GLSL, Shaderc.shaderc_compute_shader);
+            ShaderCompiler.compileShaderIfChanged(packedVertices ? ANIM_PACKED_COMPUTE_SHADER_FILE_GLSL :
+                    ANIM_COMPUTE_SHADER_FILE_GLSL, Shaderc.shaderc_compute_shader);
         }
         shaderProgram = new ShaderProgram(device, new ShaderProgram.ShaderModuleData[]
                 {
-                        new ShaderProgram.ShaderModuleData(VK_SHADER_STAGE_COMPUTE_BIT, ANIM_COMPUTE_SHADER_FILE_SPV),
+                        new ShaderProgram.ShaderModuleData(VK_SHADER_STAGE_COMPUTE_BIT, packedVertices ?
+                                ANIM_PACKED_COMPUTE_SHADER_FILE_SPV : ANIM_COMPUTE_SHADER_FILE_SPV),
                 });
     }
 
     public void onAnimatedEntitiesLoaded(GlobalBuffers globalBuffers) {
+        keyFrameComputeActivity.onAnimatedEntitiesLoaded(globalBuffers);
         if (globalBuffers.getAnimVerticesBuffer() == null) {
             return;
         }
@@ -127,6 +139,12 @@ public class AnimationComputeActivity {
             vkCmdPipelineBarrier(cmdHandle, VK_PIPELINE_STAGE_VERTEX_INPUT_BIT, VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT,
                     0, memoryBarrier.getVkMemoryBarrier(), null, null);
 
+            // Joint matrices of entities with sampled animations must be ready before skinning
+            if (keyFrameComputeActivity.recordCommands(cmdHandle, globalBuffers)) {
+                vkCmdPipelineBarrier(cmdHandle, VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT,
+                        0, sampledJointsBarrier.getVkMemoryBarrier(), null, null);
+            }
+
             vkCmdBindPipeline(cmdHandle, VK_PIPELINE_BIND_POINT_COMPUTE, computePipeline.getVkPipeline());
 
             LongBuffer descriptorSets = stack.mallocLong(4);
@@ -139,7 +157,8 @@ public class AnimationComputeActivity {
             vkCmdBindDescriptorSets(cmdHandle, VK_PIPELINE_BIND_POINT_COMPUTE,
                     computePipeline.getVkPipelineLayout(), 0, descriptorSets, null);
 
-            List<VulkanAnimEntity> vulkanAnimEntityList = globalBuffers.getVulkanAnimEntityList();
+            long boundJointsDescriptorSet = jointMatricesDescriptorSet.getVkDescriptorSet();
+            Collection<VulkanAnimEntity> vulkanAnimEntityList = globalBuffers.getVulkanAnimEntities();
             for (VulkanAnimEntity vulkanAnimEntity : vulkanAnimEntityList) {
                 Entity entity = vulkanAnimEntity.getEntity();
                 Entity.EntityAnimation entityAnimation = entity.getEntityAnimation();
@@ -148,21 +167,34 @@ public class AnimationComputeActivity {
                 }
 
                 VulkanModel vulkanModel = vulkanAnimEntity.getVulkanModel();
-                int animationIdx = entity.getEntityAnimation().getAnimationIdx();
-                int currentFrame = entity.getEntityAnimation().getCurrentFrame();
-                int jointMatricesOffset = vulkanModel.getVulkanAnimationDataList().get(animationIdx).getVulkanAnimationFrameList().get(currentFrame).jointMatricesOffset();
+                int jointMatricesOffset;
+                long jointsDescriptorSet;
+                if (vulkanModel.getVulkanKeyFrameData() != null) {
+                    jointMatricesOffset = vulkanAnimEntity.getSampledJointsOffset();
+                    jointsDescriptorSet = keyFrameComputeActivity.getSampledJointsDescriptorSet().getVkDescriptorSet();
+                } else {
+                    int animationIdx = entity.getEntityAnimation().getAnimationIdx();
+                    int currentFrame = entity.getEntityAnimation().getCurrentFrame();
+                    jointMatricesOffset = vulkanModel.getVulkanAnimationDataList().get(animationIdx).getVulkanAnimationFrameList().get(currentFrame).jointMatricesOffset();
+                    jointsDescriptorSet = jointMatricesDescriptorSet.getVkDescriptorSet();
+                }
+                if (jointsDescriptorSet != boundJointsDescriptorSet) {
+                    vkCmdBindDescriptorSets(cmdHandle, VK_PIPELINE_BIND_POINT_COMPUTE,
+                            computePipeline.getVkPipelineLayout(), 3, stack.longs(jointsDescriptorSet), null);
+                    boundJointsDescriptorSet = jointsDescriptorSet;
+                }
 
                 for (VulkanAnimEntity.VulkanAnimMesh vulkanAnimMesh : vulkanAnimEntity.getVulkanAnimMeshList()) {
                     VulkanModel.VulkanMesh mesh = vulkanAnimMesh.vulkanMesh();
 
-                    int groupSize = (int) Math.ceil((mesh.verticesSize() / (float) InstancedVertexBufferStructure.SIZE_IN_BYTES) / LOCAL_SIZE_X);
+                    int groupSize = (int) Math.ceil((mesh.verticesSize() / (float) VertexBufferStructure.getSizeInBytes()) / LOCAL_SIZE_X);
 
                     // Push constants
                     ByteBuffer pushConstantBuffer = stack.malloc(PUSH_CONSTANTS_SIZE);
                     pushConstantBuffer.putInt(mesh.verticesOffset() / GraphConstants.FLOAT_LENGTH);
                     pushConstantBuffer.putInt(mesh.verticesSize() / GraphConstants.FLOAT_LENGTH);
                     pushConstantBuffer.putInt(mesh.weightsOffset() / GraphConstants.FLOAT_LENGTH);
-                    pushConstantBuffer.putInt(jointMatricesOffset / GraphConstants.MAT4X4_SIZE);
+                    pushConstantBuffer.putInt(jointMatricesOffset / GraphConstants.MAT3X4_SIZE);
                     pushConstantBuffer.putInt(vulkanAnimMesh.meshOffset() / GraphConstants.FLOAT_LENGTH);
                     pushConstantBuffer.flip();
                     vkCmdPushConstants(cmdHandle, computePipeline.getVkPipelineLayout(),
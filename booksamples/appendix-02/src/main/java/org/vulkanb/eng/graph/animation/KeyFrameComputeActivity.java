@@ -0,0 +1,155 @@
+package org.vulkanb.eng.graph.animation;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.util.shaderc.Shaderc;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.vulkanb.eng.EngineProperties;
+import org.vulkanb.eng.graph.*;
+import org.vulkanb.eng.graph.vk.*;
+import org.vulkanb.eng.scene.Entity;
+
+import java.nio.*;
+import java.util.*;
+
+import static org.lwjgl.vulkan.VK11.*;
+
+public class KeyFrameComputeActivity {
+
+    private static final String KEY_FRAMES_COMPUTE_SHADER_FILE_GLSL = "resources/shaders/keyframes_comp.glsl";
+    private static final String KEY_FRAMES_COMPUTE_SHADER_FILE_SPV = KEY_FRAMES_COMPUTE_SHADER_FILE_GLSL + ".spv";
+    private static final int PUSH_CONSTANTS_SIZE = GraphConstants.INT_LENGTH * 9;
+
+    private final Device device;
+
+    private ComputePipeline computePipeline;
+    private DescriptorPool descriptorPool;
+    private DescriptorSetLayout[] descriptorSetLayouts;
+    private DescriptorSet.StorageDescriptorSet keyFramesDescriptorSet;
+    private DescriptorSet.StorageDescriptorSet sampledJointsDescriptorSet;
+    private ShaderProgram shaderProgram;
+    private DescriptorSetLayout.StorageDescriptorSetLayout storageDescriptorSetLayout;
+
+    public KeyFrameComputeActivity(PipelineCache pipelineCache) {
+        device = pipelineCache.getDevice();
+        createDescriptorPool();
+        createDescriptorSets();
+        createShaders();
+        createPipeline(pipelineCache);
+    }
+
+    private static float clipTime(VulkanModel.VulkanKeyFrameClip clip, long elapsedMillis) {
+        return clip.duration() > 0 ? (elapsedMillis / 1000.0f) % clip.duration() : 0.0f;
+    }
+
+    public void cleanup() {
+        computePipeline.cleanup();
+        shaderProgram.cleanup();
+        descriptorPool.cleanup();
+        storageDescriptorSetLayout.cleanup();
+    }
+
+    private void createDescriptorPool() {
+        List<DescriptorPool.DescriptorTypeCount> descriptorTypeCounts = new ArrayList<>();
+        descriptorTypeCounts.add(new DescriptorPool.DescriptorTypeCount(2, VK_DESCRIPTOR_TYPE_STORAGE_BUFFER));
+        descriptorPool = new DescriptorPool(device, descriptorTypeCounts);
+    }
+
+    private void createDescriptorSets() {
+        storageDescriptorSetLayout = new DescriptorSetLayout.StorageDescriptorSetLayout(device, 0, VK_SHADER_STAGE_COMPUTE_BIT);
+        descriptorSetLayouts = new DescriptorSetLayout[]{
+                storageDescriptorSetLayout,
+                storageDescriptorSetLayout,
+        };
+    }
+
+    private void createPipeline(PipelineCache pipelineCache) {
+        ComputePipeline.PipeLineCreationInfo pipeLineCreationInfo = new ComputePipeline.PipeLineCreationInfo(shaderProgram,
+                descriptorSetLayouts, PUSH_CONSTANTS_SIZE);
+        computePipeline = new ComputePipeline(pipelineCache, pipeLineCreationInfo);
+    }
+
+    private void createShaders() {
+        EngineProperties engineProperties = EngineProperties.getInstance();
+        if (engineProperties.isShaderRecompilation()) {
+            ShaderCompiler.compileShaderIfChanged(KEY_FRAMES_COMPUTE_SHADER_FILE_GLSL, Shaderc.shaderc_compute_shader);
+        }
+        shaderProgram = new ShaderProgram(device, new ShaderProgram.ShaderModuleData[]
+                {
+                        new ShaderProgram.ShaderModuleData(VK_SHADER_STAGE_COMPUTE_BIT, KEY_FRAMES_COMPUTE_SHADER_FILE_SPV),
+                });
+    }
+
+    public DescriptorSet.StorageDescriptorSet getSampledJointsDescriptorSet() {
+        return sampledJointsDescriptorSet;
+    }
+
+    public void onAnimatedEntitiesLoaded(GlobalBuffers globalBuffers) {
+        if (keyFramesDescriptorSet != null) {
+            descriptorPool.cleanup();
+            createDescriptorPool();
+            keyFramesDescriptorSet = null;
+            sampledJointsDescriptorSet = null;
+        }
+        if (globalBuffers.getAnimSampledJointsBuffer() == null) {
+            return;
+        }
+        keyFramesDescriptorSet = new DescriptorSet.StorageDescriptorSet(descriptorPool,
+                storageDescriptorSetLayout, globalBuffers.getAnimKeyFramesBuffer(), 0);
+        sampledJointsDescriptorSet = new DescriptorSet.StorageDescriptorSet(descriptorPool,
+                storageDescriptorSetLayout, globalBuffers.getAnimSampledJointsBuffer(), 0);
+    }
+
+    /**
+     * Records the dispatches that sample the key frames of the started entities, writing their joint matrices into the
+     * sampled joints buffer. Returns true if any dispatch has been recorded.
+     */
+    public boolean recordCommands(VkCommandBuffer cmdHandle, GlobalBuffers globalBuffers) {
+        if (sampledJointsDescriptorSet == null) {
+            return false;
+        }
+        boolean recorded = false;
+        long now = System.currentTimeMillis();
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            Collection<VulkanAnimEntity> vulkanAnimEntityList = globalBuffers.getVulkanAnimEntities();
+            for (VulkanAnimEntity vulkanAnimEntity : vulkanAnimEntityList) {
+                VulkanModel.VulkanKeyFrameData vulkanKeyFrameData = vulkanAnimEntity.getVulkanModel().getVulkanKeyFrameData();
+                Entity.EntityAnimation entityAnimation = vulkanAnimEntity.getEntity().getEntityAnimation();
+                if (vulkanKeyFrameData == null || !entityAnimation.isStarted()) {
+                    continue;
+                }
+                if (!recorded) {
+                    vkCmdBindPipeline(cmdHandle, VK_PIPELINE_BIND_POINT_COMPUTE, computePipeline.getVkPipeline());
+                    LongBuffer descriptorSets = stack.mallocLong(2)
+                            .put(0, keyFramesDescriptorSet.getVkDescriptorSet())
+                            .put(1, sampledJointsDescriptorSet.getVkDescriptorSet());
+                    vkCmdBindDescriptorSets(cmdHandle, VK_PIPELINE_BIND_POINT_COMPUTE,
+                            computePipeline.getVkPipelineLayout(), 0, descriptorSets, null);
+                    recorded = true;
+                }
+
+                List<VulkanModel.VulkanKeyFrameClip> clips = vulkanKeyFrameData.vulkanKeyFrameClipList();
+                VulkanModel.VulkanKeyFrameClip clip = clips.get(entityAnimation.getAnimationIdx());
+                float fadeWeight = entityAnimation.getFadeWeight(now);
+                VulkanModel.VulkanKeyFrameClip fadeClip = fadeWeight > 0 ? clips.get(entityAnimation.getFadeAnimationIdx()) : clip;
+
+                ByteBuffer pushConstantBuffer = stack.malloc(PUSH_CONSTANTS_SIZE);
+                pushConstantBuffer.putInt(vulkanKeyFrameData.skeletonOffset() / GraphConstants.INT_LENGTH);
+                pushConstantBuffer.putInt(vulkanKeyFrameData.numNodes());
+                pushConstantBuffer.putInt(vulkanKeyFrameData.numJoints());
+                pushConstantBuffer.putInt(clip.clipOffset() / GraphConstants.INT_LENGTH);
+                pushConstantBuffer.putFloat(clipTime(clip, now - entityAnimation.getAnimationStartTs()));
+                pushConstantBuffer.putInt(fadeClip.clipOffset() / GraphConstants.INT_LENGTH);
+                pushConstantBuffer.putFloat(fadeWeight > 0 ? clipTime(fadeClip, now - entityAnimation.getFadeAnimationStartTs()) : 0.0f);
+                pushConstantBuffer.putFloat(fadeWeight);
+                pushConstantBuffer.putInt(vulkanAnimEntity.getSampledJointsOffset() / GraphConstants.MAT3X4_SIZE);
+                pushConstantBuffer.flip();
+                vkCmdPushConstants(cmdHandle, computePipeline.getVkPipelineLayout(),
+                        VK_SHADER_STAGE_COMPUTE_BIT, 0, pushConstantBuffer);
+
+                // A single work group per entity, nodes and joints are distributed among its invocations
+                vkCmdDispatch(cmdHandle, 1, 1, 1);
+            }
+        }
+        return recorded;
+    }
+}
@@ -0,0 +1,64 @@
+package org.vulkanb.eng.graph.culling;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+import org.vulkanb.eng.graph.vk.*;
+
+import java.nio.LongBuffer;
+import java.util.List;
+
+import static org.lwjgl.vulkan.VK11.*;
+import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
+
+public class CullingBuffersDescriptorSet extends DescriptorSet {
+
+    private final Device device;
+
+    public CullingBuffersDescriptorSet(DescriptorPool descriptorPool, CullingBuffersLayout descriptorSetLayout,
+                                       List<VulkanBuffer> buffers) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            device = descriptorPool.getDevice();
+            LongBuffer pDescriptorSetLayout = stack.mallocLong(1);
+            pDescriptorSetLayout.put(0, descriptorSetLayout.getVkDescriptorLayout());
+            VkDescriptorSetAllocateInfo allocInfo = VkDescriptorSetAllocateInfo.calloc(stack)
+                    .sType(VK_STRUCTURE_TYPE_DESCRIPTOR_SET_ALLOCATE_INFO)
+                    .descriptorPool(descriptorPool.getVkDescriptorPool())
+                    .pSetLayouts(pDescriptorSetLayout);
+
+            LongBuffer pDescriptorSet = stack.mallocLong(1);
+            vkCheck(vkAllocateDescriptorSets(device.getVkDevice(), allocInfo, pDescriptorSet),
+                    "Failed to create descriptor set");
+
+            vkDescriptorSet = pDescriptorSet.get(0);
+
+            update(buffers);
+        }
+    }
+
+    /**
+     * Points each binding to the buffer in the same position, the descriptor set must not be in use by the device.
+     */
+    public void update(List<VulkanBuffer> buffers) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            int numBuffers = buffers.size();
+            VkWriteDescriptorSet.Buffer descrBuffer = VkWriteDescriptorSet.calloc(numBuffers, stack);
+            for (int i = 0; i < numBuffers; i++) {
+                VulkanBuffer buffer = buffers.get(i);
+                VkDescriptorBufferInfo.Buffer bufferInfo = VkDescriptorBufferInfo.calloc(1, stack)
+                        .buffer(buffer.getBuffer())
+                        .offset(0)
+                        .range(buffer.getRequestedSize());
+
+                descrBuffer.get(i)
+                        .sType(VK_STRUCTURE_TYPE_WRITE_DESCRIPTOR_SET)
+                        .dstSet(vkDescriptorSet)
+                        .dstBinding(i)
+                        .descriptorType(VK_DESCRIPTOR_TYPE_STORAGE_BUFFER)
+                        .descriptorCount(1)
+                        .pBufferInfo(bufferInfo);
+            }
+
+            vkUpdateDescriptorSets(device.getVkDevice(), descrBuffer, null);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+package org.vulkanb.eng.graph.culling;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+import org.tinylog.Logger;
+import org.vulkanb.eng.graph.vk.*;
+
+import java.nio.LongBuffer;
+
+import static org.lwjgl.vulkan.VK11.*;
+import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
+
+public class CullingBuffersLayout extends DescriptorSetLayout {
+
+    public CullingBuffersLayout(Device device, int numBuffers) {
+        super(device);
+
+        Logger.debug("Creating Culling Buffers Layout");
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkDescriptorSetLayoutBinding.Buffer layoutBindings = VkDescriptorSetLayoutBinding.calloc(numBuffers, stack);
+            for (int i = 0; i < numBuffers; i++) {
+                layoutBindings.get(i)
+                        .binding(i)
+                        .descriptorType(VK_DESCRIPTOR_TYPE_STORAGE_BUFFER)
+                        .descriptorCount(1)
+                        .stageFlags(VK_SHADER_STAGE_COMPUTE_BIT);
+            }
+            VkDescriptorSetLayoutCreateInfo layoutInfo = VkDescriptorSetLayoutCreateInfo.calloc(stack)
+                    .sType(VK_STRUCTURE_TYPE_DESCRIPTOR_SET_LAYOUT_CREATE_INFO)
+                    .pBindings(layoutBindings);
+
+            LongBuffer lp = stack.mallocLong(1);
+            vkCheck(vkCreateDescriptorSetLayout(device.getVkDevice(), layoutInfo, null, lp),
+                    "Failed to create descriptor set layout");
+            super.vkDescriptorLayout = lp.get(0);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,175 @@
+package org.vulkanb.eng.graph.culling;
+
+import org.joml.*;
+import org.lwjgl.system.*;
+import org.lwjgl.util.shaderc.Shaderc;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.vulkanb.eng.EngineProperties;
+import org.vulkanb.eng.graph.GlobalBuffers;
+import org.vulkanb.eng.graph.vk.*;
+import org.vulkanb.eng.scene.Scene;
+
+import java.nio.*;
+import java.util.*;
+
+import static org.lwjgl.vulkan.VK11.*;
+
+/**
+ * Tests the static instances against the camera frustum before the geometry pass. Visible instances are copied to the
+ * culled instances buffer and the culled commands get their instance count. If the device supports indirect count
+ * draws, commands without visible instances are also removed.
+ */
+public class CullingComputeActivity {
+
+    private static final String CULL_COMPUTE_SHADER_FILE_GLSL = "resources/shaders/cull_comp.glsl";
+    private static final String CULL_COMPUTE_SHADER_FILE_SPV = CULL_COMPUTE_SHADER_FILE_GLSL + ".spv";
+    private static final int NUM_BUFFERS = 7;
+    private static final int PUSH_CONSTANTS_SIZE = GraphConstants.INT_LENGTH;
+
+    private final boolean compact;
+    private final MemoryBarrier countResetBarrier;
+    private final MemoryBarrier culledDataBarrier;
+    private final CullingBuffersLayout cullingBuffersLayout;
+    private final CullingBuffersDescriptorSet[] cullingDescriptorSets;
+    private final Device device;
+    private final VulkanBuffer[] frustumBuffers;
+    private final Vector4f[] planes;
+    private final Scene scene;
+    private final Matrix4f viewProjMatrix;
+
+    private ComputePipeline computePipeline;
+    private DescriptorPool descriptorPool;
+    private ShaderProgram shaderProgram;
+    private SwapChain swapChain;
+
+    public CullingComputeActivity(SwapChain swapChain, PipelineCache pipelineCache, Scene scene) {
+        this.swapChain = swapChain;
+        this.scene = scene;
+        device = pipelineCache.getDevice();
+        compact = device.isDrawIndirectCount();
+        int numImages = swapChain.getNumImages();
+        cullingDescriptorSets = new CullingBuffersDescriptorSet[numImages];
+        frustumBuffers = new VulkanBuffer[numImages];
+        for (int i = 0; i < numImages; i++) {
+            frustumBuffers[i] = new VulkanBuffer(device, (long) GraphConstants.VEC4_SIZE * FrustumCuller.NUM_PLANES,
+                    VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT, 0);
+        }
+        planes = new Vector4f[FrustumCuller.NUM_PLANES];
+        for (int i = 0; i < planes.length; i++) {
+            planes[i] = new Vector4f();
+        }
+        viewProjMatrix = new Matrix4f();
+        createDescriptorPool(numImages);
+        cullingBuffersLayout = new CullingBuffersLayout(device, NUM_BUFFERS);
+        createShaders();
+        createPipeline(pipelineCache);
+        countResetBarrier = new MemoryBarrier(VK_ACCESS_TRANSFER_WRITE_BIT, VK_ACCESS_SHADER_READ_BIT |
+                VK_ACCESS_SHADER_WRITE_BIT);
+        culledDataBarrier = new MemoryBarrier(VK_ACCESS_SHADER_WRITE_BIT, VK_ACCESS_INDIRECT_COMMAND_READ_BIT |
+                VK_ACCESS_VERTEX_ATTRIBUTE_READ_BIT);
+    }
+
+    public void cleanup() {
+        computePipeline.cleanup();
+        shaderProgram.cleanup();
+        descriptorPool.cleanup();
+        cullingBuffersLayout.cleanup();
+        Arrays.asList(frustumBuffers).forEach(VulkanBuffer::cleanup);
+        countResetBarrier.cleanup();
+        culledDataBarrier.cleanup();
+    }
+
+    private void createDescriptorPool(int numImages) {
+        List<DescriptorPool.DescriptorTypeCount> descriptorTypeCounts = new ArrayList<>();
+        descriptorTypeCounts.add(new DescriptorPool.DescriptorTypeCount(numImages * NUM_BUFFERS,
+                VK_DESCRIPTOR_TYPE_STORAGE_BUFFER));
+        descriptorPool = new DescriptorPool(device, descriptorTypeCounts);
+    }
+
+    private void createPipeline(PipelineCache pipelineCache) {
+        ComputePipeline.PipeLineCreationInfo pipeLineCreationInfo = new ComputePipeline.PipeLineCreationInfo(shaderProgram,
+                new DescriptorSetLayout[]{cullingBuffersLayout}, PUSH_CONSTANTS_SIZE);
+        computePipeline = new ComputePipeline(pipelineCache, pipeLineCreationInfo);
+    }
+
+    private void createShaders() {
+        EngineProperties engineProperties = EngineProperties.getInstance();
+        if (engineProperties.isShaderRecompilation()) {
+            ShaderCompiler.compileShaderIfChanged(CULL_COMPUTE_SHADER_FILE_GLSL, Shaderc.shaderc_compute_shader);
+        }
+        shaderProgram = new ShaderProgram(device, new ShaderProgram.ShaderModuleData[]
+                {
+                        new ShaderProgram.ShaderModuleData(VK_SHADER_STAGE_COMPUTE_BIT, CULL_COMPUTE_SHADER_FILE_SPV),
+                });
+    }
+
+    /**
+     * Returns true if the culled commands are compacted, so they must be drawn using the draw count stored in the
+     * culled indirect buffer. Otherwise all the commands must be drawn, the ones without visible instances are empty.
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Records the culling of the static instances of a frame. Its descriptor set is updated here, since the buffers of
+     * a frame can only be recreated while its commands are not in use.
+     */
+    public void recordCommandBuffer(CommandBuffer commandBuffer, GlobalBuffers globalBuffers, int idx) {
+        int numCommands = globalBuffers.getNumIndirectCommands();
+        if (numCommands == 0) {
+            return;
+        }
+        VulkanBuffer culledIndirectBuffer = globalBuffers.getCulledIndirectBuffers()[idx];
+        List<VulkanBuffer> buffers = List.of(globalBuffers.getBoundsBuffer(), frustumBuffers[idx],
+                globalBuffers.getInstanceDataBuffers()[idx], globalBuffers.getIndirectBuffers()[idx],
+                globalBuffers.getCommandBoundsBuffers()[idx], globalBuffers.getCulledInstanceDataBuffers()[idx],
+                culledIndirectBuffer);
+        if (cullingDescriptorSets[idx] == null) {
+            cullingDescriptorSets[idx] = new CullingBuffersDescriptorSet(descriptorPool, cullingBuffersLayout, buffers);
+        } else {
+            cullingDescriptorSets[idx].update(buffers);
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkCommandBuffer cmdHandle = commandBuffer.getVkCommandBuffer();
+
+            vkCmdFillBuffer(cmdHandle, culledIndirectBuffer.getBuffer(), 0, GraphConstants.INT_LENGTH, 0);
+            vkCmdPipelineBarrier(cmdHandle, VK_PIPELINE_STAGE_TRANSFER_BIT, VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT,
+                    0, countResetBarrier.getVkMemoryBarrier(), null, null);
+
+            vkCmdBindPipeline(cmdHandle, VK_PIPELINE_BIND_POINT_COMPUTE, computePipeline.getVkPipeline());
+            vkCmdBindDescriptorSets(cmdHandle, VK_PIPELINE_BIND_POINT_COMPUTE, computePipeline.getVkPipelineLayout(),
+                    0, stack.longs(cullingDescriptorSets[idx].getVkDescriptorSet()), null);
+
+            ByteBuffer pushConstantBuffer = stack.malloc(PUSH_CONSTANTS_SIZE);
+            pushConstantBuffer.putInt(0, compact ? 1 : 0);
+            vkCmdPushConstants(cmdHandle, computePipeline.getVkPipelineLayout(), VK_SHADER_STAGE_COMPUTE_BIT, 0,
+                    pushConstantBuffer);
+
+            // One work group per command
+            vkCmdDispatch(cmdHandle, numCommands, 1, 1);
+
+            vkCmdPipelineBarrier(cmdHandle, VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, VK_PIPELINE_STAGE_DRAW_INDIRECT_BIT |
+                    VK_PIPELINE_STAGE_VERTEX_INPUT_BIT, 0, culledDataBarrier.getVkMemoryBarrier(), null, null);
+        }
+    }
+
+    /**
+     * Updates the frustum planes of the current frame, the recorded commands read them from its buffer.
+     */
+    public void render() {
+        int idx = swapChain.getCurrentFrame();
+        scene.getProjection().getProjectionMatrix().mul(scene.getCamera().getViewMatrix(), viewProjMatrix);
+        FrustumCuller.extractPlanes(viewProjMatrix, planes);
+        // Buffers are kept mapped until they are destroyed
+        FloatBuffer data = MemoryUtil.memFloatBuffer(frustumBuffers[idx].map(), FrustumCuller.NUM_PLANES * 4);
+        for (int i = 0; i < planes.length; i++) {
+            planes[i].get(i * 4, data);
+        }
+    }
+
+    public void resize(SwapChain swapChain) {
+        this.swapChain = swapChain;
+    }
+}
\ No newline at end of file
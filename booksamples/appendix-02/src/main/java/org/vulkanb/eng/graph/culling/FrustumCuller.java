@@ -0,0 +1,107 @@
+package org.vulkanb.eng.graph.culling;
+
+import org.joml.*;
+import org.vulkanb.eng.graph.GlobalBuffers;
+import org.vulkanb.eng.graph.vk.GraphConstants;
+
+import java.nio.*;
+
+/**
+ * CPU implementation of the culling pass. It follows the same steps as cull_comp.glsl over buffers with the same
+ * layout, so its results can be checked without a device. The GPU compacts using atomic counters, so the compacted
+ * commands, and the visible instances in the range of each command, may be stored in any order. Results must be
+ * compared as unordered sets, this implementation just happens to keep the source order.
+ */
+public class FrustumCuller {
+
+    public static final int NUM_PLANES = 6;
+    private static final int BOUNDS_FLOATS = 12;
+    private static final int COMMAND_INTS = GlobalBuffers.IND_COMMAND_STRIDE / GraphConstants.INT_LENGTH;
+    private static final int INSTANCE_INTS = GlobalBuffers.INSTANCE_DATA_SIZE / GraphConstants.INT_LENGTH;
+
+    private FrustumCuller() {
+        // Utility class
+    }
+
+    /**
+     * Culls the instances of the source commands. The destination commands do not include the draw count that
+     * precedes them in the GPU buffer, it is returned instead. When not compacting, every command is written at its
+     * own position and the number of commands is returned.
+     */
+    public static int cull(FloatBuffer boundsData, Vector4f[] planes, IntBuffer srcInstances, IntBuffer srcCommands,
+                           IntBuffer commandBounds, int numCommands, IntBuffer dstInstances, IntBuffer dstCommands,
+                           boolean compact) {
+        Matrix4f modelMatrix = new Matrix4f();
+        Vector3f center = new Vector3f();
+        int drawCount = 0;
+        for (int cmdIdx = 0; cmdIdx < numCommands; cmdIdx++) {
+            int cmdPos = cmdIdx * COMMAND_INTS;
+            int instanceCount = srcCommands.get(cmdPos + 1);
+            int firstInstance = srcCommands.get(cmdPos + 4);
+            int boundsPos = commandBounds.get(cmdIdx) * BOUNDS_FLOATS;
+            center.set(boundsData.get(boundsPos), boundsData.get(boundsPos + 1), boundsData.get(boundsPos + 2));
+            float radius = boundsData.get(boundsPos + 3);
+
+            int visibleCount = 0;
+            for (int i = 0; i < instanceCount; i++) {
+                int srcPos = (firstInstance + i) * INSTANCE_INTS;
+                readMatrix(srcInstances, srcPos, modelMatrix);
+                if (isVisible(planes, modelMatrix, center, radius)) {
+                    int dstPos = (firstInstance + visibleCount) * INSTANCE_INTS;
+                    for (int j = 0; j < INSTANCE_INTS; j++) {
+                        dstInstances.put(dstPos + j, srcInstances.get(srcPos + j));
+                    }
+                    visibleCount++;
+                }
+            }
+
+            int dstCmdIdx = cmdIdx;
+            if (compact) {
+                if (visibleCount == 0) {
+                    continue;
+                }
+                dstCmdIdx = drawCount;
+            }
+            drawCount++;
+            int dstCmdPos = dstCmdIdx * COMMAND_INTS;
+            dstCommands.put(dstCmdPos, srcCommands.get(cmdPos));
+            dstCommands.put(dstCmdPos + 1, visibleCount);
+            dstCommands.put(dstCmdPos + 2, srcCommands.get(cmdPos + 2));
+            dstCommands.put(dstCmdPos + 3, srcCommands.get(cmdPos + 3));
+            dstCommands.put(dstCmdPos + 4, firstInstance);
+        }
+        return drawCount;
+    }
+
+    /**
+     * Extracts the normalized planes of the frustum, with their normals pointing inwards.
+     */
+    public static void extractPlanes(Matrix4f viewProjMatrix, Vector4f[] planes) {
+        for (int i = 0; i < NUM_PLANES; i++) {
+            viewProjMatrix.frustumPlane(i, planes[i]);
+        }
+    }
+
+    /**
+     * Checks if the bounding sphere of a mesh, transformed by the model matrix, is not completely outside any plane.
+     */
+    public static boolean isVisible(Vector4f[] planes, Matrix4f modelMatrix, Vector3f center, float radius) {
+        Vector3f worldCenter = modelMatrix.transformPosition(center, new Vector3f());
+        Vector3f scale = modelMatrix.getScale(new Vector3f());
+        float worldRadius = radius * scale.get(scale.maxComponent());
+        for (Vector4f plane : planes) {
+            if (plane.x * worldCenter.x + plane.y * worldCenter.y + plane.z * worldCenter.z + plane.w < -worldRadius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void readMatrix(IntBuffer data, int pos, Matrix4f matrix) {
+        float[] values = new float[16];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Float.intBitsToFloat(data.get(pos + i));
+        }
+        matrix.set(values);
+    }
+}
\ No newline at end of file
@@ -17,6 +17,8 @@ public class GeometryRenderActivity {
 
     private static final String GEOMETRY_FRAGMENT_SHADER_FILE_GLSL = "resources/shaders/geometry_fragment.glsl";
     private static final String GEOMETRY_FRAGMENT_SHADER_FILE_SPV = GEOMETRY_FRAGMENT_SHADER_FILE_GLSL + ".spv";
+    private static final String GEOMETRY_PACKED_VERTEX_SHADER_FILE_GLSL = "resources/shaders/geometry_packed_vertex.glsl";
+    private static final String GEOMETRY_PACKED_VERTEX_SHADER_FILE_SPV = GEOMETRY_PACKED_VERTEX_SHADER_FILE_GLSL + ".spv";
     private static final String GEOMETRY_VERTEX_SHADER_FILE_GLSL = "resources/shaders/geometry_vertex.glsl";
     private static final String GEOMETRY_VERTEX_SHADER_FILE_SPV = GEOMETRY_VERTEX_SHADER_FILE_GLSL + ".spv";
 
@@ -35,7 +37,7 @@ public class GeometryRenderActivity {
     private ShaderProgram shaderProgram;
     private DescriptorSetLayout.StorageDescriptorSetLayout storageDescriptorSetLayout;
     private SwapChain swapChain;
-    private TextureDescriptorSet textureDescriptorSet;
+    private TextureDescriptorSet[] textureDescriptorSets;
     private DescriptorSetLayout.SamplerDescriptorSetLayout textureDescriptorSetLayout;
     private TextureSampler textureSampler;
     private DescriptorSetLayout.UniformDescriptorSetLayout uniformDescriptorSetLayout;
@@ -76,7 +78,8 @@ public class GeometryRenderActivity {
         EngineProperties engineProps = EngineProperties.getInstance();
         List<DescriptorPool.DescriptorTypeCount> descriptorTypeCounts = new ArrayList<>();
         descriptorTypeCounts.add(new DescriptorPool.DescriptorTypeCount(swapChain.getNumImages() + 1, VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER));
-        descriptorTypeCounts.add(new DescriptorPool.DescriptorTypeCount(engineProps.getMaxTextures(), VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER));
+        descriptorTypeCounts.add(new DescriptorPool.DescriptorTypeCount(swapChain.getNumImages() * engineProps.getMaxTextures(),
+                VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER));
         descriptorTypeCounts.add(new DescriptorPool.DescriptorTypeCount(1, VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC));
         descriptorTypeCounts.add(new DescriptorPool.DescriptorTypeCount(1, VK_DESCRIPTOR_TYPE_STORAGE_BUFFER));
         descriptorPool = new DescriptorPool(device, descriptorTypeCounts);
@@ -95,6 +98,7 @@ public class GeometryRenderActivity {
         };
 
         textureSampler = new TextureSampler(device, 1, true);
+        textureDescriptorSets = new TextureDescriptorSet[numImages];
         projMatrixUniform = new VulkanBuffer(device, GraphConstants.MAT4X4_SIZE, VK_BUFFER_USAGE_UNIFORM_BUFFER_BIT,
                 VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT, 0);
         projMatrixDescriptorSet = new DescriptorSet.UniformDescriptorSet(descriptorPool, uniformDescriptorSetLayout, projMatrixUniform, 0);
@@ -122,13 +126,16 @@ public class GeometryRenderActivity {
 
     private void createShaders() {
         EngineProperties engineProperties = EngineProperties.getInstance();
+        boolean packedVertices = engineProperties.isPackedVertices();
         if (engineProperties.isShaderRecompilation()) {
-            ShaderCompiler.compileShaderIfChanged(GEOMETRY_VERTEX_SHADER_FILE_GLSL, Shaderc.shaderc_glsl_vertex_shader);
+            ShaderCompiler.compileShaderIfChanged(packedVertices ? GEOMETRY_PACKED_VERTEX_SHADER_FILE_GLSL :
+                    GEOMETRY_VERTEX_SHADER_FILE_GLSL, Shaderc.shaderc_glsl_vertex_shader);
             ShaderCompiler.compileShaderIfChanged(GEOMETRY_FRAGMENT_SHADER_FILE_GLSL, Shaderc.shaderc_glsl_fragment_shader);
         }
         shaderProgram = new ShaderProgram(device, new ShaderProgram.ShaderModuleData[]
                 {
-                        new ShaderProgram.ShaderModuleData(VK_SHADER_STAGE_VERTEX_BIT, GEOMETRY_VERTEX_SHADER_FILE_SPV),
+                        new ShaderProgram.ShaderModuleData(VK_SHADER_STAGE_VERTEX_BIT, packedVertices ?
+                                GEOMETRY_PACKED_VERTEX_SHADER_FILE_SPV : GEOMETRY_VERTEX_SHADER_FILE_SPV),
                         new ShaderProgram.ShaderModuleData(VK_SHADER_STAGE_FRAGMENT_BIT, GEOMETRY_FRAGMENT_SHADER_FILE_SPV),
                 });
     }
@@ -137,8 +144,7 @@ public class GeometryRenderActivity {
         return geometryFrameBuffer.geometryAttachments().getAttachments();
     }
 
-    public void loadModels(TextureCache textureCache) {
-        device.waitIdle();
+    private List<Texture> getTextureList(TextureCache textureCache) {
         // Size of the descriptor is setup in the layout, we need to fill up the texture list
         // up to the number defined in the layout (reusing last texture)
         List<Texture> textureCacheList = textureCache.getAsList();
@@ -149,11 +155,22 @@ public class GeometryRenderActivity {
         for (int i = 0; i < maxTextures - textureCacheSize; i++) {
             textureList.add(textureCacheList.get(textureCacheSize - 1));
         }
-        textureDescriptorSet = new TextureDescriptorSet(descriptorPool, textureDescriptorSetLayout, textureList,
-                textureSampler, 0);
+        return textureList;
     }
 
-    public void recordCommandBuffer(CommandBuffer commandBuffer, GlobalBuffers globalBuffers, int idx) {
+    /**
+     * Updates the descriptor sets after loading models, the device must not be using them.
+     */
+    public void loadModels(TextureCache textureCache, GlobalBuffers globalBuffers) {
+        // Materials buffer is replaced when it grows
+        materialsDescriptorSet.update(globalBuffers.getMaterialsBuffer());
+        for (int i = 0; i < textureDescriptorSets.length; i++) {
+            updateTextures(textureCache, i);
+        }
+    }
+
+    public void recordCommandBuffer(CommandBuffer commandBuffer, GlobalBuffers globalBuffers, int idx,
+                                    boolean compactCommands) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
             VkExtent2D swapChainExtent = swapChain.getSwapChainExtent();
             int width = swapChainExtent.width();
@@ -209,7 +226,7 @@ public class GeometryRenderActivity {
                     .put(0, projMatrixDescriptorSet.getVkDescriptorSet())
                     .put(1, viewMatricesDescriptorSets[idx].getVkDescriptorSet())
                     .put(2, materialsDescriptorSet.getVkDescriptorSet())
-                    .put(3, textureDescriptorSet.getVkDescriptorSet());
+                    .put(3, textureDescriptorSets[idx].getVkDescriptorSet());
 
             vkCmdBindDescriptorSets(cmdHandle, VK_PIPELINE_BIND_POINT_GRAPHICS,
                     pipeLine.getVkPipelineLayout(), 0, descriptorSets, null);
@@ -218,17 +235,24 @@ public class GeometryRenderActivity {
             LongBuffer instanceBuffer = stack.mallocLong(1);
             LongBuffer offsets = stack.mallocLong(1).put(0, 0L);
 
-            // Draw commands for non animated entities
-            if (globalBuffers.getNumIndirectCommands() > 0) {
+            // Draw commands for non animated entities, filled by the culling pass
+            int numIndirectCommands = globalBuffers.getNumIndirectCommands();
+            if (numIndirectCommands > 0) {
                 vertexBuffer.put(0, globalBuffers.getVerticesBuffer().getBuffer());
-                instanceBuffer.put(0, globalBuffers.getInstanceDataBuffers()[idx].getBuffer());
+                instanceBuffer.put(0, globalBuffers.getCulledInstanceDataBuffers()[idx].getBuffer());
 
                 vkCmdBindVertexBuffers(cmdHandle, 0, vertexBuffer, offsets);
                 vkCmdBindVertexBuffers(cmdHandle, 1, instanceBuffer, offsets);
                 vkCmdBindIndexBuffer(cmdHandle, globalBuffers.getIndicesBuffer().getBuffer(), 0, VK_INDEX_TYPE_UINT32);
-                VulkanBuffer staticIndirectBuffer = globalBuffers.getIndirectBuffer();
-                vkCmdDrawIndexedIndirect(cmdHandle, staticIndirectBuffer.getBuffer(), 0, globalBuffers.getNumIndirectCommands(),
-                        GlobalBuffers.IND_COMMAND_STRIDE);
+                long culledIndirectBuffer = globalBuffers.getCulledIndirectBuffers()[idx].getBuffer();
+                if (compactCommands) {
+                    KHRDrawIndirectCount.vkCmdDrawIndexedIndirectCountKHR(cmdHandle, culledIndirectBuffer,
+                            GlobalBuffers.CULLED_COMMANDS_OFFSET, culledIndirectBuffer, 0, numIndirectCommands,
+                            GlobalBuffers.IND_COMMAND_STRIDE);
+                } else {
+                    vkCmdDrawIndexedIndirect(cmdHandle, culledIndirectBuffer, GlobalBuffers.CULLED_COMMANDS_OFFSET,
+                            numIndirectCommands, GlobalBuffers.IND_COMMAND_STRIDE);
+                }
             }
 
             // Draw commands for animated entities
@@ -239,7 +263,7 @@ public class GeometryRenderActivity {
                 vkCmdBindVertexBuffers(cmdHandle, 0, vertexBuffer, offsets);
                 vkCmdBindVertexBuffers(cmdHandle, 1, instanceBuffer, offsets);
                 vkCmdBindIndexBuffer(cmdHandle, globalBuffers.getIndicesBuffer().getBuffer(), 0, VK_INDEX_TYPE_UINT32);
-                VulkanBuffer animIndirectBuffer = globalBuffers.getAnimIndirectBuffer();
+                VulkanBuffer animIndirectBuffer = globalBuffers.getAnimIndirectBuffers()[idx];
                 vkCmdDrawIndexedIndirect(cmdHandle, animIndirectBuffer.getBuffer(), 0, globalBuffers.getNumAnimIndirectCommands(),
                         GlobalBuffers.IND_COMMAND_STRIDE);
             }
@@ -258,4 +282,16 @@ public class GeometryRenderActivity {
         this.swapChain = swapChain;
         geometryFrameBuffer.resize(swapChain);
     }
+
+    /**
+     * Updates the texture descriptor set of a frame, the device must not be using it.
+     */
+    public void updateTextures(TextureCache textureCache, int idx) {
+        if (textureDescriptorSets[idx] == null) {
+            textureDescriptorSets[idx] = new TextureDescriptorSet(descriptorPool, textureDescriptorSetLayout,
+                    getTextureList(textureCache), textureSampler, 0);
+        } else {
+            textureDescriptorSets[idx].update(device, getTextureList(textureCache), textureSampler, 0);
+        }
+    }
 }
\ No newline at end of file
@@ -24,22 +24,25 @@ public class GuiRenderActivity {
     private static final String GUI_VERTEX_SHADER_FILE_GLSL = "resources/shaders/gui_vertex.glsl";
     private static final String GUI_VERTEX_SHADER_FILE_SPV = GUI_VERTEX_SHADER_FILE_GLSL + ".spv";
 
+    private final FrameRing frameRing;
+
     private DescriptorPool descriptorPool;
     private DescriptorSetLayout[] descriptorSetLayouts;
     private Device device;
     private FontsManager fontsManager;
     private TextureSampler fontsTextureSampler;
-    private VulkanBuffer[] indicesBuffers;
+    private long indicesOffset;
     private Pipeline pipeline;
     private ShaderProgram shaderProgram;
     private SwapChain swapChain;
     private TextureDescriptorSet textureDescriptorSet;
     private DescriptorSetLayout.SamplerDescriptorSetLayout textureDescriptorSetLayout;
-    private VulkanBuffer[] vertexBuffers;
+    private long verticesOffset;
 
     public GuiRenderActivity(SwapChain swapChain, CommandPool commandPool, Queue queue, PipelineCache pipelineCache,
-                             long vkRenderPass) {
+                             long vkRenderPass, FrameRing frameRing) {
         this.swapChain = swapChain;
+        this.frameRing = frameRing;
         device = swapChain.getDevice();
 
         createShaders();
@@ -53,8 +56,6 @@ public class GuiRenderActivity {
         textureDescriptorSetLayout.cleanup();
         fontsTextureSampler.cleanup();
         descriptorPool.cleanup();
-        Arrays.stream(vertexBuffers).filter(Objects::nonNull).forEach(VulkanBuffer::cleanup);
-        Arrays.stream(indicesBuffers).filter(Objects::nonNull).forEach(VulkanBuffer::cleanup);
         ImGui.destroyContext();
         pipeline.cleanup();
         shaderProgram.cleanup();
@@ -108,8 +109,6 @@ public class GuiRenderActivity {
         imGuiIO.setDisplaySize(swapChainExtent.width(), swapChainExtent.height());
         imGuiIO.setDisplayFramebufferScale(1.0f, 1.0f);
 
-        vertexBuffers = new VulkanBuffer[swapChain.getNumImages()];
-        indicesBuffers = new VulkanBuffer[swapChain.getNumImages()];
 
         ImGuiIO io = ImGui.getIO();
         io.setKeyMap(ImGuiKey.Tab, GLFW_KEY_TAB);
@@ -134,15 +133,12 @@ public class GuiRenderActivity {
 
     public void recordCommandBuffer(Scene scene, CommandBuffer commandBuffer) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            int idx = swapChain.getCurrentFrame();
-
             IGuiInstance guiInstance = scene.getGuiInstance();
             if (guiInstance == null) {
                 return;
             }
             guiInstance.drawGui(fontsManager);
-            updateBuffers(idx);
-            if (vertexBuffers[idx] == null) {
+            if (!updateBuffers()) {
                 return;
             }
 
@@ -164,11 +160,11 @@ public class GuiRenderActivity {
             vkCmdSetViewport(cmdHandle, 0, viewport);
 
             LongBuffer vtxBuffer = stack.mallocLong(1);
-            vtxBuffer.put(0, vertexBuffers[idx].getBuffer());
+            vtxBuffer.put(0, frameRing.getBuffer().getBuffer());
             LongBuffer offsets = stack.mallocLong(1);
-            offsets.put(0, 0L);
+            offsets.put(0, verticesOffset);
             vkCmdBindVertexBuffers(cmdHandle, 0, vtxBuffer, offsets);
-            vkCmdBindIndexBuffer(cmdHandle, indicesBuffers[idx].getBuffer(), 0, VK_INDEX_TYPE_UINT16);
+            vkCmdBindIndexBuffer(cmdHandle, frameRing.getBuffer().getBuffer(), indicesOffset, VK_INDEX_TYPE_UINT16);
 
             ImGuiIO io = ImGui.getIO();
             FloatBuffer pushConstantBuffer = stack.mallocFloat(2);
@@ -213,37 +209,19 @@ public class GuiRenderActivity {
         imGuiIO.setDisplaySize(swapChainExtent.width(), swapChainExtent.height());
     }
 
-    private void updateBuffers(int idx) {
+    private boolean updateBuffers() {
         ImDrawData imDrawData = ImGui.getDrawData();
 
         int vertexBufferSize = imDrawData.getTotalVtxCount() * ImGuiVertexBufferStructure.VERTEX_SIZE;
         int indexBufferSize = imDrawData.getTotalIdxCount() * GraphConstants.SHORT_LENGTH;
 
         if (vertexBufferSize == 0 || indexBufferSize == 0) {
-            return;
-        }
-        VulkanBuffer vertexBuffer = vertexBuffers[idx];
-        if (vertexBuffer == null || vertexBufferSize != vertexBuffer.getRequestedSize()) {
-            if (vertexBuffer != null) {
-                vertexBuffer.cleanup();
-            }
-            vertexBuffer = new VulkanBuffer(device, vertexBufferSize, VK_BUFFER_USAGE_VERTEX_BUFFER_BIT,
-                    VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT, 0);
-            vertexBuffers[idx] = vertexBuffer;
-        }
-
-        VulkanBuffer indicesBuffer = indicesBuffers[idx];
-        if (indicesBuffer == null || indexBufferSize != indicesBuffer.getRequestedSize()) {
-            if (indicesBuffer != null) {
-                indicesBuffer.cleanup();
-            }
-            indicesBuffer = new VulkanBuffer(device, indexBufferSize, VK_BUFFER_USAGE_INDEX_BUFFER_BIT,
-                    VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT, 0);
-            indicesBuffers[idx] = indicesBuffer;
+            return false;
         }
-
-        ByteBuffer dstVertexBuffer = MemoryUtil.memByteBuffer(vertexBuffer.map(), vertexBufferSize);
-        ByteBuffer dstIdxBuffer = MemoryUtil.memByteBuffer(indicesBuffer.map(), indexBufferSize);
+        verticesOffset = frameRing.allocate(vertexBufferSize);
+        indicesOffset = frameRing.allocate(indexBufferSize);
+        ByteBuffer dstVertexBuffer = frameRing.getByteBuffer(verticesOffset, vertexBufferSize);
+        ByteBuffer dstIdxBuffer = frameRing.getByteBuffer(indicesOffset, indexBufferSize);
 
         int numCmdLists = imDrawData.getCmdListsCount();
         for (int i = 0; i < numCmdLists; i++) {
@@ -254,12 +232,7 @@ public class GuiRenderActivity {
             ByteBuffer imguiIndicesBuffer = imDrawData.getCmdListIdxBufferData(i);
             dstIdxBuffer.put(imguiIndicesBuffer);
         }
-
-        vertexBuffer.flush();
-        indicesBuffer.flush();
-
-        vertexBuffer.unMap();
-        indicesBuffer.unMap();
+        return true;
     }
 
     public static class CharCallBack implements GLFWCharCallbackI {
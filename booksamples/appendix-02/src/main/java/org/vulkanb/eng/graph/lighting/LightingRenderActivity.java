@@ -17,13 +17,21 @@ import static org.lwjgl.vulkan.VK11.*;
 
 public class LightingRenderActivity {
 
+    private static final int INV_MATRICES_SIZE = GraphConstants.MAT4X4_SIZE * 2;
     private static final String LIGHTING_FRAGMENT_SHADER_FILE_GLSL = "resources/shaders/lighting_fragment.glsl";
     private static final String LIGHTING_FRAGMENT_SHADER_FILE_SPV = LIGHTING_FRAGMENT_SHADER_FILE_GLSL + ".spv";
     private static final String LIGHTING_VERTEX_SHADER_FILE_GLSL = "resources/shaders/lighting_vertex.glsl";
     private static final String LIGHTING_VERTEX_SHADER_FILE_SPV = LIGHTING_VERTEX_SHADER_FILE_GLSL + ".spv";
+    private static final int LIGHTS_SIZE = GraphConstants.INT_LENGTH * 4 + GraphConstants.VEC4_SIZE * 2 *
+            GraphConstants.MAX_LIGHTS + GraphConstants.VEC4_SIZE;
+    private static final int SCENE_SIZE = GraphConstants.VEC4_SIZE * 2;
+    private static final int SHADOWS_MATRICES_SIZE = (GraphConstants.MAT4X4_SIZE + GraphConstants.VEC4_SIZE) *
+            GraphConstants.SHADOW_MAP_CASCADE_COUNT;
 
     private final Vector4f auxVec;
     private final Device device;
+    private final int[] dynamicOffsets;
+    private final FrameRing frameRing;
     private final LightSpecConstants lightSpecConstants;
     private final LightingFrameBuffer lightingFrameBuffer;
     private final Scene scene;
@@ -34,34 +42,31 @@ public class LightingRenderActivity {
     private DescriptorPool descriptorPool;
     private DescriptorSetLayout[] descriptorSetLayouts;
     private Fence[] fences;
-    private VulkanBuffer[] invMatricesBuffers;
-    private DescriptorSet.UniformDescriptorSet[] invMatricesDescriptorSets;
-    private VulkanBuffer[] lightsBuffers;
-    private DescriptorSet.StorageDescriptorSet[] lightsDescriptorSets;
+    private DescriptorSet.DynUniformDescriptorSet invMatricesDescriptorSet;
+    private DescriptorSet.DynStorageDescriptorSet lightsDescriptorSet;
     private Pipeline pipeline;
-    private VulkanBuffer[] sceneBuffers;
-    private DescriptorSet.UniformDescriptorSet[] sceneDescriptorSets;
+    private DescriptorSet.DynUniformDescriptorSet sceneDescriptorSet;
     private ShaderProgram shaderProgram;
-    private VulkanBuffer[] shadowsMatricesBuffers;
-    private DescriptorSet.StorageDescriptorSet[] shadowsMatricesDescriptorSets;
-    private DescriptorSetLayout.StorageDescriptorSetLayout storageDescriptorSetLayout;
+    private DescriptorSet.DynStorageDescriptorSet shadowsMatricesDescriptorSet;
+    private DescriptorSetLayout.DynStorageDescriptorSetLayout storageDescriptorSetLayout;
     private SwapChain swapChain;
-    private DescriptorSetLayout.UniformDescriptorSetLayout uniformDescriptorSetLayout;
+    private DescriptorSetLayout.DynUniformDescriptorSetLayout uniformDescriptorSetLayout;
 
     public LightingRenderActivity(SwapChain swapChain, CommandPool commandPool, PipelineCache pipelineCache,
-                                  List<Attachment> attachments, Scene scene) {
+                                  List<Attachment> attachments, Scene scene, FrameRing frameRing) {
         this.swapChain = swapChain;
         this.scene = scene;
+        this.frameRing = frameRing;
         device = swapChain.getDevice();
         auxVec = new Vector4f();
         lightSpecConstants = new LightSpecConstants();
+        dynamicOffsets = new int[4];
 
         lightingFrameBuffer = new LightingFrameBuffer(swapChain);
         int numImages = swapChain.getNumImages();
         createShaders();
         createDescriptorPool(attachments);
-        createUniforms(numImages);
-        createDescriptorSets(attachments, numImages);
+        createDescriptorSets(attachments);
         createPipeline(pipelineCache);
         createCommandBuffers(commandPool, numImages);
     }
@@ -75,10 +80,11 @@ public class LightingRenderActivity {
         fence.fenceWait();
         fence.reset();
 
-        updateLights(scene.getAmbientLight(), scene.getLights(), scene.getCamera().getViewMatrix(),
-                lightsBuffers[idx], sceneBuffers[idx]);
-        updateInvMatrices(invMatricesBuffers[idx]);
-        updateCascadeShadowMatrices(cascadeShadows, shadowsMatricesBuffers[idx]);
+        // All the users of the frame ring record into this command buffer, so its fence guards the whole frame region
+        frameRing.beginFrame(idx);
+        updateLights(scene.getAmbientLight(), scene.getLights(), scene.getCamera().getViewMatrix());
+        updateInvMatrices();
+        updateCascadeShadowMatrices(cascadeShadows);
 
         commandBuffer.reset();
         commandBuffer.beginRecording();
@@ -92,13 +98,9 @@ public class LightingRenderActivity {
         attachmentsDescriptorSet.cleanup();
         attachmentsLayout.cleanup();
         descriptorPool.cleanup();
-        Arrays.asList(sceneBuffers).forEach(VulkanBuffer::cleanup);
-        Arrays.asList(lightsBuffers).forEach(VulkanBuffer::cleanup);
         pipeline.cleanup();
         lightSpecConstants.cleanup();
-        Arrays.asList(invMatricesBuffers).forEach(VulkanBuffer::cleanup);
         lightingFrameBuffer.cleanup();
-        Arrays.asList(shadowsMatricesBuffers).forEach(VulkanBuffer::cleanup);
         shaderProgram.cleanup();
         Arrays.asList(commandBuffers).forEach(CommandBuffer::cleanup);
         Arrays.asList(fences).forEach(Fence::cleanup);
@@ -117,15 +119,15 @@ public class LightingRenderActivity {
     private void createDescriptorPool(List<Attachment> attachments) {
         List<DescriptorPool.DescriptorTypeCount> descriptorTypeCounts = new ArrayList<>();
         descriptorTypeCounts.add(new DescriptorPool.DescriptorTypeCount(attachments.size(), VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER));
-        descriptorTypeCounts.add(new DescriptorPool.DescriptorTypeCount(swapChain.getNumImages() * 2, VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER));
-        descriptorTypeCounts.add(new DescriptorPool.DescriptorTypeCount(swapChain.getNumImages() * 2, VK_DESCRIPTOR_TYPE_STORAGE_BUFFER));
+        descriptorTypeCounts.add(new DescriptorPool.DescriptorTypeCount(2, VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC));
+        descriptorTypeCounts.add(new DescriptorPool.DescriptorTypeCount(2, VK_DESCRIPTOR_TYPE_STORAGE_BUFFER_DYNAMIC));
         descriptorPool = new DescriptorPool(device, descriptorTypeCounts);
     }
 
-    private void createDescriptorSets(List<Attachment> attachments, int numImages) {
+    private void createDescriptorSets(List<Attachment> attachments) {
         attachmentsLayout = new AttachmentsLayout(device, attachments.size());
-        uniformDescriptorSetLayout = new DescriptorSetLayout.UniformDescriptorSetLayout(device, 0, VK_SHADER_STAGE_FRAGMENT_BIT);
-        storageDescriptorSetLayout = new DescriptorSetLayout.StorageDescriptorSetLayout(device, 0, VK_SHADER_STAGE_FRAGMENT_BIT);
+        uniformDescriptorSetLayout = new DescriptorSetLayout.DynUniformDescriptorSetLayout(device, 0, VK_SHADER_STAGE_FRAGMENT_BIT);
+        storageDescriptorSetLayout = new DescriptorSetLayout.DynStorageDescriptorSetLayout(device, 0, VK_SHADER_STAGE_FRAGMENT_BIT);
         descriptorSetLayouts = new DescriptorSetLayout[]{
                 attachmentsLayout,
                 storageDescriptorSetLayout,
@@ -137,20 +139,15 @@ public class LightingRenderActivity {
         attachmentsDescriptorSet = new AttachmentsDescriptorSet(descriptorPool, attachmentsLayout,
                 attachments, 0);
 
-        lightsDescriptorSets = new DescriptorSet.StorageDescriptorSet[numImages];
-        sceneDescriptorSets = new DescriptorSet.UniformDescriptorSet[numImages];
-        invMatricesDescriptorSets = new DescriptorSet.UniformDescriptorSet[numImages];
-        shadowsMatricesDescriptorSets = new DescriptorSet.StorageDescriptorSet[numImages];
-        for (int i = 0; i < numImages; i++) {
-            lightsDescriptorSets[i] = new DescriptorSet.StorageDescriptorSet(descriptorPool, storageDescriptorSetLayout,
-                    lightsBuffers[i], 0);
-            sceneDescriptorSets[i] = new DescriptorSet.UniformDescriptorSet(descriptorPool, uniformDescriptorSetLayout,
-                    sceneBuffers[i], 0);
-            invMatricesDescriptorSets[i] = new DescriptorSet.UniformDescriptorSet(descriptorPool, uniformDescriptorSetLayout,
-                    invMatricesBuffers[i], 0);
-            shadowsMatricesDescriptorSets[i] = new DescriptorSet.StorageDescriptorSet(descriptorPool, storageDescriptorSetLayout,
-                    shadowsMatricesBuffers[i], 0);
-        }
+        VulkanBuffer ringBuffer = frameRing.getBuffer();
+        lightsDescriptorSet = new DescriptorSet.DynStorageDescriptorSet(descriptorPool, storageDescriptorSetLayout,
+                ringBuffer, 0, LIGHTS_SIZE);
+        sceneDescriptorSet = new DescriptorSet.DynUniformDescriptorSet(descriptorPool, uniformDescriptorSetLayout,
+                ringBuffer, 0, SCENE_SIZE);
+        invMatricesDescriptorSet = new DescriptorSet.DynUniformDescriptorSet(descriptorPool, uniformDescriptorSetLayout,
+                ringBuffer, 0, INV_MATRICES_SIZE);
+        shadowsMatricesDescriptorSet = new DescriptorSet.DynStorageDescriptorSet(descriptorPool, storageDescriptorSetLayout,
+                ringBuffer, 0, SHADOWS_MATRICES_SIZE);
     }
 
     private void createPipeline(PipelineCache pipelineCache) {
@@ -175,32 +172,6 @@ public class LightingRenderActivity {
                 });
     }
 
-    private void createUniforms(int numImages) {
-        lightsBuffers = new VulkanBuffer[numImages];
-        sceneBuffers = new VulkanBuffer[numImages];
-        invMatricesBuffers = new VulkanBuffer[numImages];
-        shadowsMatricesBuffers = new VulkanBuffer[numImages];
-        for (int i = 0; i < numImages; i++) {
-            lightsBuffers[i] = new VulkanBuffer(device, (long)
-                    GraphConstants.INT_LENGTH * 4 + GraphConstants.VEC4_SIZE * 2 * GraphConstants.MAX_LIGHTS +
-                    GraphConstants.VEC4_SIZE, VK_BUFFER_USAGE_STORAGE_BUFFER_BIT,
-                    VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT, 0);
-
-            sceneBuffers[i] = new VulkanBuffer(device, (long)
-                    GraphConstants.VEC4_SIZE * 2, VK_BUFFER_USAGE_UNIFORM_BUFFER_BIT,
-                    VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT, 0);
-
-            invMatricesBuffers[i] = new VulkanBuffer(device, (long)
-                    GraphConstants.MAT4X4_SIZE * 2, VK_BUFFER_USAGE_UNIFORM_BUFFER_BIT,
-                    VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT, 0);
-
-            shadowsMatricesBuffers[i] = new VulkanBuffer(device, (long)
-                    (GraphConstants.MAT4X4_SIZE + GraphConstants.VEC4_SIZE) * GraphConstants.SHADOW_MAP_CASCADE_COUNT,
-                    VK_BUFFER_USAGE_STORAGE_BUFFER_BIT,
-                    VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT, 0);
-        }
-    }
-
     public void endRecording(CommandBuffer commandBuffer) {
         vkCmdEndRenderPass(commandBuffer.getVkCommandBuffer());
         commandBuffer.endRecording();
@@ -260,12 +231,12 @@ public class LightingRenderActivity {
 
             LongBuffer descriptorSets = stack.mallocLong(5)
                     .put(0, attachmentsDescriptorSet.getVkDescriptorSet())
-                    .put(1, lightsDescriptorSets[idx].getVkDescriptorSet())
-                    .put(2, sceneDescriptorSets[idx].getVkDescriptorSet())
-                    .put(3, invMatricesDescriptorSets[idx].getVkDescriptorSet())
-                    .put(4, shadowsMatricesDescriptorSets[idx].getVkDescriptorSet());
+                    .put(1, lightsDescriptorSet.getVkDescriptorSet())
+                    .put(2, sceneDescriptorSet.getVkDescriptorSet())
+                    .put(3, invMatricesDescriptorSet.getVkDescriptorSet())
+                    .put(4, shadowsMatricesDescriptorSet.getVkDescriptorSet());
             vkCmdBindDescriptorSets(cmdHandle, VK_PIPELINE_BIND_POINT_GRAPHICS,
-                    pipeline.getVkPipelineLayout(), 0, descriptorSets, null);
+                    pipeline.getVkPipelineLayout(), 0, descriptorSets, stack.ints(dynamicOffsets));
 
             vkCmdDraw(cmdHandle, 3, 1, 0, 0);
         }
@@ -291,30 +262,33 @@ public class LightingRenderActivity {
         }
     }
 
-    private void updateCascadeShadowMatrices(List<CascadeShadow> cascadeShadows, VulkanBuffer shadowsUniformBuffer) {
-        long mappedMemory = shadowsUniformBuffer.map();
-        ByteBuffer buffer = MemoryUtil.memByteBuffer(mappedMemory, (int) shadowsUniformBuffer.getRequestedSize());
+    private void updateCascadeShadowMatrices(List<CascadeShadow> cascadeShadows) {
+        long ringOffset = frameRing.allocate(SHADOWS_MATRICES_SIZE);
+        dynamicOffsets[3] = (int) ringOffset;
+        ByteBuffer buffer = frameRing.getByteBuffer(ringOffset, SHADOWS_MATRICES_SIZE);
         int offset = 0;
         for (CascadeShadow cascadeShadow : cascadeShadows) {
             cascadeShadow.getProjViewMatrix().get(offset, buffer);
             buffer.putFloat(offset + GraphConstants.MAT4X4_SIZE, cascadeShadow.getSplitDistance());
             offset += GraphConstants.MAT4X4_SIZE + GraphConstants.VEC4_SIZE;
         }
-        shadowsUniformBuffer.unMap();
     }
 
-    private void updateInvMatrices(VulkanBuffer invMatricesBuffer) {
+    private void updateInvMatrices() {
         Matrix4f invProj = new Matrix4f(scene.getProjection().getProjectionMatrix()).invert();
         Matrix4f invView = new Matrix4f(scene.getCamera().getViewMatrix()).invert();
-        VulkanUtils.copyMatrixToBuffer(invMatricesBuffer, invProj, 0);
-        VulkanUtils.copyMatrixToBuffer(invMatricesBuffer, invView, GraphConstants.MAT4X4_SIZE);
+        long ringOffset = frameRing.allocate(INV_MATRICES_SIZE);
+        dynamicOffsets[2] = (int) ringOffset;
+        ByteBuffer buffer = frameRing.getByteBuffer(ringOffset, INV_MATRICES_SIZE);
+        invProj.get(0, buffer);
+        invView.get(GraphConstants.MAT4X4_SIZE, buffer);
     }
 
-    private void updateLights(Vector4f ambientLight, Light[] lights, Matrix4f viewMatrix,
-                              VulkanBuffer lightsBuffer, VulkanBuffer sceneBuffer) {
+    private void updateLights(Vector4f ambientLight, Light[] lights, Matrix4f viewMatrix) {
         // Lights
-        long mappedMemory = lightsBuffer.map();
-        ByteBuffer uniformBuffer = MemoryUtil.memByteBuffer(mappedMemory, (int) lightsBuffer.getRequestedSize());
+        long ringOffset = frameRing.allocate(LIGHTS_SIZE);
+        dynamicOffsets[0] = (int) ringOffset;
+        ByteBuffer uniformBuffer = frameRing.getByteBuffer(ringOffset, LIGHTS_SIZE);
 
         int offset = 0;
         int numLights = lights != null ? lights.length : 0;
@@ -330,16 +304,14 @@ public class LightingRenderActivity {
             light.getColor().get(offset, uniformBuffer);
             offset += GraphConstants.VEC4_SIZE;
         }
-        lightsBuffer.unMap();
 
         // Scene Uniform
-        mappedMemory = sceneBuffer.map();
-        uniformBuffer = MemoryUtil.memByteBuffer(mappedMemory, (int) sceneBuffer.getRequestedSize());
+        ringOffset = frameRing.allocate(SCENE_SIZE);
+        dynamicOffsets[1] = (int) ringOffset;
+        uniformBuffer = frameRing.getByteBuffer(ringOffset, SCENE_SIZE);
 
         ambientLight.get(0, uniformBuffer);
         offset = GraphConstants.VEC4_SIZE;
         uniformBuffer.putInt(offset, numLights);
-
-        sceneBuffer.unMap();
     }
 }
\ No newline at end of file
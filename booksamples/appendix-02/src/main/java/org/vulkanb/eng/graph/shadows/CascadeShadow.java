@@ -2,19 +2,34 @@ package org.vulkanb.eng.graph.shadows;
 
 import org.joml.*;
 import org.vulkanb.eng.graph.vk.GraphConstants;
-import org.vulkanb.eng.scene.Scene;
+import org.vulkanb.eng.scene.*;
 
-import java.util.List;
+import java.util.*;
+import java.util.function.Consumer;
 
 public class CascadeShadow {
 
+    private Matrix4f casterProjViewMatrix;
     private Matrix4f projViewMatrix;
     private float splitDistance;
 
     public CascadeShadow() {
+        casterProjViewMatrix = new Matrix4f();
         projViewMatrix = new Matrix4f();
     }
 
+    /**
+     * Reports, only once, the entities that may be visible or cast shadows into any of the cascades, using the spatial
+     * index of the scene.
+     */
+    public static void collectCasters(List<CascadeShadow> cascadeShadows, Scene scene, Consumer<Entity> consumer) {
+        List<Matrix4f> casterMatrices = new ArrayList<>(cascadeShadows.size());
+        for (CascadeShadow cascadeShadow : cascadeShadows) {
+            casterMatrices.add(cascadeShadow.casterProjViewMatrix);
+        }
+        scene.getSpatialIndex().queryFrustum(casterMatrices, consumer);
+    }
+
     // Function are derived from Vulkan examples from Sascha Willems, and licensed under the MIT License:
     // https://github.com/SaschaWillems/Vulkan/tree/master/examples/shadowmappingcascade, which are based on
     // https://johanmedestrom.wordpress.com/2016/03/18/opengl-cascaded-shadow-maps/
@@ -104,6 +119,10 @@ public class CascadeShadow {
             CascadeShadow cascadeShadow = cascadeShadows.get(i);
             cascadeShadow.splitDistance = (nearClip + splitDist * clipRange) * -1.0f;
             cascadeShadow.projViewMatrix = lightOrthoMatrix.mul(lightViewMatrix);
+            // Depth is clamped in the shadow pass when supported, so casters between the light and the near plane
+            // are also drawn
+            cascadeShadow.casterProjViewMatrix = new Matrix4f().ortho(minExtents.x, maxExtents.x, minExtents.y,
+                    maxExtents.y, -farClip, maxExtents.z - minExtents.z, true).mul(lightViewMatrix);
 
             lastSplitDist = cascadeSplits[i];
         }
@@ -37,7 +37,7 @@ public class ShadowRenderActivity {
     private VulkanBuffer[] shadowsUniforms;
     private DescriptorSetLayout.StorageDescriptorSetLayout storageDescriptorSetLayout;
     private SwapChain swapChain;
-    private TextureDescriptorSet textureDescriptorSet;
+    private TextureDescriptorSet[] textureDescriptorSets;
     private DescriptorSetLayout.SamplerDescriptorSetLayout textureDescriptorSetLayout;
     private TextureSampler textureSampler;
     private DescriptorSetLayout.UniformDescriptorSetLayout uniformDescriptorSetLayout;
@@ -72,7 +72,8 @@ public class ShadowRenderActivity {
         EngineProperties engineProps = EngineProperties.getInstance();
         List<DescriptorPool.DescriptorTypeCount> descriptorTypeCounts = new ArrayList<>();
         descriptorTypeCounts.add(new DescriptorPool.DescriptorTypeCount(numImages, VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER));
-        descriptorTypeCounts.add(new DescriptorPool.DescriptorTypeCount(engineProps.getMaxTextures(), VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER));
+        descriptorTypeCounts.add(new DescriptorPool.DescriptorTypeCount(numImages * engineProps.getMaxTextures(),
+                VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER));
         descriptorPool = new DescriptorPool(device, descriptorTypeCounts);
     }
 
@@ -88,6 +89,7 @@ public class ShadowRenderActivity {
         };
 
         textureSampler = new TextureSampler(device, 1, false);
+        textureDescriptorSets = new TextureDescriptorSet[numImages];
         projMatrixDescriptorSet = new DescriptorSet.UniformDescriptorSet[numImages];
         materialsDescriptorSet = new DescriptorSet.StorageDescriptorSet(descriptorPool, storageDescriptorSetLayout,
                 globalBuffers.getMaterialsBuffer(), 0);
@@ -141,8 +143,7 @@ public class ShadowRenderActivity {
         return cascadeShadows;
     }
 
-    public void loadModels(TextureCache textureCache) {
-        device.waitIdle();
+    private List<Texture> getTextureList(TextureCache textureCache) {
         // Size of the descriptor is setup in the layout, we need to fill up the texture list
         // up to the number defined in the layout (reusing last texture)
         List<Texture> textureCacheList = textureCache.getAsList();
@@ -153,8 +154,18 @@ public class ShadowRenderActivity {
         for (int i = 0; i < maxTextures - textureCacheSize; i++) {
             textureList.add(textureCacheList.get(textureCacheSize - 1));
         }
-        textureDescriptorSet = new TextureDescriptorSet(descriptorPool, textureDescriptorSetLayout, textureList,
-                textureSampler, 0);
+        return textureList;
+    }
+
+    /**
+     * Updates the descriptor sets after loading models, the device must not be using them.
+     */
+    public void loadModels(TextureCache textureCache, GlobalBuffers globalBuffers) {
+        // Materials buffer is replaced when it grows
+        materialsDescriptorSet.update(globalBuffers.getMaterialsBuffer());
+        for (int i = 0; i < textureDescriptorSets.length; i++) {
+            updateTextures(textureCache, i);
+        }
     }
 
     public void recordCommandBuffer(CommandBuffer commandBuffer, GlobalBuffers globalBuffers, int idx) {
@@ -202,7 +213,7 @@ public class ShadowRenderActivity {
 
             LongBuffer descriptorSets = stack.mallocLong(3)
                     .put(0, projMatrixDescriptorSet[idx].getVkDescriptorSet())
-                    .put(1, textureDescriptorSet.getVkDescriptorSet())
+                    .put(1, textureDescriptorSets[idx].getVkDescriptorSet())
                     .put(2, materialsDescriptorSet.getVkDescriptorSet());
 
             vkCmdBindDescriptorSets(cmdHandle, VK_PIPELINE_BIND_POINT_GRAPHICS,
@@ -221,7 +232,7 @@ public class ShadowRenderActivity {
                 vkCmdBindVertexBuffers(cmdHandle, 1, instanceBuffer, offsets);
                 vkCmdBindIndexBuffer(cmdHandle, globalBuffers.getIndicesBuffer().getBuffer(), 0, VK_INDEX_TYPE_UINT32);
 
-                VulkanBuffer indirectBuffer = globalBuffers.getIndirectBuffer();
+                VulkanBuffer indirectBuffer = globalBuffers.getIndirectBuffers()[idx];
                 vkCmdDrawIndexedIndirect(cmdHandle, indirectBuffer.getBuffer(), 0, globalBuffers.getNumIndirectCommands(),
                         GlobalBuffers.IND_COMMAND_STRIDE);
             }
@@ -234,7 +245,7 @@ public class ShadowRenderActivity {
                 vkCmdBindVertexBuffers(cmdHandle, 0, vertexBuffer, offsets);
                 vkCmdBindVertexBuffers(cmdHandle, 1, instanceBuffer, offsets);
                 vkCmdBindIndexBuffer(cmdHandle, globalBuffers.getIndicesBuffer().getBuffer(), 0, VK_INDEX_TYPE_UINT32);
-                VulkanBuffer animIndirectBuffer = globalBuffers.getAnimIndirectBuffer();
+                VulkanBuffer animIndirectBuffer = globalBuffers.getAnimIndirectBuffers()[idx];
                 vkCmdDrawIndexedIndirect(cmdHandle, animIndirectBuffer.getBuffer(), 0, globalBuffers.getNumAnimIndirectCommands(),
                         GlobalBuffers.IND_COMMAND_STRIDE);
             }
@@ -263,4 +274,16 @@ public class ShadowRenderActivity {
         this.swapChain = swapChain;
         CascadeShadow.updateCascadeShadows(cascadeShadows, scene);
     }
+
+    /**
+     * Updates the texture descriptor set of a frame, the device must not be using it.
+     */
+    public void updateTextures(TextureCache textureCache, int idx) {
+        if (textureDescriptorSets[idx] == null) {
+            textureDescriptorSets[idx] = new TextureDescriptorSet(descriptorPool, textureDescriptorSetLayout,
+                    getTextureList(textureCache), textureSampler, 0);
+        } else {
+            textureDescriptorSets[idx].update(device, getTextureList(textureCache), textureSampler, 0);
+        }
+    }
 }
\ No newline at end of file
@@ -16,6 +16,13 @@ public abstract class DescriptorSet {
         return vkDescriptorSet;
     }
 
+    public static class DynStorageDescriptorSet extends SimpleDescriptorSet {
+        public DynStorageDescriptorSet(DescriptorPool descriptorPool, DescriptorSetLayout descriptorSetLayout,
+                                       VulkanBuffer buffer, int binding, long size) {
+            super(descriptorPool, descriptorSetLayout, buffer, binding, VK_DESCRIPTOR_TYPE_STORAGE_BUFFER_DYNAMIC, size);
+        }
+    }
+
     public static class DynUniformDescriptorSet extends SimpleDescriptorSet {
         public DynUniformDescriptorSet(DescriptorPool descriptorPool, DescriptorSetLayout descriptorSetLayout,
                                        VulkanBuffer buffer, int binding, long size) {
@@ -25,10 +32,16 @@ public abstract class DescriptorSet {
 
     public static class SimpleDescriptorSet extends DescriptorSet {
 
+        private final int binding;
+        private final Device device;
+        private final int type;
+
         public SimpleDescriptorSet(DescriptorPool descriptorPool, DescriptorSetLayout descriptorSetLayout,
                                    VulkanBuffer buffer, int binding, int type, long size) {
+            this.binding = binding;
+            this.type = type;
+            device = descriptorPool.getDevice();
             try (MemoryStack stack = MemoryStack.stackPush()) {
-                Device device = descriptorPool.getDevice();
                 LongBuffer pDescriptorSetLayout = stack.mallocLong(1);
                 pDescriptorSetLayout.put(0, descriptorSetLayout.getVkDescriptorLayout());
                 VkDescriptorSetAllocateInfo allocInfo = VkDescriptorSetAllocateInfo.calloc(stack)
@@ -41,7 +54,15 @@ public abstract class DescriptorSet {
                         "Failed to create descriptor set");
 
                 vkDescriptorSet = pDescriptorSet.get(0);
+            }
+            update(buffer, size);
+        }
 
+        /**
+         * Points the descriptor set to another buffer, the descriptor set must not be in use by the device.
+         */
+        public void update(VulkanBuffer buffer, long size) {
+            try (MemoryStack stack = MemoryStack.stackPush()) {
                 VkDescriptorBufferInfo.Buffer bufferInfo = VkDescriptorBufferInfo.calloc(1, stack)
                         .buffer(buffer.getBuffer())
                         .offset(0)
@@ -69,6 +90,10 @@ public abstract class DescriptorSet {
             super(descriptorPool, descriptorSetLayout, buffer, binding, VK_DESCRIPTOR_TYPE_STORAGE_BUFFER,
                     buffer.getRequestedSize());
         }
+
+        public void update(VulkanBuffer buffer) {
+            update(buffer, buffer.getRequestedSize());
+        }
     }
 
     public static class UniformDescriptorSet extends SimpleDescriptorSet {
@@ -27,6 +27,12 @@ public abstract class DescriptorSetLayout {
         return vkDescriptorLayout;
     }
 
+    public static class DynStorageDescriptorSetLayout extends SimpleDescriptorSetLayout {
+        public DynStorageDescriptorSetLayout(Device device, int binding, int stage) {
+            super(device, VK_DESCRIPTOR_TYPE_STORAGE_BUFFER_DYNAMIC, 1, binding, stage);
+        }
+    }
+
     public static class DynUniformDescriptorSetLayout extends SimpleDescriptorSetLayout {
         public DynUniformDescriptorSetLayout(Device device, int binding, int stage) {
             super(device, VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC, 1, binding, stage);
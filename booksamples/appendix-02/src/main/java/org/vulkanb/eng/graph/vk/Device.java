@@ -15,6 +15,7 @@ import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
 
 public class Device {
 
+    private final boolean drawIndirectCount;
     private final MemoryAllocator memoryAllocator;
     private final PhysicalDevice physicalDevice;
     private final boolean samplerAnisotropy;
@@ -44,6 +45,11 @@ public class Device {
             if (enableCheckPoints) {
                 numRequiredExtensions++;
             }
+            // Allows culled draws to be compacted, otherwise all the commands are issued even if they have no instances
+            drawIndirectCount = deviceExtensions.contains(KHRDrawIndirectCount.VK_KHR_DRAW_INDIRECT_COUNT_EXTENSION_NAME);
+            if (drawIndirectCount) {
+                numRequiredExtensions++;
+            }
             PointerBuffer requiredExtensions = stack.mallocPointer(numRequiredExtensions);
             requiredExtensions.put(stack.ASCII(KHRSwapchain.VK_KHR_SWAPCHAIN_EXTENSION_NAME));
             if (usePortability) {
@@ -56,6 +62,9 @@ public class Device {
                     requiredExtensions.put(stack.ASCII(AMDBufferMarker.VK_AMD_BUFFER_MARKER_EXTENSION_NAME));
                 }
             }
+            if (drawIndirectCount) {
+                requiredExtensions.put(stack.ASCII(KHRDrawIndirectCount.VK_KHR_DRAW_INDIRECT_COUNT_EXTENSION_NAME));
+            }
             requiredExtensions.flip();
 
             // Set up required features
@@ -137,6 +146,10 @@ public class Device {
         return vkDevice;
     }
 
+    public boolean isDrawIndirectCount() {
+        return drawIndirectCount;
+    }
+
     public boolean isSamplerAnisotropy() {
         return samplerAnisotropy;
     }
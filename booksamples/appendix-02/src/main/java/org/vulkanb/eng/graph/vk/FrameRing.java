@@ -0,0 +1,80 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.VkPhysicalDeviceLimits;
+import org.tinylog.Logger;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.util.vma.Vma.VMA_MEMORY_USAGE_CPU_TO_GPU;
+import static org.lwjgl.vulkan.VK11.*;
+
+/**
+ * Persistently mapped buffer for data that is written every frame. It is split in one region per frame, regions are
+ * sub-allocated linearly and reset as a whole once the GPU has finished with the frame, so data is bound using
+ * offsets instead of creating or mapping buffers each frame. Memory that is both host visible and device local is
+ * preferred when available.
+ */
+public class FrameRing {
+
+    private final long alignment;
+    private final VulkanBuffer buffer;
+    private final long frameSize;
+    private final long mappedMemory;
+    private final int numFrames;
+    private long frameEnd;
+    private long head;
+
+    public FrameRing(Device device, long frameSize, int numFrames) {
+        Logger.debug("Creating frame ring of {} bytes for {} frames", frameSize, numFrames);
+        VkPhysicalDeviceLimits limits = device.getPhysicalDevice().getVkPhysicalDeviceProperties().limits();
+        alignment = Math.max(GraphConstants.VEC4_SIZE, Math.max(limits.minUniformBufferOffsetAlignment(),
+                limits.minStorageBufferOffsetAlignment()));
+        this.frameSize = (frameSize + alignment - 1) / alignment * alignment;
+        this.numFrames = numFrames;
+        buffer = new VulkanBuffer(device, this.frameSize * numFrames, VK_BUFFER_USAGE_UNIFORM_BUFFER_BIT |
+                VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK_BUFFER_USAGE_VERTEX_BUFFER_BIT | VK_BUFFER_USAGE_INDEX_BUFFER_BIT,
+                VMA_MEMORY_USAGE_CPU_TO_GPU, VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT);
+        mappedMemory = buffer.map();
+        head = 0;
+        frameEnd = 0;
+    }
+
+    /**
+     * Returns the offset, relative to the start of the buffer, of a region of the current frame.
+     */
+    public long allocate(long size) {
+        long offset = (head + alignment - 1) / alignment * alignment;
+        if (offset + size > frameEnd) {
+            throw new RuntimeException("Frame ring of [" + frameSize + "] bytes per frame cannot hold [" + size +
+                    "] more bytes, increase frameRingSize");
+        }
+        head = offset + size;
+        return offset;
+    }
+
+    /**
+     * Starts using the region of a frame, discarding its previous allocations. It must only be called once the GPU
+     * has finished using the frame.
+     */
+    public void beginFrame(int frameIdx) {
+        if (frameIdx >= numFrames) {
+            throw new RuntimeException("Frame ring has [" + numFrames + "] frames, invalid frame [" + frameIdx + "]");
+        }
+        head = frameSize * frameIdx;
+        frameEnd = head + frameSize;
+    }
+
+    public void cleanup() {
+        buffer.unMap();
+        buffer.cleanup();
+    }
+
+    public VulkanBuffer getBuffer() {
+        return buffer;
+    }
+
+    public ByteBuffer getByteBuffer(long offset, long size) {
+        return MemoryUtil.memByteBuffer(mappedMemory + offset, (int) size);
+    }
+}
\ No newline at end of file
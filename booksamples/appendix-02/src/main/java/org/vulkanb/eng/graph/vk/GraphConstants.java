@@ -5,7 +5,10 @@ public final class GraphConstants {
     public static final int FLOAT_LENGTH = 4;
     public static final int INT_LENGTH = 4;
     public static final int SHORT_LENGTH = 2;
+    public static final int MAT3X4_SIZE = 12 * FLOAT_LENGTH;
     public static final int MAT4X4_SIZE = 16 * FLOAT_LENGTH;
+    // Must match the size of the shared arrays used in keyframes_comp.glsl
+    public static final int MAX_KEY_FRAME_NODES = 256;
     public static final int MAX_LIGHTS = 10;
     public static final int SHADOW_MAP_CASCADE_COUNT = 3;
     public static final int VEC4_SIZE = 4 * FLOAT_LENGTH;
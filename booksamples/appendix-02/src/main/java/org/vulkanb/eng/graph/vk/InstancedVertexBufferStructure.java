@@ -1,6 +1,7 @@
 package org.vulkanb.eng.graph.vk;
 
 import org.lwjgl.vulkan.*;
+import org.vulkanb.eng.EngineProperties;
 
 import static org.lwjgl.vulkan.VK10.*;
 
@@ -9,6 +10,8 @@ public class InstancedVertexBufferStructure extends VertexInputStateInfo {
     public static final int TEXT_COORD_COMPONENTS = 2;
     private static final int NORMAL_COMPONENTS = 3;
     private static final int NUMBER_OF_ATTRIBUTES = 10;
+    // Packed vertices do not have a bitangent, its location is not used
+    private static final int NUMBER_OF_PACKED_ATTRIBUTES = 9;
     private static final int POSITION_COMPONENTS = 3;
     public static final int SIZE_IN_BYTES = (POSITION_COMPONENTS + NORMAL_COMPONENTS * 3 + TEXT_COORD_COMPONENTS) * GraphConstants.FLOAT_LENGTH;
 
@@ -16,10 +19,84 @@ public class InstancedVertexBufferStructure extends VertexInputStateInfo {
     private final VkVertexInputBindingDescription.Buffer viBindings;
 
     public InstancedVertexBufferStructure() {
-        viAttrs = VkVertexInputAttributeDescription.calloc(NUMBER_OF_ATTRIBUTES);
+        boolean packedVertices = EngineProperties.getInstance().isPackedVertices();
+        viAttrs = VkVertexInputAttributeDescription.calloc(packedVertices ? NUMBER_OF_PACKED_ATTRIBUTES : NUMBER_OF_ATTRIBUTES);
         viBindings = VkVertexInputBindingDescription.calloc(2);
         vi = VkPipelineVertexInputStateCreateInfo.calloc();
 
+        int i = packedVertices ? addPackedVertexAttributes() : addVertexAttributes();
+
+        // Model Matrix as a set of 4 Vectors
+        int location = 5;
+        for (int j = 0; j < 4; j++) {
+            viAttrs.get(i)
+                    .binding(1)
+                    .location(location)
+                    .format(VK_FORMAT_R32G32B32A32_SFLOAT)
+                    .offset(j * GraphConstants.VEC4_SIZE);
+            i++;
+            location++;
+        }
+        viAttrs.get(i)
+                .binding(1)
+                .location(location)
+                .format(VK_FORMAT_R8_UINT)
+                .offset(GraphConstants.VEC4_SIZE * 4);
+
+        // Non instanced data
+        viBindings.get(0)
+                .binding(0)
+                .stride(packedVertices ? VertexBufferStructure.PACKED_SIZE_IN_BYTES : SIZE_IN_BYTES)
+                .inputRate(VK_VERTEX_INPUT_RATE_VERTEX);
+
+        // Instanced data
+        viBindings.get(1)
+                .binding(1)
+                .stride(GraphConstants.MAT4X4_SIZE + GraphConstants.INT_LENGTH)
+                .inputRate(VK_VERTEX_INPUT_RATE_INSTANCE);
+
+        vi
+                .sType(VK_STRUCTURE_TYPE_PIPELINE_VERTEX_INPUT_STATE_CREATE_INFO)
+                .pVertexBindingDescriptions(viBindings)
+                .pVertexAttributeDescriptions(viAttrs);
+    }
+
+    private int addPackedVertexAttributes() {
+        int offset = 0;
+        // Position
+        viAttrs.get(0)
+                .binding(0)
+                .location(0)
+                .format(VK_FORMAT_R32G32B32_SFLOAT)
+                .offset(offset);
+        offset += POSITION_COMPONENTS * GraphConstants.FLOAT_LENGTH;
+
+        // Octahedral encoded normal
+        viAttrs.get(1)
+                .binding(0)
+                .location(1)
+                .format(VK_FORMAT_R16G16_SNORM)
+                .offset(offset);
+        offset += GraphConstants.INT_LENGTH;
+
+        // Tangent and bitangent sign
+        viAttrs.get(2)
+                .binding(0)
+                .location(2)
+                .format(VK_FORMAT_A2B10G10R10_UNORM_PACK32)
+                .offset(offset);
+        offset += GraphConstants.INT_LENGTH;
+
+        // Texture coordinates
+        viAttrs.get(3)
+                .binding(0)
+                .location(4)
+                .format(VK_FORMAT_R16G16_SFLOAT)
+                .offset(offset);
+        return 4;
+    }
+
+    private int addVertexAttributes() {
         int i = 0;
         // Position
         viAttrs.get(i)
@@ -59,39 +136,7 @@ public class InstancedVertexBufferStructure extends VertexInputStateInfo {
                 .location(i)
                 .format(VK_FORMAT_R32G32_SFLOAT)
                 .offset(NORMAL_COMPONENTS * GraphConstants.FLOAT_LENGTH * 3 + POSITION_COMPONENTS * GraphConstants.FLOAT_LENGTH);
-
-        // Model Matrix as a set of 4 Vectors
-        i++;
-        for (int j = 0; j < 4; j++) {
-            viAttrs.get(i)
-                    .binding(1)
-                    .location(i)
-                    .format(VK_FORMAT_R32G32B32A32_SFLOAT)
-                    .offset(j * GraphConstants.VEC4_SIZE);
-            i++;
-        }
-        viAttrs.get(i)
-                .binding(1)
-                .location(i)
-                .format(VK_FORMAT_R8_UINT)
-                .offset(GraphConstants.VEC4_SIZE * 4);
-
-        // Non instanced data
-        viBindings.get(0)
-                .binding(0)
-                .stride(SIZE_IN_BYTES)
-                .inputRate(VK_VERTEX_INPUT_RATE_VERTEX);
-
-        // Instanced data
-        viBindings.get(1)
-                .binding(1)
-                .stride(GraphConstants.MAT4X4_SIZE + GraphConstants.INT_LENGTH)
-                .inputRate(VK_VERTEX_INPUT_RATE_INSTANCE);
-
-        vi
-                .sType(VK_STRUCTURE_TYPE_PIPELINE_VERTEX_INPUT_STATE_CREATE_INFO)
-                .pVertexBindingDescriptions(viBindings)
-                .pVertexAttributeDescriptions(viAttrs);
+        return i + 1;
     }
 
     @Override
@@ -144,4 +144,45 @@ public class Queue {
             return index;
         }
     }
+
+    /**
+     * Queue used for uploads. Families that only support transfers are preferred, since they are usually backed by
+     * dedicated copy engines, falling back to the graphics family when there are none.
+     */
+    public static class TransferQueue extends Queue {
+
+        public TransferQueue(Device device, int queueIndex) {
+            super(device, getTransferQueueFamilyIndex(device), queueIndex);
+        }
+
+        private static int getTransferQueueFamilyIndex(Device device) {
+            int index = -1;
+            int graphicsIndex = -1;
+            PhysicalDevice physicalDevice = device.getPhysicalDevice();
+            VkQueueFamilyProperties.Buffer queuePropsBuff = physicalDevice.getVkQueueFamilyProps();
+            int numQueuesFamilies = queuePropsBuff.capacity();
+            for (int i = 0; i < numQueuesFamilies; i++) {
+                int queueFlags = queuePropsBuff.get(i).queueFlags();
+                boolean transferQueue = (queueFlags & VK_QUEUE_TRANSFER_BIT) != 0;
+                boolean graphicsQueue = (queueFlags & VK_QUEUE_GRAPHICS_BIT) != 0;
+                boolean computeQueue = (queueFlags & VK_QUEUE_COMPUTE_BIT) != 0;
+                if (transferQueue && !graphicsQueue && !computeQueue) {
+                    index = i;
+                    break;
+                }
+                if (graphicsQueue && graphicsIndex < 0) {
+                    graphicsIndex = i;
+                }
+            }
+
+            if (index < 0) {
+                index = graphicsIndex;
+            }
+            if (index < 0) {
+                throw new RuntimeException("Failed to get transfer Queue family index");
+            }
+            Logger.debug("Using queue family [{}] for transfers, dedicated [{}]", index, index != graphicsIndex);
+            return index;
+        }
+    }
 }
@@ -0,0 +1,124 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.lwjgl.system.MemoryUtil;
+import org.tinylog.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.lwjgl.vulkan.VK11.*;
+
+/**
+ * Persistently mapped staging buffer shared by several producers. Regions are handed out in a circular way and can be
+ * released in any order, although space is only reclaimed once all the older regions have been released.
+ */
+public class StagingRing {
+
+    private static final int ALIGNMENT = 16;
+
+    private final Deque<Allocation> allocations;
+    private final VulkanBuffer buffer;
+    private final long mappedMemory;
+    private final long size;
+    private long head;
+
+    public StagingRing(Device device, long size) {
+        Logger.debug("Creating staging ring of {} bytes", size);
+        this.size = size;
+        buffer = new VulkanBuffer(device, size, VK_BUFFER_USAGE_TRANSFER_SRC_BIT, VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT,
+                VK_MEMORY_PROPERTY_HOST_COHERENT_BIT);
+        mappedMemory = buffer.map();
+        allocations = new ArrayDeque<>();
+        head = 0;
+    }
+
+    /**
+     * Reserves a region of the ring, blocking until there is enough space available.
+     */
+    public synchronized Allocation allocate(long requestedSize) {
+        Allocation allocation;
+        while ((allocation = tryAllocate(requestedSize)) == null) {
+            try {
+                wait();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for staging space", excp);
+            }
+        }
+        return allocation;
+    }
+
+    public void cleanup() {
+        buffer.unMap();
+        buffer.cleanup();
+    }
+
+    private long findOffset(long allocSize) {
+        if (allocations.isEmpty()) {
+            head = 0;
+            return 0;
+        }
+        // Head never reaches tail when wrapped around, so both being equal is not ambiguous
+        long tail = allocations.peekFirst().offset;
+        if (head > tail) {
+            if (head + allocSize <= size) {
+                return head;
+            }
+            return allocSize < tail ? 0 : -1;
+        }
+        return head + allocSize < tail ? head : -1;
+    }
+
+    public synchronized void free(Allocation allocation) {
+        allocation.freed = true;
+        while (!allocations.isEmpty() && allocations.peekFirst().freed) {
+            allocations.removeFirst();
+        }
+        notifyAll();
+    }
+
+    public VulkanBuffer getBuffer() {
+        return buffer;
+    }
+
+    public ByteBuffer getByteBuffer(Allocation allocation) {
+        return MemoryUtil.memByteBuffer(mappedMemory + allocation.offset, (int) allocation.size);
+    }
+
+    /**
+     * Reserves a region of the ring, returns null if there is not enough space available.
+     */
+    public synchronized Allocation tryAllocate(long requestedSize) {
+        long allocSize = (requestedSize + ALIGNMENT - 1) & -ALIGNMENT;
+        if (allocSize > size) {
+            throw new RuntimeException("Staging ring of [" + size + "] bytes cannot hold [" + requestedSize + "] bytes");
+        }
+        long offset = findOffset(allocSize);
+        if (offset < 0) {
+            return null;
+        }
+        Allocation allocation = new Allocation(offset, requestedSize);
+        allocations.addLast(allocation);
+        head = offset + allocSize;
+        return allocation;
+    }
+
+    public static class Allocation {
+        private final long offset;
+        private final long size;
+        private boolean freed;
+
+        private Allocation(long offset, long size) {
+            this.offset = offset;
+            this.size = size;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+}
\ No newline at end of file
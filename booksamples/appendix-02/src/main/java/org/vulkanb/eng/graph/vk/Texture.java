@@ -10,19 +10,22 @@ import static org.lwjgl.stb.STBImage.*;
 import static org.lwjgl.vulkan.VK11.*;
 
 public class Texture {
-    private final int height;
-    private final int mipLevels;
-    private final int width;
     private String fileName;
     private boolean hasTransparencies;
+    private int height;
     private Image image;
     private ImageView imageView;
+    private int mipLevels;
+    private Texture placeholder;
     private boolean recordedTransition;
+    private boolean resident;
     private VulkanBuffer stgBuffer;
+    private int width;
 
     public Texture(Device device, String fileName, int imageFormat) {
         Logger.debug("Creating texture [{}]", fileName);
         recordedTransition = false;
+        resident = true;
         this.fileName = fileName;
         ByteBuffer buf = null;
         try (MemoryStack stack = MemoryStack.stackPush()) {
@@ -34,13 +37,14 @@ public class Texture {
             if (buf == null) {
                 throw new RuntimeException("Image file [" + fileName + "] not loaded: " + stbi_failure_reason());
             }
-            setHasTransparencies(buf);
+            hasTransparencies = containsTransparencies(buf);
 
             width = w.get();
             height = h.get();
             mipLevels = (int) Math.floor(log2(Math.min(width, height))) + 1;
 
-            createTextureResources(device, buf, imageFormat);
+            createStgBuffer(device, buf);
+            createImage(device, imageFormat);
         } finally {
             if (buf != null) {
                 stbi_image_free(buf);
@@ -52,14 +56,29 @@ public class Texture {
         this.width = width;
         this.height = height;
         mipLevels = 1;
+        resident = true;
 
-        createTextureResources(device, buf, imageFormat);
+        createStgBuffer(device, buf);
+        createImage(device, imageFormat);
+    }
+
+    /**
+     * Creates a texture whose contents are decoded and uploaded later on. Until it becomes resident, the image view of
+     * the placeholder is used instead.
+     */
+    public Texture(String fileName, Texture placeholder) {
+        Logger.debug("Creating deferred texture [{}]", fileName);
+        this.fileName = fileName;
+        this.placeholder = placeholder;
+        resident = false;
     }
 
     public void cleanup() {
         cleanupStgBuffer();
-        imageView.cleanup();
-        image.cleanup();
+        if (imageView != null) {
+            imageView.cleanup();
+            image.cleanup();
+        }
     }
 
     public void cleanupStgBuffer() {
@@ -69,6 +88,37 @@ public class Texture {
         }
     }
 
+    public static boolean containsTransparencies(ByteBuffer buf) {
+        int numPixels = buf.capacity() / 4;
+        int offset = 0;
+        for (int i = 0; i < numPixels; i++) {
+            int a = (0xFF & buf.get(offset + 3));
+            if (a < 255) {
+                return true;
+            }
+            offset += 4;
+        }
+        return false;
+    }
+
+    private void createImage(Device device, int imageFormat) {
+        Image.ImageData imageData = new Image.ImageData().width(width).height(height).
+                usage(VK_IMAGE_USAGE_TRANSFER_SRC_BIT | VK_IMAGE_USAGE_TRANSFER_DST_BIT | VK_IMAGE_USAGE_SAMPLED_BIT).
+                format(imageFormat).mipLevels(mipLevels);
+        image = new Image(device, imageData);
+        ImageView.ImageViewData imageViewData = new ImageView.ImageViewData().format(image.getFormat()).
+                aspectMask(VK_IMAGE_ASPECT_COLOR_BIT).mipLevels(mipLevels);
+        imageView = new ImageView(device, image.getVkImage(), imageViewData);
+    }
+
+    public void createImage(Device device, int width, int height, int imageFormat, boolean hasTransparencies) {
+        this.width = width;
+        this.height = height;
+        this.hasTransparencies = hasTransparencies;
+        mipLevels = (int) Math.floor(log2(Math.min(width, height))) + 1;
+        createImage(device, imageFormat);
+    }
+
     private void createStgBuffer(Device device, ByteBuffer data) {
         int size = data.remaining();
         stgBuffer = new VulkanBuffer(device, size, VK_BUFFER_USAGE_TRANSFER_SRC_BIT,
@@ -81,37 +131,30 @@ public class Texture {
         stgBuffer.unMap();
     }
 
-    private void createTextureResources(Device device, ByteBuffer buf, int imageFormat) {
-        createStgBuffer(device, buf);
-        Image.ImageData imageData = new Image.ImageData().width(width).height(height).
-                usage(VK_IMAGE_USAGE_TRANSFER_SRC_BIT | VK_IMAGE_USAGE_TRANSFER_DST_BIT | VK_IMAGE_USAGE_SAMPLED_BIT).
-                format(imageFormat).mipLevels(mipLevels);
-        image = new Image(device, imageData);
-        ImageView.ImageViewData imageViewData = new ImageView.ImageViewData().format(image.getFormat()).
-                aspectMask(VK_IMAGE_ASPECT_COLOR_BIT).mipLevels(mipLevels);
-        imageView = new ImageView(device, image.getVkImage(), imageViewData);
-    }
-
     public String getFileName() {
         return fileName;
     }
 
     public ImageView getImageView() {
-        return imageView;
+        return resident ? imageView : placeholder.getImageView();
     }
 
     public boolean hasTransparencies() {
         return hasTransparencies;
     }
 
+    public boolean isResident() {
+        return resident;
+    }
+
     private double log2(int n) {
         return Math.log(n) / Math.log(2);
     }
 
-    private void recordCopyBuffer(MemoryStack stack, CommandBuffer cmd, VulkanBuffer bufferData) {
+    private void recordCopyBuffer(MemoryStack stack, CommandBuffer cmd, VulkanBuffer bufferData, long offset) {
 
         VkBufferImageCopy.Buffer region = VkBufferImageCopy.calloc(1, stack)
-                .bufferOffset(0)
+                .bufferOffset(offset)
                 .bufferRowLength(0)
                 .bufferImageHeight(0)
                 .imageSubresource(it ->
@@ -255,7 +298,7 @@ public class Texture {
             recordedTransition = true;
             try (MemoryStack stack = MemoryStack.stackPush()) {
                 recordImageTransition(stack, cmd, VK_IMAGE_LAYOUT_UNDEFINED, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL);
-                recordCopyBuffer(stack, cmd, stgBuffer);
+                recordCopyBuffer(stack, cmd, stgBuffer, 0);
                 recordGenerateMipMaps(stack, cmd);
             }
         } else {
@@ -263,17 +306,15 @@ public class Texture {
         }
     }
 
-    private void setHasTransparencies(ByteBuffer buf) {
-        int numPixels = buf.capacity() / 4;
-        int offset = 0;
-        hasTransparencies = false;
-        for (int i = 0; i < numPixels; i++) {
-            int a = (0xFF & buf.get(offset + 3));
-            if (a < 255) {
-                hasTransparencies = true;
-                break;
-            }
-            offset += 4;
+    public void recordUpload(CommandBuffer cmd, VulkanBuffer srcBuffer, long srcOffset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            recordImageTransition(stack, cmd, VK_IMAGE_LAYOUT_UNDEFINED, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL);
+            recordCopyBuffer(stack, cmd, srcBuffer, srcOffset);
+            recordGenerateMipMaps(stack, cmd);
         }
     }
-}
+
+    public void setResident() {
+        resident = true;
+    }
+}
\ No newline at end of file
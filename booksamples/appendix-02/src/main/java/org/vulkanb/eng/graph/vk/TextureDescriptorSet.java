@@ -31,7 +31,15 @@ public class TextureDescriptorSet extends DescriptorSet {
             vkCheck(vkAllocateDescriptorSets(device.getVkDevice(), allocInfo, pDescriptorSet),
                     "Failed to create descriptor set");
             vkDescriptorSet = pDescriptorSet.get(0);
+        }
+        update(descriptorPool.getDevice(), textureList, textureSampler, binding);
+    }
 
+    /**
+     * Rewrites the texture array. The descriptor set must not be in use by any pending command buffer.
+     */
+    public void update(Device device, List<Texture> textureList, TextureSampler textureSampler, int binding) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
             int numImages = textureList.size();
             VkDescriptorImageInfo.Buffer imageInfo = VkDescriptorImageInfo.calloc(numImages, stack);
             for (int i = 0; i < numImages; i++) {
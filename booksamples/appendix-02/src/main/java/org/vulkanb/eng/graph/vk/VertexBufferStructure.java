@@ -1,6 +1,7 @@
 package org.vulkanb.eng.graph.vk;
 
 import org.lwjgl.vulkan.*;
+import org.vulkanb.eng.EngineProperties;
 
 import static org.lwjgl.vulkan.VK11.*;
 
@@ -11,6 +12,9 @@ public class VertexBufferStructure extends VertexInputStateInfo {
     private static final int NUMBER_OF_ATTRIBUTES = 5;
     private static final int POSITION_COMPONENTS = 3;
     public static final int SIZE_IN_BYTES = (POSITION_COMPONENTS + NORMAL_COMPONENTS * 3 + TEXT_COORD_COMPONENTS) * GraphConstants.FLOAT_LENGTH;
+    // Packed layout: position (3 floats), octahedral normal (2 x snorm16), tangent (10:10:10 unorm) with the bitangent
+    // sign in the 2 bit alpha channel and texture coordinates (2 x half float)
+    public static final int PACKED_SIZE_IN_BYTES = POSITION_COMPONENTS * GraphConstants.FLOAT_LENGTH + GraphConstants.INT_LENGTH * 3;
 
     private final VkVertexInputAttributeDescription.Buffer viAttrs;
     private final VkVertexInputBindingDescription.Buffer viBindings;
@@ -71,6 +75,80 @@ public class VertexBufferStructure extends VertexInputStateInfo {
                 .pVertexAttributeDescriptions(viAttrs);
     }
 
+    public static int getSizeInBytes() {
+        return EngineProperties.getInstance().isPackedVertices() ? PACKED_SIZE_IN_BYTES : SIZE_IN_BYTES;
+    }
+
+    private static int packHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+        if (exponent >= 31) {
+            // Overflow and infinity are clamped to infinity, NaN is kept as a quiet NaN
+            return sign | 0x7C00 | (((bits >>> 23) & 0xFF) == 0xFF && mantissa != 0 ? 0x200 : 0);
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                return sign;
+            }
+            // Subnormal half
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            if (((mantissa >> (shift - 1)) & 1) != 0) {
+                half++;
+            }
+            return sign | half;
+        }
+        int half = sign | (exponent << 10) | (mantissa >> 13);
+        // Round to nearest, a carry into the exponent is still a valid value
+        if ((mantissa & 0x1000) != 0) {
+            half++;
+        }
+        return half;
+    }
+
+    /**
+     * Encodes a unit normal using an octahedral mapping into two signed normalized 16 bit values.
+     */
+    public static int packNormal(float x, float y, float z) {
+        float length = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (length <= 0) {
+            return packSnorm16(0, 0);
+        }
+        float u = x / length;
+        float v = y / length;
+        if (z < 0) {
+            float foldedU = (1 - Math.abs(v)) * (u >= 0 ? 1 : -1);
+            float foldedV = (1 - Math.abs(u)) * (v >= 0 ? 1 : -1);
+            u = foldedU;
+            v = foldedV;
+        }
+        return packSnorm16(u, v);
+    }
+
+    private static int packSnorm16(float x, float y) {
+        int packedX = Math.round(Math.max(-1.0f, Math.min(1.0f, x)) * 32767.0f);
+        int packedY = Math.round(Math.max(-1.0f, Math.min(1.0f, y)) * 32767.0f);
+        return (packedX & 0xFFFF) | (packedY << 16);
+    }
+
+    /**
+     * Encodes a tangent in A2B10G10R10 unorm format. The bitangent is derived in the shaders from the normal and the
+     * tangent, the alpha channel stores its sign.
+     */
+    public static int packTangent(float x, float y, float z, boolean positiveBitangent) {
+        int packedX = Math.round((Math.max(-1.0f, Math.min(1.0f, x)) * 0.5f + 0.5f) * 1023.0f);
+        int packedY = Math.round((Math.max(-1.0f, Math.min(1.0f, y)) * 0.5f + 0.5f) * 1023.0f);
+        int packedZ = Math.round((Math.max(-1.0f, Math.min(1.0f, z)) * 0.5f + 0.5f) * 1023.0f);
+        return packedX | (packedY << 10) | (packedZ << 20) | (positiveBitangent ? 3 << 30 : 0);
+    }
+
+    public static int packTextCoords(float u, float v) {
+        return packHalf(u) | (packHalf(v) << 16);
+    }
+
     @Override
     public void cleanup() {
         super.cleanup();
@@ -20,10 +20,10 @@ public class VulkanUtils {
     }
 
     public static void copyMatrixToBuffer(VulkanBuffer vulkanBuffer, Matrix4f matrix, int offset) {
+        // Buffers are kept mapped until they are destroyed, so updating them every frame does not map memory again
         long mappedMemory = vulkanBuffer.map();
         ByteBuffer matrixBuffer = MemoryUtil.memByteBuffer(mappedMemory, (int) vulkanBuffer.getRequestedSize());
         matrix.get(offset, matrixBuffer);
-        vulkanBuffer.unMap();
     }
 
     public static OSType getOS() {
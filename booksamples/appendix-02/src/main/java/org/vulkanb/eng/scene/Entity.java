@@ -2,88 +2,260 @@ package org.vulkanb.eng.scene;
 
 import org.joml.*;
 
+import java.lang.Math;
+import java.util.*;
+import java.util.function.Consumer;
+
 public class Entity {
 
+    private List<Entity> children;
     private EntityAnimation entityAnimation;
+    private int handle;
     private String id;
+    private ModelData.Bounds localBounds;
     private String modelId;
-    private Matrix4f modelMatrix;
-    private Vector3f position;
-    private Quaternionf rotation;
-    private float scale;
+    private Entity parent;
+    private int slot;
+    private TransformStore store;
+    // Position, rotation and scale while the entity is not in a transform store
+    private float[] transform;
+    private Consumer<Entity> transformListener;
+    private int transformVersion;
+    private ModelData.Bounds worldBounds;
+    private int worldBoundsVersion;
 
     public Entity(String id, String modelId, Vector3f position) {
         this.id = id;
         this.modelId = modelId;
-        this.position = position;
-        scale = 1;
-        rotation = new Quaternionf();
-        modelMatrix = new Matrix4f();
+        handle = EntityHandles.INVALID_HANDLE;
+        slot = -1;
+        transform = new float[]{position.x, position.y, position.z, 0.0f, 0.0f, 0.0f, 1.0f, 1.0f};
         updateModelMatrix();
     }
 
+    void attach(TransformStore store) {
+        if (this.store != null) {
+            return;
+        }
+        this.store = store;
+        slot = store.add(this, transform, transformVersion);
+        transform = null;
+    }
+
+    void detach() {
+        if (store == null) {
+            return;
+        }
+        transform = new float[TransformStore.TRS_FLOATS];
+        store.getTransform(slot, transform);
+        transformVersion = store.getVersion(slot);
+        store.remove(slot);
+        store = null;
+        slot = -1;
+    }
+
+    public List<Entity> getChildren() {
+        return children != null ? children : Collections.emptyList();
+    }
+
+    public int getDepth() {
+        int depth = 0;
+        for (Entity ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+            depth++;
+        }
+        return depth;
+    }
+
     public EntityAnimation getEntityAnimation() {
         return entityAnimation;
     }
 
+    public int getHandle() {
+        return handle;
+    }
+
     public String getId() {
         return id;
     }
 
+    public ModelData.Bounds getLocalBounds() {
+        return localBounds;
+    }
+
     public String getModelId() {
         return modelId;
     }
 
-    public Matrix4f getModelMatrix() {
-        return modelMatrix;
+    public Matrix4f getModelMatrix(Matrix4f dest) {
+        if (store != null) {
+            return store.getModelMatrix(slot, dest);
+        }
+        return dest.translationRotateScale(transform[0], transform[1], transform[2], transform[3], transform[4],
+                transform[5], transform[6], transform[7]);
     }
 
-    public Vector3f getPosition() {
-        return position;
+    public Entity getParent() {
+        return parent;
     }
 
-    public Quaternionf getRotation() {
-        return rotation;
+    public Vector3f getPosition(Vector3f dest) {
+        if (store != null) {
+            return store.getPosition(slot, dest);
+        }
+        return dest.set(transform[0], transform[1], transform[2]);
+    }
+
+    public Quaternionf getRotation(Quaternionf dest) {
+        if (store != null) {
+            return store.getRotation(slot, dest);
+        }
+        return dest.set(transform[3], transform[4], transform[5], transform[6]);
     }
 
     public float getScale() {
-        return scale;
+        return store != null ? store.getScale(slot) : transform[7];
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    TransformStore getStore() {
+        return store;
+    }
+
+    public int getTransformVersion() {
+        return store != null ? store.getVersion(slot) : transformVersion;
+    }
+
+    public ModelData.Bounds getWorldBounds() {
+        if (localBounds == null) {
+            return null;
+        }
+        int version = getTransformVersion();
+        if (worldBounds == null || worldBoundsVersion != version) {
+            Matrix4f modelMatrix = getModelMatrix(new Matrix4f());
+            Vector3f min = new Vector3f();
+            Vector3f max = new Vector3f();
+            modelMatrix.transformAab(localBounds.min(), localBounds.max(), min, max);
+            Vector3f center = modelMatrix.transformPosition(new Vector3f(localBounds.center()));
+            Vector3f scale = modelMatrix.getScale(new Vector3f());
+            worldBounds = new ModelData.Bounds(min, max, center, localBounds.radius() * scale.get(scale.maxComponent()));
+            worldBoundsVersion = version;
+        }
+        return worldBounds;
     }
 
     public boolean hasAnimation() {
         return entityAnimation != null;
     }
 
+    void resetHierarchy() {
+        parent = null;
+        children = null;
+    }
+
     public void resetRotation() {
-        rotation.x = 0.0f;
-        rotation.y = 0.0f;
-        rotation.z = 0.0f;
-        rotation.w = 1.0f;
+        setRotation(new Quaternionf());
     }
 
     public void setEntityAnimation(EntityAnimation entityAnimation) {
         this.entityAnimation = entityAnimation;
     }
 
+    void setHandle(int handle) {
+        this.handle = handle;
+    }
+
+    public void setLocalBounds(ModelData.Bounds localBounds) {
+        this.localBounds = localBounds;
+        worldBounds = null;
+        if (transformListener != null) {
+            transformListener.accept(this);
+        }
+    }
+
+    void setParent(Entity parent) {
+        if (this.parent != null) {
+            this.parent.children.remove(this);
+        }
+        this.parent = parent;
+        if (parent != null) {
+            if (parent.children == null) {
+                parent.children = new ArrayList<>();
+            }
+            parent.children.add(this);
+        }
+    }
+
     public final void setPosition(float x, float y, float z) {
-        position.x = x;
-        position.y = y;
-        position.z = z;
+        if (store != null) {
+            store.setPosition(slot, x, y, z);
+        } else {
+            transform[0] = x;
+            transform[1] = y;
+            transform[2] = z;
+        }
+        updateModelMatrix();
+    }
+
+    public void setRotation(Quaternionfc rotation) {
+        if (store != null) {
+            store.setRotation(slot, rotation);
+        } else {
+            transform[3] = rotation.x();
+            transform[4] = rotation.y();
+            transform[5] = rotation.z();
+            transform[6] = rotation.w();
+        }
         updateModelMatrix();
     }
 
     public void setScale(float scale) {
-        this.scale = scale;
+        if (store != null) {
+            store.setScale(slot, scale);
+        } else {
+            transform[7] = scale;
+        }
         updateModelMatrix();
     }
 
+    void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    public void setTransformListener(Consumer<Entity> transformListener) {
+        this.transformListener = transformListener;
+    }
+
+    /**
+     * Marks the model matrix and the ones of the descendants as changed, they are recomputed in Scene.updateTransforms.
+     */
     public void updateModelMatrix() {
-        modelMatrix.translationRotateScale(position, rotation, scale);
+        if (store != null) {
+            // Descendants of a dirty entity are always dirty too
+            if (!store.markDirty(slot)) {
+                return;
+            }
+        } else {
+            transformVersion++;
+        }
+        if (transformListener != null) {
+            transformListener.accept(this);
+        }
+        if (children != null) {
+            children.forEach(Entity::updateModelMatrix);
+        }
     }
 
     public static class EntityAnimation {
         private int animationIdx;
+        private long animationStartTs;
         private int currentFrame;
+        private int fadeAnimationIdx;
+        private long fadeAnimationStartTs;
+        private long fadeMillis;
+        private long fadeStartTs;
         private long frameStartTs;
         private boolean started;
 
@@ -91,19 +263,60 @@ public class Entity {
             this.started = started;
             this.animationIdx = animationIdx;
             this.currentFrame = currentFrame;
+            fadeAnimationIdx = -1;
             if (started) {
                 frameStartTs = System.currentTimeMillis();
+                animationStartTs = frameStartTs;
             }
         }
 
+        public void crossFade(int animationIdx, long fadeMillis) {
+            long now = System.currentTimeMillis();
+            if (started && this.animationIdx != animationIdx && fadeMillis > 0) {
+                fadeAnimationIdx = this.animationIdx;
+                fadeAnimationStartTs = animationStartTs;
+                fadeStartTs = now;
+                this.fadeMillis = fadeMillis;
+            } else {
+                fadeAnimationIdx = -1;
+            }
+            this.animationIdx = animationIdx;
+            currentFrame = 0;
+            started = true;
+            frameStartTs = now;
+            animationStartTs = now;
+        }
+
         public int getAnimationIdx() {
             return animationIdx;
         }
 
+        public long getAnimationStartTs() {
+            return animationStartTs;
+        }
+
         public int getCurrentFrame() {
             return currentFrame;
         }
 
+        public int getFadeAnimationIdx() {
+            return fadeAnimationIdx;
+        }
+
+        public long getFadeAnimationStartTs() {
+            return fadeAnimationStartTs;
+        }
+
+        /**
+         * Returns the weight of the animation being faded out, which goes from 1 to 0 during the cross-fade.
+         */
+        public float getFadeWeight(long now) {
+            if (fadeAnimationIdx < 0) {
+                return 0.0f;
+            }
+            return Math.max(0.0f, 1.0f - (now - fadeStartTs) / (float) fadeMillis);
+        }
+
         public long getFrameStartTs() {
             return frameStartTs;
         }
@@ -124,6 +337,7 @@ public class Entity {
             this.started = started;
             if (started) {
                 frameStartTs = System.currentTimeMillis();
+                animationStartTs = frameStartTs;
             }
         }
     }
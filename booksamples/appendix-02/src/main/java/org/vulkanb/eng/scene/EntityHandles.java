@@ -0,0 +1,89 @@
+package org.vulkanb.eng.scene;
+
+import java.util.Arrays;
+
+/**
+ * Handles combine an index, reused once its entity is removed, and a generation, so stale handles are detected.
+ */
+public class EntityHandles {
+
+    public static final int INVALID_HANDLE = -1;
+
+    private static final int GENERATION_BITS = 10;
+    private static final int INDEX_BITS = Integer.SIZE - 1 - GENERATION_BITS;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+
+    private Entity[] entities;
+    private int[] freeIndices;
+    private int[] generations;
+    private int numFreeIndices;
+    private int numIndices;
+
+    public EntityHandles() {
+        entities = new Entity[64];
+        freeIndices = new int[64];
+        generations = new int[64];
+    }
+
+    public int allocate(Entity entity) {
+        int index;
+        if (numFreeIndices > 0) {
+            index = freeIndices[--numFreeIndices];
+        } else {
+            if (numIndices > INDEX_MASK) {
+                throw new RuntimeException("Maximum number of entities reached: " + (INDEX_MASK + 1));
+            }
+            index = numIndices++;
+            if (index == entities.length) {
+                int newLength = entities.length * 2;
+                entities = Arrays.copyOf(entities, newLength);
+                generations = Arrays.copyOf(generations, newLength);
+            }
+        }
+        entities[index] = entity;
+        return (generations[index] << INDEX_BITS) | index;
+    }
+
+    /**
+     * Generations are kept, so previous handles are still detected as removed.
+     */
+    public void clear() {
+        Arrays.fill(entities, 0, numIndices, null);
+        for (int i = 0; i < numIndices; i++) {
+            generations[i] = (generations[i] + 1) & ((1 << GENERATION_BITS) - 1);
+        }
+        if (freeIndices.length < numIndices) {
+            freeIndices = new int[entities.length];
+        }
+        // Lower indices are reused first
+        numFreeIndices = numIndices;
+        for (int i = 0; i < numIndices; i++) {
+            freeIndices[i] = numIndices - 1 - i;
+        }
+    }
+
+    public void free(int handle) {
+        if (!isValid(handle)) {
+            return;
+        }
+        int index = handle & INDEX_MASK;
+        entities[index] = null;
+        generations[index] = (generations[index] + 1) & ((1 << GENERATION_BITS) - 1);
+        if (numFreeIndices == freeIndices.length) {
+            freeIndices = Arrays.copyOf(freeIndices, freeIndices.length * 2);
+        }
+        freeIndices[numFreeIndices++] = index;
+    }
+
+    public Entity get(int handle) {
+        return isValid(handle) ? entities[handle & INDEX_MASK] : null;
+    }
+
+    public boolean isValid(int handle) {
+        if (handle < 0) {
+            return false;
+        }
+        int index = handle & INDEX_MASK;
+        return index < numIndices && entities[index] != null && generations[index] == handle >>> INDEX_BITS;
+    }
+}
\ No newline at end of file
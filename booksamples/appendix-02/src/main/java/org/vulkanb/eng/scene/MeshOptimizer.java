@@ -0,0 +1,364 @@
+package org.vulkanb.eng.scene;
+
+import org.joml.Vector3f;
+import org.tinylog.Logger;
+
+import java.util.*;
+
+/**
+ * Reorders mesh indices and vertices to reduce vertex shading, overdraw and vertex fetch bandwidth. Indices are first
+ * sorted for the post-transform vertex cache (Tipsify), then clusters of triangles are sorted to draw outer surfaces
+ * first and finally vertices are laid out in the order they are first referenced.
+ */
+public class MeshOptimizer {
+
+    public static final float OVERDRAW_THRESHOLD = 1.05f;
+    public static final int VERTEX_CACHE_SIZE = 16;
+
+    private MeshOptimizer() {
+        // Utility class
+    }
+
+    public static VertexCacheStats analyzeVertexCache(int[] indices, int numVertices, int cacheSize) {
+        int[] cacheTimestamps = new int[numVertices];
+        int timestamp = cacheSize + 1;
+        int misses = 0;
+        for (int index : indices) {
+            if (timestamp - cacheTimestamps[index] > cacheSize) {
+                cacheTimestamps[index] = timestamp++;
+                misses++;
+            }
+        }
+        int numTriangles = indices.length / 3;
+        return new VertexCacheStats(misses, numTriangles, numVertices);
+    }
+
+    public static VertexFetchRemap buildVertexFetchRemap(int[] indices, int numVertices) {
+        int[] remap = new int[numVertices];
+        Arrays.fill(remap, -1);
+        int next = 0;
+        for (int index : indices) {
+            if (remap[index] < 0) {
+                remap[index] = next++;
+            }
+        }
+        return new VertexFetchRemap(remap, next);
+    }
+
+    private static int[] calcClusters(int[] indices, int numVertices, int cacheSize, float threshold) {
+        int numTriangles = indices.length / 3;
+        int[] cacheTimestamps = new int[numVertices];
+        int[] timestamp = {cacheSize + 1};
+
+        // Hard boundaries are located where the cache has been completely flushed (Tipsify dead ends)
+        List<Integer> hardBoundaries = new ArrayList<>();
+        for (int i = 0; i < numTriangles; i++) {
+            if (simulateTriangle(indices, i, cacheTimestamps, timestamp, cacheSize) == 3) {
+                hardBoundaries.add(i);
+            }
+        }
+        hardBoundaries.add(numTriangles);
+
+        // Soft boundaries split each hard cluster as soon as its local ACMR is close enough to the cluster one
+        List<Integer> boundaries = new ArrayList<>();
+        for (int i = 0; i < hardBoundaries.size() - 1; i++) {
+            int start = hardBoundaries.get(i);
+            int end = hardBoundaries.get(i + 1);
+
+            timestamp[0] += cacheSize + 1;
+            int clusterMisses = 0;
+            for (int j = start; j < end; j++) {
+                clusterMisses += simulateTriangle(indices, j, cacheTimestamps, timestamp, cacheSize);
+            }
+            float clusterThreshold = threshold * clusterMisses / (end - start);
+
+            timestamp[0] += cacheSize + 1;
+            int clusterStart = start;
+            int misses = 0;
+            boundaries.add(start);
+            for (int j = start; j < end - 1; j++) {
+                misses += simulateTriangle(indices, j, cacheTimestamps, timestamp, cacheSize);
+                if ((float) misses / (j + 1 - clusterStart) <= clusterThreshold) {
+                    clusterStart = j + 1;
+                    misses = 0;
+                    boundaries.add(clusterStart);
+                    timestamp[0] += cacheSize + 1;
+                }
+            }
+        }
+        boundaries.add(numTriangles);
+        return boundaries.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public static void optimize(ModelData modelData) {
+        long startTime = System.nanoTime();
+        List<ModelData.MeshData> meshDataList = modelData.getMeshDataList();
+        List<ModelData.AnimMeshData> animMeshDataList = modelData.getAnimMeshDataList();
+        long missesBefore = 0;
+        long missesAfter = 0;
+        long numTriangles = 0;
+        long numVerticesAfter = 0;
+        long numVerticesBefore = 0;
+        int numMeshes = meshDataList.size();
+        for (int i = 0; i < numMeshes; i++) {
+            ModelData.MeshData meshData = meshDataList.get(i);
+            int meshVertices = meshData.positions().length / 3;
+            int[] indices = meshData.indices();
+            if (indices.length == 0 || indices.length % 3 != 0) {
+                // Points or lines, nothing to optimize
+                continue;
+            }
+            VertexCacheStats statsBefore = analyzeVertexCache(indices, meshVertices, VERTEX_CACHE_SIZE);
+
+            int[] optimizedIndices = optimizeVertexCache(indices, meshVertices, VERTEX_CACHE_SIZE);
+            optimizedIndices = optimizeOverdraw(optimizedIndices, meshData.positions(), VERTEX_CACHE_SIZE,
+                    OVERDRAW_THRESHOLD);
+            VertexFetchRemap vertexFetchRemap = buildVertexFetchRemap(optimizedIndices, meshVertices);
+            int[] remap = vertexFetchRemap.remap();
+            int newVertices = vertexFetchRemap.numVertices();
+            optimizedIndices = remapIndices(optimizedIndices, remap);
+
+            meshDataList.set(i, new ModelData.MeshData(
+                    remapVertices(meshData.positions(), meshVertices, remap, newVertices),
+                    remapVertices(meshData.normals(), meshVertices, remap, newVertices),
+                    remapVertices(meshData.tangents(), meshVertices, remap, newVertices),
+                    remapVertices(meshData.biTangents(), meshVertices, remap, newVertices),
+                    remapVertices(meshData.textCoords(), meshVertices, remap, newVertices),
+                    optimizedIndices, meshData.materialIdx(),
+                    meshData.lodIndices().stream().map(l -> remapIndices(l, remap)).toList(), meshData.bounds()));
+            if (animMeshDataList != null) {
+                ModelData.AnimMeshData animMeshData = animMeshDataList.get(i);
+                animMeshDataList.set(i, new ModelData.AnimMeshData(
+                        remapVertices(animMeshData.weights(), meshVertices, remap, newVertices),
+                        remapVertices(animMeshData.boneIds(), meshVertices, remap, newVertices)));
+            }
+
+            VertexCacheStats statsAfter = analyzeVertexCache(optimizedIndices, newVertices, VERTEX_CACHE_SIZE);
+            missesBefore += statsBefore.misses();
+            missesAfter += statsAfter.misses();
+            numTriangles += statsBefore.numTriangles();
+            numVerticesAfter += statsAfter.numVertices();
+            numVerticesBefore += statsBefore.numVertices();
+        }
+        if (numTriangles > 0) {
+            Logger.debug("Optimized meshes of model [{}] in {} ms, ACMR {} -> {}, ATVR {} -> {}", modelData.getModelId(),
+                    (System.nanoTime() - startTime) / 1_000_000, (float) missesBefore / numTriangles,
+                    (float) missesAfter / numTriangles, (float) missesBefore / numVerticesBefore,
+                    (float) missesAfter / numVerticesAfter);
+        }
+    }
+
+    /**
+     * Reorders clusters of triangles, produced by a previous cache optimization, so the ones facing outwards from the
+     * center of the mesh are drawn first. Cluster sizes are chosen so the ACMR does not grow more than the threshold.
+     */
+    public static int[] optimizeOverdraw(int[] indices, float[] positions, int cacheSize, float threshold) {
+        int numVertices = positions.length / 3;
+        int[] clusters = calcClusters(indices, numVertices, cacheSize, threshold);
+        int numClusters = clusters.length - 1;
+        if (numClusters <= 1) {
+            return indices;
+        }
+
+        Vector3f meshCentroid = new Vector3f();
+        for (int index : indices) {
+            meshCentroid.add(positions[index * 3], positions[index * 3 + 1], positions[index * 3 + 2]);
+        }
+        meshCentroid.div(indices.length);
+
+        Vector3f v0 = new Vector3f();
+        Vector3f edge1 = new Vector3f();
+        Vector3f edge2 = new Vector3f();
+        Vector3f clusterCentroid = new Vector3f();
+        Vector3f clusterNormal = new Vector3f();
+        float[] sortKeys = new float[numClusters];
+        for (int i = 0; i < numClusters; i++) {
+            clusterCentroid.zero();
+            clusterNormal.zero();
+            float clusterArea = 0;
+            for (int j = clusters[i]; j < clusters[i + 1]; j++) {
+                int i0 = indices[j * 3] * 3;
+                int i1 = indices[j * 3 + 1] * 3;
+                int i2 = indices[j * 3 + 2] * 3;
+                v0.set(positions[i0], positions[i0 + 1], positions[i0 + 2]);
+                edge1.set(positions[i1], positions[i1 + 1], positions[i1 + 2]).sub(v0);
+                edge2.set(positions[i2], positions[i2 + 1], positions[i2 + 2]).sub(v0);
+                // Cross product length is twice the triangle area, so the sum is an area weighted normal
+                edge1.cross(edge2);
+                float area = edge1.length();
+                clusterNormal.add(edge1);
+                clusterCentroid.add(
+                        (positions[i0] + positions[i1] + positions[i2]) / 3 * area,
+                        (positions[i0 + 1] + positions[i1 + 1] + positions[i2 + 1]) / 3 * area,
+                        (positions[i0 + 2] + positions[i1 + 2] + positions[i2 + 2]) / 3 * area);
+                clusterArea += area;
+            }
+            if (clusterArea > 0 && clusterNormal.lengthSquared() > 0) {
+                clusterCentroid.div(clusterArea).sub(meshCentroid);
+                sortKeys[i] = clusterCentroid.dot(clusterNormal.normalize());
+            }
+        }
+
+        Integer[] order = new Integer[numClusters];
+        for (int i = 0; i < numClusters; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(sortKeys[b], sortKeys[a]));
+
+        int[] result = new int[indices.length];
+        int pos = 0;
+        for (int cluster : order) {
+            int start = clusters[cluster] * 3;
+            int length = clusters[cluster + 1] * 3 - start;
+            System.arraycopy(indices, start, result, pos, length);
+            pos += length;
+        }
+        return result;
+    }
+
+    /**
+     * Sorts triangles to improve post-transform vertex cache hits using the Tipsify algorithm (Sander, Nehab and
+     * Barczak, 2007). Triangles are emitted as fans around vertices chosen among the ones that are still in the cache.
+     */
+    public static int[] optimizeVertexCache(int[] indices, int numVertices, int cacheSize) {
+        int numIndices = indices.length;
+        int numTriangles = numIndices / 3;
+        int[] liveTriangles = new int[numVertices];
+        for (int index : indices) {
+            liveTriangles[index]++;
+        }
+        int[] adjacencyOffsets = new int[numVertices + 1];
+        for (int i = 0; i < numVertices; i++) {
+            adjacencyOffsets[i + 1] = adjacencyOffsets[i] + liveTriangles[i];
+        }
+        int[] adjacency = new int[numIndices];
+        int[] adjacencyFill = Arrays.copyOf(adjacencyOffsets, numVertices);
+        for (int i = 0; i < numIndices; i++) {
+            adjacency[adjacencyFill[indices[i]]++] = i / 3;
+        }
+
+        int[] cacheTimestamps = new int[numVertices];
+        // Every emitted vertex is pushed once, vertices pushed by the last fan are the candidates for the next one
+        int[] deadEndStack = new int[numIndices];
+        int deadEndTop = 0;
+        boolean[] emitted = new boolean[numTriangles];
+        int[] result = new int[numIndices];
+        int resultPos = 0;
+        int timestamp = cacheSize + 1;
+        int cursor = 0;
+        int fanningVertex = numVertices > 0 ? 0 : -1;
+        while (fanningVertex >= 0) {
+            int candidatesStart = deadEndTop;
+            for (int i = adjacencyOffsets[fanningVertex]; i < adjacencyOffsets[fanningVertex + 1]; i++) {
+                int triangle = adjacency[i];
+                if (emitted[triangle]) {
+                    continue;
+                }
+                for (int j = 0; j < 3; j++) {
+                    int vertex = indices[triangle * 3 + j];
+                    result[resultPos++] = vertex;
+                    deadEndStack[deadEndTop++] = vertex;
+                    liveTriangles[vertex]--;
+                    if (timestamp - cacheTimestamps[vertex] > cacheSize) {
+                        cacheTimestamps[vertex] = timestamp++;
+                    }
+                }
+                emitted[triangle] = true;
+            }
+
+            // Prefer vertices that will still be in the cache once all their remaining triangles are emitted
+            fanningVertex = -1;
+            int bestPriority = -1;
+            for (int i = candidatesStart; i < deadEndTop; i++) {
+                int vertex = deadEndStack[i];
+                if (liveTriangles[vertex] > 0) {
+                    int priority = 0;
+                    if (timestamp - cacheTimestamps[vertex] + 2 * liveTriangles[vertex] <= cacheSize) {
+                        priority = timestamp - cacheTimestamps[vertex];
+                    }
+                    if (priority > bestPriority) {
+                        bestPriority = priority;
+                        fanningVertex = vertex;
+                    }
+                }
+            }
+
+            if (fanningVertex < 0) {
+                while (deadEndTop > 0 && fanningVertex < 0) {
+                    int vertex = deadEndStack[--deadEndTop];
+                    if (liveTriangles[vertex] > 0) {
+                        fanningVertex = vertex;
+                    }
+                }
+                while (cursor < numVertices && fanningVertex < 0) {
+                    if (liveTriangles[cursor] > 0) {
+                        fanningVertex = cursor;
+                    }
+                    cursor++;
+                }
+            }
+        }
+        return result;
+    }
+
+    public static int[] remapIndices(int[] indices, int[] remap) {
+        int[] result = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            result[i] = remap[indices[i]];
+        }
+        return result;
+    }
+
+    public static float[] remapVertices(float[] data, int numVertices, int[] remap, int newVertices) {
+        int size = data.length / numVertices;
+        float[] result = new float[newVertices * size];
+        for (int i = 0; i < numVertices; i++) {
+            if (remap[i] >= 0) {
+                System.arraycopy(data, i * size, result, remap[i] * size, size);
+            }
+        }
+        return result;
+    }
+
+    public static int[] remapVertices(int[] data, int numVertices, int[] remap, int newVertices) {
+        int size = data.length / numVertices;
+        int[] result = new int[newVertices * size];
+        for (int i = 0; i < numVertices; i++) {
+            if (remap[i] >= 0) {
+                System.arraycopy(data, i * size, result, remap[i] * size, size);
+            }
+        }
+        return result;
+    }
+
+    private static int simulateTriangle(int[] indices, int triangle, int[] cacheTimestamps, int[] timestamp,
+                                        int cacheSize) {
+        int misses = 0;
+        for (int i = 0; i < 3; i++) {
+            int vertex = indices[triangle * 3 + i];
+            if (timestamp[0] - cacheTimestamps[vertex] > cacheSize) {
+                cacheTimestamps[vertex] = timestamp[0]++;
+                misses++;
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * ACMR is the average number of vertices transformed per triangle, ATVR the average number of times each vertex
+     * is transformed. Both have 1 as their ideal value (ACMR can go down to 0.5 for regular grids).
+     */
+    public record VertexCacheStats(int misses, int numTriangles, int numVertices) {
+        public float acmr() {
+            return numTriangles > 0 ? (float) misses / numTriangles : 0;
+        }
+
+        public float atvr() {
+            return numVertices > 0 ? (float) misses / numVertices : 0;
+        }
+    }
+
+    // Old vertex index to new one, -1 for vertices not referenced by any index
+    public record VertexFetchRemap(int[] remap, int numVertices) {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,294 @@
+package org.vulkanb.eng.scene;
+
+import org.tinylog.Logger;
+
+import java.util.*;
+
+/**
+ * Quadric error mesh simplifier (Garland and Heckbert, 1997). Edges are collapsed into one of their vertices, so
+ * simplified meshes only need a new list of indices and can share the vertices of the original mesh. Border vertices,
+ * which include the ones at texture or normal seams, are never moved.
+ */
+public class MeshSimplifier {
+
+    // Maximum error allowed for a level of detail, relative to the size of the mesh
+    public static final float LOD_MAX_ERROR = 0.05f;
+    // A level of detail is discarded if it does not remove at least this fraction of the triangles of the previous one
+    public static final float LOD_MIN_REDUCTION = 0.15f;
+    private static final int QUADRIC_SIZE = 11;
+
+    private MeshSimplifier() {
+        // Utility class
+    }
+
+    private static void addQuadric(double[] quadrics, int vertex, double a, double b, double c, double d, double weight) {
+        int pos = vertex * QUADRIC_SIZE;
+        quadrics[pos] += weight * a * a;
+        quadrics[pos + 1] += weight * a * b;
+        quadrics[pos + 2] += weight * a * c;
+        quadrics[pos + 3] += weight * a * d;
+        quadrics[pos + 4] += weight * b * b;
+        quadrics[pos + 5] += weight * b * c;
+        quadrics[pos + 6] += weight * b * d;
+        quadrics[pos + 7] += weight * c * c;
+        quadrics[pos + 8] += weight * c * d;
+        quadrics[pos + 9] += weight * d * d;
+        quadrics[pos + 10] += weight;
+    }
+
+    private static int[][] buildAdjacency(int[] indices, int numIndices, int numVertices) {
+        int[] counts = new int[numVertices];
+        for (int i = 0; i < numIndices; i++) {
+            counts[indices[i]]++;
+        }
+        int[][] adjacency = new int[numVertices][];
+        for (int i = 0; i < numVertices; i++) {
+            adjacency[i] = new int[counts[i]];
+            counts[i] = 0;
+        }
+        for (int i = 0; i < numIndices; i++) {
+            int vertex = indices[i];
+            adjacency[vertex][counts[vertex]++] = i / 3;
+        }
+        return adjacency;
+    }
+
+    private static double calcQuadricError(double[] quadrics, int vertex, float[] positions, int target) {
+        int pos = vertex * QUADRIC_SIZE;
+        double weight = quadrics[pos + 10];
+        if (weight <= 0) {
+            return 0;
+        }
+        double x = positions[target * 3];
+        double y = positions[target * 3 + 1];
+        double z = positions[target * 3 + 2];
+        double error = quadrics[pos] * x * x + 2 * quadrics[pos + 1] * x * y + 2 * quadrics[pos + 2] * x * z +
+                2 * quadrics[pos + 3] * x + quadrics[pos + 4] * y * y + 2 * quadrics[pos + 5] * y * z +
+                2 * quadrics[pos + 6] * y + quadrics[pos + 7] * z * z + 2 * quadrics[pos + 8] * z + quadrics[pos + 9];
+        return Math.abs(error) / weight;
+    }
+
+    private static long edgeKey(int v0, int v1) {
+        return ((long) Math.min(v0, v1) << 32) | Math.max(v0, v1);
+    }
+
+    private static boolean flipsTriangle(float[] positions, int[] indices, int triangle, int from, int to) {
+        int i0 = indices[triangle * 3];
+        int i1 = indices[triangle * 3 + 1];
+        int i2 = indices[triangle * 3 + 2];
+        if (i0 == to || i1 == to || i2 == to) {
+            // Triangle collapses with the edge
+            return false;
+        }
+        float[] before = triangleNormal(positions, i0, i1, i2);
+        if (before[0] == 0 && before[1] == 0 && before[2] == 0) {
+            return false;
+        }
+        float[] after = triangleNormal(positions, i0 == from ? to : i0, i1 == from ? to : i1, i2 == from ? to : i2);
+        return before[0] * after[0] + before[1] * after[1] + before[2] * after[2] <= 0;
+    }
+
+    /**
+     * Generates up to numLevels - 1 coarser levels of detail for each mesh of the model, each one with around half the
+     * triangles of the previous one. Generation stops when the error or the reduction limits are reached.
+     */
+    public static void generateLods(ModelData modelData, int numLevels, boolean optimizeVertexCache) {
+        long startTime = System.nanoTime();
+        List<ModelData.MeshData> meshDataList = modelData.getMeshDataList();
+        int numMeshes = meshDataList.size();
+        long[] levelTriangles = new long[numLevels];
+        for (int i = 0; i < numMeshes; i++) {
+            ModelData.MeshData meshData = meshDataList.get(i);
+            int[] indices = meshData.indices();
+            if (indices.length == 0 || indices.length % 3 != 0) {
+                continue;
+            }
+            levelTriangles[0] += indices.length / 3;
+            int numVertices = meshData.positions().length / 3;
+            List<int[]> lodIndices = new ArrayList<>();
+            int[] current = indices;
+            for (int level = 1; level < numLevels; level++) {
+                // Levels are always simplified from the original triangles so errors do not accumulate
+                int targetIndices = current.length / 6 * 3;
+                int[] lod = simplify(indices, meshData.positions(), targetIndices, LOD_MAX_ERROR);
+                if (lod.length == 0 || lod.length > current.length * (1 - LOD_MIN_REDUCTION)) {
+                    break;
+                }
+                if (optimizeVertexCache) {
+                    lod = MeshOptimizer.optimizeVertexCache(lod, numVertices, MeshOptimizer.VERTEX_CACHE_SIZE);
+                }
+                lodIndices.add(lod);
+                levelTriangles[level] += lod.length / 3;
+                current = lod;
+            }
+            meshDataList.set(i, new ModelData.MeshData(meshData.positions(), meshData.normals(), meshData.tangents(),
+                    meshData.biTangents(), meshData.textCoords(), indices, meshData.materialIdx(), lodIndices,
+                    meshData.bounds()));
+        }
+        Logger.debug("Generated levels of detail for model [{}] in {} ms, triangles per level {}", modelData.getModelId(),
+                (System.nanoTime() - startTime) / 1_000_000, Arrays.toString(levelTriangles));
+    }
+
+    private static float[] normalizePositions(float[] positions) {
+        float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+        float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int i = 0; i < positions.length; i++) {
+            min[i % 3] = Math.min(min[i % 3], positions[i]);
+            max[i % 3] = Math.max(max[i % 3], positions[i]);
+        }
+        float extent = Math.max(max[0] - min[0], Math.max(max[1] - min[1], max[2] - min[2]));
+        float scale = extent > 0 ? 1.0f / extent : 1.0f;
+        float[] result = new float[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            result[i] = (positions[i] - min[i % 3]) * scale;
+        }
+        return result;
+    }
+
+    /**
+     * Collapses edges, cheapest first, until the number of indices is lower or equal than the target or no collapse
+     * can be done without exceeding the maximum error (relative to the size of the mesh).
+     */
+    public static int[] simplify(int[] indices, float[] positions, int targetIndices, float maxError) {
+        int numVertices = positions.length / 3;
+        float[] scaledPositions = normalizePositions(positions);
+        double maxQuadricError = (double) maxError * maxError;
+
+        double[] quadrics = new double[numVertices * QUADRIC_SIZE];
+        for (int i = 0; i < indices.length; i += 3) {
+            int i0 = indices[i];
+            int i1 = indices[i + 1];
+            int i2 = indices[i + 2];
+            float[] normal = triangleNormal(scaledPositions, i0, i1, i2);
+            double length = Math.sqrt(normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
+            if (length <= 0) {
+                continue;
+            }
+            double a = normal[0] / length;
+            double b = normal[1] / length;
+            double c = normal[2] / length;
+            double d = -(a * scaledPositions[i0 * 3] + b * scaledPositions[i0 * 3 + 1] + c * scaledPositions[i0 * 3 + 2]);
+            // Cross product length is twice the triangle area
+            double area = length / 2;
+            addQuadric(quadrics, i0, a, b, c, d, area);
+            addQuadric(quadrics, i1, a, b, c, d, area);
+            addQuadric(quadrics, i2, a, b, c, d, area);
+        }
+
+        // Edges used by a single triangle are borders, their vertices are locked
+        Map<Long, Integer> edgeCount = new HashMap<>();
+        for (int i = 0; i < indices.length; i += 3) {
+            for (int j = 0; j < 3; j++) {
+                edgeCount.merge(edgeKey(indices[i + j], indices[i + (j + 1) % 3]), 1, Integer::sum);
+            }
+        }
+        boolean[] locked = new boolean[numVertices];
+        for (Map.Entry<Long, Integer> entry : edgeCount.entrySet()) {
+            if (entry.getValue() == 1) {
+                locked[(int) (entry.getKey() >>> 32)] = true;
+                locked[(int) (entry.getKey() & 0xFFFFFFFFL)] = true;
+            }
+        }
+
+        int[] result = indices.clone();
+        int numIndices = result.length;
+        int[] remap = new int[numVertices];
+        boolean[] touched = new boolean[numVertices];
+        while (numIndices > targetIndices) {
+            int[][] adjacency = buildAdjacency(result, numIndices, numVertices);
+
+            List<Collapse> collapses = new ArrayList<>();
+            Set<Long> visitedEdges = new HashSet<>();
+            for (int i = 0; i < numIndices; i++) {
+                int v0 = result[i];
+                int v1 = result[i - i % 3 + (i + 1) % 3];
+                if (v0 == v1 || !visitedEdges.add(edgeKey(v0, v1))) {
+                    continue;
+                }
+                double cost0 = locked[v0] ? Double.MAX_VALUE :
+                        calcQuadricError(quadrics, v0, scaledPositions, v1) + calcQuadricError(quadrics, v1, scaledPositions, v1);
+                double cost1 = locked[v1] ? Double.MAX_VALUE :
+                        calcQuadricError(quadrics, v0, scaledPositions, v0) + calcQuadricError(quadrics, v1, scaledPositions, v0);
+                double cost = Math.min(cost0, cost1);
+                if (cost <= maxQuadricError) {
+                    collapses.add(cost0 <= cost1 ? new Collapse(v0, v1, cost) : new Collapse(v1, v0, cost));
+                }
+            }
+            if (collapses.isEmpty()) {
+                break;
+            }
+            collapses.sort(Comparator.comparingDouble(Collapse::cost));
+
+            for (int i = 0; i < numVertices; i++) {
+                remap[i] = i;
+            }
+            Arrays.fill(touched, false);
+            // Each collapse removes around two triangles
+            int maxCollapses = Math.max(1, (numIndices - targetIndices) / 6);
+            int numCollapses = 0;
+            for (Collapse collapse : collapses) {
+                if (numCollapses >= maxCollapses) {
+                    break;
+                }
+                int from = collapse.from();
+                int to = collapse.to();
+                if (touched[from] || touched[to]) {
+                    continue;
+                }
+                boolean flips = false;
+                for (int triangle : adjacency[from]) {
+                    if (flipsTriangle(scaledPositions, result, triangle, from, to)) {
+                        flips = true;
+                        break;
+                    }
+                }
+                if (flips) {
+                    continue;
+                }
+                // Neighbours of a collapsed vertex can not be moved in the same pass, so flip checks remain valid
+                for (int triangle : adjacency[from]) {
+                    touched[result[triangle * 3]] = true;
+                    touched[result[triangle * 3 + 1]] = true;
+                    touched[result[triangle * 3 + 2]] = true;
+                }
+                remap[from] = to;
+                int fromPos = from * QUADRIC_SIZE;
+                int toPos = to * QUADRIC_SIZE;
+                for (int j = 0; j < QUADRIC_SIZE; j++) {
+                    quadrics[toPos + j] += quadrics[fromPos + j];
+                }
+                numCollapses++;
+            }
+            if (numCollapses == 0) {
+                break;
+            }
+
+            int pos = 0;
+            for (int i = 0; i < numIndices; i += 3) {
+                int i0 = remap[result[i]];
+                int i1 = remap[result[i + 1]];
+                int i2 = remap[result[i + 2]];
+                if (i0 != i1 && i1 != i2 && i0 != i2) {
+                    result[pos++] = i0;
+                    result[pos++] = i1;
+                    result[pos++] = i2;
+                }
+            }
+            numIndices = pos;
+        }
+        return Arrays.copyOf(result, numIndices);
+    }
+
+    private static float[] triangleNormal(float[] positions, int i0, int i1, int i2) {
+        float e1x = positions[i1 * 3] - positions[i0 * 3];
+        float e1y = positions[i1 * 3 + 1] - positions[i0 * 3 + 1];
+        float e1z = positions[i1 * 3 + 2] - positions[i0 * 3 + 2];
+        float e2x = positions[i2 * 3] - positions[i0 * 3];
+        float e2y = positions[i2 * 3 + 1] - positions[i0 * 3 + 1];
+        float e2z = positions[i2 * 3 + 2] - positions[i0 * 3 + 2];
+        return new float[]{e1y * e2z - e1z * e2y, e1z * e2x - e1x * e2z, e1x * e2y - e1y * e2x};
+    }
+
+    private record Collapse(int from, int to, double cost) {
+    }
+}
\ No newline at end of file
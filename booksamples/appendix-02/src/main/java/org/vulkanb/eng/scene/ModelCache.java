@@ -0,0 +1,461 @@
+package org.vulkanb.eng.scene;
+
+import org.joml.*;
+import org.tinylog.Logger;
+import org.vulkanb.eng.EngineProperties;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+public class ModelCache {
+
+    private static final int MAGIC = 0x564B4D44;
+    private static final int MATRIX_FLOATS = 16;
+    // Increase when the binary layout changes so stale files are discarded
+    private static final int VERSION = 7;
+
+    private ModelCache() {
+        // Utility class
+    }
+
+    public static void clear() {
+        File cacheDir = new File(EngineProperties.getInstance().getModelCacheDir());
+        File[] files = cacheDir.listFiles((dir, name) -> name.endsWith(".bin"));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.delete()) {
+                Logger.warn("Could not delete model cache file [{}]", file.getPath());
+            }
+        }
+    }
+
+    private static CacheKey createKey(String modelPath, String texturesDir, int flags,
+                                      ModelLoader.AnimationMode animationMode) throws IOException {
+        File modelFile = new File(modelPath);
+        CRC32 crc32 = new CRC32();
+        try (FileChannel fc = FileChannel.open(modelFile.toPath(), StandardOpenOption.READ)) {
+            crc32.update(fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size()));
+        }
+        EngineProperties engProps = EngineProperties.getInstance();
+        return new CacheKey(modelFile.getCanonicalPath(), texturesDir, flags, animationMode.ordinal(), modelFile.length(),
+                crc32.getValue(), engProps.getMaxJointsMatricesLists(), engProps.isMeshOptimization(),
+                engProps.getLodLevels());
+    }
+
+    private static File getCacheFile(String modelPath, int flags, ModelLoader.AnimationMode animationMode)
+            throws IOException {
+        File modelFile = new File(modelPath);
+        String canonicalPath = modelFile.getCanonicalPath();
+        String fileName = modelFile.getName() + "-" + Integer.toHexString(canonicalPath.hashCode()) + "-" +
+                Integer.toHexString(flags) + "-" + animationMode.name().toLowerCase() + ".bin";
+        return new File(EngineProperties.getInstance().getModelCacheDir(), fileName);
+    }
+
+    private static long getSize(File file) {
+        return file.exists() ? file.length() : -1;
+    }
+
+    public static void invalidate(String modelPath, int flags, ModelLoader.AnimationMode animationMode) {
+        try {
+            File cacheFile = getCacheFile(modelPath, flags, animationMode);
+            if (cacheFile.exists() && !cacheFile.delete()) {
+                Logger.warn("Could not delete model cache file [{}]", cacheFile.getPath());
+            }
+        } catch (IOException excp) {
+            Logger.warn("Could not invalidate model cache for [{}]", modelPath, excp);
+        }
+    }
+
+    public static ModelData read(String modelId, String modelPath, String texturesDir, int flags,
+                                 ModelLoader.AnimationMode animationMode) {
+        ModelData result = null;
+        try {
+            File cacheFile = getCacheFile(modelPath, flags, animationMode);
+            if (!cacheFile.exists()) {
+                return null;
+            }
+            CacheKey cacheKey = createKey(modelPath, texturesDir, flags, animationMode);
+            try (FileChannel fc = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+                if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || !cacheKey.equals(readKey(buffer)) ||
+                        !readDependencies(buffer)) {
+                    Logger.debug("Model cache for [{}] is stale", modelPath);
+                    return null;
+                }
+                result = readModelData(modelId, buffer);
+            }
+        } catch (IOException | RuntimeException excp) {
+            // Corrupt entries are discarded so the model is imported again and the entry rewritten
+            Logger.warn("Could not read model cache for [{}]", modelPath, excp);
+            invalidate(modelPath, flags, animationMode);
+            result = null;
+        }
+        return result;
+    }
+
+    private static ModelData.Bounds readBounds(ByteBuffer buffer) {
+        Vector3f min = new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        Vector3f max = new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        Vector3f center = new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        return new ModelData.Bounds(min, max, center, buffer.getFloat());
+    }
+
+    /**
+     * Returns true if none of the other files read by the importer (buffers, animations, etc.) has changed.
+     */
+    private static boolean readDependencies(ByteBuffer buffer) {
+        int numDependencies = readLength(buffer, Integer.BYTES);
+        boolean valid = true;
+        for (int i = 0; i < numDependencies; i++) {
+            File file = new File(readString(buffer));
+            long size = buffer.getLong();
+            long lastModified = buffer.getLong();
+            valid &= getSize(file) == size && file.lastModified() == lastModified;
+        }
+        return valid;
+    }
+
+    private static float[] readFloats(ByteBuffer buffer) {
+        float[] data = new float[readLength(buffer, Float.BYTES)];
+        buffer.asFloatBuffer().get(data);
+        buffer.position(buffer.position() + data.length * Float.BYTES);
+        return data;
+    }
+
+    private static List<int[]> readIntArrays(ByteBuffer buffer) {
+        int numArrays = readLength(buffer, Integer.BYTES);
+        List<int[]> result = new ArrayList<>(numArrays);
+        for (int i = 0; i < numArrays; i++) {
+            result.add(readInts(buffer));
+        }
+        return result;
+    }
+
+    private static int[] readInts(ByteBuffer buffer) {
+        int[] data = new int[readLength(buffer, Integer.BYTES)];
+        buffer.asIntBuffer().get(data);
+        buffer.position(buffer.position() + data.length * Integer.BYTES);
+        return data;
+    }
+
+    private static CacheKey readKey(ByteBuffer buffer) {
+        return new CacheKey(readString(buffer), readString(buffer), buffer.getInt(), buffer.getInt(), buffer.getLong(),
+                buffer.getLong(), buffer.getInt(), buffer.get() != 0,
+                buffer.getInt());
+    }
+
+    private static int readLength(ByteBuffer buffer, int minElementBytes) {
+        // Checked before allocating, so corrupt entries fail instead of requesting huge arrays
+        int length = buffer.getInt();
+        if ((long) length * minElementBytes > buffer.remaining()) {
+            throw new RuntimeException("Invalid length [" + length + "] in model cache");
+        }
+        return length;
+    }
+
+    private static Matrix4f readMatrix(ByteBuffer buffer) {
+        float[] data = new float[MATRIX_FLOATS];
+        buffer.asFloatBuffer().get(data);
+        buffer.position(buffer.position() + MATRIX_FLOATS * Float.BYTES);
+        return new Matrix4f().set(data);
+    }
+
+    private static ModelData readModelData(String modelId, ByteBuffer buffer) {
+        int numMaterials = readLength(buffer, Integer.BYTES);
+        List<ModelData.Material> materialList = new ArrayList<>(numMaterials);
+        for (int i = 0; i < numMaterials; i++) {
+            materialList.add(new ModelData.Material(readString(buffer), readString(buffer), readString(buffer),
+                    new Vector4f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat()),
+                    buffer.getFloat(), buffer.getFloat()));
+        }
+
+        int numMeshes = readLength(buffer, Integer.BYTES);
+        List<ModelData.MeshData> meshDataList = new ArrayList<>(numMeshes);
+        for (int i = 0; i < numMeshes; i++) {
+            meshDataList.add(new ModelData.MeshData(readFloats(buffer), readFloats(buffer), readFloats(buffer),
+                    readFloats(buffer), readFloats(buffer), readInts(buffer), buffer.getInt(), readIntArrays(buffer),
+                    readBounds(buffer)));
+        }
+        ModelData modelData = new ModelData(modelId, meshDataList, materialList);
+        modelData.setBounds(readBounds(buffer));
+
+        int numAnimMeshes = readLength(buffer, Integer.BYTES);
+        if (numAnimMeshes >= 0) {
+            List<ModelData.AnimMeshData> animMeshDataList = new ArrayList<>(numAnimMeshes);
+            for (int i = 0; i < numAnimMeshes; i++) {
+                animMeshDataList.add(new ModelData.AnimMeshData(readFloats(buffer), readInts(buffer)));
+            }
+            modelData.setAnimMeshDataList(animMeshDataList);
+        }
+
+        int numAnimations = readLength(buffer, Integer.BYTES);
+        if (numAnimations >= 0) {
+            List<ModelData.Animation> animationsList = new ArrayList<>(numAnimations);
+            for (int i = 0; i < numAnimations; i++) {
+                String name = readString(buffer);
+                float frameMillis = buffer.getFloat();
+                int numFrames = readLength(buffer, Integer.BYTES);
+                List<ModelData.AnimatedFrame> frames = new ArrayList<>(numFrames);
+                for (int j = 0; j < numFrames; j++) {
+                    float[] data = readFloats(buffer);
+                    Matrix4f[] jointMatrices = new Matrix4f[data.length / MATRIX_FLOATS];
+                    for (int k = 0; k < jointMatrices.length; k++) {
+                        jointMatrices[k] = new Matrix4f().set(data, k * MATRIX_FLOATS);
+                    }
+                    frames.add(new ModelData.AnimatedFrame(jointMatrices));
+                }
+                animationsList.add(new ModelData.Animation(name, frameMillis, frames));
+            }
+            modelData.setAnimationsList(animationsList);
+        }
+
+        int numKeyFrameAnimations = readLength(buffer, Integer.BYTES);
+        if (numKeyFrameAnimations >= 0) {
+            int numNodes = readLength(buffer, Integer.BYTES);
+            int[] nodeParents = new int[numNodes];
+            Matrix4f[] nodeTransformations = new Matrix4f[numNodes];
+            for (int i = 0; i < numNodes; i++) {
+                nodeParents[i] = buffer.getInt();
+                nodeTransformations[i] = readMatrix(buffer);
+            }
+            int numBones = readLength(buffer, Integer.BYTES);
+            int[] boneNodes = new int[numBones];
+            Matrix4f[] boneOffsets = new Matrix4f[numBones];
+            for (int i = 0; i < numBones; i++) {
+                boneNodes[i] = buffer.getInt();
+                boneOffsets[i] = readMatrix(buffer);
+            }
+            modelData.setSkeleton(new ModelData.Skeleton(nodeParents, nodeTransformations, boneNodes, boneOffsets,
+                    readMatrix(buffer), readMatrix(buffer)));
+
+            List<ModelData.KeyFrameAnimation> keyFrameAnimations = new ArrayList<>(numKeyFrameAnimations);
+            for (int i = 0; i < numKeyFrameAnimations; i++) {
+                String name = readString(buffer);
+                float duration = buffer.getFloat();
+                int numChannels = readLength(buffer, Integer.BYTES);
+                List<ModelData.NodeChannel> channels = new ArrayList<>(numChannels);
+                for (int j = 0; j < numChannels; j++) {
+                    channels.add(new ModelData.NodeChannel(buffer.getInt(), readFloats(buffer), readFloats(buffer),
+                            readFloats(buffer)));
+                }
+                keyFrameAnimations.add(new ModelData.KeyFrameAnimation(name, duration, channels));
+            }
+            modelData.setKeyFrameAnimationsList(keyFrameAnimations);
+        }
+
+        return modelData;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = readLength(buffer, 1);
+        if (length < 0) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        buffer.get(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    public static void write(ModelData modelData, String modelPath, String texturesDir, int flags,
+                             ModelLoader.AnimationMode animationMode, Collection<String> dependencies) {
+        try {
+            File cacheFile = getCacheFile(modelPath, flags, animationMode);
+            File cacheDir = cacheFile.getParentFile();
+            if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+                Logger.warn("Could not create model cache directory [{}]", cacheDir.getPath());
+                return;
+            }
+            CacheKey cacheKey = createKey(modelPath, texturesDir, flags, animationMode);
+            // Write to a temporary file first so a crash never leaves a truncated cache entry behind
+            File tmpFile = new File(cacheDir, cacheFile.getName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeKey(out, cacheKey);
+                writeDependencies(out, modelPath, dependencies);
+                writeModelData(out, modelData);
+            }
+            Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Logger.debug("Stored model cache [{}] for [{}]", cacheFile.getPath(), modelPath);
+        } catch (IOException excp) {
+            Logger.warn("Could not write model cache for [{}]", modelPath, excp);
+        }
+    }
+
+    private static void writeBounds(DataOutputStream out, ModelData.Bounds bounds) throws IOException {
+        for (Vector3f vector : new Vector3f[]{bounds.min(), bounds.max(), bounds.center()}) {
+            out.writeFloat(vector.x);
+            out.writeFloat(vector.y);
+            out.writeFloat(vector.z);
+        }
+        out.writeFloat(bounds.radius());
+    }
+
+    private static void writeDependencies(DataOutputStream out, String modelPath, Collection<String> dependencies)
+            throws IOException {
+        // The model file itself is already checked through its CRC
+        String normalizedModelPath = ModelFileIO.normalizePath(modelPath);
+        List<String> paths = dependencies.stream().filter(p -> !p.equals(normalizedModelPath)).toList();
+        out.writeInt(paths.size());
+        for (String path : paths) {
+            File file = new File(path);
+            writeString(out, path);
+            out.writeLong(getSize(file));
+            out.writeLong(file.lastModified());
+        }
+    }
+
+    private static void writeFloats(DataOutputStream out, float[] data) throws IOException {
+        out.writeInt(data.length);
+        for (float value : data) {
+            out.writeFloat(value);
+        }
+    }
+
+    private static void writeIntArrays(DataOutputStream out, List<int[]> data) throws IOException {
+        out.writeInt(data.size());
+        for (int[] array : data) {
+            writeInts(out, array);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] data) throws IOException {
+        out.writeInt(data.length);
+        for (int value : data) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeKey(DataOutputStream out, CacheKey cacheKey) throws IOException {
+        writeString(out, cacheKey.modelPath());
+        writeString(out, cacheKey.texturesDir());
+        out.writeInt(cacheKey.flags());
+        out.writeInt(cacheKey.animationMode());
+        out.writeLong(cacheKey.fileSize());
+        out.writeLong(cacheKey.fileCrc());
+        out.writeInt(cacheKey.maxJointsMatricesLists());
+        out.writeBoolean(cacheKey.meshOptimization());
+        out.writeInt(cacheKey.lodLevels());
+    }
+
+    private static void writeModelData(DataOutputStream out, ModelData modelData) throws IOException {
+        List<ModelData.Material> materialList = modelData.getMaterialList();
+        out.writeInt(materialList.size());
+        for (ModelData.Material material : materialList) {
+            writeString(out, material.texturePath());
+            writeString(out, material.normalMapPath());
+            writeString(out, material.metalRoughMap());
+            Vector4f diffuseColor = material.diffuseColor();
+            out.writeFloat(diffuseColor.x);
+            out.writeFloat(diffuseColor.y);
+            out.writeFloat(diffuseColor.z);
+            out.writeFloat(diffuseColor.w);
+            out.writeFloat(material.roughnessFactor());
+            out.writeFloat(material.metallicFactor());
+        }
+
+        List<ModelData.MeshData> meshDataList = modelData.getMeshDataList();
+        out.writeInt(meshDataList.size());
+        for (ModelData.MeshData meshData : meshDataList) {
+            writeFloats(out, meshData.positions());
+            writeFloats(out, meshData.normals());
+            writeFloats(out, meshData.tangents());
+            writeFloats(out, meshData.biTangents());
+            writeFloats(out, meshData.textCoords());
+            writeInts(out, meshData.indices());
+            out.writeInt(meshData.materialIdx());
+            writeIntArrays(out, meshData.lodIndices());
+            writeBounds(out, meshData.bounds());
+        }
+        writeBounds(out, modelData.getBounds());
+
+        List<ModelData.AnimMeshData> animMeshDataList = modelData.getAnimMeshDataList();
+        out.writeInt(animMeshDataList != null ? animMeshDataList.size() : -1);
+        if (animMeshDataList != null) {
+            for (ModelData.AnimMeshData animMeshData : animMeshDataList) {
+                writeFloats(out, animMeshData.weights());
+                writeInts(out, animMeshData.boneIds());
+            }
+        }
+
+        List<ModelData.Animation> animationsList = modelData.getAnimationsList();
+        out.writeInt(animationsList != null ? animationsList.size() : -1);
+        if (animationsList != null) {
+            for (ModelData.Animation animation : animationsList) {
+                writeString(out, animation.name());
+                out.writeFloat(animation.frameMillis());
+                out.writeInt(animation.frames().size());
+                for (ModelData.AnimatedFrame frame : animation.frames()) {
+                    Matrix4f[] jointMatrices = frame.jointMatrices();
+                    float[] data = new float[jointMatrices.length * MATRIX_FLOATS];
+                    for (int i = 0; i < jointMatrices.length; i++) {
+                        jointMatrices[i].get(data, i * MATRIX_FLOATS);
+                    }
+                    writeFloats(out, data);
+                }
+            }
+        }
+
+        List<ModelData.KeyFrameAnimation> keyFrameAnimations = modelData.getKeyFrameAnimationsList();
+        out.writeInt(keyFrameAnimations != null ? keyFrameAnimations.size() : -1);
+        if (keyFrameAnimations != null) {
+            ModelData.Skeleton skeleton = modelData.getSkeleton();
+            int[] nodeParents = skeleton.nodeParents();
+            out.writeInt(nodeParents.length);
+            for (int i = 0; i < nodeParents.length; i++) {
+                out.writeInt(nodeParents[i]);
+                writeMatrix(out, skeleton.nodeTransformations()[i]);
+            }
+            int[] boneNodes = skeleton.boneNodes();
+            out.writeInt(boneNodes.length);
+            for (int i = 0; i < boneNodes.length; i++) {
+                out.writeInt(boneNodes[i]);
+                writeMatrix(out, skeleton.boneOffsets()[i]);
+            }
+            writeMatrix(out, skeleton.rootParentTransform());
+            writeMatrix(out, skeleton.globalInverseTransform());
+
+            for (ModelData.KeyFrameAnimation keyFrameAnimation : keyFrameAnimations) {
+                writeString(out, keyFrameAnimation.name());
+                out.writeFloat(keyFrameAnimation.duration());
+                out.writeInt(keyFrameAnimation.channels().size());
+                for (ModelData.NodeChannel channel : keyFrameAnimation.channels()) {
+                    out.writeInt(channel.nodeIdx());
+                    writeFloats(out, channel.positionKeys());
+                    writeFloats(out, channel.rotationKeys());
+                    writeFloats(out, channel.scalingKeys());
+                }
+            }
+        }
+    }
+
+    private static void writeMatrix(DataOutputStream out, Matrix4f matrix) throws IOException {
+        float[] data = new float[MATRIX_FLOATS];
+        matrix.get(data);
+        for (float value : data) {
+            out.writeFloat(value);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private record CacheKey(String modelPath, String texturesDir, int flags, int animationMode, long fileSize,
+                            long fileCrc, int maxJointsMatricesLists, boolean meshOptimization,
+                            int lodLevels) {
+    }
+}
@@ -2,14 +2,18 @@ package org.vulkanb.eng.scene;
 
 import org.joml.*;
 
-import java.util.List;
+import java.lang.Math;
+import java.util.*;
 
 public class ModelData {
     private List<AnimMeshData> animMeshDataList;
     private List<Animation> animationsList;
+    private Bounds bounds;
+    private List<KeyFrameAnimation> keyFrameAnimationsList;
     private List<Material> materialList;
     private List<MeshData> meshDataList;
     private String modelId;
+    private Skeleton skeleton;
 
     public ModelData(String modelId, List<MeshData> meshDataList, List<Material> materialList) {
         this.modelId = modelId;
@@ -25,6 +29,20 @@ public class ModelData {
         return animationsList;
     }
 
+    /**
+     * Returns the bounds of all the meshes in model space, computed from the vertices if they have not been set.
+     */
+    public Bounds getBounds() {
+        if (bounds == null) {
+            bounds = Bounds.fromMeshes(meshDataList);
+        }
+        return bounds;
+    }
+
+    public List<KeyFrameAnimation> getKeyFrameAnimationsList() {
+        return keyFrameAnimationsList;
+    }
+
     public List<Material> getMaterialList() {
         return materialList;
     }
@@ -37,10 +55,18 @@ public class ModelData {
         return modelId;
     }
 
+    public Skeleton getSkeleton() {
+        return skeleton;
+    }
+
     public boolean hasAnimations() {
         return animationsList != null && !animationsList.isEmpty();
     }
 
+    public boolean hasKeyFrameAnimations() {
+        return keyFrameAnimationsList != null && !keyFrameAnimationsList.isEmpty();
+    }
+
     public void setAnimMeshDataList(List<AnimMeshData> animMeshDataList) {
         this.animMeshDataList = animMeshDataList;
     }
@@ -49,6 +75,18 @@ public class ModelData {
         this.animationsList = animationsList;
     }
 
+    public void setBounds(Bounds bounds) {
+        this.bounds = bounds;
+    }
+
+    public void setKeyFrameAnimationsList(List<KeyFrameAnimation> keyFrameAnimationsList) {
+        this.keyFrameAnimationsList = keyFrameAnimationsList;
+    }
+
+    public void setSkeleton(Skeleton skeleton) {
+        this.skeleton = skeleton;
+    }
+
     public record AnimMeshData(float[] weights, int[] boneIds) {
     }
 
@@ -58,6 +96,47 @@ public class ModelData {
     public record Animation(String name, float frameMillis, List<AnimatedFrame> frames) {
     }
 
+    // Axis aligned box and the sphere centered on it that encloses all the vertices
+    public record Bounds(Vector3f min, Vector3f max, Vector3f center, float radius) {
+        public static final Bounds EMPTY = new Bounds(new Vector3f(), new Vector3f(), new Vector3f(), 0.0f);
+
+        public static Bounds fromMeshes(List<MeshData> meshDataList) {
+            return fromPositions(meshDataList.stream().map(MeshData::positions).toList());
+        }
+
+        public static Bounds fromPositions(float[] positions) {
+            return fromPositions(List.of(positions));
+        }
+
+        private static Bounds fromPositions(List<float[]> positionsList) {
+            Vector3f min = new Vector3f(Float.MAX_VALUE);
+            Vector3f max = new Vector3f(-Float.MAX_VALUE);
+            for (float[] positions : positionsList) {
+                for (int i = 0; i + 2 < positions.length; i += 3) {
+                    min.set(Math.min(min.x, positions[i]), Math.min(min.y, positions[i + 1]),
+                            Math.min(min.z, positions[i + 2]));
+                    max.set(Math.max(max.x, positions[i]), Math.max(max.y, positions[i + 1]),
+                            Math.max(max.z, positions[i + 2]));
+                }
+            }
+            if (min.x > max.x) {
+                return EMPTY;
+            }
+            Vector3f center = new Vector3f(min).add(max).mul(0.5f);
+            float radiusSquared = 0;
+            for (float[] positions : positionsList) {
+                for (int i = 0; i + 2 < positions.length; i += 3) {
+                    radiusSquared = Math.max(radiusSquared, center.distanceSquared(positions[i], positions[i + 1],
+                            positions[i + 2]));
+                }
+            }
+            return new Bounds(min, max, center, (float) Math.sqrt(radiusSquared));
+        }
+    }
+
+    public record KeyFrameAnimation(String name, float duration, List<NodeChannel> channels) {
+    }
+
     public record Material(String texturePath, String normalMapPath, String metalRoughMap, Vector4f diffuseColor,
                            float roughnessFactor, float metallicFactor) {
         public static final Vector4f DEFAULT_COLOR = new Vector4f(1.0f, 1.0f, 1.0f, 1.0f);
@@ -67,8 +146,24 @@ public class ModelData {
         }
     }
 
+    // Levels of detail only hold indices, they share the vertices of the mesh. Level 0 is not included
     public record MeshData(float[] positions, float[] normals, float[] tangents, float[] biTangents,
-                           float[] textCoords, int[] indices, int materialIdx) {
+                           float[] textCoords, int[] indices, int materialIdx, List<int[]> lodIndices, Bounds bounds) {
+
+        public MeshData(float[] positions, float[] normals, float[] tangents, float[] biTangents, float[] textCoords,
+                        int[] indices, int materialIdx) {
+            this(positions, normals, tangents, biTangents, textCoords, indices, materialIdx, Collections.emptyList(),
+                    Bounds.fromPositions(positions));
+        }
+    }
+
+    // Keys are stored as time (in seconds) followed by the value: (t, x, y, z) for positions and scaling and
+    // (t, x, y, z, w) for rotations
+    public record NodeChannel(int nodeIdx, float[] positionKeys, float[] rotationKeys, float[] scalingKeys) {
+    }
 
+    // Nodes are stored in pre-order, parent indices are always lower than child indices (root has -1)
+    public record Skeleton(int[] nodeParents, Matrix4f[] nodeTransformations, int[] boneNodes, Matrix4f[] boneOffsets,
+                           Matrix4f rootParentTransform, Matrix4f globalInverseTransform) {
     }
 }
\ No newline at end of file
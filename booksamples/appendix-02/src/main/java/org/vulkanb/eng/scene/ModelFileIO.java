@@ -0,0 +1,120 @@
+package org.vulkanb.eng.scene;
+
+import org.lwjgl.assimp.*;
+import org.lwjgl.system.MemoryUtil;
+import org.tinylog.Logger;
+
+import java.io.*;
+import java.lang.Math;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.lwjgl.assimp.Assimp.*;
+
+/**
+ * Assimp file system that reads files fully into memory and records the paths of all the files the importer tries to
+ * open, including the ones that do not exist, so the model cache can detect changes in any of them.
+ */
+class ModelFileIO implements AutoCloseable {
+
+    private final AIFileCloseProc closeProc;
+    private final AIFileIO fileIO;
+    private final Map<Long, ByteBuffer> filesMap;
+    private final AIFileFlushProc flushProc;
+    private final AIFileOpenProc openProc;
+    private final Set<String> openedPaths;
+    private final AIFileReadProc readProc;
+    private final AIFileSeek seekProc;
+    private final AIFileTellProc sizeProc;
+    private final AIFileTellProc tellProc;
+    private final AIFileWriteProc writeProc;
+
+    ModelFileIO() {
+        filesMap = new HashMap<>();
+        openedPaths = new LinkedHashSet<>();
+        readProc = AIFileReadProc.create((pFile, pBuffer, size, count) -> {
+            ByteBuffer data = filesMap.get(pFile);
+            long numItems = size > 0 ? Math.min(data.remaining() / size, count) : 0;
+            MemoryUtil.memCopy(MemoryUtil.memAddress(data), pBuffer, numItems * size);
+            data.position(data.position() + (int) (numItems * size));
+            return numItems;
+        });
+        seekProc = AIFileSeek.create((pFile, offset, origin) -> {
+            ByteBuffer data = filesMap.get(pFile);
+            long position = switch (origin) {
+                case aiOrigin_CUR -> data.position() + offset;
+                case aiOrigin_END -> data.limit() + offset;
+                default -> offset;
+            };
+            if (position < 0 || position > data.limit()) {
+                return aiReturn_FAILURE;
+            }
+            data.position((int) position);
+            return aiReturn_SUCCESS;
+        });
+        tellProc = AIFileTellProc.create(pFile -> filesMap.get(pFile).position());
+        sizeProc = AIFileTellProc.create(pFile -> filesMap.get(pFile).limit());
+        writeProc = AIFileWriteProc.create((pFile, pBuffer, memB, count) -> 0);
+        flushProc = AIFileFlushProc.create(pFile -> {
+        });
+        openProc = AIFileOpenProc.create((pFileIO, fileName, openMode) -> open(MemoryUtil.memUTF8(fileName)));
+        closeProc = AIFileCloseProc.create((pFileIO, pFile) -> {
+            MemoryUtil.memFree(filesMap.remove(pFile));
+            AIFile.create(pFile).free();
+        });
+        fileIO = AIFileIO.calloc().set(openProc, closeProc, MemoryUtil.NULL);
+    }
+
+    static String normalizePath(String path) {
+        return Paths.get(path).toAbsolutePath().normalize().toString();
+    }
+
+    @Override
+    public void close() {
+        filesMap.values().forEach(MemoryUtil::memFree);
+        filesMap.clear();
+        fileIO.free();
+        openProc.free();
+        closeProc.free();
+        readProc.free();
+        seekProc.free();
+        tellProc.free();
+        sizeProc.free();
+        writeProc.free();
+        flushProc.free();
+    }
+
+    AIFileIO getFileIO() {
+        return fileIO;
+    }
+
+    Set<String> getOpenedPaths() {
+        return openedPaths;
+    }
+
+    private long open(String path) {
+        openedPaths.add(normalizePath(path));
+        File file = new File(path);
+        if (!file.isFile()) {
+            return MemoryUtil.NULL;
+        }
+        ByteBuffer data;
+        try {
+            byte[] content = Files.readAllBytes(file.toPath());
+            data = MemoryUtil.memAlloc(content.length).put(content).flip();
+        } catch (IOException excp) {
+            Logger.warn("Could not read model file [{}]", path, excp);
+            return MemoryUtil.NULL;
+        }
+        AIFile aiFile = AIFile.calloc()
+                .ReadProc(readProc)
+                .WriteProc(writeProc)
+                .TellProc(tellProc)
+                .FileSizeProc(sizeProc)
+                .SeekProc(seekProc)
+                .FlushProc(flushProc);
+        filesMap.put(aiFile.address(), data);
+        return aiFile.address();
+    }
+}
\ No newline at end of file
@@ -3,51 +3,36 @@ package org.vulkanb.eng.scene;
 import org.joml.*;
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.assimp.*;
-import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.*;
 import org.tinylog.Logger;
 import org.vulkanb.eng.EngineProperties;
 
-import java.io.File;
+import java.io.*;
 import java.lang.Math;
 import java.nio.IntBuffer;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.lwjgl.assimp.Assimp.*;
-import static org.vulkanb.eng.EngineUtils.*;
+import static org.vulkanb.eng.EngineUtils.getThreadAllocatedBytes;
 
 public class ModelLoader {
 
     public static final int MAX_WEIGHTS = 4;
+    // Default value used by Assimp when a file does not define the animation rate
+    private static final float DEFAULT_TICKS_PER_SECOND = 25.0f;
     private static final Matrix4f IDENTITY_MATRIX = new Matrix4f();
+    // Maximum error allowed when removing keys that can be rebuilt by interpolating their neighbours
+    private static final float KEY_REDUCTION_TOLERANCE = 0.00001f;
+    private static ExecutorService executor;
 
     private ModelLoader() {
         // Utility class
     }
 
-    private static void buildFrameMatrices(AIAnimation aiAnimation, List<Bone> boneList, ModelData.AnimatedFrame animatedFrame,
-                                           int frame, Node node, Matrix4f parentTransformation, Matrix4f globalInverseTransform) {
-        String nodeName = node.getName();
-        AINodeAnim aiNodeAnim = findAIAnimNode(aiAnimation, nodeName);
-        Matrix4f nodeTransform = node.getNodeTransformation();
-        if (aiNodeAnim != null) {
-            nodeTransform = buildNodeTransformationMatrix(aiNodeAnim, frame);
-        }
-        Matrix4f nodeGlobalTransform = new Matrix4f(parentTransformation).mul(nodeTransform);
-
-        List<Bone> affectedBones = boneList.stream().filter(b -> b.boneName().equals(nodeName)).toList();
-        for (Bone bone : affectedBones) {
-            Matrix4f boneTransform = new Matrix4f(globalInverseTransform).mul(nodeGlobalTransform).
-                    mul(bone.offsetMatrix());
-            animatedFrame.jointMatrices()[bone.boneId()] = boneTransform;
-        }
-
-        for (Node childNode : node.getChildren()) {
-            buildFrameMatrices(aiAnimation, boneList, animatedFrame, frame, childNode, nodeGlobalTransform,
-                    globalInverseTransform);
-        }
-    }
-
-    private static Matrix4f buildNodeTransformationMatrix(AINodeAnim aiNodeAnim, int frame) {
+    private static Matrix4f buildNodeTransformationMatrix(AINodeAnim aiNodeAnim, int frame, Matrix4f nodeTransform,
+                                                          Quaternionf quat) {
         AIVectorKey.Buffer positionKeys = aiNodeAnim.mPositionKeys();
         AIVectorKey.Buffer scalingKeys = aiNodeAnim.mScalingKeys();
         AIQuatKey.Buffer rotationKeys = aiNodeAnim.mRotationKeys();
@@ -55,7 +40,7 @@ public class ModelLoader {
         AIVectorKey aiVecKey;
         AIVector3D vec;
 
-        Matrix4f nodeTransform = new Matrix4f();
+        nodeTransform.identity();
         int numPositions = aiNodeAnim.mNumPositionKeys();
         if (numPositions > 0) {
             aiVecKey = positionKeys.get(Math.min(numPositions - 1, frame));
@@ -66,7 +51,7 @@ public class ModelLoader {
         if (numRotations > 0) {
             AIQuatKey quatKey = rotationKeys.get(Math.min(numRotations - 1, frame));
             AIQuaternion aiQuat = quatKey.mValue();
-            Quaternionf quat = new Quaternionf(aiQuat.x(), aiQuat.y(), aiQuat.z(), aiQuat.w());
+            quat.set(aiQuat.x(), aiQuat.y(), aiQuat.z(), aiQuat.w());
             nodeTransform.rotate(quat);
         }
         int numScalingKeys = aiNodeAnim.mNumScalingKeys();
@@ -107,27 +92,83 @@ public class ModelLoader {
         return maxFrames;
     }
 
-    private static AINodeAnim findAIAnimNode(AIAnimation aiAnimation, String nodeName) {
-        AINodeAnim result = null;
-        int numAnimNodes = aiAnimation.mNumChannels();
-        PointerBuffer aiChannels = aiAnimation.mChannels();
-        for (int i = 0; i < numAnimNodes; i++) {
-            AINodeAnim aiNodeAnim = AINodeAnim.create(aiChannels.get(i));
-            if (nodeName.equals(aiNodeAnim.mNodeName().dataString())) {
-                result = aiNodeAnim;
-                break;
+    private static boolean canInterpolateKey(float[] keys, int keySize, int startKey, int key, int endKey) {
+        int startPos = startKey * keySize;
+        int pos = key * keySize;
+        int endPos = endKey * keySize;
+        float startTime = keys[startPos];
+        float endTime = keys[endPos];
+        float factor = endTime > startTime ? (keys[pos] - startTime) / (endTime - startTime) : 0.0f;
+        boolean rotation = keySize == 5;
+        // Quaternions q and -q represent the same rotation, so end and tested keys are moved to the start hemisphere
+        float endSign = rotation && dot(keys, startPos, endPos, keySize) < 0 ? -1.0f : 1.0f;
+        float keySign = rotation && dot(keys, startPos, pos, keySize) < 0 ? -1.0f : 1.0f;
+        float[] value = new float[keySize - 1];
+        float length = 0;
+        for (int i = 0; i < value.length; i++) {
+            float start = keys[startPos + i + 1];
+            value[i] = start + (endSign * keys[endPos + i + 1] - start) * factor;
+            length += value[i] * value[i];
+        }
+        // Rotations are normalized after interpolation
+        float scale = rotation && length > 0 ? 1.0f / (float) Math.sqrt(length) : 1.0f;
+        for (int i = 0; i < value.length; i++) {
+            if (Math.abs(value[i] * scale - keySign * keys[pos + i + 1]) > KEY_REDUCTION_TOLERANCE) {
+                return false;
             }
         }
+        return true;
+    }
+
+    private static float dot(float[] keys, int pos1, int pos2, int keySize) {
+        float result = 0;
+        for (int i = 1; i < keySize; i++) {
+            result += keys[pos1 + i] * keys[pos2 + i];
+        }
         return result;
     }
 
+    private static void flattenNodes(Node node, int parentIdx, List<FlatNode> flatNodes) {
+        int nodeIdx = flatNodes.size();
+        flatNodes.add(new FlatNode(node.getName(), parentIdx, node.getNodeTransformation()));
+        for (Node childNode : node.getChildren()) {
+            flattenNodes(childNode, nodeIdx, flatNodes);
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            int numThreads = Math.max(1, java.lang.Runtime.getRuntime().availableProcessors());
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(numThreads, numThreads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "model-loader-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Shared by all the loads, idle threads are released so the pool costs nothing between them
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            executor = threadPoolExecutor;
+        }
+        return executor;
+    }
+
     public static ModelData loadModel(String modelId, String modelPath, String texturesDir, boolean animation) {
+        return loadModel(modelId, modelPath, texturesDir, animation ? AnimationMode.BAKED : AnimationMode.NONE);
+    }
+
+    public static ModelData loadModel(String modelId, String modelPath, String texturesDir, AnimationMode animationMode) {
         return loadModel(modelId, modelPath, texturesDir, aiProcess_GenSmoothNormals | aiProcess_JoinIdenticalVertices |
                 aiProcess_Triangulate | aiProcess_FixInfacingNormals | aiProcess_CalcTangentSpace | aiProcess_LimitBoneWeights |
-                (animation ? 0 : aiProcess_PreTransformVertices));
+                (animationMode != AnimationMode.NONE ? 0 : aiProcess_PreTransformVertices), animationMode);
     }
 
     public static ModelData loadModel(String modelId, String modelPath, String texturesDir, int flags) {
+        return loadModel(modelId, modelPath, texturesDir, flags, AnimationMode.BAKED);
+    }
+
+    public static ModelData loadModel(String modelId, String modelPath, String texturesDir, int flags,
+                                      AnimationMode animationMode) {
         Logger.debug("Loading model data [{}]", modelPath);
         if (!new File(modelPath).exists()) {
             throw new RuntimeException("Model path does not exist [" + modelPath + "]");
@@ -136,7 +177,25 @@ public class ModelLoader {
             throw new RuntimeException("Textures path does not exist [" + texturesDir + "]");
         }
 
-        AIScene aiScene = aiImportFile(modelPath, flags);
+        long startTime = System.nanoTime();
+        long startAllocatedBytes = getThreadAllocatedBytes();
+        EngineProperties engProps = EngineProperties.getInstance();
+        boolean useCache = engProps.isModelCache();
+        if (useCache && !engProps.isModelCacheRebuild()) {
+            ModelData modelData = ModelCache.read(modelId, modelPath, texturesDir, flags, animationMode);
+            if (modelData != null) {
+                Logger.debug("Loaded model [{}] from cache in {} ms, allocated {} bytes", modelPath,
+                        (System.nanoTime() - startTime) / 1_000_000, getThreadAllocatedBytes() - startAllocatedBytes);
+                return modelData;
+            }
+        }
+
+        AIScene aiScene;
+        Set<String> dependencies;
+        try (ModelFileIO modelFileIO = new ModelFileIO()) {
+            aiScene = aiImportFileEx(modelPath, flags, modelFileIO.getFileIO());
+            dependencies = modelFileIO.getOpenedPaths();
+        }
         if (aiScene == null) {
             throw new RuntimeException("Error loading model [modelPath: " + modelPath + ", texturesDir:" + texturesDir + "]");
         }
@@ -159,6 +218,7 @@ public class ModelLoader {
         }
 
         ModelData modelData = new ModelData(modelId, meshDataList, materialList);
+        modelData.setBounds(ModelData.Bounds.fromMeshes(meshDataList));
 
         int numAnimations = aiScene.mNumAnimations();
         if (numAnimations > 0) {
@@ -174,20 +234,67 @@ public class ModelLoader {
 
             Node rootNode = buildNodesTree(aiScene.mRootNode(), null);
             Matrix4f globalInverseTransformation = toMatrix(aiScene.mRootNode().mTransformation()).invert();
-            List<ModelData.Animation> animations = processAnimations(aiScene, boneList, rootNode, globalInverseTransformation);
-            modelData.setAnimationsList(animations);
+            if (animationMode == AnimationMode.SAMPLED) {
+                processKeyFrameAnimations(aiScene, boneList, rootNode, globalInverseTransformation, modelData);
+            } else {
+                List<ModelData.Animation> animations = processAnimations(aiScene, boneList, rootNode, globalInverseTransformation);
+                modelData.setAnimationsList(animations);
+            }
         }
 
         aiReleaseImport(aiScene);
-        Logger.debug("Loaded model [{}]", modelPath);
+        if (engProps.isMeshOptimization()) {
+            MeshOptimizer.optimize(modelData);
+        }
+        // Animated models are always drawn at full detail
+        if (engProps.getLodLevels() > 1 && numAnimations == 0) {
+            MeshSimplifier.generateLods(modelData, engProps.getLodLevels(), engProps.isMeshOptimization());
+        }
+        if (useCache) {
+            ModelCache.write(modelData, modelPath, texturesDir, flags, animationMode, dependencies);
+        }
+        Logger.debug("Loaded model [{}] in {} ms, allocated {} bytes", modelPath,
+                (System.nanoTime() - startTime) / 1_000_000, getThreadAllocatedBytes() - startAllocatedBytes);
         return modelData;
     }
 
+    public static List<CompletableFuture<ModelData>> loadModelsAsync(List<ModelRequest> modelRequests) {
+        Logger.debug("Loading {} model(s)", modelRequests.size());
+        ExecutorService executor = getExecutor();
+        List<CompletableFuture<ModelData>> result = new ArrayList<>();
+        for (ModelRequest modelRequest : modelRequests) {
+            result.add(CompletableFuture.supplyAsync(() -> loadModel(modelRequest.modelId(), modelRequest.modelPath(),
+                    modelRequest.texturesDir(), modelRequest.animationMode()), executor));
+        }
+        return result;
+    }
+
     private static List<ModelData.Animation> processAnimations(AIScene aiScene, List<Bone> boneList,
                                                                Node rootNode, Matrix4f globalInverseTransformation) {
+        long start = System.currentTimeMillis();
         List<ModelData.Animation> animations = new ArrayList<>();
 
+        // Nodes are stored in pre-order, so parents are always processed before their children
+        List<FlatNode> flatNodes = new ArrayList<>();
+        flattenNodes(rootNode, -1, flatNodes);
+        int numNodes = flatNodes.size();
+
+        Map<String, List<Bone>> bonesMap = new HashMap<>();
+        for (Bone bone : boneList) {
+            bonesMap.computeIfAbsent(bone.boneName(), k -> new ArrayList<>()).add(bone);
+        }
+        Bone[][] nodeBones = new Bone[numNodes][];
+        for (int i = 0; i < numNodes; i++) {
+            nodeBones[i] = bonesMap.getOrDefault(flatNodes.get(i).name(), Collections.emptyList()).toArray(new Bone[0]);
+        }
+
+        // Frames only hold the joints used by the model instead of a full size palette
+        int numJoints = Math.max(1, boneList.size());
         int maxJointsMatricesLists = EngineProperties.getInstance().getMaxJointsMatricesLists();
+        if (numJoints > maxJointsMatricesLists) {
+            throw new RuntimeException("Model uses [" + numJoints + "] joints, maximum supported is [" +
+                    maxJointsMatricesLists + "]");
+        }
         // Process all animations
         int numAnimations = aiScene.mNumAnimations();
         PointerBuffer aiAnimations = aiScene.mAnimations();
@@ -195,44 +302,43 @@ public class ModelLoader {
             AIAnimation aiAnimation = AIAnimation.create(aiAnimations.get(i));
             int maxFrames = calcAnimationMaxFrames(aiAnimation);
             float frameMillis = (float) (aiAnimation.mDuration() / aiAnimation.mTicksPerSecond());
-            List<ModelData.AnimatedFrame> frames = new ArrayList<>();
-            ModelData.Animation animation = new ModelData.Animation(aiAnimation.mName().dataString(), frameMillis, frames);
-            animations.add(animation);
 
-            for (int j = 0; j < maxFrames; j++) {
-                Matrix4f[] jointMatrices = new Matrix4f[maxJointsMatricesLists];
-                Arrays.fill(jointMatrices, IDENTITY_MATRIX);
-                ModelData.AnimatedFrame animatedFrame = new ModelData.AnimatedFrame(jointMatrices);
-                buildFrameMatrices(aiAnimation, boneList, animatedFrame, j, rootNode,
-                        rootNode.getNodeTransformation(), globalInverseTransformation);
-                frames.add(animatedFrame);
+            Map<String, AINodeAnim> channelsMap = new HashMap<>();
+            int numChannels = aiAnimation.mNumChannels();
+            PointerBuffer aiChannels = aiAnimation.mChannels();
+            for (int j = 0; j < numChannels; j++) {
+                AINodeAnim aiNodeAnim = AINodeAnim.create(aiChannels.get(j));
+                channelsMap.putIfAbsent(aiNodeAnim.mNodeName().dataString(), aiNodeAnim);
+            }
+            AINodeAnim[] nodeChannels = new AINodeAnim[numNodes];
+            for (int j = 0; j < numNodes; j++) {
+                nodeChannels[j] = channelsMap.get(flatNodes.get(j).name());
             }
+
+            BakeData bakeData = new BakeData(flatNodes.toArray(new FlatNode[0]), nodeBones, nodeChannels,
+                    rootNode.getNodeTransformation(), globalInverseTransformation, numJoints);
+            ModelData.AnimatedFrame[] frames = new ModelData.AnimatedFrame[maxFrames];
+            ForkJoinPool.commonPool().invoke(new BakeFramesTask(bakeData, frames, 0, maxFrames));
+            animations.add(new ModelData.Animation(aiAnimation.mName().dataString(), frameMillis,
+                    new ArrayList<>(Arrays.asList(frames))));
         }
+        Logger.debug("Baked {} animation(s) for {} node(s) in {} ms", numAnimations, numNodes,
+                System.currentTimeMillis() - start);
         return animations;
     }
 
-    private static List<Float> processBitangents(AIMesh aiMesh, List<Float> normals) {
-        List<Float> biTangents = new ArrayList<>();
-        AIVector3D.Buffer aiBitangents = aiMesh.mBitangents();
-        while (aiBitangents != null && aiBitangents.remaining() > 0) {
-            AIVector3D aiBitangent = aiBitangents.get();
-            biTangents.add(aiBitangent.x());
-            biTangents.add(aiBitangent.y());
-            biTangents.add(aiBitangent.z());
-        }
-
+    private static float[] processBitangents(AIMesh aiMesh, int numVertices) {
         // Assimp may not calculate tangents with models that do not have texture coordinates. Just create empty values
-        if (biTangents.isEmpty()) {
-            biTangents = new ArrayList<>(Collections.nCopies(normals.size(), 0.0f));
-        }
-        return biTangents;
+        return processVector3(aiMesh.mBitangents(), numVertices);
     }
 
     private static ModelData.AnimMeshData processBones(AIMesh aiMesh, List<Bone> boneList) {
-        List<Integer> boneIds = new ArrayList<>();
-        List<Float> weights = new ArrayList<>();
+        int numVertices = aiMesh.mNumVertices();
+        float[] weights = new float[numVertices * MAX_WEIGHTS];
+        int[] boneIds = new int[numVertices * MAX_WEIGHTS];
+        // Number of weights already assigned to each vertex, extra weights are discarded
+        int[] weightsCount = new int[numVertices];
 
-        Map<Integer, List<VertexWeight>> weightSet = new HashMap<>();
         int numBones = aiMesh.mNumBones();
         PointerBuffer aiBones = aiMesh.mBones();
         for (int i = 0; i < numBones; i++) {
@@ -241,53 +347,118 @@ public class ModelLoader {
             Bone bone = new Bone(id, aiBone.mName().dataString(), toMatrix(aiBone.mOffsetMatrix()));
             boneList.add(bone);
             int numWeights = aiBone.mNumWeights();
-            AIVertexWeight.Buffer aiWeights = aiBone.mWeights();
+            long weightsAddress = aiBone.mWeights().address();
             for (int j = 0; j < numWeights; j++) {
-                AIVertexWeight aiWeight = aiWeights.get(j);
-                VertexWeight vw = new VertexWeight(bone.boneId(), aiWeight.mVertexId(),
-                        aiWeight.mWeight());
-                List<VertexWeight> vertexWeightList = weightSet.get(vw.vertexId());
-                if (vertexWeightList == null) {
-                    vertexWeightList = new ArrayList<>();
-                    weightSet.put(vw.vertexId(), vertexWeightList);
+                long weightAddress = weightsAddress + (long) j * AIVertexWeight.SIZEOF;
+                int vertexId = AIVertexWeight.nmVertexId(weightAddress);
+                int count = weightsCount[vertexId];
+                if (count < MAX_WEIGHTS) {
+                    int pos = vertexId * MAX_WEIGHTS + count;
+                    weights[pos] = AIVertexWeight.nmWeight(weightAddress);
+                    boneIds[pos] = bone.boneId();
+                    weightsCount[vertexId] = count + 1;
                 }
-                vertexWeightList.add(vw);
             }
         }
 
-        int numVertices = aiMesh.mNumVertices();
-        for (int i = 0; i < numVertices; i++) {
-            List<VertexWeight> vertexWeightList = weightSet.get(i);
-            int size = vertexWeightList != null ? vertexWeightList.size() : 0;
-            for (int j = 0; j < MAX_WEIGHTS; j++) {
-                if (j < size) {
-                    VertexWeight vw = vertexWeightList.get(j);
-                    weights.add(vw.weight());
-                    boneIds.add(vw.boneId());
-                } else {
-                    weights.add(0.0f);
-                    boneIds.add(0);
-                }
-            }
-        }
-
-        return new ModelData.AnimMeshData(listFloatToArray(weights), listIntToArray(boneIds));
+        return new ModelData.AnimMeshData(weights, boneIds);
     }
 
-    private static List<Integer> processIndices(AIMesh aiMesh) {
-        List<Integer> indices = new ArrayList<>();
+    private static int[] processIndices(AIMesh aiMesh) {
         int numFaces = aiMesh.mNumFaces();
-        AIFace.Buffer aiFaces = aiMesh.mFaces();
+        long facesAddress = aiMesh.mFaces().address();
+        int numIndices = 0;
+        for (int i = 0; i < numFaces; i++) {
+            numIndices += AIFace.nmNumIndices(facesAddress + (long) i * AIFace.SIZEOF);
+        }
+
+        int[] indices = new int[numIndices];
+        int pos = 0;
         for (int i = 0; i < numFaces; i++) {
-            AIFace aiFace = aiFaces.get(i);
-            IntBuffer buffer = aiFace.mIndices();
-            while (buffer.remaining() > 0) {
-                indices.add(buffer.get());
+            long faceAddress = facesAddress + (long) i * AIFace.SIZEOF;
+            int numFaceIndices = AIFace.nmNumIndices(faceAddress);
+            long indicesAddress = MemoryUtil.memGetAddress(faceAddress + AIFace.MINDICES);
+            for (int j = 0; j < numFaceIndices; j++) {
+                indices[pos++] = MemoryUtil.memGetInt(indicesAddress + (long) j * Integer.BYTES);
             }
         }
         return indices;
     }
 
+    private static void processKeyFrameAnimations(AIScene aiScene, List<Bone> boneList, Node rootNode,
+                                                  Matrix4f globalInverseTransformation, ModelData modelData) {
+        long start = System.currentTimeMillis();
+        List<FlatNode> flatNodes = new ArrayList<>();
+        flattenNodes(rootNode, -1, flatNodes);
+        int numNodes = flatNodes.size();
+
+        int[] nodeParents = new int[numNodes];
+        Matrix4f[] nodeTransformations = new Matrix4f[numNodes];
+        Map<String, Integer> nodesMap = new HashMap<>();
+        for (int i = 0; i < numNodes; i++) {
+            FlatNode flatNode = flatNodes.get(i);
+            nodeParents[i] = flatNode.parentIdx();
+            nodeTransformations[i] = flatNode.nodeTransformation();
+            nodesMap.put(flatNode.name(), i);
+        }
+        int numBones = boneList.size();
+        int[] boneNodes = new int[numBones];
+        Matrix4f[] boneOffsets = new Matrix4f[numBones];
+        for (Bone bone : boneList) {
+            boneNodes[bone.boneId()] = nodesMap.getOrDefault(bone.boneName(), -1);
+            boneOffsets[bone.boneId()] = bone.offsetMatrix();
+        }
+        modelData.setSkeleton(new ModelData.Skeleton(nodeParents, nodeTransformations, boneNodes, boneOffsets,
+                rootNode.getNodeTransformation(), globalInverseTransformation));
+
+        // Only bone nodes and their ancestors affect joint matrices, channels for other nodes are discarded
+        boolean[] usedNodes = new boolean[numNodes];
+        for (int boneNode : boneNodes) {
+            for (int i = boneNode; i >= 0 && !usedNodes[i]; i = nodeParents[i]) {
+                usedNodes[i] = true;
+            }
+        }
+        int numKeys = 0;
+        int numReducedKeys = 0;
+
+        List<ModelData.KeyFrameAnimation> keyFrameAnimations = new ArrayList<>();
+        int numAnimations = aiScene.mNumAnimations();
+        PointerBuffer aiAnimations = aiScene.mAnimations();
+        for (int i = 0; i < numAnimations; i++) {
+            AIAnimation aiAnimation = AIAnimation.create(aiAnimations.get(i));
+            float ticksPerSecond = aiAnimation.mTicksPerSecond() != 0 ? (float) aiAnimation.mTicksPerSecond() :
+                    DEFAULT_TICKS_PER_SECOND;
+
+            Map<String, AINodeAnim> channelsMap = new HashMap<>();
+            int numChannels = aiAnimation.mNumChannels();
+            PointerBuffer aiChannels = aiAnimation.mChannels();
+            for (int j = 0; j < numChannels; j++) {
+                AINodeAnim aiNodeAnim = AINodeAnim.create(aiChannels.get(j));
+                channelsMap.putIfAbsent(aiNodeAnim.mNodeName().dataString(), aiNodeAnim);
+            }
+            List<ModelData.NodeChannel> channels = new ArrayList<>();
+            for (int j = 0; j < numNodes; j++) {
+                AINodeAnim aiNodeAnim = channelsMap.get(flatNodes.get(j).name());
+                if (aiNodeAnim == null || !usedNodes[j]) {
+                    continue;
+                }
+                numKeys += aiNodeAnim.mNumPositionKeys() + aiNodeAnim.mNumRotationKeys() + aiNodeAnim.mNumScalingKeys();
+                ModelData.NodeChannel channel = new ModelData.NodeChannel(j,
+                        reduceKeys(processVectorKeys(aiNodeAnim.mPositionKeys(), aiNodeAnim.mNumPositionKeys(), ticksPerSecond), 4),
+                        reduceKeys(processQuatKeys(aiNodeAnim.mRotationKeys(), aiNodeAnim.mNumRotationKeys(), ticksPerSecond), 5),
+                        reduceKeys(processVectorKeys(aiNodeAnim.mScalingKeys(), aiNodeAnim.mNumScalingKeys(), ticksPerSecond), 4));
+                numReducedKeys += channel.positionKeys().length / 4 + channel.rotationKeys().length / 5 +
+                        channel.scalingKeys().length / 4;
+                channels.add(channel);
+            }
+            keyFrameAnimations.add(new ModelData.KeyFrameAnimation(aiAnimation.mName().dataString(),
+                    (float) aiAnimation.mDuration() / ticksPerSecond, channels));
+        }
+        modelData.setKeyFrameAnimationsList(keyFrameAnimations);
+        Logger.debug("Processed {} key frame animation(s) for {} node(s), kept {} of {} keys in {} ms", numAnimations,
+                numNodes, numReducedKeys, numKeys, System.currentTimeMillis() - start);
+    }
+
     private static ModelData.Material processMaterial(AIMaterial aiMaterial, String texturesDir) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
             AIColor4D colour = AIColor4D.create();
@@ -342,78 +513,115 @@ public class ModelLoader {
     }
 
     private static ModelData.MeshData processMesh(AIMesh aiMesh) {
-        List<Float> vertices = processVertices(aiMesh);
-        List<Float> normals = processNormals(aiMesh);
-        List<Float> tangents = processTangents(aiMesh, normals);
-        List<Float> biTangents = processBitangents(aiMesh, normals);
-        List<Float> textCoords = processTextCoords(aiMesh);
-        List<Integer> indices = processIndices(aiMesh);
-
-        // Texture coordinates may not have been populated. We need at least the empty slots
-        if (textCoords.isEmpty()) {
-            int numElements = (vertices.size() / 3) * 2;
-            for (int i = 0; i < numElements; i++) {
-                textCoords.add(0.0f);
-            }
-        }
+        int numVertices = aiMesh.mNumVertices();
+        float[] vertices = processVertices(aiMesh, numVertices);
+        float[] normals = processNormals(aiMesh, numVertices);
+        float[] tangents = processTangents(aiMesh, numVertices);
+        float[] biTangents = processBitangents(aiMesh, numVertices);
+        float[] textCoords = processTextCoords(aiMesh, numVertices);
+        int[] indices = processIndices(aiMesh);
 
         int materialIdx = aiMesh.mMaterialIndex();
-        return new ModelData.MeshData(listFloatToArray(vertices), listFloatToArray(normals), listFloatToArray(tangents),
-                listFloatToArray(biTangents), listFloatToArray(textCoords), listIntToArray(indices), materialIdx);
+        return new ModelData.MeshData(vertices, normals, tangents, biTangents, textCoords, indices, materialIdx);
     }
 
-    private static List<Float> processNormals(AIMesh aiMesh) {
-        List<Float> normals = new ArrayList<>();
-
-        AIVector3D.Buffer aiNormals = aiMesh.mNormals();
-        while (aiNormals != null && aiNormals.remaining() > 0) {
-            AIVector3D aiNormal = aiNormals.get();
-            normals.add(aiNormal.x());
-            normals.add(aiNormal.y());
-            normals.add(aiNormal.z());
-        }
-        return normals;
+    private static float[] processNormals(AIMesh aiMesh, int numVertices) {
+        return processVector3(aiMesh.mNormals(), numVertices);
     }
 
-    private static List<Float> processTangents(AIMesh aiMesh, List<Float> normals) {
-        List<Float> tangents = new ArrayList<>();
-        AIVector3D.Buffer aiTangents = aiMesh.mTangents();
-        while (aiTangents != null && aiTangents.remaining() > 0) {
-            AIVector3D aiTangent = aiTangents.get();
-            tangents.add(aiTangent.x());
-            tangents.add(aiTangent.y());
-            tangents.add(aiTangent.z());
+    private static float[] processQuatKeys(AIQuatKey.Buffer keys, int numKeys, float ticksPerSecond) {
+        float[] data = new float[numKeys * 5];
+        for (int i = 0; i < numKeys; i++) {
+            AIQuatKey key = keys.get(i);
+            AIQuaternion value = key.mValue();
+            int pos = i * 5;
+            data[pos] = (float) key.mTime() / ticksPerSecond;
+            data[pos + 1] = value.x();
+            data[pos + 2] = value.y();
+            data[pos + 3] = value.z();
+            data[pos + 4] = value.w();
         }
+        return data;
+    }
 
+    private static float[] processTangents(AIMesh aiMesh, int numVertices) {
         // Assimp may not calculate tangents with models that do not have texture coordinates. Just create empty values
-        if (tangents.isEmpty()) {
-            tangents = new ArrayList<>(Collections.nCopies(normals.size(), 0.0f));
-        }
-        return tangents;
+        return processVector3(aiMesh.mTangents(), numVertices);
     }
 
-    private static List<Float> processTextCoords(AIMesh aiMesh) {
-        List<Float> textCoords = new ArrayList<>();
+    private static float[] processTextCoords(AIMesh aiMesh, int numVertices) {
+        // Texture coordinates may not have been populated. We need at least the empty slots
+        float[] textCoords = new float[numVertices * 2];
         AIVector3D.Buffer aiTextCoords = aiMesh.mTextureCoords(0);
-        int numTextCoords = aiTextCoords != null ? aiTextCoords.remaining() : 0;
-        for (int i = 0; i < numTextCoords; i++) {
-            AIVector3D textCoord = aiTextCoords.get();
-            textCoords.add(textCoord.x());
-            textCoords.add(1 - textCoord.y());
+        if (aiTextCoords != null) {
+            long address = aiTextCoords.address();
+            for (int i = 0; i < numVertices; i++) {
+                long textCoordAddress = address + (long) i * AIVector3D.SIZEOF;
+                textCoords[i * 2] = MemoryUtil.memGetFloat(textCoordAddress);
+                textCoords[i * 2 + 1] = 1 - MemoryUtil.memGetFloat(textCoordAddress + Float.BYTES);
+            }
         }
         return textCoords;
     }
 
-    private static List<Float> processVertices(AIMesh aiMesh) {
-        List<Float> vertices = new ArrayList<>();
-        AIVector3D.Buffer aiVertices = aiMesh.mVertices();
-        while (aiVertices.remaining() > 0) {
-            AIVector3D aiVertex = aiVertices.get();
-            vertices.add(aiVertex.x());
-            vertices.add(aiVertex.y());
-            vertices.add(aiVertex.z());
+    private static float[] processVector3(AIVector3D.Buffer aiVectors, int numVertices) {
+        // AIVector3D is a tightly packed struct of three floats, so the whole buffer can be copied at once
+        float[] data = new float[numVertices * 3];
+        if (aiVectors != null) {
+            MemoryUtil.memFloatBuffer(aiVectors.address(), data.length).get(data);
+        }
+        return data;
+    }
+
+    private static float[] processVectorKeys(AIVectorKey.Buffer keys, int numKeys, float ticksPerSecond) {
+        float[] data = new float[numKeys * 4];
+        for (int i = 0; i < numKeys; i++) {
+            AIVectorKey key = keys.get(i);
+            AIVector3D value = key.mValue();
+            int pos = i * 4;
+            data[pos] = (float) key.mTime() / ticksPerSecond;
+            data[pos + 1] = value.x();
+            data[pos + 2] = value.y();
+            data[pos + 3] = value.z();
+        }
+        return data;
+    }
+
+    private static float[] processVertices(AIMesh aiMesh, int numVertices) {
+        return processVector3(aiMesh.mVertices(), numVertices);
+    }
+
+    private static float[] reduceKeys(float[] keys, int keySize) {
+        int numKeys = keys.length / keySize;
+        if (numKeys <= 2) {
+            return keys;
+        }
+        int[] keptKeys = new int[numKeys];
+        int numKept = 0;
+        keptKeys[numKept++] = 0;
+        int lastKept = 0;
+        for (int i = 1; i < numKeys - 1; i++) {
+            // A key can be removed if all the keys since the last kept one can be interpolated from it and the next one
+            boolean removable = true;
+            for (int j = lastKept + 1; j <= i && removable; j++) {
+                removable = canInterpolateKey(keys, keySize, lastKept, j, i + 1);
+            }
+            if (!removable) {
+                keptKeys[numKept++] = i;
+                lastKept = i;
+            }
+        }
+        keptKeys[numKept++] = numKeys - 1;
+        if (numKept == 2 && canInterpolateKey(keys, keySize, 0, numKeys - 1, 0)) {
+            // Constant channel
+            numKept = 1;
+        }
+
+        float[] result = new float[numKept * keySize];
+        for (int i = 0; i < numKept; i++) {
+            System.arraycopy(keys, keptKeys[i] * keySize, result, i * keySize, keySize);
         }
-        return vertices;
+        return result;
     }
 
     private static Matrix4f toMatrix(AIMatrix4x4 aiMatrix4x4) {
@@ -438,9 +646,85 @@ public class ModelLoader {
         return result;
     }
 
+    public enum AnimationMode {
+        // Model is loaded with its transformations applied and without animations
+        NONE,
+        // Animations are pre-computed into per-frame joint matrices
+        BAKED,
+        // Animation key frames are kept and sampled on the GPU at the current time
+        SAMPLED
+    }
+
+    private record BakeData(FlatNode[] nodes, Bone[][] nodeBones, AINodeAnim[] nodeChannels,
+                            Matrix4f rootParentTransform, Matrix4f globalInverseTransform, int numJoints) {
+    }
+
+    private record FlatNode(String name, int parentIdx, Matrix4f nodeTransformation) {
+    }
+
+    public record ModelRequest(String modelId, String modelPath, String texturesDir, AnimationMode animationMode) {
+    }
+
     private record Bone(int boneId, String boneName, Matrix4f offsetMatrix) {
     }
 
-    private record VertexWeight(int boneId, int vertexId, float weight) {
+    private static class BakeFramesTask extends RecursiveAction {
+
+        private static final int FRAMES_THRESHOLD = 8;
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final BakeData bakeData;
+        private final int end;
+        private final ModelData.AnimatedFrame[] frames;
+        private final int start;
+
+        BakeFramesTask(BakeData bakeData, ModelData.AnimatedFrame[] frames, int start, int end) {
+            this.bakeData = bakeData;
+            this.frames = frames;
+            this.start = start;
+            this.end = end;
+        }
+
+        private void bakeFrames() {
+            FlatNode[] nodes = bakeData.nodes();
+            Matrix4f[] globalTransforms = new Matrix4f[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                globalTransforms[i] = new Matrix4f();
+            }
+            Matrix4f nodeTransform = new Matrix4f();
+            Quaternionf quat = new Quaternionf();
+
+            for (int frame = start; frame < end; frame++) {
+                Matrix4f[] jointMatrices = new Matrix4f[bakeData.numJoints()];
+                Arrays.fill(jointMatrices, IDENTITY_MATRIX);
+                for (int i = 0; i < nodes.length; i++) {
+                    FlatNode node = nodes[i];
+                    AINodeAnim aiNodeAnim = bakeData.nodeChannels()[i];
+                    Matrix4f localTransform = aiNodeAnim != null ?
+                            buildNodeTransformationMatrix(aiNodeAnim, frame, nodeTransform, quat) :
+                            node.nodeTransformation();
+                    Matrix4f parentTransform = node.parentIdx() >= 0 ? globalTransforms[node.parentIdx()] :
+                            bakeData.rootParentTransform();
+                    Matrix4f nodeGlobalTransform = globalTransforms[i].set(parentTransform).mul(localTransform);
+                    for (Bone bone : bakeData.nodeBones()[i]) {
+                        jointMatrices[bone.boneId()] = new Matrix4f(bakeData.globalInverseTransform()).
+                                mul(nodeGlobalTransform).mul(bone.offsetMatrix());
+                    }
+                }
+                frames[frame] = new ModelData.AnimatedFrame(jointMatrices);
+            }
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= FRAMES_THRESHOLD) {
+                bakeFrames();
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new BakeFramesTask(bakeData, frames, start, middle),
+                        new BakeFramesTask(bakeData, frames, middle, end));
+            }
+        }
     }
 }
@@ -8,6 +8,13 @@ import java.util.*;
 
 public class Scene {
 
+    private final Set<Entity> addedEntities;
+    private final EntityHandles entityHandles;
+    private final Map<String, Integer> handlesMap;
+    private final Map<String, ModelData.Bounds> modelBoundsMap;
+    private final Set<Entity> removedEntities;
+    private final SpatialIndex spatialIndex;
+    private final Map<String, TransformStore> transformStoresMap;
     private Vector4f ambientLight;
     private Camera camera;
     private Light directionalLight;
@@ -20,22 +27,68 @@ public class Scene {
 
     public Scene(Window window) {
         entitiesMap = new HashMap<>();
+        addedEntities = new LinkedHashSet<>();
+        removedEntities = new LinkedHashSet<>();
+        entityHandles = new EntityHandles();
+        handlesMap = new HashMap<>();
+        modelBoundsMap = new HashMap<>();
+        spatialIndex = new SpatialIndex();
+        transformStoresMap = new HashMap<>();
         projection = new Projection();
         projection.resize(window.getWidth(), window.getHeight());
         camera = new Camera();
         ambientLight = new Vector4f();
     }
 
-    public void addEntity(Entity entity) {
-        List<Entity> entities = entitiesMap.get(entity.getModelId());
-        if (entities == null) {
-            entities = new ArrayList<>();
-            entitiesMap.put(entity.getModelId(), entities);
+    private void add(Entity entity) {
+        if (entity.getHandle() != EntityHandles.INVALID_HANDLE) {
+            throw new RuntimeException("Entity [" + entity.getId() + "] has already been added");
+        }
+        if (handlesMap.containsKey(entity.getId())) {
+            throw new RuntimeException("Duplicate entity id [" + entity.getId() + "]");
+        }
+        int handle = entityHandles.allocate(entity);
+        entity.setHandle(handle);
+        handlesMap.put(entity.getId(), handle);
+        // Entities are kept in the order of their slots in the transform store
+        entitiesMap.computeIfAbsent(entity.getModelId(), k -> new ArrayList<>()).add(entity);
+        entity.attach(transformStoresMap.computeIfAbsent(entity.getModelId(), k -> new TransformStore()));
+        ModelData.Bounds bounds = modelBoundsMap.get(entity.getModelId());
+        if (bounds != null) {
+            entity.setLocalBounds(bounds);
+        }
+        spatialIndex.add(entity);
+        // Removing and adding back an entity before changes are consumed cancels out
+        if (!removedEntities.remove(entity)) {
+            addedEntities.add(entity);
         }
-        entities.add(entity);
+    }
+
+    public void addEntities(Collection<Entity> entities) {
+        entities.forEach(this::add);
         entitiesLoadedTimeStamp = System.currentTimeMillis();
     }
 
+    public void addEntity(Entity entity) {
+        add(entity);
+        entitiesLoadedTimeStamp = System.currentTimeMillis();
+    }
+
+    public void cleanup() {
+        removeAllEntities();
+        transformStoresMap.values().forEach(TransformStore::cleanup);
+        transformStoresMap.clear();
+    }
+
+    public void clearEntityChanges() {
+        addedEntities.clear();
+        removedEntities.clear();
+    }
+
+    public Set<Entity> getAddedEntities() {
+        return addedEntities;
+    }
+
     public Vector4f getAmbientLight() {
         return ambientLight;
     }
@@ -60,6 +113,15 @@ public class Scene {
         return entitiesMap;
     }
 
+    public Entity getEntity(int handle) {
+        return entityHandles.get(handle);
+    }
+
+    public Entity getEntity(String id) {
+        Integer handle = handlesMap.get(id);
+        return handle != null ? entityHandles.get(handle) : null;
+    }
+
     public IGuiInstance getGuiInstance() {
         return guiInstance;
     }
@@ -72,21 +134,78 @@ public class Scene {
         return projection;
     }
 
+    public Set<Entity> getRemovedEntities() {
+        return removedEntities;
+    }
+
+    public SpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    public TransformStore getTransformStore(String modelId) {
+        return transformStoresMap.get(modelId);
+    }
+
     public boolean isLightChanged() {
         return lightChanged;
     }
 
+    private void releaseHandle(Entity entity) {
+        entityHandles.free(entity.getHandle());
+        handlesMap.remove(entity.getId());
+        entity.setHandle(EntityHandles.INVALID_HANDLE);
+    }
+
+    private boolean remove(Entity entity) {
+        Entity stored = getEntity(entity.getId());
+        if (stored == null) {
+            return false;
+        }
+        unlink(stored);
+        spatialIndex.remove(stored);
+        // Same swap with the last entity as the one done by the transform store
+        List<Entity> entities = entitiesMap.get(stored.getModelId());
+        int last = entities.size() - 1;
+        entities.set(stored.getSlot(), entities.get(last));
+        entities.remove(last);
+        stored.detach();
+        releaseHandle(stored);
+        trackRemoval(stored);
+        return true;
+    }
+
     public void removeAllEntities() {
+        for (List<Entity> entities : entitiesMap.values()) {
+            // Removing from the end, so no transforms are moved in the stores
+            for (int i = entities.size() - 1; i >= 0; i--) {
+                Entity entity = entities.get(i);
+                entity.resetHierarchy();
+                entity.detach();
+                entity.setHandle(EntityHandles.INVALID_HANDLE);
+                trackRemoval(entity);
+            }
+        }
         entitiesMap.clear();
+        entityHandles.clear();
+        handlesMap.clear();
+        spatialIndex.clear();
         entitiesLoadedTimeStamp = System.currentTimeMillis();
     }
 
+    public void removeEntities(Collection<Entity> entities) {
+        boolean removed = false;
+        for (Entity entity : entities) {
+            removed |= remove(entity);
+        }
+        if (removed) {
+            entitiesLoadedTimeStamp = System.currentTimeMillis();
+        }
+    }
+
     public void removeEntity(Entity entity) {
-        List<Entity> entities = entitiesMap.get(entity.getModelId());
-        if (entities != null) {
-            entities.removeIf(e -> e.getId().equals(entity.getId()));
+        if (remove(entity)) {
+            entitiesLoadedTimeStamp = System.currentTimeMillis();
         }
-        entitiesLoadedTimeStamp = System.currentTimeMillis();
     }
 
     public void setGuiInstance(IGuiInstance guiInstance) {
@@ -111,4 +230,65 @@ public class Scene {
 
         lightChanged = true;
     }
+
+    /**
+     * The entity keeps its local transform, so its world transform changes.
+     */
+    public void setParent(Entity entity, Entity parent) {
+        if (entity.getSlot() < 0 || (parent != null && parent.getSlot() < 0)) {
+            throw new RuntimeException("Entities must be added to the scene before setting their parent");
+        }
+        for (Entity ancestor = parent; ancestor != null; ancestor = ancestor.getParent()) {
+            if (ancestor == entity) {
+                throw new RuntimeException("Entity [" + entity.getId() + "] cannot be its own ancestor");
+            }
+        }
+        entity.setParent(parent);
+        updateDepths(entity, parent != null ? parent.getDepth() + 1 : 0);
+        entity.updateModelMatrix();
+    }
+
+    public void setModelBounds(String modelId, ModelData.Bounds bounds) {
+        modelBoundsMap.put(modelId, bounds);
+        List<Entity> entities = entitiesMap.get(modelId);
+        if (entities != null) {
+            entities.forEach(e -> e.setLocalBounds(bounds));
+        }
+    }
+
+    private void trackRemoval(Entity entity) {
+        if (!addedEntities.remove(entity)) {
+            removedEntities.add(entity);
+        }
+    }
+
+    private void unlink(Entity entity) {
+        entity.setParent(null);
+        for (Entity child : new ArrayList<>(entity.getChildren())) {
+            setParent(child, null);
+        }
+    }
+
+    private void updateDepths(Entity entity, int depth) {
+        transformStoresMap.get(entity.getModelId()).setDepth(entity.getSlot(), depth);
+        for (Entity child : entity.getChildren()) {
+            updateDepths(child, depth + 1);
+        }
+    }
+
+    /**
+     * Must be called once per frame, before rendering. Levels are updated in order, since children need the matrices of
+     * their parents.
+     */
+    public void updateTransforms() {
+        int maxDepth = 0;
+        for (TransformStore transformStore : transformStoresMap.values()) {
+            maxDepth = Math.max(maxDepth, transformStore.getMaxDepth());
+        }
+        for (int depth = 0; depth <= maxDepth; depth++) {
+            for (TransformStore transformStore : transformStoresMap.values()) {
+                transformStore.updateModelMatrices(depth);
+            }
+        }
+    }
 }
@@ -0,0 +1,490 @@
+package org.vulkanb.eng.scene;
+
+import org.joml.*;
+
+import java.lang.Math;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Dynamic AABB tree over the world bounds of the entities. Leaves store enlarged bounds, so small moves do not change
+ * the tree. Entities whose bounds are not known yet are reported by every query.
+ */
+public class SpatialIndex {
+
+    private static final float MARGIN_FACTOR = 0.1f;
+    private static final float MIN_MARGIN = 0.05f;
+    private static final int NULL_NODE = -1;
+
+    private final Consumer<Entity> moveListener;
+    private final Set<Entity> movedEntities;
+    private final Map<Entity, Integer> proxies;
+    private final Set<Entity> unboundedEntities;
+    private float[] aabbs;
+    private int[] child1;
+    private int[] child2;
+    private Entity[] entities;
+    private int freeList;
+    private int[] heights;
+    private int nodeCapacity;
+    private int[] parents;
+    private int root;
+    private int[] stack;
+
+    public SpatialIndex() {
+        moveListener = this::markMoved;
+        movedEntities = new LinkedHashSet<>();
+        proxies = new HashMap<>();
+        unboundedEntities = new LinkedHashSet<>();
+        stack = new int[64];
+        root = NULL_NODE;
+        allocateNodes(16);
+    }
+
+    public void add(Entity entity) {
+        if (proxies.containsKey(entity) || unboundedEntities.contains(entity)) {
+            return;
+        }
+        entity.setTransformListener(moveListener);
+        insert(entity);
+    }
+
+    private void allocateNodes(int capacity) {
+        aabbs = aabbs == null ? new float[capacity * 6] : Arrays.copyOf(aabbs, capacity * 6);
+        child1 = child1 == null ? new int[capacity] : Arrays.copyOf(child1, capacity);
+        child2 = child2 == null ? new int[capacity] : Arrays.copyOf(child2, capacity);
+        entities = entities == null ? new Entity[capacity] : Arrays.copyOf(entities, capacity);
+        heights = heights == null ? new int[capacity] : Arrays.copyOf(heights, capacity);
+        parents = parents == null ? new int[capacity] : Arrays.copyOf(parents, capacity);
+        for (int i = nodeCapacity; i < capacity; i++) {
+            parents[i] = i + 1 < capacity ? i + 1 : NULL_NODE;
+            heights[i] = -1;
+        }
+        freeList = nodeCapacity;
+        nodeCapacity = capacity;
+    }
+
+    private int allocateNode() {
+        if (freeList == NULL_NODE) {
+            allocateNodes(nodeCapacity * 2);
+        }
+        int node = freeList;
+        freeList = parents[node];
+        parents[node] = NULL_NODE;
+        child1[node] = NULL_NODE;
+        child2[node] = NULL_NODE;
+        heights[node] = 0;
+        return node;
+    }
+
+    private int balance(int a) {
+        if (isLeaf(a) || heights[a] < 2) {
+            return a;
+        }
+        int b = child1[a];
+        int c = child2[a];
+        int balance = heights[c] - heights[b];
+        if (balance > 1) {
+            int f = child1[c];
+            int g = child2[c];
+            child1[c] = a;
+            parents[c] = parents[a];
+            parents[a] = c;
+            replaceChild(parents[c], a, c);
+            if (heights[f] > heights[g]) {
+                child2[c] = f;
+                child2[a] = g;
+                parents[g] = a;
+            } else {
+                child2[c] = g;
+                child2[a] = f;
+                parents[f] = a;
+            }
+            refit(a);
+            refit(c);
+            return c;
+        }
+        if (balance < -1) {
+            int d = child1[b];
+            int e = child2[b];
+            child1[b] = a;
+            parents[b] = parents[a];
+            parents[a] = b;
+            replaceChild(parents[b], a, b);
+            if (heights[d] > heights[e]) {
+                child2[b] = d;
+                child1[a] = e;
+                parents[e] = a;
+            } else {
+                child2[b] = e;
+                child1[a] = d;
+                parents[d] = a;
+            }
+            refit(a);
+            refit(b);
+            return b;
+        }
+        return a;
+    }
+
+    public void clear() {
+        proxies.keySet().forEach(e -> e.setTransformListener(null));
+        unboundedEntities.forEach(e -> e.setTransformListener(null));
+        proxies.clear();
+        unboundedEntities.clear();
+        movedEntities.clear();
+        nodeCapacity = 0;
+        aabbs = null;
+        child1 = null;
+        child2 = null;
+        entities = null;
+        heights = null;
+        parents = null;
+        root = NULL_NODE;
+        allocateNodes(16);
+    }
+
+    private boolean contains(int node, Vector3fc min, Vector3fc max) {
+        int pos = node * 6;
+        return aabbs[pos] <= min.x() && aabbs[pos + 1] <= min.y() && aabbs[pos + 2] <= min.z() &&
+                aabbs[pos + 3] >= max.x() && aabbs[pos + 4] >= max.y() && aabbs[pos + 5] >= max.z();
+    }
+
+    private void freeNode(int node) {
+        parents[node] = freeList;
+        heights[node] = -1;
+        entities[node] = null;
+        freeList = node;
+    }
+
+    public int getHeight() {
+        update();
+        return root == NULL_NODE ? 0 : heights[root];
+    }
+
+    private void insert(Entity entity) {
+        ModelData.Bounds bounds = entity.getWorldBounds();
+        if (bounds == null) {
+            unboundedEntities.add(entity);
+            return;
+        }
+        int leaf = allocateNode();
+        entities[leaf] = entity;
+        Vector3f min = bounds.min();
+        Vector3f max = bounds.max();
+        float margin = Math.max(MIN_MARGIN, MARGIN_FACTOR * Math.max(max.x - min.x, Math.max(max.y - min.y,
+                max.z - min.z)));
+        int pos = leaf * 6;
+        aabbs[pos] = min.x - margin;
+        aabbs[pos + 1] = min.y - margin;
+        aabbs[pos + 2] = min.z - margin;
+        aabbs[pos + 3] = max.x + margin;
+        aabbs[pos + 4] = max.y + margin;
+        aabbs[pos + 5] = max.z + margin;
+        insertLeaf(leaf);
+        proxies.put(entity, leaf);
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL_NODE) {
+            root = leaf;
+            parents[leaf] = NULL_NODE;
+            return;
+        }
+
+        // Descend choosing the child that increases the least the surface area of the tree
+        int node = root;
+        while (!isLeaf(node)) {
+            float area = surfaceArea(node, node);
+            float combinedArea = surfaceArea(node, leaf);
+            float cost = 2.0f * combinedArea;
+            float inheritanceCost = 2.0f * (combinedArea - area);
+            float cost1 = insertionCost(child1[node], leaf) + inheritanceCost;
+            float cost2 = insertionCost(child2[node], leaf) + inheritanceCost;
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            node = cost1 < cost2 ? child1[node] : child2[node];
+        }
+
+        int sibling = node;
+        int oldParent = parents[sibling];
+        int newParent = allocateNode();
+        parents[newParent] = oldParent;
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parents[sibling] = newParent;
+        parents[leaf] = newParent;
+        replaceChild(oldParent, sibling, newParent);
+        refitAncestors(newParent);
+    }
+
+    private float insertionCost(int node, int leaf) {
+        float combinedArea = surfaceArea(node, leaf);
+        return isLeaf(node) ? combinedArea : combinedArea - surfaceArea(node, node);
+    }
+
+    private boolean isLeaf(int node) {
+        return child1[node] == NULL_NODE;
+    }
+
+    private void markMoved(Entity entity) {
+        movedEntities.add(entity);
+    }
+
+    private boolean overlaps(int node, Vector3fc min, Vector3fc max) {
+        int pos = node * 6;
+        return aabbs[pos] <= max.x() && aabbs[pos + 1] <= max.y() && aabbs[pos + 2] <= max.z() &&
+                aabbs[pos + 3] >= min.x() && aabbs[pos + 4] >= min.y() && aabbs[pos + 5] >= min.z();
+    }
+
+    private int push(int stackSize, int node) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[stackSize] = node;
+        return stackSize + 1;
+    }
+
+    public void queryAabb(Vector3fc min, Vector3fc max, Consumer<Entity> consumer) {
+        update();
+        unboundedEntities.forEach(consumer);
+        if (root == NULL_NODE) {
+            return;
+        }
+        int stackSize = push(0, root);
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            if (!overlaps(node, min, max)) {
+                continue;
+            }
+            if (isLeaf(node)) {
+                ModelData.Bounds bounds = entities[node].getWorldBounds();
+                if (bounds.min().x <= max.x() && bounds.min().y <= max.y() && bounds.min().z <= max.z() &&
+                        bounds.max().x >= min.x() && bounds.max().y >= min.y() && bounds.max().z >= min.z()) {
+                    consumer.accept(entities[node]);
+                }
+            } else {
+                stackSize = push(stackSize, child1[node]);
+                stackSize = push(stackSize, child2[node]);
+            }
+        }
+    }
+
+    public void queryFrustum(Matrix4fc projViewMatrix, Consumer<Entity> consumer) {
+        queryFrustum(List.of(projViewMatrix), consumer);
+    }
+
+    /**
+     * Entities are reported only once, even if they are inside several frustums.
+     */
+    public void queryFrustum(List<? extends Matrix4fc> projViewMatrices, Consumer<Entity> consumer) {
+        update();
+        unboundedEntities.forEach(consumer);
+        if (root == NULL_NODE) {
+            return;
+        }
+        int numFrustums = projViewMatrices.size();
+        FrustumIntersection[] frustums = new FrustumIntersection[numFrustums];
+        for (int i = 0; i < numFrustums; i++) {
+            frustums[i] = new FrustumIntersection(projViewMatrices.get(i), false);
+        }
+        int stackSize = push(0, root);
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            int pos = node * 6;
+            boolean intersects = false;
+            boolean inside = false;
+            for (int i = 0; i < numFrustums && !inside; i++) {
+                int result = frustums[i].intersectAab(aabbs[pos], aabbs[pos + 1], aabbs[pos + 2], aabbs[pos + 3],
+                        aabbs[pos + 4], aabbs[pos + 5]);
+                inside = result == FrustumIntersection.INSIDE;
+                intersects |= inside || result == FrustumIntersection.INTERSECT;
+            }
+            if (inside) {
+                reportSubtree(node, stackSize, consumer);
+            } else if (!intersects) {
+                continue;
+            } else if (isLeaf(node)) {
+                ModelData.Bounds bounds = entities[node].getWorldBounds();
+                for (int i = 0; i < numFrustums; i++) {
+                    if (frustums[i].testAab(bounds.min(), bounds.max())) {
+                        consumer.accept(entities[node]);
+                        break;
+                    }
+                }
+            } else {
+                stackSize = push(stackSize, child1[node]);
+                stackSize = push(stackSize, child2[node]);
+            }
+        }
+    }
+
+    /**
+     * The maximum distance is measured in units of the direction length. Entities are not sorted by distance.
+     */
+    public void queryRay(Vector3fc origin, Vector3fc dir, float maxDistance, Consumer<Entity> consumer) {
+        update();
+        unboundedEntities.forEach(consumer);
+        if (root == NULL_NODE) {
+            return;
+        }
+        Vector2f result = new Vector2f();
+        int stackSize = push(0, root);
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            int pos = node * 6;
+            if (!Intersectionf.intersectRayAab(origin.x(), origin.y(), origin.z(), dir.x(), dir.y(), dir.z(),
+                    aabbs[pos], aabbs[pos + 1], aabbs[pos + 2], aabbs[pos + 3], aabbs[pos + 4], aabbs[pos + 5], result) ||
+                    result.x > maxDistance) {
+                continue;
+            }
+            if (isLeaf(node)) {
+                ModelData.Bounds bounds = entities[node].getWorldBounds();
+                if (Intersectionf.intersectRayAab(origin, dir, bounds.min(), bounds.max(), result) &&
+                        result.x <= maxDistance) {
+                    consumer.accept(entities[node]);
+                }
+            } else {
+                stackSize = push(stackSize, child1[node]);
+                stackSize = push(stackSize, child2[node]);
+            }
+        }
+    }
+
+    public void querySphere(Vector3fc center, float radius, Consumer<Entity> consumer) {
+        update();
+        unboundedEntities.forEach(consumer);
+        if (root == NULL_NODE) {
+            return;
+        }
+        float radiusSquared = radius * radius;
+        int stackSize = push(0, root);
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            int pos = node * 6;
+            if (!Intersectionf.testAabSphere(aabbs[pos], aabbs[pos + 1], aabbs[pos + 2], aabbs[pos + 3],
+                    aabbs[pos + 4], aabbs[pos + 5], center.x(), center.y(), center.z(), radiusSquared)) {
+                continue;
+            }
+            if (isLeaf(node)) {
+                ModelData.Bounds bounds = entities[node].getWorldBounds();
+                if (Intersectionf.testAabSphere(bounds.min(), bounds.max(), center, radiusSquared)) {
+                    consumer.accept(entities[node]);
+                }
+            } else {
+                stackSize = push(stackSize, child1[node]);
+                stackSize = push(stackSize, child2[node]);
+            }
+        }
+    }
+
+    private void refit(int node) {
+        int c1 = child1[node];
+        int c2 = child2[node];
+        heights[node] = 1 + Math.max(heights[c1], heights[c2]);
+        int pos = node * 6;
+        int pos1 = c1 * 6;
+        int pos2 = c2 * 6;
+        for (int i = 0; i < 3; i++) {
+            aabbs[pos + i] = Math.min(aabbs[pos1 + i], aabbs[pos2 + i]);
+            aabbs[pos + 3 + i] = Math.max(aabbs[pos1 + 3 + i], aabbs[pos2 + 3 + i]);
+        }
+    }
+
+    private void refitAncestors(int node) {
+        while (node != NULL_NODE) {
+            node = balance(node);
+            refit(node);
+            node = parents[node];
+        }
+    }
+
+    public void remove(Entity entity) {
+        movedEntities.remove(entity);
+        if (unboundedEntities.remove(entity)) {
+            entity.setTransformListener(null);
+            return;
+        }
+        Integer leaf = proxies.remove(entity);
+        if (leaf != null) {
+            entity.setTransformListener(null);
+            removeLeaf(leaf);
+            freeNode(leaf);
+        }
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL_NODE;
+            return;
+        }
+        int parent = parents[leaf];
+        int grandParent = parents[parent];
+        int sibling = child1[parent] == leaf ? child2[parent] : child1[parent];
+        parents[sibling] = grandParent;
+        replaceChild(grandParent, parent, sibling);
+        freeNode(parent);
+        refitAncestors(grandParent);
+    }
+
+    private void replaceChild(int parent, int oldChild, int newChild) {
+        if (parent == NULL_NODE) {
+            root = newChild;
+        } else if (child1[parent] == oldChild) {
+            child1[parent] = newChild;
+        } else {
+            child2[parent] = newChild;
+        }
+    }
+
+    private void reportSubtree(int subtreeRoot, int stackBase, Consumer<Entity> consumer) {
+        // Uses the stack above the nodes still pending in the caller
+        int stackSize = push(stackBase, subtreeRoot);
+        while (stackSize > stackBase) {
+            int node = stack[--stackSize];
+            if (isLeaf(node)) {
+                consumer.accept(entities[node]);
+            } else {
+                stackSize = push(stackSize, child1[node]);
+                stackSize = push(stackSize, child2[node]);
+            }
+        }
+    }
+
+    public int size() {
+        return proxies.size() + unboundedEntities.size();
+    }
+
+    private float surfaceArea(int node, int other) {
+        int pos = node * 6;
+        int otherPos = other * 6;
+        float dx = Math.max(aabbs[pos + 3], aabbs[otherPos + 3]) - Math.min(aabbs[pos], aabbs[otherPos]);
+        float dy = Math.max(aabbs[pos + 4], aabbs[otherPos + 4]) - Math.min(aabbs[pos + 1], aabbs[otherPos + 1]);
+        float dz = Math.max(aabbs[pos + 5], aabbs[otherPos + 5]) - Math.min(aabbs[pos + 2], aabbs[otherPos + 2]);
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    public void update() {
+        if (movedEntities.isEmpty()) {
+            return;
+        }
+        for (Entity entity : movedEntities) {
+            Integer leaf = proxies.get(entity);
+            if (leaf == null) {
+                unboundedEntities.remove(entity);
+                insert(entity);
+                continue;
+            }
+            ModelData.Bounds bounds = entity.getWorldBounds();
+            if (bounds != null && contains(leaf, bounds.min(), bounds.max())) {
+                continue;
+            }
+            proxies.remove(entity);
+            removeLeaf(leaf);
+            freeNode(leaf);
+            insert(entity);
+        }
+        movedEntities.clear();
+    }
+}
\ No newline at end of file
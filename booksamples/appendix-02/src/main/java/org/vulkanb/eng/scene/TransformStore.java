@@ -0,0 +1,280 @@
+package org.vulkanb.eng.scene;
+
+import org.joml.*;
+import org.lwjgl.system.MemoryUtil;
+import org.vulkanb.eng.graph.vk.GraphConstants;
+
+import java.lang.Math;
+import java.nio.*;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Off-heap transforms of the entities of a model. Model matrices use the stride of the instance data, so consecutive
+ * slots can be copied in one go.
+ */
+public class TransformStore {
+
+    public static final int MATRIX_STRIDE = GraphConstants.MAT4X4_SIZE + GraphConstants.INT_LENGTH;
+    // Position, rotation and scale
+    public static final int TRS_FLOATS = 8;
+    // Each chunk covers whole words of the dirty bits, so chunks can be cleared concurrently
+    private static final int CHUNK_WORDS = 16;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    private int capacity;
+    private int[] depths;
+    private long[] dirtyWords;
+    private Entity[] entities;
+    private ByteBuffer matrices;
+    private int maxDepth;
+    private int numDirty;
+    private FloatBuffer positions;
+    private FloatBuffer rotations;
+    private FloatBuffer scales;
+    private int size;
+    private int[] versions;
+
+    public TransformStore() {
+        capacity = INITIAL_CAPACITY;
+        depths = new int[capacity];
+        dirtyWords = new long[capacity / Long.SIZE];
+        entities = new Entity[capacity];
+        versions = new int[capacity];
+        matrices = MemoryUtil.memCalloc(capacity * MATRIX_STRIDE);
+        positions = MemoryUtil.memAllocFloat(capacity * 3);
+        rotations = MemoryUtil.memAllocFloat(capacity * 4);
+        scales = MemoryUtil.memAllocFloat(capacity);
+    }
+
+    public int add(Entity entity, float[] trs, int version) {
+        if (size == capacity) {
+            grow(capacity * 2);
+        }
+        int slot = size++;
+        entities[slot] = entity;
+        positions.put(slot * 3, trs, 0, 3);
+        rotations.put(slot * 4, trs, 3, 4);
+        scales.put(slot, trs[7]);
+        versions[slot] = version;
+        depths[slot] = 0;
+        computeModelMatrix(slot, new Matrix4f(), null);
+        return slot;
+    }
+
+    public void cleanup() {
+        MemoryUtil.memFree(matrices);
+        MemoryUtil.memFree(positions);
+        MemoryUtil.memFree(rotations);
+        MemoryUtil.memFree(scales);
+        Arrays.fill(entities, 0, size, null);
+        size = 0;
+    }
+
+    private void clearDirty(int slot) {
+        dirtyWords[slot >>> 6] &= ~(1L << slot);
+    }
+
+    private void computeModelMatrix(int slot, Matrix4f scratchMatrix, Matrix4f parentMatrix) {
+        int pos = slot * 3;
+        int rot = slot * 4;
+        scratchMatrix.translationRotateScale(positions.get(pos), positions.get(pos + 1), positions.get(pos + 2),
+                rotations.get(rot), rotations.get(rot + 1), rotations.get(rot + 2), rotations.get(rot + 3),
+                scales.get(slot));
+        if (parentMatrix != null) {
+            parentMatrix.mul(scratchMatrix, scratchMatrix);
+        }
+        scratchMatrix.get(slot * MATRIX_STRIDE, matrices);
+    }
+
+    public void copyMatrices(int firstSlot, int numSlots, long dstAddress) {
+        MemoryUtil.memCopy(MemoryUtil.memAddress(matrices) + (long) firstSlot * MATRIX_STRIDE, dstAddress,
+                (long) numSlots * MATRIX_STRIDE);
+    }
+
+    public int getDepth(int slot) {
+        return depths[slot];
+    }
+
+    public Entity getEntity(int slot) {
+        return entities[slot];
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public Matrix4f getModelMatrix(int slot, Matrix4f dest) {
+        // Dirty matrices are computed on demand, along with the ones of their ancestors. This changes the dirty bits of
+        // other stores, so it is only meant for single threaded callers, not for updateModelMatrices
+        if (isDirty(slot)) {
+            Matrix4f parentMatrix = depths[slot] > 0 ? entities[slot].getParent().getModelMatrix(new Matrix4f()) : null;
+            computeModelMatrix(slot, dest, parentMatrix);
+            clearDirty(slot);
+            numDirty--;
+        }
+        return dest.set(slot * MATRIX_STRIDE, matrices);
+    }
+
+    public Vector3f getPosition(int slot, Vector3f dest) {
+        int pos = slot * 3;
+        return dest.set(positions.get(pos), positions.get(pos + 1), positions.get(pos + 2));
+    }
+
+    public Quaternionf getRotation(int slot, Quaternionf dest) {
+        int pos = slot * 4;
+        return dest.set(rotations.get(pos), rotations.get(pos + 1), rotations.get(pos + 2), rotations.get(pos + 3));
+    }
+
+    public float getScale(int slot) {
+        return scales.get(slot);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void getTransform(int slot, float[] trs) {
+        positions.get(slot * 3, trs, 0, 3);
+        rotations.get(slot * 4, trs, 3, 4);
+        trs[7] = scales.get(slot);
+    }
+
+    public int getVersion(int slot) {
+        return versions[slot];
+    }
+
+    private void grow(int newCapacity) {
+        depths = Arrays.copyOf(depths, newCapacity);
+        dirtyWords = Arrays.copyOf(dirtyWords, newCapacity / Long.SIZE);
+        entities = Arrays.copyOf(entities, newCapacity);
+        versions = Arrays.copyOf(versions, newCapacity);
+        matrices = MemoryUtil.memRealloc(matrices, newCapacity * MATRIX_STRIDE);
+        positions = MemoryUtil.memRealloc(positions, newCapacity * 3);
+        rotations = MemoryUtil.memRealloc(rotations, newCapacity * 4);
+        scales = MemoryUtil.memRealloc(scales, newCapacity);
+        capacity = newCapacity;
+    }
+
+    private boolean isDirty(int slot) {
+        return (dirtyWords[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Returns false if the slot was already dirty, the version is only increased the first time.
+     */
+    public boolean markDirty(int slot) {
+        if (isDirty(slot)) {
+            return false;
+        }
+        dirtyWords[slot >>> 6] |= 1L << slot;
+        versions[slot]++;
+        numDirty++;
+        return true;
+    }
+
+    // Parents are in the level above, which has already been updated, so their matrices are read without side effects
+    private Matrix4f readParentMatrix(int slot, Matrix4f dest) {
+        Entity parent = entities[slot].getParent();
+        return dest.set(parent.getSlot() * MATRIX_STRIDE, parent.getStore().matrices);
+    }
+
+    /**
+     * Moves the last entity into the slot, so slots are not stable across removals.
+     */
+    public void remove(int slot) {
+        int last = --size;
+        if (isDirty(slot)) {
+            clearDirty(slot);
+            numDirty--;
+        }
+        if (slot != last) {
+            Entity moved = entities[last];
+            entities[slot] = moved;
+            versions[slot] = versions[last];
+            depths[slot] = depths[last];
+            MemoryUtil.memCopy(MemoryUtil.memAddress(matrices) + (long) last * MATRIX_STRIDE,
+                    MemoryUtil.memAddress(matrices) + (long) slot * MATRIX_STRIDE, MATRIX_STRIDE);
+            for (int i = 0; i < 3; i++) {
+                positions.put(slot * 3 + i, positions.get(last * 3 + i));
+            }
+            for (int i = 0; i < 4; i++) {
+                rotations.put(slot * 4 + i, rotations.get(last * 4 + i));
+            }
+            scales.put(slot, scales.get(last));
+            if (isDirty(last)) {
+                clearDirty(last);
+                dirtyWords[slot >>> 6] |= 1L << slot;
+            }
+            moved.setSlot(slot);
+        }
+        entities[last] = null;
+    }
+
+    public void setDepth(int slot, int depth) {
+        depths[slot] = depth;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    public void setPosition(int slot, float x, float y, float z) {
+        int pos = slot * 3;
+        positions.put(pos, x);
+        positions.put(pos + 1, y);
+        positions.put(pos + 2, z);
+    }
+
+    public void setRotation(int slot, Quaternionfc rotation) {
+        int pos = slot * 4;
+        rotations.put(pos, rotation.x());
+        rotations.put(pos + 1, rotation.y());
+        rotations.put(pos + 2, rotation.z());
+        rotations.put(pos + 3, rotation.w());
+    }
+
+    public void setScale(int slot, float scale) {
+        scales.put(slot, scale);
+    }
+
+    private int updateChunk(int chunk, int depth) {
+        Matrix4f scratchMatrix = new Matrix4f();
+        Matrix4f parentMatrix = new Matrix4f();
+        int numUpdated = 0;
+        int lastWord = Math.min((chunk + 1) * CHUNK_WORDS, dirtyWords.length);
+        for (int word = chunk * CHUNK_WORDS; word < lastWord; word++) {
+            long bits = dirtyWords[word];
+            long updatedBits = 0;
+            while (bits != 0) {
+                int bit = Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int slot = word * Long.SIZE + bit;
+                if (depths[slot] == depth) {
+                    computeModelMatrix(slot, scratchMatrix, depth > 0 ? readParentMatrix(slot, parentMatrix) : null);
+                    updatedBits |= 1L << bit;
+                    numUpdated++;
+                }
+            }
+            dirtyWords[word] &= ~updatedBits;
+        }
+        return numUpdated;
+    }
+
+    /**
+     * The levels above must have been updated before, in every store.
+     */
+    public void updateModelMatrices(int depth) {
+        if (numDirty == 0 || depth > maxDepth) {
+            return;
+        }
+        int numChunks = (dirtyWords.length + CHUNK_WORDS - 1) / CHUNK_WORDS;
+        int numUpdated = 0;
+        if (numDirty < PARALLEL_THRESHOLD) {
+            for (int chunk = 0; chunk < numChunks; chunk++) {
+                numUpdated += updateChunk(chunk, depth);
+            }
+        } else {
+            numUpdated = IntStream.range(0, numChunks).parallel().map(chunk -> updateChunk(chunk, depth)).sum();
+        }
+        numDirty -= numUpdated;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,110 @@
+package org.vulkanb.eng.ecs;
+
+import org.junit.jupiter.api.*;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchetypeTest {
+
+    private ComponentType health;
+    private ComponentType position;
+
+    private static Archetype createArchetype(ComponentType... types) {
+        BitSet mask = new BitSet();
+        for (ComponentType componentType : types) {
+            mask.set(componentType.id());
+        }
+        return new Archetype(mask, types, 2);
+    }
+
+    private static float[] getPosition(Archetype archetype, ComponentType position, int row) {
+        float[] floats = archetype.getChunk(row).getFloats(position);
+        int offset = row % Chunk.CAPACITY * 3;
+        return new float[]{floats[offset], floats[offset + 1], floats[offset + 2]};
+    }
+
+    private static void setValues(Archetype archetype, ComponentType position, ComponentType health, int row) {
+        float[] floats = archetype.getChunk(row).getFloats(position);
+        int offset = row % Chunk.CAPACITY * 3;
+        floats[offset] = row;
+        floats[offset + 1] = row + 0.5f;
+        floats[offset + 2] = -row;
+        archetype.getChunk(row).getInts(health)[row % Chunk.CAPACITY] = row * 10;
+    }
+
+    @BeforeEach
+    void setUp() {
+        position = new ComponentType(0, "position", false, 3);
+        health = new ComponentType(1, "health", true, 1);
+    }
+
+    @Test
+    void testCopyShared() {
+        Archetype src = createArchetype(position, health);
+        for (int i = 0; i < 3; i++) {
+            src.add(100 + i);
+            setValues(src, position, health, i);
+        }
+        Archetype dst = createArchetype(position);
+        int dstRow = dst.add(102);
+        src.copyShared(2, dst, dstRow);
+        assertArrayEquals(new float[]{2, 2.5f, -2}, getPosition(dst, position, dstRow));
+        assertFalse(dst.has(health));
+    }
+
+    @Test
+    void testRemoveAcrossChunks() {
+        Archetype archetype = createArchetype(position, health);
+        int numEntities = Chunk.CAPACITY + 1;
+        for (int i = 0; i < numEntities; i++) {
+            archetype.add(100 + i);
+            setValues(archetype, position, health, i);
+        }
+        assertEquals(2, archetype.getChunks().size());
+
+        // The only entity in the second chunk fills the hole in the first one, and the empty chunk is dropped
+        assertTrue(archetype.remove(5));
+        assertEquals(Chunk.CAPACITY, archetype.getSize());
+        assertEquals(1, archetype.getChunks().size());
+        Chunk chunk = archetype.getChunk(5);
+        assertEquals(100 + Chunk.CAPACITY, chunk.getEntity(5));
+        assertArrayEquals(new float[]{Chunk.CAPACITY, Chunk.CAPACITY + 0.5f, -Chunk.CAPACITY},
+                getPosition(archetype, position, 5));
+        assertEquals(Chunk.CAPACITY * 10, chunk.getInts(health)[5]);
+        assertEquals(Chunk.CAPACITY, chunk.getSize());
+    }
+
+    @Test
+    void testRemoveSwapsLast() {
+        Archetype archetype = createArchetype(position, health);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, archetype.add(100 + i));
+            setValues(archetype, position, health, i);
+        }
+
+        assertTrue(archetype.remove(1));
+        assertEquals(3, archetype.getSize());
+        Chunk chunk = archetype.getChunk(0);
+        assertEquals(3, chunk.getSize());
+        assertEquals(103, chunk.getEntity(1));
+        assertArrayEquals(new float[]{3, 3.5f, -3}, getPosition(archetype, position, 1));
+        assertEquals(30, chunk.getInts(health)[1]);
+        assertEquals(100, chunk.getEntity(0));
+        assertEquals(102, chunk.getEntity(2));
+
+        // Removing the last row moves nothing, and the freed row is reused zeroed
+        assertFalse(archetype.remove(2));
+        assertEquals(2, archetype.getSize());
+        assertEquals(2, archetype.add(104));
+        assertArrayEquals(new float[]{0, 0, 0}, getPosition(archetype, position, 2));
+        assertEquals(0, chunk.getInts(health)[2]);
+
+        assertTrue(archetype.remove(0));
+        assertTrue(archetype.remove(0));
+        assertFalse(archetype.remove(0));
+        assertEquals(0, archetype.getSize());
+        assertTrue(archetype.getChunks().isEmpty());
+    }
+}
\ No newline at end of file
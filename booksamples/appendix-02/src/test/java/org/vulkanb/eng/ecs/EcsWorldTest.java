@@ -0,0 +1,27 @@
+package org.vulkanb.eng.ecs;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EcsWorldTest {
+
+    @Test
+    void testHandlesStayPositive() {
+        EcsWorld world = new EcsWorld();
+        ComponentType position = world.registerFloatComponent("position", 3);
+        int first = world.createEntity(position);
+        int entity = first;
+        // Every generation of a reused index, including the highest ones, gives a valid non negative handle
+        for (int i = 0; i < 1024; i++) {
+            world.destroyEntity(entity);
+            assertFalse(world.isAlive(entity));
+            entity = world.createEntity(position);
+            assertTrue(entity >= 0, "Handle " + entity + " is negative");
+            assertTrue(world.isAlive(entity));
+        }
+        // Generations wrap around
+        assertEquals(first, entity);
+        assertEquals(1, world.getNumEntities());
+    }
+}
\ No newline at end of file
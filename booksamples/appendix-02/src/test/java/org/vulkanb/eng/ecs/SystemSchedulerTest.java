@@ -0,0 +1,122 @@
+package org.vulkanb.eng.ecs;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SystemSchedulerTest {
+
+    private List<String> log;
+    private ComponentType position;
+    private ComponentType rotation;
+    private ComponentType velocity;
+    private EcsWorld world;
+
+    @BeforeEach
+    void setUp() {
+        log = Collections.synchronizedList(new ArrayList<>());
+        world = new EcsWorld();
+        position = world.registerFloatComponent("position", 3);
+        rotation = world.registerFloatComponent("rotation", 4);
+        velocity = world.registerFloatComponent("velocity", 3);
+    }
+
+    @Test
+    void testConflictsStartNewStages() {
+        SystemScheduler scheduler = new SystemScheduler(world);
+        scheduler.addSystem(new TestSystem("move", Set.of(velocity), Set.of(position), false));
+        scheduler.addSystem(new TestSystem("spin", Set.of(), Set.of(rotation), false));
+        scheduler.addSystem(new TestSystem("readPosition", Set.of(position), Set.of(), false));
+        // Runs after spin, in the same stage as readPosition
+        scheduler.addSystem(new TestSystem("writeRotation", Set.of(), Set.of(rotation), false));
+        // Readers do not conflict with each other, so it goes back to the first stage
+        scheduler.addSystem(new TestSystem("readVelocity", Set.of(velocity), Set.of(), false));
+        assertEquals(2, scheduler.getNumStages());
+
+        scheduler.addSystem(new TestSystem("writeVelocity", Set.of(), Set.of(velocity), false));
+        assertEquals(2, scheduler.getNumStages());
+        scheduler.addSystem(new TestSystem("readRotation", Set.of(rotation), Set.of(), false));
+        assertEquals(3, scheduler.getNumStages());
+
+        scheduler.run(0);
+        assertEquals(7, log.size());
+        assertTrue(log.indexOf("move") < log.indexOf("readPosition"));
+        assertTrue(log.indexOf("spin") < log.indexOf("writeRotation"));
+        assertTrue(log.indexOf("readVelocity") < log.indexOf("writeVelocity"));
+        assertTrue(log.indexOf("move") < log.indexOf("writeVelocity"));
+        assertTrue(log.subList(0, 3).containsAll(List.of("move", "spin", "readVelocity")));
+        assertEquals("readRotation", log.get(6));
+    }
+
+    @Test
+    void testExclusiveRunsAlone() {
+        SystemScheduler scheduler = new SystemScheduler(world);
+        scheduler.addSystem(new TestSystem("first", Set.of(position), Set.of(), false));
+        scheduler.addSystem(new TestSystem("exclusive", Set.of(), Set.of(), true));
+        scheduler.addSystem(new TestSystem("second", Set.of(position), Set.of(), false));
+        assertEquals(3, scheduler.getNumStages());
+
+        scheduler.run(0);
+        assertEquals(List.of("first", "exclusive", "second"), log);
+    }
+
+    @Test
+    void testStructuralChangesDeferred() {
+        int entity = world.createEntity(position);
+        SystemScheduler scheduler = new SystemScheduler(world);
+        scheduler.addSystem(new TestSystem("defer", Set.of(), Set.of(), false) {
+            @Override
+            public void update(EcsWorld world, long diffTimeMillis) {
+                assertThrows(RuntimeException.class, () -> world.createEntity(position));
+                assertThrows(RuntimeException.class, () -> world.addComponent(entity, velocity));
+                world.defer(w -> w.addComponent(entity, velocity));
+                world.defer(w -> w.destroyEntity(w.createEntity(rotation)));
+                world.defer(w -> w.createEntity(rotation));
+            }
+        });
+        scheduler.run(0);
+
+        assertTrue(world.hasComponent(entity, velocity));
+        assertEquals(2, world.getNumEntities());
+        assertEquals(1, world.query(rotation).count());
+        world.createEntity(position);
+        assertEquals(3, world.getNumEntities());
+    }
+
+    private class TestSystem implements ISystem {
+
+        private final boolean exclusive;
+        private final String name;
+        private final Set<ComponentType> reads;
+        private final Set<ComponentType> writes;
+
+        TestSystem(String name, Set<ComponentType> reads, Set<ComponentType> writes, boolean exclusive) {
+            this.name = name;
+            this.reads = reads;
+            this.writes = writes;
+            this.exclusive = exclusive;
+        }
+
+        @Override
+        public Set<ComponentType> getReads() {
+            return reads;
+        }
+
+        @Override
+        public Set<ComponentType> getWrites() {
+            return writes;
+        }
+
+        @Override
+        public boolean isExclusive() {
+            return exclusive;
+        }
+
+        @Override
+        public void update(EcsWorld world, long diffTimeMillis) {
+            log.add(name);
+        }
+    }
+}
\ No newline at end of file
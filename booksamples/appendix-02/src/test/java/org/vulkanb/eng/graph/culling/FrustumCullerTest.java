@@ -0,0 +1,142 @@
+package org.vulkanb.eng.graph.culling;
+
+import org.joml.*;
+import org.junit.jupiter.api.*;
+import org.vulkanb.eng.graph.GlobalBuffers;
+import org.vulkanb.eng.graph.vk.GraphConstants;
+
+import java.nio.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrustumCullerTest {
+
+    private static final int BOUNDS_FLOATS = 12;
+    private static final int COMMAND_INTS = GlobalBuffers.IND_COMMAND_STRIDE / GraphConstants.INT_LENGTH;
+    private static final int INSTANCE_INTS = GlobalBuffers.INSTANCE_DATA_SIZE / GraphConstants.INT_LENGTH;
+    private static final int NUM_COMMANDS = 3;
+    private static final int NUM_INSTANCES = 6;
+
+    private FloatBuffer boundsData;
+    private IntBuffer commandBounds;
+    private IntBuffer dstCommands;
+    private IntBuffer dstInstances;
+    private Vector4f[] planes;
+    private IntBuffer srcCommands;
+    private IntBuffer srcInstances;
+
+    private static void putCommand(IntBuffer commands, int cmdIdx, int indexCount, int instanceCount, int firstIndex,
+                                   int vertexOffset, int firstInstance) {
+        int pos = cmdIdx * COMMAND_INTS;
+        commands.put(pos, indexCount);
+        commands.put(pos + 1, instanceCount);
+        commands.put(pos + 2, firstIndex);
+        commands.put(pos + 3, vertexOffset);
+        commands.put(pos + 4, firstInstance);
+    }
+
+    private static void putInstance(IntBuffer instances, int instance, Matrix4f modelMatrix, int materialIdx) {
+        int pos = instance * INSTANCE_INTS;
+        float[] values = modelMatrix.get(new float[16]);
+        for (int i = 0; i < values.length; i++) {
+            instances.put(pos + i, Float.floatToRawIntBits(values[i]));
+        }
+        instances.put(pos + values.length, materialIdx);
+    }
+
+    private static void putSphere(FloatBuffer bounds, int boundsIdx, float radius) {
+        int pos = boundsIdx * BOUNDS_FLOATS;
+        bounds.put(pos, 0.0f).put(pos + 1, 0.0f).put(pos + 2, 0.0f).put(pos + 3, radius);
+    }
+
+    private void assertCommand(int cmdIdx, int indexCount, int instanceCount, int firstIndex, int vertexOffset,
+                               int firstInstance) {
+        int pos = cmdIdx * COMMAND_INTS;
+        assertEquals(indexCount, dstCommands.get(pos));
+        assertEquals(instanceCount, dstCommands.get(pos + 1));
+        assertEquals(firstIndex, dstCommands.get(pos + 2));
+        assertEquals(vertexOffset, dstCommands.get(pos + 3));
+        assertEquals(firstInstance, dstCommands.get(pos + 4));
+    }
+
+    private int cull(boolean compact) {
+        return FrustumCuller.cull(boundsData, planes, srcInstances, srcCommands, commandBounds, NUM_COMMANDS,
+                dstInstances, dstCommands, compact);
+    }
+
+    private Set<List<Integer>> getCommands(int numCommands) {
+        Set<List<Integer>> commands = new HashSet<>();
+        for (int cmdIdx = 0; cmdIdx < numCommands; cmdIdx++) {
+            List<Integer> command = new ArrayList<>();
+            for (int i = 0; i < COMMAND_INTS; i++) {
+                command.add(dstCommands.get(cmdIdx * COMMAND_INTS + i));
+            }
+            commands.add(command);
+        }
+        return commands;
+    }
+
+    // Translations along the x axis of the visible instances of a command, by material
+    private Map<Integer, Float> getVisibleInstances(int firstInstance, int instanceCount) {
+        Map<Integer, Float> instances = new HashMap<>();
+        for (int i = firstInstance; i < firstInstance + instanceCount; i++) {
+            int pos = i * INSTANCE_INTS;
+            instances.put(dstInstances.get(pos + 16), Float.intBitsToFloat(dstInstances.get(pos + 12)));
+        }
+        return instances;
+    }
+
+    @BeforeEach
+    void setUp() {
+        // Box from -10 to 10 in every axis
+        planes = new Vector4f[FrustumCuller.NUM_PLANES];
+        for (int i = 0; i < planes.length; i++) {
+            planes[i] = new Vector4f();
+        }
+        FrustumCuller.extractPlanes(new Matrix4f().ortho(-10, 10, -10, 10, -10, 10), planes);
+
+        boundsData = FloatBuffer.allocate(2 * BOUNDS_FLOATS);
+        putSphere(boundsData, 0, 1.0f);
+        putSphere(boundsData, 1, 0.5f);
+
+        // First command: inside, outside and touching the right plane
+        srcInstances = IntBuffer.allocate(NUM_INSTANCES * INSTANCE_INTS);
+        putInstance(srcInstances, 0, new Matrix4f(), 1);
+        putInstance(srcInstances, 1, new Matrix4f().translate(20, 0, 0), 2);
+        putInstance(srcInstances, 2, new Matrix4f().translate(10.5f, 0, 0), 3);
+        // Second command: all outside
+        putInstance(srcInstances, 3, new Matrix4f().translate(30, 0, 0), 4);
+        putInstance(srcInstances, 4, new Matrix4f().translate(0, -40, 0), 5);
+        // Third command: center outside, but the scaled sphere reaches the box
+        putInstance(srcInstances, 5, new Matrix4f().translate(12, 0, 0).scale(4), 6);
+
+        srcCommands = IntBuffer.allocate(NUM_COMMANDS * COMMAND_INTS);
+        putCommand(srcCommands, 0, 36, 3, 0, 0, 0);
+        putCommand(srcCommands, 1, 24, 2, 36, 100, 3);
+        putCommand(srcCommands, 2, 12, 1, 60, 200, 5);
+        commandBounds = IntBuffer.wrap(new int[]{0, 1, 0});
+
+        dstInstances = IntBuffer.allocate(NUM_INSTANCES * INSTANCE_INTS);
+        dstCommands = IntBuffer.allocate(NUM_COMMANDS * COMMAND_INTS);
+    }
+
+    @Test
+    void testCompacted() {
+        assertEquals(2, cull(true));
+        // The GPU may store compacted commands and visible instances in any order
+        assertEquals(Set.of(List.of(36, 2, 0, 0, 0), List.of(12, 1, 60, 200, 5)), getCommands(2));
+
+        // Visible instances are moved to the start of the range of their command
+        assertEquals(Map.of(1, 0.0f, 3, 10.5f), getVisibleInstances(0, 2));
+        assertEquals(Map.of(6, 12.0f), getVisibleInstances(5, 1));
+    }
+
+    @Test
+    void testNotCompacted() {
+        assertEquals(NUM_COMMANDS, cull(false));
+        assertCommand(0, 36, 2, 0, 0, 0);
+        assertCommand(1, 24, 0, 36, 100, 3);
+        assertCommand(2, 12, 1, 60, 200, 5);
+    }
+}
\ No newline at end of file
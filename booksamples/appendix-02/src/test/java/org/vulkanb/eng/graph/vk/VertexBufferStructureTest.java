@@ -0,0 +1,117 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VertexBufferStructureTest {
+
+    private static final float NORMAL_EPSILON = 1e-4f;
+    private static final int NUM_VECTORS = 1000;
+    private static final float TANGENT_EPSILON = 1.0f / 1023.0f;
+
+    // Same decoding as the shaders
+    private static Vector3f decodeNormal(int packed) {
+        float x = Math.max((short) packed / 32767.0f, -1.0f);
+        float y = Math.max((short) (packed >>> 16) / 32767.0f, -1.0f);
+        Vector3f normal = new Vector3f(x, y, 1 - Math.abs(x) - Math.abs(y));
+        float t = Math.max(-normal.z, 0);
+        normal.x += normal.x >= 0 ? -t : t;
+        normal.y += normal.y >= 0 ? -t : t;
+        return normal.normalize();
+    }
+
+    private static Vector3f decodeTangent(int packed) {
+        return new Vector3f(packed & 0x3FF, (packed >>> 10) & 0x3FF, (packed >>> 20) & 0x3FF).div(1023.0f).mul(2)
+                .sub(1, 1, 1);
+    }
+
+    private static float halfToFloat(int half) {
+        int sign = (half & 0x8000) != 0 ? -1 : 1;
+        int exponent = (half >>> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+        if (exponent == 0x1F) {
+            return mantissa != 0 ? Float.NaN : sign * Float.POSITIVE_INFINITY;
+        }
+        if (exponent == 0) {
+            return sign * mantissa * (float) Math.pow(2, -24);
+        }
+        return sign * (1 + mantissa / 1024.0f) * (float) Math.pow(2, exponent - 15);
+    }
+
+    private static Vector3f randomUnitVector(Random random) {
+        Vector3f vector = new Vector3f();
+        while (vector.lengthSquared() < 1e-6f) {
+            vector.set(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1);
+        }
+        return vector.normalize();
+    }
+
+    private static float roundTripHalf(float value) {
+        return halfToFloat(VertexBufferStructure.packTextCoords(value, 0) & 0xFFFF);
+    }
+
+    @Test
+    void testPackNormal() {
+        Random random = new Random(1);
+        Vector3f[] normals = new Vector3f[NUM_VECTORS + 6];
+        normals[0] = new Vector3f(1, 0, 0);
+        normals[1] = new Vector3f(-1, 0, 0);
+        normals[2] = new Vector3f(0, 1, 0);
+        normals[3] = new Vector3f(0, -1, 0);
+        normals[4] = new Vector3f(0, 0, 1);
+        normals[5] = new Vector3f(0, 0, -1);
+        for (int i = 6; i < normals.length; i++) {
+            normals[i] = randomUnitVector(random);
+        }
+        for (Vector3f normal : normals) {
+            Vector3f decoded = decodeNormal(VertexBufferStructure.packNormal(normal.x, normal.y, normal.z));
+            assertTrue(decoded.distance(normal) < NORMAL_EPSILON, "Normal " + normal + " decoded as " + decoded);
+        }
+    }
+
+    @Test
+    void testPackTangent() {
+        Random random = new Random(2);
+        for (int i = 0; i < NUM_VECTORS; i++) {
+            Vector3f tangent = randomUnitVector(random);
+            boolean positiveBitangent = i % 2 == 0;
+            int packed = VertexBufferStructure.packTangent(tangent.x, tangent.y, tangent.z, positiveBitangent);
+            Vector3f decoded = decodeTangent(packed);
+            assertEquals(tangent.x, decoded.x, TANGENT_EPSILON);
+            assertEquals(tangent.y, decoded.y, TANGENT_EPSILON);
+            assertEquals(tangent.z, decoded.z, TANGENT_EPSILON);
+            assertEquals(positiveBitangent ? 3 : 0, packed >>> 30);
+        }
+    }
+
+    @Test
+    void testPackTextCoords() {
+        int packed = VertexBufferStructure.packTextCoords(0.25f, -3.5f);
+        assertEquals(0.25f, halfToFloat(packed & 0xFFFF));
+        assertEquals(-3.5f, halfToFloat(packed >>> 16));
+
+        // Exactly representable values
+        for (float value : new float[]{0.0f, 1.0f, -1.0f, 0.5f, 2048.0f, 65504.0f, (float) Math.pow(2, -24)}) {
+            assertEquals(value, roundTripHalf(value));
+        }
+        // Rounding to the nearest value, with 11 significant bits
+        Random random = new Random(3);
+        for (int i = 0; i < NUM_VECTORS; i++) {
+            float value = (random.nextFloat() * 2 - 1) * 16;
+            assertEquals(value, roundTripHalf(value), Math.abs(value) / 2048 + 1e-7f);
+        }
+        assertEquals(1.0f + 1.0f / 1024, roundTripHalf(1.0f + 1.5f / 2048));
+        assertEquals(1.0f / 1024, roundTripHalf(1.0f / 1024 + (float) Math.pow(2, -22)));
+        // Subnormal halfs and underflow
+        assertEquals(3 * (float) Math.pow(2, -24), roundTripHalf(3 * (float) Math.pow(2, -24)));
+        assertEquals(0.0f, roundTripHalf(1e-10f));
+        // Overflow, infinity and NaN
+        assertEquals(Float.POSITIVE_INFINITY, roundTripHalf(1e6f));
+        assertEquals(Float.NEGATIVE_INFINITY, roundTripHalf(Float.NEGATIVE_INFINITY));
+        assertTrue(Float.isNaN(roundTripHalf(Float.NaN)));
+    }
+}
\ No newline at end of file
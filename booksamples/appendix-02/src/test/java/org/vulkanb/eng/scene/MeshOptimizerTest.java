@@ -0,0 +1,134 @@
+package org.vulkanb.eng.scene;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeshOptimizerTest {
+
+    private static final int GRID_SIZE = 32;
+
+    private int[] indices;
+    private int numVertices;
+    private float[] positions;
+
+    // Triangles as lists of indices, rotated so the lowest one is first, which keeps their winding
+    private static List<List<Integer>> getTriangles(int[] indices) {
+        List<List<Integer>> triangles = new ArrayList<>();
+        for (int i = 0; i < indices.length; i += 3) {
+            int first = indices[i] <= indices[i + 1] && indices[i] <= indices[i + 2] ? 0 :
+                    indices[i + 1] <= indices[i + 2] ? 1 : 2;
+            triangles.add(List.of(indices[i + first], indices[i + (first + 1) % 3], indices[i + (first + 2) % 3]));
+        }
+        triangles.sort(Comparator.<List<Integer>>comparingInt(t -> t.get(0)).thenComparingInt(t -> t.get(1))
+                .thenComparingInt(t -> t.get(2)));
+        return triangles;
+    }
+
+    private static int[] shuffleTriangles(int[] indices, long seed) {
+        int numTriangles = indices.length / 3;
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < numTriangles; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(seed));
+        int[] result = new int[indices.length];
+        for (int i = 0; i < numTriangles; i++) {
+            System.arraycopy(indices, order.get(i) * 3, result, i * 3, 3);
+        }
+        return result;
+    }
+
+    private int[] optimize(int[] srcIndices) {
+        int[] result = MeshOptimizer.optimizeVertexCache(srcIndices, numVertices, MeshOptimizer.VERTEX_CACHE_SIZE);
+        return MeshOptimizer.optimizeOverdraw(result, positions, MeshOptimizer.VERTEX_CACHE_SIZE,
+                MeshOptimizer.OVERDRAW_THRESHOLD);
+    }
+
+    @BeforeEach
+    void setUp() {
+        // Regular grid of quads, split in two triangles each, in row order
+        int rowVertices = GRID_SIZE + 1;
+        numVertices = rowVertices * rowVertices;
+        positions = new float[numVertices * 3];
+        for (int y = 0; y < rowVertices; y++) {
+            for (int x = 0; x < rowVertices; x++) {
+                int pos = (y * rowVertices + x) * 3;
+                positions[pos] = x;
+                positions[pos + 1] = y;
+            }
+        }
+        indices = new int[GRID_SIZE * GRID_SIZE * 6];
+        int pos = 0;
+        for (int y = 0; y < GRID_SIZE; y++) {
+            for (int x = 0; x < GRID_SIZE; x++) {
+                int v0 = y * rowVertices + x;
+                int v1 = v0 + 1;
+                int v2 = v0 + rowVertices;
+                int v3 = v2 + 1;
+                indices[pos++] = v0;
+                indices[pos++] = v1;
+                indices[pos++] = v2;
+                indices[pos++] = v2;
+                indices[pos++] = v1;
+                indices[pos++] = v3;
+            }
+        }
+    }
+
+    @Test
+    void testAcmrNotWorse() {
+        for (int[] srcIndices : new int[][]{indices, shuffleTriangles(indices, 1)}) {
+            float acmrBefore = MeshOptimizer.analyzeVertexCache(srcIndices, numVertices,
+                    MeshOptimizer.VERTEX_CACHE_SIZE).acmr();
+            float acmrAfter = MeshOptimizer.analyzeVertexCache(optimize(srcIndices), numVertices,
+                    MeshOptimizer.VERTEX_CACHE_SIZE).acmr();
+            assertTrue(acmrAfter <= acmrBefore, "ACMR went from " + acmrBefore + " to " + acmrAfter);
+        }
+    }
+
+    @Test
+    void testShuffledAcmrImproved() {
+        int[] shuffled = shuffleTriangles(indices, 2);
+        float acmrBefore = MeshOptimizer.analyzeVertexCache(shuffled, numVertices,
+                MeshOptimizer.VERTEX_CACHE_SIZE).acmr();
+        float acmrAfter = MeshOptimizer.analyzeVertexCache(optimize(shuffled), numVertices,
+                MeshOptimizer.VERTEX_CACHE_SIZE).acmr();
+        assertTrue(acmrAfter < acmrBefore * 0.5f, "ACMR went from " + acmrBefore + " to " + acmrAfter);
+    }
+
+    @Test
+    void testTrianglesKept() {
+        int[] srcIndices = shuffleTriangles(indices, 3);
+        int[] optimizedIndices = optimize(srcIndices);
+        assertEquals(getTriangles(srcIndices), getTriangles(optimizedIndices));
+
+        MeshOptimizer.VertexFetchRemap vertexFetchRemap = MeshOptimizer.buildVertexFetchRemap(optimizedIndices,
+                numVertices);
+        int[] remap = vertexFetchRemap.remap();
+        int[] remappedIndices = MeshOptimizer.remapIndices(optimizedIndices, remap);
+        float[] remappedPositions = MeshOptimizer.remapVertices(positions, numVertices, remap,
+                vertexFetchRemap.numVertices());
+        assertEquals(numVertices, vertexFetchRemap.numVertices());
+
+        // Vertices are laid out in the order they are first referenced
+        int next = 0;
+        for (int index : remappedIndices) {
+            assertTrue(index <= next);
+            if (index == next) {
+                next++;
+            }
+        }
+
+        // Mapping the new vertices back to the old ones gives the same triangles
+        int[] inverse = new int[numVertices];
+        for (int i = 0; i < numVertices; i++) {
+            inverse[remap[i]] = i;
+            assertEquals(positions[i * 3], remappedPositions[remap[i] * 3]);
+            assertEquals(positions[i * 3 + 1], remappedPositions[remap[i] * 3 + 1]);
+        }
+        assertEquals(getTriangles(srcIndices), getTriangles(MeshOptimizer.remapIndices(remappedIndices, inverse)));
+    }
+}
\ No newline at end of file
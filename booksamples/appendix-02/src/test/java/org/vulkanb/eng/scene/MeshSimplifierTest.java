@@ -0,0 +1,152 @@
+package org.vulkanb.eng.scene;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeshSimplifierTest {
+
+    private static final int GRID_SIZE = 16;
+
+    private static int[] createGridIndices() {
+        int rowVertices = GRID_SIZE + 1;
+        int[] indices = new int[GRID_SIZE * GRID_SIZE * 6];
+        int pos = 0;
+        for (int y = 0; y < GRID_SIZE; y++) {
+            for (int x = 0; x < GRID_SIZE; x++) {
+                int v0 = y * rowVertices + x;
+                int v1 = v0 + 1;
+                int v2 = v0 + rowVertices;
+                int v3 = v2 + 1;
+                indices[pos++] = v0;
+                indices[pos++] = v1;
+                indices[pos++] = v2;
+                indices[pos++] = v2;
+                indices[pos++] = v1;
+                indices[pos++] = v3;
+            }
+        }
+        return indices;
+    }
+
+    // Height field facing +z, flat if the amplitude is zero
+    private static float[] createGridPositions(float amplitude) {
+        int rowVertices = GRID_SIZE + 1;
+        float[] positions = new float[rowVertices * rowVertices * 3];
+        for (int y = 0; y < rowVertices; y++) {
+            for (int x = 0; x < rowVertices; x++) {
+                int pos = (y * rowVertices + x) * 3;
+                positions[pos] = x;
+                positions[pos + 1] = y;
+                positions[pos + 2] = amplitude * (float) (Math.sin(x * 0.4) * Math.cos(y * 0.3));
+            }
+        }
+        return positions;
+    }
+
+    private static ModelData.MeshData createMeshData(float[] positions, int[] indices) {
+        int numVertices = positions.length / 3;
+        return new ModelData.MeshData(positions, new float[numVertices * 3], new float[numVertices * 3],
+                new float[numVertices * 3], new float[numVertices * 2], indices, 0, new ArrayList<>(),
+                ModelData.Bounds.EMPTY);
+    }
+
+    private static Set<Long> getBorderEdges(int[] indices) {
+        Map<Long, Integer> edgeCount = new HashMap<>();
+        for (int i = 0; i < indices.length; i += 3) {
+            for (int j = 0; j < 3; j++) {
+                int v0 = indices[i + j];
+                int v1 = indices[i + (j + 1) % 3];
+                edgeCount.merge(((long) Math.min(v0, v1) << 32) | Math.max(v0, v1), 1, Integer::sum);
+            }
+        }
+        Set<Long> borderEdges = new HashSet<>();
+        edgeCount.forEach((edge, count) -> {
+            if (count == 1) {
+                borderEdges.add(edge);
+            }
+        });
+        return borderEdges;
+    }
+
+    private static float normalZ(float[] positions, int[] indices, int i) {
+        int i0 = indices[i] * 3;
+        int i1 = indices[i + 1] * 3;
+        int i2 = indices[i + 2] * 3;
+        float e1x = positions[i1] - positions[i0];
+        float e1y = positions[i1 + 1] - positions[i0 + 1];
+        float e2x = positions[i2] - positions[i0];
+        float e2y = positions[i2 + 1] - positions[i0 + 1];
+        return e1x * e2y - e1y * e2x;
+    }
+
+    @Test
+    void testBorderKept() {
+        int[] indices = createGridIndices();
+        int[] simplified = MeshSimplifier.simplify(indices, createGridPositions(0), 0, MeshSimplifier.LOD_MAX_ERROR);
+        assertTrue(simplified.length < indices.length / 4);
+
+        // Border vertices can only be collapse targets, so the outline of the mesh does not change
+        Set<Long> borderEdges = getBorderEdges(indices);
+        assertEquals(borderEdges, getBorderEdges(simplified));
+        Set<Integer> referenced = new HashSet<>();
+        Arrays.stream(simplified).forEach(referenced::add);
+        for (long edge : borderEdges) {
+            assertTrue(referenced.contains((int) (edge >>> 32)));
+            assertTrue(referenced.contains((int) edge));
+        }
+    }
+
+    @Test
+    void testLodsStopAtReductionLimit() {
+        ModelData.MeshData gridMeshData = createMeshData(createGridPositions(0), createGridIndices());
+        // Triangles that share no edges can not be collapsed at all
+        float[] positions = new float[]{0, 0, 0, 1, 0, 0, 0, 1, 0, 2, 0, 0, 3, 0, 0, 2, 1, 0};
+        ModelData.MeshData separateMeshData = createMeshData(positions, new int[]{0, 1, 2, 3, 4, 5});
+        ModelData modelData = new ModelData("model", new ArrayList<>(List.of(gridMeshData, separateMeshData)),
+                new ArrayList<>());
+
+        int numLevels = 10;
+        MeshSimplifier.generateLods(modelData, numLevels, false);
+
+        ModelData.MeshData meshData = modelData.getMeshDataList().get(0);
+        List<int[]> lodIndices = meshData.lodIndices();
+        assertFalse(lodIndices.isEmpty());
+        // The outline is kept, so the grid can not be halved as many times as requested
+        assertTrue(lodIndices.size() < numLevels - 1);
+        int previous = meshData.indices().length;
+        for (int[] lod : lodIndices) {
+            assertTrue(lod.length <= previous * (1 - MeshSimplifier.LOD_MIN_REDUCTION));
+            previous = lod.length;
+        }
+        int[] last = MeshSimplifier.simplify(meshData.indices(), meshData.positions(), previous / 6 * 3,
+                MeshSimplifier.LOD_MAX_ERROR);
+        assertTrue(last.length > previous * (1 - MeshSimplifier.LOD_MIN_REDUCTION));
+
+        assertTrue(modelData.getMeshDataList().get(1).lodIndices().isEmpty());
+    }
+
+    @Test
+    void testNoFlippedTriangles() {
+        int[] indices = createGridIndices();
+        float[] flatPositions = createGridPositions(0);
+        int[] simplified = MeshSimplifier.simplify(indices, flatPositions, 0, 1.0f);
+        assertTrue(simplified.length < indices.length / 4);
+        for (int i = 0; i < simplified.length; i += 3) {
+            assertTrue(normalZ(flatPositions, simplified, i) > 0, "Triangle " + i / 3 + " has been flipped");
+        }
+
+        // Triangles joining three vertices of the curved border are seen edge-on from above, but must not face down
+        float[] curvedPositions = createGridPositions(1.5f);
+        for (int i = 0; i < indices.length; i += 3) {
+            assertTrue(normalZ(curvedPositions, indices, i) > 0);
+        }
+        simplified = MeshSimplifier.simplify(indices, curvedPositions, 0, 1.0f);
+        assertTrue(simplified.length < indices.length / 4);
+        for (int i = 0; i < simplified.length; i += 3) {
+            assertTrue(normalZ(curvedPositions, simplified, i) >= 0, "Triangle " + i / 3 + " has been flipped");
+        }
+    }
+}
\ No newline at end of file
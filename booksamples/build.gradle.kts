@@ -23,6 +23,7 @@ subprojects {
     }
 
     val jomlVersion = "1.10.2"
+    val junitVersion = "5.10.2"
     val tinyLogVersion = "2.4.1"
     val lwjglVersion = "3.3.0"
 	var imguiVersion = "1.85.1"
@@ -49,6 +50,9 @@ subprojects {
         runtimeOnly("org.lwjgl:lwjgl-assimp::$natives")
         runtimeOnly("org.lwjgl:lwjgl-vma::$natives")
         runtimeOnly("io.github.spair:imgui-java-$natives:$imguiVersion")
+
+        testImplementation("org.junit.jupiter:junit-jupiter:$junitVersion")
+        testRuntimeOnly("org.junit.platform:junit-platform-launcher:1.10.2")
     }
 
     tasks {
@@ -73,6 +77,11 @@ subprojects {
         dependsOn("copyDependencies")
     }
 
+    tasks.test {
+        useJUnitPlatform()
+        jvmArgs("--enable-preview")
+    }
+
     tasks.withType<JavaCompile> {
 	    options.compilerArgs.add("--enable-preview")
 	}